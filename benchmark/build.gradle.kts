@@ -0,0 +1,32 @@
+plugins {
+  alias(libs.plugins.jetbrains.kotlin.jvm)
+  alias(libs.plugins.jmh)
+}
+
+kotlin {
+  jvmToolchain(17)
+  //common and rtsp are android libraries so the pure kotlin sources benchmarked are compiled here
+  sourceSets.named("jmh") {
+    kotlin.srcDir("../common/src/main/java")
+    kotlin.srcDir("../rtsp/src/main/java")
+    kotlin.include(
+      "com/pedro/benchmark/**",
+      "com/pedro/common/Codec.kt",
+      "com/pedro/common/VideoCodec.kt",
+      "com/pedro/common/nal/**",
+      "com/pedro/common/FrameQueue.kt",
+      "com/pedro/common/StreamBlockingQueue.kt",
+      "com/pedro/common/SpscFrameQueue.kt",
+      "com/pedro/common/frame/MediaFrame.kt",
+      "com/pedro/rtsp/utils/CryptoProperties.kt",
+      "com/pedro/rtsp/utils/CryptoUtils.kt",
+      "com/pedro/rtsp/utils/RtpConstants.kt"
+    )
+  }
+}
+
+//./gradlew :benchmark:jmh, add -PjmhIncludes=NalReader to run only matching benchmarks
+jmh {
+  jmhVersion = libs.versions.jmh.get()
+  (project.findProperty("jmhIncludes") as String?)?.let { includes.add(it) }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.benchmark
+
+import java.nio.ByteBuffer
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Byte by byte start code search used by NalReader before the skip search, kept as baseline.
+ */
+object ByteScanner {
+
+  fun countNals(buffer: ByteBuffer): Int {
+    val array = buffer.array()
+    val offset = buffer.arrayOffset()
+    val start = offset + buffer.position()
+    val limit = offset + buffer.limit()
+    var payloadStart = -1
+    var count = 0
+
+    var i = start
+    while (i < limit - 2) {
+      if (array[i].toInt() == 0 && array[i + 1].toInt() == 0 && array[i + 2].toInt() == 1) {
+        val previousPayloadEnd = if (i > start && array[i - 1].toInt() == 0) i - 1 else i
+        if (payloadStart != -1 && previousPayloadEnd > payloadStart) count++
+        payloadStart = i + 3
+        i += 3
+      } else {
+        i++
+      }
+    }
+    if (payloadStart != -1 && payloadStart < limit) count++
+    return count
+  }
+}
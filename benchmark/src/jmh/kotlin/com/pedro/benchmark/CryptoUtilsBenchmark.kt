@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.benchmark
+
+import com.pedro.rtsp.utils.CryptoProperties
+import com.pedro.rtsp.utils.CryptoUtils
+import com.pedro.rtsp.utils.RtpConstants
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * SRTP encryption and authentication of a RTP packet, the result is packets per second.
+ * [LegacySrtp] is the baseline. The setup check that both paths produce the same packets.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+open class CryptoUtilsBenchmark {
+
+  companion object {
+    private const val SSRC = 123456789L
+  }
+
+  @Param("1200")
+  var payloadSize = 0
+
+  private val properties = CryptoProperties(
+    ByteArray(20) { it.toByte() }, ByteArray(16) { (it * 3).toByte() }, ByteArray(14) { (it * 7).toByte() }
+  )
+  private lateinit var legacy: LegacySrtp
+  private lateinit var cryptoUtils: CryptoUtils
+  private lateinit var packet: ByteArray
+  private var index = 0L
+
+  @Setup
+  fun setup() {
+    legacy = LegacySrtp(properties)
+    cryptoUtils = CryptoUtils(properties)
+    packet = createPacket(0)
+    repeat(100) { seq ->
+      val expected = createPacket(seq)
+      legacy.encryptPacket(expected, SSRC, seq.toLong(), 0)
+      val data = createPacket(seq)
+      encryptInPlace(data, seq.toLong())
+      check(expected.contentEquals(data)) { "in place SRTP differ from legacy in packet $seq" }
+    }
+  }
+
+  private fun createPacket(seq: Int): ByteArray {
+    return ByteArray(RtpConstants.RTP_HEADER_LENGTH + payloadSize + RtpConstants.HMAC_SIZE) { (it + seq).toByte() }
+  }
+
+  private fun encryptInPlace(buffer: ByteArray, index: Long) {
+    val payloadEndOffset = buffer.size - RtpConstants.HMAC_SIZE
+    cryptoUtils.encrypt(buffer, RtpConstants.RTP_HEADER_LENGTH, payloadSize, SSRC, index)
+    cryptoUtils.calculateHmac(buffer, 0, payloadEndOffset, 0, buffer, payloadEndOffset)
+  }
+
+  private fun nextIndex(): Long {
+    index = (index + 1) and 0xFFFF
+    return index
+  }
+
+  @Benchmark
+  fun legacySrtp(): ByteArray {
+    legacy.encryptPacket(packet, SSRC, nextIndex(), 0)
+    return packet
+  }
+
+  @Benchmark
+  fun inPlaceSrtp(): ByteArray {
+    encryptInPlace(packet, nextIndex())
+    return packet
+  }
+}
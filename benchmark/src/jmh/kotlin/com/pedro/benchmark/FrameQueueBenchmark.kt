@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.benchmark
+
+import com.pedro.common.FrameQueue
+import com.pedro.common.SpscFrameQueue
+import com.pedro.common.StreamBlockingQueue
+import com.pedro.common.frame.MediaFrame
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OperationsPerInvocation
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.nio.ByteBuffer
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Frame queues of BaseSender with the same shape than a stream: one producer thread per media
+ * type (the encoders) and one consumer thread (the sender).
+ *
+ * The result of sendAndTake is the time per frame. getTotalSize is measured with a full queue
+ * because the stats call it every second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+open class FrameQueueBenchmark {
+
+  companion object {
+    private const val FRAMES_PER_TYPE = 10_000
+    private const val CAPACITY = 400
+  }
+
+  @Param("PRIORITY", "SPSC")
+  lateinit var queueType: String
+
+  private lateinit var queue: FrameQueue
+  private lateinit var fullQueue: FrameQueue
+  private val videoFrames = createFrames(MediaFrame.Type.VIDEO)
+  private val audioFrames = createFrames(MediaFrame.Type.AUDIO)
+
+  private fun createFrames(type: MediaFrame.Type): Array<MediaFrame> {
+    return Array(FRAMES_PER_TYPE) {
+      MediaFrame(ByteBuffer.wrap(byteArrayOf()), MediaFrame.Info(0, 100, it.toLong(), false), type)
+    }
+  }
+
+  private fun createQueue(): FrameQueue = when (queueType) {
+    "SPSC" -> SpscFrameQueue(CAPACITY)
+    else -> StreamBlockingQueue(CAPACITY)
+  }
+
+  @Setup(Level.Trial)
+  fun setup() {
+    fullQueue = createQueue()
+    (0 until CAPACITY).forEach { fullQueue.trySend(videoFrames[it]) }
+  }
+
+  @Setup(Level.Invocation)
+  fun setupQueue() {
+    queue = createQueue()
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(FRAMES_PER_TYPE * 2)
+  fun sendAndTake(): Long {
+    val producers = listOf(videoFrames, audioFrames).map { frames ->
+      thread {
+        var i = 0
+        while (i < frames.size) {
+          //full queue, retry instead of discard so both queues move the same frames
+          if (queue.trySend(frames[i])) i++ else Thread.yield()
+        }
+      }
+    }
+    var bytes = 0L
+    repeat(FRAMES_PER_TYPE * 2) { bytes += queue.take().info.size }
+    producers.forEach { it.join() }
+    return bytes
+  }
+
+  @Benchmark
+  fun getTotalSize(): Long = fullQueue.getTotalSize()
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.benchmark
+
+import com.pedro.common.VideoCodec
+import java.nio.ByteBuffer
+import java.util.Random
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Synthetic Annex-B frames similar to the MediaCodec output.
+ */
+object Frames {
+
+  /**
+   * Frame of [size] bytes with [nalCount] slices preceded by an AUD. The slices payload is
+   * random with the emulation prevention applied, so only the start codes have 00 00 0x but
+   * single zero bytes appear as in a real stream.
+   */
+  fun create(codec: VideoCodec, size: Int, nalCount: Int, direct: Boolean, seed: Long = 1): ByteBuffer {
+    val random = Random(seed)
+    val aud = when (codec) {
+      VideoCodec.H265 -> byteArrayOf(0, 0, 0, 1, 0x46, 0x01, 0x50)
+      else -> byteArrayOf(0, 0, 0, 1, 0x09, 0xf0.toByte())
+    }
+    val slice = when (codec) {
+      VideoCodec.H265 -> byteArrayOf(0, 0, 1, 0x02, 0x01)
+      else -> byteArrayOf(0, 0, 1, 0x41)
+    }
+    val data = ByteArray(size)
+    aud.copyInto(data)
+    var position = aud.size
+    val nalSize = (size - aud.size) / nalCount
+    for (nal in 0 until nalCount) {
+      val end = if (nal == nalCount - 1) size else position + nalSize
+      slice.copyInto(data, position)
+      position += slice.size
+      while (position < end) {
+        var value = random.nextInt(256)
+        //emulation prevention, 00 00 is never followed by 00, 01, 02 or 03
+        if (value <= 3 && position >= 2 && data[position - 1].toInt() == 0 && data[position - 2].toInt() == 0) {
+          value = 4 + random.nextInt(252)
+        }
+        data[position++] = value.toByte()
+      }
+    }
+    return if (direct) {
+      ByteBuffer.allocateDirect(size).put(data).apply { flip() }
+    } else ByteBuffer.wrap(data)
+  }
+}
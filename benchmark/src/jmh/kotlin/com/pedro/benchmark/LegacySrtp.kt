@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.benchmark
+
+import com.pedro.rtsp.utils.CryptoProperties
+import com.pedro.rtsp.utils.RtpConstants
+import java.nio.ByteBuffer
+import javax.crypto.Cipher
+import javax.crypto.Mac
+import javax.crypto.spec.SecretKeySpec
+import kotlin.experimental.xor
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Baseline, copy of the SRTP path before encrypt in place: a cipher call per 16 bytes block and
+ * copies of payload, HMAC input and IV per packet.
+ */
+class LegacySrtp(private val properties: CryptoProperties) {
+
+  private val mac = Mac.getInstance("HmacSHA1").apply {
+    init(SecretKeySpec(properties.authKey, "HmacSHA1"))
+  }
+  private val ecbCipher = Cipher.getInstance("AES/ECB/NoPadding").apply {
+    init(Cipher.ENCRYPT_MODE, SecretKeySpec(properties.sessionKey, "AES"))
+  }
+
+  fun encryptPacket(buffer: ByteArray, ssrc: Long, index: Long, roc: Int) {
+    val payloadEndOffset = buffer.size - RtpConstants.HMAC_SIZE
+    val payload = buffer.copyOfRange(RtpConstants.RTP_HEADER_LENGTH, payloadEndOffset)
+    encrypt(payload, generateIv(ssrc, index)).copyInto(buffer, RtpConstants.RTP_HEADER_LENGTH)
+    mac.reset()
+    mac.update(buffer.copyOfRange(0, payloadEndOffset))
+    mac.update(ByteBuffer.allocate(4).putInt(roc).array())
+    mac.doFinal().copyOf(RtpConstants.HMAC_SIZE).copyInto(buffer, payloadEndOffset)
+  }
+
+  private fun encrypt(buffer: ByteArray, ivData: ByteArray): ByteArray {
+    val result = ByteArray(buffer.size)
+    val block = ByteArray(16)
+    var offset = 0
+    var j = 0
+    while (offset < buffer.size) {
+      ivData.copyInto(block)
+      block[15] = (block[15].toInt() xor (j and 0xFF)).toByte()
+      block[14] = (block[14].toInt() xor ((j shr 8) and 0xFF)).toByte()
+      val keystream = ecbCipher.doFinal(block)
+      val toCopy = minOf(16, buffer.size - offset)
+      for (i in 0 until toCopy) result[offset + i] = buffer[offset + i] xor keystream[i]
+      offset += 16
+      j++
+    }
+    return result
+  }
+
+  private fun generateIv(ssrc: Long, index: Long): ByteArray {
+    val ivBase = ByteArray(16)
+    ByteBuffer.wrap(ivBase, 4, 4).putInt(ssrc.toInt())
+    val indexBytes = ByteBuffer.allocate(8).putLong(index).array()
+    System.arraycopy(indexBytes, 2, ivBase, 8, 6)
+    val paddedSalt = ByteArray(16).apply { properties.salt.copyInto(this) }
+    return ByteArray(16).apply {
+      for (i in this.indices) this[i] = ivBase[i] xor paddedSalt[i]
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.benchmark
+
+import com.pedro.common.VideoCodec
+import com.pedro.common.nal.NalReader
+import com.pedro.common.nal.NalUnits
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import org.openjdk.jmh.infra.Blackhole
+import java.nio.ByteBuffer
+import java.util.concurrent.TimeUnit
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * NAL unit extraction of a frame as done by the packetizers and record controllers.
+ *
+ * Sizes go from an audio like small P frame to a 4K key frame at 20 Mbps.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+open class NalReaderBenchmark {
+
+  @Param("H264", "H265")
+  lateinit var codec: String
+
+  @Param("1024", "65536", "1048576")
+  var frameSize = 0
+
+  @Param("1", "4", "16")
+  var nalCount = 0
+
+  @Param("false", "true")
+  var direct = false
+
+  private lateinit var videoCodec: VideoCodec
+  private lateinit var frame: ByteBuffer
+  private lateinit var heapFrame: ByteBuffer
+  private val output = NalUnits()
+
+  @Setup
+  fun setup() {
+    videoCodec = VideoCodec.valueOf(codec)
+    frame = Frames.create(videoCodec, frameSize, nalCount, direct)
+    heapFrame = Frames.create(videoCodec, frameSize, nalCount, false)
+  }
+
+  @Benchmark
+  fun extractNalsToList(blackhole: Blackhole) {
+    blackhole.consume(NalReader.extractNals(frame, videoCodec, true))
+  }
+
+  @Benchmark
+  fun extractNalsToUnits(): Int {
+    NalReader.extractNals(frame, videoCodec, true, output)
+    return output.size
+  }
+
+  @Benchmark
+  fun findStartCodes(): Int {
+    var count = 0
+    var index = NalReader.findStartCode(frame, 0, frame.limit())
+    while (index != -1) {
+      count++
+      index = NalReader.findStartCode(frame, index + 3, frame.limit())
+    }
+    return count
+  }
+
+  @Benchmark
+  fun findStartCodesWordAtATime(): Int {
+    var count = 0
+    var index = WordScanner.findStartCode(frame, 0, frame.limit())
+    while (index != -1) {
+      count++
+      index = WordScanner.findStartCode(frame, index + 3, frame.limit())
+    }
+    return count
+  }
+
+  /**
+   * Baseline, byte by byte scan. Heap buffers only.
+   */
+  @Benchmark
+  fun byteScan(): Int = ByteScanner.countNals(heapFrame)
+}
@@ -40,6 +40,8 @@ plugins {
   alias(libs.plugins.android.application) apply false
   alias(libs.plugins.android.library) apply false
   alias(libs.plugins.jetbrains.kotlin) apply false
+  alias(libs.plugins.jetbrains.kotlin.jvm) apply false
+  alias(libs.plugins.jmh) apply false
   alias(libs.plugins.jetbrains.dokka) apply true
 }
 
@@ -159,7 +159,7 @@ fun Throwable.validMessage(): String {
   return (message ?: "").ifEmpty { javaClass.simpleName }
 }
 
-fun MediaCodec.BufferInfo.toMediaFrameInfo() = MediaFrame.Info(offset, size, presentationTimeUs, isKeyframe(), flags)
+fun MediaCodec.BufferInfo.toMediaFrameInfo(dts: Long = presentationTimeUs, ptsOffset: Long = 0) = MediaFrame.Info(offset, size, presentationTimeUs + ptsOffset, isKeyframe(), flags, dts)
 
 fun MediaFrame.Info.toMediaCodecBufferInfo() = MediaCodec.BufferInfo().apply {
   set(
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.pedro.common
+
+import com.pedro.common.frame.MediaFrame
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Queue of frames waiting to be sent, used by BaseSender.
+ */
+interface FrameQueue {
+
+    var capacity: Int
+
+    /**
+     * @return false if the queue is full and the frame was discarded
+     */
+    fun trySend(item: MediaFrame): Boolean
+
+    /**
+     * Wait until a frame is available. Interruptible.
+     */
+    @Throws(InterruptedException::class)
+    fun take(): MediaFrame
+
+    fun remainingCapacity(): Int
+
+    /**
+     * @param onRemove called for every discarded frame, used to recycle pooled buffers.
+     */
+    fun clear(onRemove: ((MediaFrame) -> Unit)? = null)
+
+    fun setCacheTime(cache: Long)
+
+    fun getSize(): Int
+
+    /**
+     * Sum of [MediaFrame.info.size] for all frames in the main send queue.
+     * Delay/cache queue bytes are excluded.
+     */
+    fun getTotalSize(): Long
+
+    /**
+     * @return decode timestamp of the next frame to send or -1 if the queue is empty
+     */
+    fun getFirstTimestamp(): Long
+
+    /**
+     * Remove all frames with decode timestamp lower than [timestamp] from the main send queue.
+     *
+     * @param onRemove called for every removed frame, used to recycle pooled buffers.
+     * @return number of frames removed
+     */
+    fun removeOlderThan(timestamp: Long, onRemove: ((MediaFrame) -> Unit)? = null): Int
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.pedro.common
+
+/**
+ * Created by pedro on 18/10/26.
+ */
+enum class QueueType {
+    /**
+     * StreamBlockingQueue, a priority queue ordered by decode timestamp protected with a lock.
+     */
+    PRIORITY,
+
+    /**
+     * SpscFrameQueue, a lock free ring per media type merged by decode timestamp.
+     * Each media type must be produced from a single thread.
+     */
+    SPSC
+}
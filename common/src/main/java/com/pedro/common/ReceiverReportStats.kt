@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.common
+
+import com.pedro.common.frame.MediaFrame
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Reception quality of a stream reported by the server, like RTCP receiver reports.
+ */
+data class ReceiverReportStats(
+  val ssrc: Long,
+  val type: MediaFrame.Type,
+  /** Fraction (0-1) of packets lost since the previous report. */
+  val fractionLost: Float,
+  /** Packets lost since the start, negative if the server received duplicated packets. */
+  val cumulativeLost: Long,
+  /** Interarrival jitter in millis. */
+  val jitter: Float,
+  /** Round trip time in millis or -1 if unknown. */
+  val rtt: Long,
+)
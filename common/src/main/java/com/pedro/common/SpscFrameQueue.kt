@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.pedro.common
+
+import com.pedro.common.frame.MediaFrame
+import java.util.concurrent.PriorityBlockingQueue
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReferenceArray
+import java.util.concurrent.locks.LockSupport
+import kotlin.math.max
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Frame queue with a single producer/single consumer ring per media type.
+ *
+ * Frames of each type are produced by one encoder thread in decode order, so instead of a
+ * shared heap under a lock, each type is appended to its own ring without locks and the consumer
+ * merges both rings taking the head with the lowest decode timestamp.
+ * Sizes and bytes are tracked with counters written by a single thread, so stats are O(1).
+ *
+ * Requirements:
+ * - Only one thread can produce frames of each type.
+ * - Only one thread can take frames. clear, drainTo and removeOlderThan can be called from other
+ * threads, the consumer side is protected by an uncontended lock for that case.
+ * - setCacheTime must be called before produce frames. While the cache is enabled producers are
+ * serialized because the cache queue sorts both types.
+ *
+ * @param clock monotonic time in millis used to fill the cache, BaseSender uses TimeUtils.
+ */
+class SpscFrameQueue(
+    override var capacity: Int,
+    private val clock: () -> Long = { System.nanoTime() / 1_000_000 }
+): FrameQueue {
+
+    companion object {
+        private const val MIN_CHUNK_SIZE = 16
+        private const val MAX_CHUNK_SIZE = 1024
+        private const val SPIN_TRIES = 16
+    }
+
+    /**
+     * Unbounded single producer/single consumer queue using linked array chunks.
+     * When the producer find the chunk full, it link a new chunk and leave a jump mark so
+     * the consumer can follow it. When the consumer is fast enough the same chunk is reused
+     * forever, so the steady state has no allocations.
+     */
+    private class Ring(private val chunkSize: Int) {
+
+        private val mask = chunkSize - 1
+        //the last position of each chunk is the link to the next chunk
+        private var producerChunk = AtomicReferenceArray<Any?>(chunkSize + 1)
+        private var consumerChunk = producerChunk
+        private val producerIndex = AtomicLong(0)
+        private val consumerIndex = AtomicLong(0)
+        private val producedBytes = AtomicLong(0)
+        private val consumedBytes = AtomicLong(0)
+
+        fun size(): Int {
+            val consumed = consumerIndex.get()
+            return max(0L, producerIndex.get() - consumed).toInt()
+        }
+
+        fun bytes(): Long {
+            val consumed = consumedBytes.get()
+            return max(0L, producedBytes.get() - consumed)
+        }
+
+        /**
+         * The slot of producerIndex is always empty. If the next one is used by the consumer
+         * there is no space to keep that invariant so the frame goes to a new chunk.
+         */
+        fun offer(frame: MediaFrame) {
+            val index = producerIndex.get()
+            val offset = (index and mask.toLong()).toInt()
+            val chunk = producerChunk
+            val nextOffset = ((index + 1) and mask.toLong()).toInt()
+            if (chunk.get(nextOffset) == null) {
+                chunk.lazySet(offset, frame)
+            } else {
+                val newChunk = AtomicReferenceArray<Any?>(chunkSize + 1)
+                newChunk.lazySet(offset, frame)
+                chunk.lazySet(chunkSize, newChunk)
+                chunk.lazySet(offset, JUMP)
+                producerChunk = newChunk
+            }
+            producedBytes.lazySet(producedBytes.get() + frame.info.size)
+            //volatile write, needed to read the waiting consumer after publish the frame
+            producerIndex.set(index + 1)
+        }
+
+        fun peek(): MediaFrame? {
+            val offset = (consumerIndex.get() and mask.toLong()).toInt()
+            return when (val value = consumerChunk.get(offset)) {
+                null -> null
+                JUMP -> nextChunk().get(offset) as MediaFrame?
+                else -> value as MediaFrame
+            }
+        }
+
+        fun poll(): MediaFrame? {
+            val index = consumerIndex.get()
+            val offset = (index and mask.toLong()).toInt()
+            var value = consumerChunk.get(offset) ?: return null
+            if (value === JUMP) value = nextChunk().get(offset) ?: return null
+            val frame = value as MediaFrame
+            consumerChunk.lazySet(offset, null)
+            consumedBytes.lazySet(consumedBytes.get() + frame.info.size)
+            consumerIndex.lazySet(index + 1)
+            return frame
+        }
+
+        @Suppress("UNCHECKED_CAST")
+        private fun nextChunk(): AtomicReferenceArray<Any?> {
+            val next = consumerChunk.get(chunkSize) as AtomicReferenceArray<Any?>
+            consumerChunk = next
+            return next
+        }
+    }
+
+    private object JUMP
+
+    private val rings = Array(MediaFrame.Type.entries.size) {
+        Ring(Integer.highestOneBit((capacity - 1).coerceIn(MIN_CHUNK_SIZE - 1, MAX_CHUNK_SIZE - 1)) shl 1)
+    }
+    private val videoRing = rings[MediaFrame.Type.VIDEO.ordinal]
+    private val audioRing = rings[MediaFrame.Type.AUDIO.ordinal]
+    private val consumerLock = Any()
+    @Volatile
+    private var waitingConsumer: Thread? = null
+
+    private val cacheLock = Any()
+    private var cacheQueue = PriorityBlockingQueue<MediaFrame>(200) { p0, p1 ->
+        p0.info.dts.compareTo(p1.info.dts)
+    }
+    @Volatile
+    private var cacheTime = 0L
+    private var cacheTimeFilled = false
+    private var startTs = 0L
+
+    override fun trySend(item: MediaFrame): Boolean {
+        if (getSize() >= capacity) return false
+        if (cacheTime > 0) {
+            synchronized(cacheLock) {
+                if (!cacheTimeFilled) {
+                    if (startTs == 0L) startTs = clock()
+                    val t = clock() - startTs
+                    if (t >= cacheTime) cacheTimeFilled = true
+                }
+                cacheQueue.add(item)
+                if (cacheTimeFilled) cacheQueue.poll()?.let { offer(it) }
+            }
+        } else offer(item)
+        return true
+    }
+
+    override fun take(): MediaFrame {
+        while (true) {
+            poll()?.let { return it }
+            //frames arrive in bursts, yield a few times before sleep the thread
+            for (i in 0 until SPIN_TRIES) {
+                Thread.yield()
+                poll()?.let { return it }
+            }
+            waitingConsumer = Thread.currentThread()
+            //check again after publish the waiting thread to avoid lost a wake up
+            if (isEmpty()) LockSupport.park(this)
+            waitingConsumer = null
+            if (Thread.interrupted()) throw InterruptedException()
+        }
+    }
+
+    /**
+     * Merge step, return the head with lower timestamp of both rings.
+     */
+    fun poll(): MediaFrame? {
+        synchronized(consumerLock) {
+            val video = videoRing.peek()
+            val audio = audioRing.peek()
+            return when {
+                video == null -> if (audio == null) null else audioRing.poll()
+                audio == null -> videoRing.poll()
+                audio.info.dts < video.info.dts -> audioRing.poll()
+                else -> videoRing.poll()
+            }
+        }
+    }
+
+    override fun remainingCapacity(): Int = max(0, capacity - getSize())
+
+    fun drainTo(destiny: SpscFrameQueue) {
+        while (true) {
+            val frame = poll() ?: break
+            destiny.offer(frame)
+        }
+        synchronized(cacheLock) {
+            synchronized(destiny.cacheLock) {
+                cacheQueue.drainTo(destiny.cacheQueue)
+            }
+        }
+    }
+
+    override fun clear(onRemove: ((MediaFrame) -> Unit)?) {
+        while (true) {
+            val frame = poll() ?: break
+            onRemove?.invoke(frame)
+        }
+        synchronized(cacheLock) {
+            if (onRemove != null) {
+                val removed = mutableListOf<MediaFrame>()
+                cacheQueue.drainTo(removed)
+                removed.forEach(onRemove)
+            } else cacheQueue.clear()
+            startTs = 0L
+            cacheTimeFilled = false
+        }
+    }
+
+    override fun setCacheTime(cache: Long) {
+        cacheTime = cache
+        if (cacheTime == 0L) return
+        synchronized(cacheLock) {
+            cacheQueue = PriorityBlockingQueue<MediaFrame>(maxOf(1, (cache / 5).toInt())) { p0, p1 ->
+                p0.info.dts.compareTo(p1.info.dts)
+            }
+        }
+    }
+
+    override fun getFirstTimestamp(): Long {
+        synchronized(consumerLock) {
+            val video = videoRing.peek()?.info?.dts ?: Long.MAX_VALUE
+            val audio = audioRing.peek()?.info?.dts ?: Long.MAX_VALUE
+            val first = minOf(video, audio)
+            return if (first == Long.MAX_VALUE) -1 else first
+        }
+    }
+
+    /**
+     * Each ring is ordered so old frames are always in the head and are removed as a consumer.
+     */
+    override fun removeOlderThan(timestamp: Long, onRemove: ((MediaFrame) -> Unit)?): Int {
+        var removed = 0
+        synchronized(consumerLock) {
+            rings.forEach { ring ->
+                while ((ring.peek()?.info?.dts ?: Long.MAX_VALUE) < timestamp) {
+                    val frame = ring.poll() ?: break
+                    onRemove?.invoke(frame)
+                    removed++
+                }
+            }
+        }
+        return removed
+    }
+
+    override fun getSize(): Int = videoRing.size() + audioRing.size()
+
+    override fun getTotalSize(): Long = videoRing.bytes() + audioRing.bytes()
+
+    private fun isEmpty(): Boolean = getSize() == 0
+
+    private fun offer(frame: MediaFrame) {
+        rings[frame.type.ordinal].offer(frame)
+        waitingConsumer?.let { LockSupport.unpark(it) }
+    }
+}
@@ -5,23 +5,29 @@ import java.util.concurrent.PriorityBlockingQueue
 import java.util.concurrent.atomic.AtomicBoolean
 import kotlin.math.max
 
-class StreamBlockingQueue(var capacity: Int) {
+/**
+ * @param clock monotonic time in millis used to fill the cache, BaseSender uses TimeUtils.
+ */
+class StreamBlockingQueue(
+    override var capacity: Int,
+    private val clock: () -> Long = { System.nanoTime() / 1_000_000 }
+): FrameQueue {
 
     private val queue = PriorityBlockingQueue<MediaFrame>(capacity) { p0, p1 ->
-        p0.info.timestamp.compare(p1.info.timestamp)
+        p0.info.dts.compareTo(p1.info.dts)
     }
     private var cacheQueue = PriorityBlockingQueue<MediaFrame>(200) { p0, p1 ->
-        p0.info.timestamp.compare(p1.info.timestamp)
+        p0.info.dts.compareTo(p1.info.dts)
     }
     private var cacheTimeFilled = AtomicBoolean(false)
     private var cacheTime = 0L
     private var startTs = 0L
 
-    fun trySend(item: MediaFrame): Boolean {
+    override fun trySend(item: MediaFrame): Boolean {
         if (queue.size >= capacity) return false
         if (cacheTime > 0 && !cacheTimeFilled.get()) {
-            if (startTs == 0L) startTs = TimeUtils.getCurrentTimeMillis()
-            val t = TimeUtils.getCurrentTimeMillis() - startTs
+            if (startTs == 0L) startTs = clock()
+            val t = clock() - startTs
             if (t >= cacheTime) cacheTimeFilled.set(true)
         }
         return try {
@@ -35,21 +41,18 @@ class StreamBlockingQueue(var capacity: Int) {
         }
     }
 
-    fun take(): MediaFrame {
+    override fun take(): MediaFrame {
         return queue.take()
     }
 
-    fun remainingCapacity(): Int = max(0, capacity - queue.size)
+    override fun remainingCapacity(): Int = max(0, capacity - queue.size)
 
     fun drainTo(destiny: StreamBlockingQueue) {
         queue.drainTo(destiny.queue)
         cacheQueue.drainTo(destiny.cacheQueue)
     }
 
-    /**
-     * @param onRemove called for every discarded frame, used to recycle pooled buffers.
-     */
-    fun clear(onRemove: ((MediaFrame) -> Unit)? = null) {
+    override fun clear(onRemove: ((MediaFrame) -> Unit)?) {
         if (onRemove != null) {
             val removed = mutableListOf<MediaFrame>()
             queue.drainTo(removed)
@@ -63,19 +66,30 @@ class StreamBlockingQueue(var capacity: Int) {
         cacheTimeFilled.set(false)
     }
 
-    fun setCacheTime(cache: Long) {
+    override fun setCacheTime(cache: Long) {
         cacheTime = cache
         if (cacheTime == 0L) return
         cacheQueue = PriorityBlockingQueue<MediaFrame>(maxOf(1, (cache / 5).toInt())) { p0, p1 ->
-            p0.info.timestamp.compare(p1.info.timestamp)
+            p0.info.dts.compareTo(p1.info.dts)
         }
     }
 
-    fun getSize() = queue.size
+    override fun getSize(): Int = queue.size
 
-    /**
-     * Sum of [MediaFrame.info.size] for all frames in the main send queue.
-     * Delay/cache queue bytes are excluded.
-     */
-    fun getTotalSize(): Long = queue.sumOf { it.info.size.toLong() }
+    override fun getTotalSize(): Long = queue.sumOf { it.info.size.toLong() }
+
+    override fun getFirstTimestamp(): Long = queue.peek()?.info?.dts ?: -1
+
+    override fun removeOlderThan(timestamp: Long, onRemove: ((MediaFrame) -> Unit)?): Int {
+        val old = queue.filter { it.info.dts < timestamp }
+        var removed = 0
+        old.forEach {
+            //the consumer could take it in the middle
+            if (queue.remove(it)) {
+                onRemove?.invoke(it)
+                removed++
+            }
+        }
+        return removed
+    }
 }
\ No newline at end of file
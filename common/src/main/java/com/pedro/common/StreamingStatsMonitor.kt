@@ -36,6 +36,10 @@ class StreamingStatsMonitor(private val bitrateChecker: BitrateChecker) {
     totalBytesOut: Long,
     smoothedBitrate: Long,
     queueCongestionPercent: Float,
+    receiverReports: List<ReceiverReportStats> = emptyList(),
+    rtt: Long = -1,
+    packetLoss: Float = -1f,
+    unackedBytes: Long = -1,
   ) {
     var throughput = Throughput.UNKNOWN
     previousQueueBytesOut.add(queueBytesOut)
@@ -67,6 +71,10 @@ class StreamingStatsMonitor(private val bitrateChecker: BitrateChecker) {
       throughput = throughput,
       bitrate = bytesOutPerSecond * 8,
       smoothedBitrate = smoothedBitrate,
+      receiverReports = receiverReports,
+      rtt = rtt,
+      packetLoss = packetLoss,
+      unackedBytes = unackedBytes,
     )
     onMainThread { bitrateChecker.onStreamingStats(report) }
   }
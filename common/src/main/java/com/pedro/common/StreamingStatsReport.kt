@@ -30,4 +30,12 @@ data class StreamingStatsReport(
   val throughput: Throughput,
   val bitrate: Long,
   val smoothedBitrate: Long,
+  /** Last reception report of each stream sent by the server, empty if the protocol has none. */
+  val receiverReports: List<ReceiverReportStats> = emptyList(),
+  /** Round trip time in millis measured by the protocol, -1 if unknown. */
+  val rtt: Long = -1,
+  /** Fraction (0-1) of packets lost reported by the server in the last interval, -1 if unknown. */
+  val packetLoss: Float = -1f,
+  /** Bytes sent that the server should have acknowledged already, -1 if unknown. */
+  val unackedBytes: Long = -1,
 )
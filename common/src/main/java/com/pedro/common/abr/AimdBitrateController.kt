@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.common.abr
+
+import kotlin.math.abs
+import kotlin.math.pow
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Bitrate controller with additive increase and multiplicative decrease that combines the
+ * congestion signals available in each protocol:
+ *
+ * - Queue delay: bytes in the send queue and not acknowledged by the server divided by the send
+ * rate. The min of the last 2 samples is used to ignore a keyframe waiting in the queue.
+ * - Packet loss reported by the server.
+ * - RTT inflation over the min RTT of the last 10 seconds, like BBR.
+ *
+ * Usage detected:
+ * - Overuse: decrease to 85% of the rate received by the server, less if the queue needs more
+ * to drain. Only one decrease per [holdTime] unless the queue keeps growing and never while the
+ * queue is draining.
+ * - Hold: signals between thresholds, keep the bitrate.
+ * - Normal: increase 8% per second or, near the rate delivered in the last decreases, 3% of
+ * that rate per second. Never above 1.5 times the max rate delivered in the last 10 samples.
+ *
+ * Changes smaller than [minChange] of the bitrate are discarded to avoid reconfigure the encoder
+ * too often.
+ *
+ * The bitrate is the video encoder bitrate, so decreases and increases use the video share of
+ * the send rate ([NetworkSample.videoBitrate]). The queue delay uses the total send rate.
+ *
+ * All times are in millis and bitrates in bits/s.
+ */
+class AimdBitrateController(
+  private val maxQueueDelay: Long = 400,
+  private val highLoss: Float = 0.1f,
+  private val lowLoss: Float = 0.02f,
+  private val holdTime: Long = 2000,
+  private val minChange: Float = 0.02f
+): BitrateController {
+
+  enum class Usage {
+    OVERUSE, HOLD, NORMAL
+  }
+
+  companion object {
+    private const val BETA = 0.85
+    private const val MIN_BETA = 0.5
+    private const val MULTIPLICATIVE_INCREASE = 1.08
+    private const val ADDITIVE_INCREASE = 0.03
+    //bitrate relative to the link capacity where additive increase is used
+    private const val NEAR_CAPACITY = 0.7
+    private const val FAR_CAPACITY = 1.2
+    //time expected to drain the queue after a decrease
+    private const val DRAIN_TIME = 2000.0
+    private const val DELIVERY_WINDOW = 10
+    private const val MIN_RTT_WINDOW = 10_000L
+    private const val MIN_RTT_INFLATION = 100L
+  }
+
+  private var startBitrate = 0L
+  private var minBitrate = 0L
+  private var maxBitrate = 0L
+  override var bitrate = 0L
+    private set
+  var usage = Usage.NORMAL
+    private set
+  //rate delivered in the last samples, the max is the bottleneck bandwidth
+  private val deliveryRates = LongArray(DELIVERY_WINDOW)
+  private var deliveryIndex = 0
+  private var minRtt = -1L
+  private var minRttTime = 0L
+  private var lastQueueDelay = 0L
+  private var lastUpdate = -1L
+  private var lastDecrease = -1L
+  private var queueDelayAtDecrease = 0L
+  //rate delivered when the last decreases were triggered, -1 if unknown
+  private var linkCapacity = -1.0
+
+  @Throws(IllegalArgumentException::class)
+  override fun configure(startBitrate: Long, minBitrate: Long, maxBitrate: Long) {
+    if (minBitrate < 0 || minBitrate > maxBitrate) {
+      throw IllegalArgumentException("invalid range $minBitrate - $maxBitrate")
+    }
+    this.startBitrate = startBitrate.coerceIn(minBitrate, maxBitrate)
+    this.minBitrate = minBitrate
+    this.maxBitrate = maxBitrate
+    reset()
+  }
+
+  override fun onSample(sample: NetworkSample): Long {
+    val now = sample.timeMillis
+    val queueDelay = getQueueDelay(sample)
+    val previousDelay = lastQueueDelay
+    //a real congestion is kept between samples
+    val filteredDelay = minOf(queueDelay, previousDelay)
+    lastQueueDelay = queueDelay
+    updateFilters(sample, now)
+    usage = getUsage(sample, filteredDelay, queueDelay)
+    //time since the last change, increases discarded by the hysteresis are accumulated
+    val elapsed = if (lastUpdate == -1L) 0L else (now - lastUpdate).coerceIn(0, 1000)
+    val target = when (usage) {
+      Usage.OVERUSE -> {
+        if (canDecrease(now, queueDelay, previousDelay)) decrease(sample, queueDelay, filteredDelay, now) else bitrate
+      }
+      Usage.HOLD -> bitrate
+      Usage.NORMAL -> {
+        if (lastDecrease != -1L && now - lastDecrease < holdTime) bitrate else increase(elapsed)
+      }
+    }.coerceIn(minBitrate, maxBitrate)
+    if (target != bitrate && (abs(target - bitrate) >= bitrate * minChange || target == minBitrate || target == maxBitrate)) {
+      bitrate = target
+      lastUpdate = now
+    } else if (usage != Usage.NORMAL || lastUpdate == -1L) {
+      lastUpdate = now
+    }
+    return bitrate
+  }
+
+  override fun reset() {
+    bitrate = startBitrate
+    usage = Usage.NORMAL
+    deliveryRates.fill(0)
+    deliveryIndex = 0
+    minRtt = -1L
+    minRttTime = 0L
+    lastQueueDelay = 0L
+    lastUpdate = -1L
+    lastDecrease = -1L
+    queueDelayAtDecrease = 0L
+    linkCapacity = -1.0
+  }
+
+  private fun getQueueDelay(sample: NetworkSample): Long {
+    val bytes = sample.queueBytes + maxOf(sample.unackedBytes, 0)
+    if (bytes <= 0) return 0
+    //nothing sent with data waiting, the link is blocked
+    if (sample.sendBitrate <= 0) return Long.MAX_VALUE / 2
+    return bytes * 8000 / sample.sendBitrate
+  }
+
+  private fun updateFilters(sample: NetworkSample, now: Long) {
+    deliveryRates[deliveryIndex] = sample.videoBitrate
+    deliveryIndex = (deliveryIndex + 1) % DELIVERY_WINDOW
+    if (sample.rtt >= 0 && (minRtt < 0 || sample.rtt <= minRtt || now - minRttTime > MIN_RTT_WINDOW)) {
+      minRtt = sample.rtt
+      minRttTime = now
+    }
+  }
+
+  private fun getUsage(sample: NetworkSample, filteredDelay: Long, queueDelay: Long): Usage {
+    val rttInflation = if (sample.rtt >= 0 && minRtt >= 0) sample.rtt - minRtt else 0
+    return when {
+      filteredDelay > maxQueueDelay || sample.packetLoss > highLoss ||
+          rttInflation > maxOf(minRtt, MIN_RTT_INFLATION) -> Usage.OVERUSE
+      queueDelay > maxQueueDelay / 2 || sample.packetLoss >= lowLoss ||
+          rttInflation > maxOf(minRtt / 4, MIN_RTT_INFLATION / 4) -> Usage.HOLD
+      else -> Usage.NORMAL
+    }
+  }
+
+  private fun canDecrease(now: Long, queueDelay: Long, previousDelay: Long): Boolean {
+    //the queue is draining, the bitrate is already lower than the link capacity
+    if (queueDelay < previousDelay) return false
+    if (lastDecrease == -1L || now - lastDecrease >= holdTime) return true
+    //the queue is not draining, the last decrease was not enough
+    return queueDelay > maxQueueDelay && queueDelay > queueDelayAtDecrease
+  }
+
+  private fun decrease(sample: NetworkSample, queueDelay: Long, filteredDelay: Long, now: Long): Long {
+    var delivered = if (sample.sendBitrate > 0) minOf(bitrate, sample.videoBitrate) else bitrate
+    //only the data received by the server
+    if (sample.packetLoss > 0) delivered = (delivered * (1 - sample.packetLoss)).toLong()
+    var beta = BETA
+    if (filteredDelay > maxQueueDelay) beta = minOf(beta, DRAIN_TIME / (DRAIN_TIME + filteredDelay))
+    beta = maxOf(beta, MIN_BETA)
+    linkCapacity = if (linkCapacity < 0) delivered.toDouble() else (linkCapacity + delivered) / 2
+    lastDecrease = now
+    queueDelayAtDecrease = queueDelay
+    return (delivered * beta).toLong()
+  }
+
+  private fun increase(elapsed: Long): Long {
+    val delivery = deliveryRates.max()
+    val nearCapacity = linkCapacity > 0 && bitrate > linkCapacity * NEAR_CAPACITY &&
+        bitrate < linkCapacity * FAR_CAPACITY
+    val increased = if (nearCapacity) {
+      bitrate + (linkCapacity * ADDITIVE_INCREASE * elapsed / 1000).toLong()
+    } else {
+      (bitrate * MULTIPLICATIVE_INCREASE.pow(elapsed / 1000.0)).toLong()
+    }
+    //avoid increase far above the bitrate that the encoder really produce
+    if (delivery <= 0) return increased
+    return minOf(increased, maxOf(bitrate, (delivery * 1.5).toLong() + 10_000))
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.common.abr
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Decide the encoder bitrate using the network samples collected each second.
+ * Samples are provided from a single thread.
+ */
+interface BitrateController {
+
+  /**
+   * Current target bitrate in bits per second.
+   */
+  val bitrate: Long
+
+  /**
+   * Called before the first sample. The state is reset.
+   *
+   * @throws IllegalArgumentException if the values are not valid
+   */
+  @Throws(IllegalArgumentException::class)
+  fun configure(startBitrate: Long, minBitrate: Long, maxBitrate: Long)
+
+  /**
+   * @return target bitrate in bits per second
+   */
+  fun onSample(sample: NetworkSample): Long
+
+  fun reset()
+}
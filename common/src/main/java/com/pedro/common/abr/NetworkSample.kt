@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.common.abr
+
+import com.pedro.common.StreamingStatsReport
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Network state measured in an interval, used by [BitrateController] to decide the bitrate.
+ */
+data class NetworkSample(
+  /** Time of the sample in millis. */
+  val timeMillis: Long,
+  /** Bits/s sent in the last interval. */
+  val sendBitrate: Long,
+  /** Bytes waiting in the send queue. */
+  val queueBytes: Long,
+  /** Fraction (0-1) of packets lost reported by the server, -1 if unknown. */
+  val packetLoss: Float = -1f,
+  /** Round trip time in millis, -1 if unknown. */
+  val rtt: Long = -1,
+  /** Bytes sent that the server should have acknowledged already, -1 if unknown. */
+  val unackedBytes: Long = -1,
+  /** Bits/s of audio included in [sendBitrate], the rest is the video share. */
+  val audioBitrate: Long = 0,
+) {
+
+  /**
+   * Bits/s of video sent in the last interval, comparable with the video encoder bitrate.
+   */
+  val videoBitrate: Long get() = maxOf(sendBitrate - audioBitrate, 0)
+
+  companion object {
+    /**
+     * @param audioBitrate audio encoder bitrate in bits/s, the report bitrate includes all tracks
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun fromReport(timeMillis: Long, report: StreamingStatsReport, audioBitrate: Long = 0): NetworkSample {
+      return NetworkSample(
+        timeMillis = timeMillis,
+        sendBitrate = report.bitrate,
+        queueBytes = report.queueBytesOut,
+        packetLoss = report.packetLoss,
+        rtt = report.rtt,
+        unackedBytes = report.unackedBytes,
+        audioBitrate = audioBitrate,
+      )
+    }
+  }
+}
@@ -4,10 +4,16 @@ import android.util.Log
 import com.pedro.common.BitrateManager
 import com.pedro.common.BufferPool
 import com.pedro.common.ConnectChecker
+import com.pedro.common.FrameQueue
+import com.pedro.common.QueueType
+import com.pedro.common.ReceiverReportStats
+import com.pedro.common.SpscFrameQueue
 import com.pedro.common.StreamBlockingQueue
 import com.pedro.common.clone
 import com.pedro.common.StreamingStatsMonitor
+import com.pedro.common.TimeUtils
 import com.pedro.common.frame.MediaFrame
+import com.pedro.common.frame.SharedFrame
 import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
@@ -29,8 +35,11 @@ abstract class BaseSender(
     @Volatile
     protected var running = false
 
-    private val queue = StreamBlockingQueue(400)
+    @Volatile
+    private var queue: FrameQueue = StreamBlockingQueue(400, TimeUtils::getCurrentTimeMillis)
+    private var cacheTime = 0L
     private val bufferPool = BufferPool()
+    private val congestionPolicy = CongestionPolicy()
 
     protected val audioFramesSent = AtomicLong(0)
     protected val videoFramesSent = AtomicLong(0)
@@ -51,13 +60,47 @@ abstract class BaseSender(
     protected abstract suspend fun onRun()
     protected abstract suspend fun stopImp(clear: Boolean = true)
 
+    /**
+     * Reception reports received from the server, included in the streaming stats each second.
+     */
+    protected open fun getReceiverReports(): List<ReceiverReportStats> = emptyList()
+
+    /**
+     * Round trip time in millis measured by the protocol, -1 if unknown.
+     */
+    protected open fun getRtt(): Long = -1
+
+    /**
+     * Fraction (0-1) of packets lost reported by the server since the previous call, -1 if unknown.
+     * Called once per second.
+     */
+    protected open fun getPacketLoss(): Float = -1f
+
+    /**
+     * Bytes sent that the server should have acknowledged already, -1 if unknown.
+     */
+    protected open fun getUnackedBytes(): Long = -1
+
     fun sendMediaFrame(buffer: ByteBuffer, info: MediaFrame.Info, type: MediaFrame.Type) {
         if (!running) return
         val data = bufferPool.acquire(buffer.limit())
-        val mediaFrame = MediaFrame(buffer.clone(data), info, type)
-        if (!queue.trySend(mediaFrame)) {
-            bufferPool.release(mediaFrame.data)
-            when (type) {
+        enqueue(MediaFrame(buffer.clone(data), info, type))
+    }
+
+    /**
+     * Queue a frame shared with other senders without copying it. A reference is retained until
+     * the frame is sent or discarded.
+     */
+    fun sendSharedFrame(sharedFrame: SharedFrame) {
+        if (!running) return
+        sharedFrame.retain()
+        enqueue(MediaFrame(sharedFrame.newBuffer(), sharedFrame.info, sharedFrame.type, sharedFrame))
+    }
+
+    private fun enqueue(mediaFrame: MediaFrame) {
+        if (!congestionPolicy.send(mediaFrame, queue) { release(it) }) {
+            release(mediaFrame)
+            when (mediaFrame.type) {
                 MediaFrame.Type.VIDEO -> {
                     Log.i(TAG, "Video frame discarded")
                     droppedVideoFrames.incrementAndGet()
@@ -70,6 +113,11 @@ abstract class BaseSender(
         }
     }
 
+    private fun release(mediaFrame: MediaFrame) {
+        val shared = mediaFrame.shared
+        if (shared != null) shared.release() else bufferPool.release(mediaFrame.data)
+    }
+
     /**
      * Take the next frame from the queue, hand it to [consume] and recycle its buffer once
      * consumed. Senders must read frames only through this method, the buffer is reused right
@@ -80,7 +128,7 @@ abstract class BaseSender(
         try {
             consume(mediaFrame)
         } finally {
-            bufferPool.release(mediaFrame.data)
+            release(mediaFrame)
         }
     }
 
@@ -88,7 +136,8 @@ abstract class BaseSender(
         running = false
         job?.cancelAndJoin()
         bitrateManager.reset()
-        queue.clear { bufferPool.release(it.data) }
+        congestionPolicy.reset()
+        queue.clear { release(it) }
         streamingStatsMonitor.reset()
         running = true
         job = scope.launch {
@@ -104,6 +153,10 @@ abstract class BaseSender(
                             totalBytesOut = bytesSend.get(),
                             smoothedBitrate = bitrateManager.getSmoothedBitrate(),
                             queueCongestionPercent = queueUsagePercent(),
+                            receiverReports = getReceiverReports(),
+                            rtt = getRtt(),
+                            packetLoss = getPacketLoss(),
+                            unackedBytes = getUnackedBytes(),
                         )
                     } catch (e: CancellationException) {
                         throw e
@@ -126,10 +179,12 @@ abstract class BaseSender(
         resetSentVideoFrames()
         resetDroppedAudioFrames()
         resetDroppedVideoFrames()
+        resetDroppedGopFrames()
+        resetPurgedFrames()
         resetBytesSend()
         job?.cancelAndJoin()
         job = null
-        queue.clear { bufferPool.release(it.data) }
+        queue.clear { release(it) }
         bufferPool.clear()
     }
 
@@ -160,7 +215,7 @@ abstract class BaseSender(
     fun getQueueBytesOut(): Long = queue.getTotalSize()
 
     fun clearCache() {
-        queue.clear { bufferPool.release(it.data) }
+        queue.clear { release(it) }
     }
 
     fun getSentAudioFrames(): Long = audioFramesSent.get()
@@ -171,6 +226,17 @@ abstract class BaseSender(
 
     fun getDroppedVideoFrames(): Long = droppedVideoFrames.get()
 
+    /**
+     * Video frames discarded by DropPolicy.GOP because they depend on a discarded frame.
+     * Included in getDroppedVideoFrames.
+     */
+    fun getDroppedGopFrames(): Long = congestionPolicy.getDroppedGopFrames()
+
+    /**
+     * Frames removed from the queue by DropPolicy.GOP because the latency budget was exceeded.
+     */
+    fun getPurgedFrames(): Long = congestionPolicy.getPurgedFrames()
+
     fun getBytesSend(): Long = bytesSend.get()
 
     fun resetSentAudioFrames() {
@@ -189,6 +255,29 @@ abstract class BaseSender(
         droppedVideoFrames.set(0)
     }
 
+    fun resetDroppedGopFrames() {
+        congestionPolicy.resetDroppedGopFrames()
+    }
+
+    fun resetPurgedFrames() {
+        congestionPolicy.resetPurgedFrames()
+    }
+
+    fun setDropPolicy(policy: DropPolicy) {
+        congestionPolicy.policy = policy
+        congestionPolicy.reset()
+    }
+
+    fun getDropPolicy(): DropPolicy = congestionPolicy.policy
+
+    /**
+     * @param latencyBudget max millis of stream in the queue before purge it when a keyframe
+     * is produced. 0 to disable. Only used with DropPolicy.GOP.
+     */
+    fun setLatencyBudget(latencyBudget: Long) {
+        congestionPolicy.latencyBudget = latencyBudget
+    }
+
     fun setLogs(enable: Boolean) {
         isEnableLogs = enable
     }
@@ -200,9 +289,31 @@ abstract class BaseSender(
     fun getBitrateExponentialFactor() = bitrateManager.exponentialFactor
 
     fun setDelay(delay: Long) {
+        cacheTime = delay
         queue.setCacheTime(delay)
     }
 
+    /**
+     * Select the queue used to store frames until send it. Capacity and delay are kept.
+     * Must be called while not streaming.
+     */
+    @Throws(IllegalStateException::class)
+    fun setQueueType(type: QueueType) {
+        if (running) throw IllegalStateException("Queue type can't be changed while streaming")
+        val capacity = queue.capacity
+        queue.clear { release(it) }
+        queue = when (type) {
+            QueueType.PRIORITY -> StreamBlockingQueue(capacity, TimeUtils::getCurrentTimeMillis)
+            QueueType.SPSC -> SpscFrameQueue(capacity, TimeUtils::getCurrentTimeMillis)
+        }
+        if (cacheTime > 0) queue.setCacheTime(cacheTime)
+    }
+
+    fun getQueueType(): QueueType = when (queue) {
+        is SpscFrameQueue -> QueueType.SPSC
+        else -> QueueType.PRIORITY
+    }
+
     fun resetBytesSend() {
         bytesSend.set(0)
     }
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.pedro.common.base
+
+import com.pedro.common.FrameQueue
+import com.pedro.common.frame.MediaFrame
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Decide if a frame is queued or discarded depending of the DropPolicy.
+ *
+ * Video frames are produced from a single thread so the GOP state is only modified by that
+ * thread.
+ */
+class CongestionPolicy {
+
+    companion object {
+        const val DEFAULT_RESERVED_PERCENT = 10
+    }
+
+    @Volatile
+    var policy = DropPolicy.NEWEST
+    /**
+     * Max time in millis between the oldest frame in the queue and a new keyframe before purge
+     * the queue. 0 to disable. Only used with DropPolicy.GOP.
+     */
+    @Volatile
+    var latencyBudget = 0L
+    /**
+     * Percent of the queue that only audio and keyframes can use. Only used with DropPolicy.GOP.
+     */
+    @Volatile
+    var reservedPercent = DEFAULT_RESERVED_PERCENT
+        set(value) {
+            if (value !in 0..100) throw IllegalArgumentException("the value must be in range 0 to 100")
+            field = value
+        }
+    @Volatile
+    private var waitingKeyFrame = false
+
+    //video frames discarded because depend on a discarded frame
+    private val droppedGopFrames = AtomicLong(0)
+    //frames removed from the queue because the latency budget was exceeded
+    private val purgedFrames = AtomicLong(0)
+
+    /**
+     * @param onPurge called with each frame removed from the queue
+     * @return true if the frame was queued, false if it must be discarded
+     */
+    fun send(frame: MediaFrame, queue: FrameQueue, onPurge: (MediaFrame) -> Unit): Boolean {
+        if (policy == DropPolicy.NEWEST) return queue.trySend(frame)
+        if (frame.type == MediaFrame.Type.AUDIO) return queue.trySend(frame)
+        if (frame.info.isKeyFrame) {
+            purgeIfNeeded(frame, queue, onPurge)
+            val queued = queue.trySend(frame)
+            waitingKeyFrame = !queued
+            return queued
+        }
+        if (waitingKeyFrame) {
+            droppedGopFrames.incrementAndGet()
+            return false
+        }
+        val reserved = queue.capacity * reservedPercent / 100
+        val queued = queue.getSize() < queue.capacity - reserved && queue.trySend(frame)
+        //next frames depend on this one, discard until the next keyframe
+        if (!queued) waitingKeyFrame = true
+        return queued
+    }
+
+    private fun purgeIfNeeded(keyFrame: MediaFrame, queue: FrameQueue, onPurge: (MediaFrame) -> Unit) {
+        if (latencyBudget <= 0) return
+        val firstTs = queue.getFirstTimestamp()
+        if (firstTs < 0) return
+        //timestamps are in micros
+        if (keyFrame.info.dts - firstTs <= latencyBudget * 1000) return
+        val removed = queue.removeOlderThan(keyFrame.info.dts, onPurge)
+        purgedFrames.addAndGet(removed.toLong())
+    }
+
+    fun getDroppedGopFrames(): Long = droppedGopFrames.get()
+
+    fun getPurgedFrames(): Long = purgedFrames.get()
+
+    fun resetDroppedGopFrames() {
+        droppedGopFrames.set(0)
+    }
+
+    fun resetPurgedFrames() {
+        purgedFrames.set(0)
+    }
+
+    fun reset() {
+        waitingKeyFrame = false
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.pedro.common.base
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * What to discard when the send queue is congested.
+ */
+enum class DropPolicy {
+    /**
+     * Discard the frame that doesn't fit in the queue, whatever the type.
+     */
+    NEWEST,
+
+    /**
+     * Use the GOP structure. Audio and keyframes can use all the queue, part of the queue is
+     * reserved for them. When a video frame is discarded, all frames that depend on it are also
+     * discarded until the next keyframe. Optionally, frames older than a new keyframe are
+     * purged if the queue exceeds the latency budget.
+     */
+    GOP
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.common.frame
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Calculate the decode timestamp (DTS) of video frames from the presentation timestamps (PTS)
+ * produced by the encoder. MediaCodec outputs frames in decode order but only reports the PTS.
+ *
+ * With B-frames, a frame can be presented after up to [reorderDepth] frames that follow it in
+ * decode order. The DTS of the frame n is the PTS of the frame n - [reorderDepth] in presentation
+ * order, that is always known after receiving the frame n, lower or equal than the PTS of the
+ * frame n and increasing. The first [reorderDepth] frames need a DTS before the first PTS, so all
+ * timestamps are shifted by [ptsOffset]: the DTS starts in the first PTS spaced [frameInterval]
+ * and the caller must add [ptsOffset] to the PTS of every frame, audio included to keep the sync.
+ *
+ * Without reorder the DTS is the PTS.
+ *
+ * Not thread safe, use one instance per encoder output.
+ *
+ * @param reorderDepth max number of B-frames between reference frames configured in the encoder
+ * @param frameInterval expected time between frames in micros
+ */
+class DtsGenerator(
+    val reorderDepth: Int = 0,
+    private val frameInterval: Long = 33_333
+) {
+
+    init {
+        if (reorderDepth < 0) throw IllegalArgumentException("reorderDepth must be >= 0")
+    }
+
+    /**
+     * Micros added to the presentation timestamps, 0 without reorder.
+     */
+    val ptsOffset = reorderDepth * frameInterval
+
+    //pts received and not used as dts yet, sorted
+    private val window = LongArray(reorderDepth + 1)
+    private var size = 0
+    private var count = 0L
+    private var firstPts = 0L
+    private var lastDts = -1L
+
+    /**
+     * @param pts presentation timestamp of the next frame in decode order, without [ptsOffset]
+     * @return decode timestamp of the frame, lower or equal than pts + [ptsOffset]
+     */
+    fun getDts(pts: Long): Long {
+        if (reorderDepth == 0) return pts
+        if (count == 0L) firstPts = pts
+        insert(pts)
+        val candidate = if (size > reorderDepth) {
+            removeFirst()
+        } else firstPts - (reorderDepth - count) * frameInterval
+        count++
+        //keep dts increasing, even if the encoder reorders more frames than expected
+        val dts = maxOf(candidate + ptsOffset, lastDts + 1)
+        lastDts = dts
+        return dts
+    }
+
+    fun reset() {
+        size = 0
+        count = 0
+        firstPts = 0
+        lastDts = -1
+    }
+
+    private fun insert(pts: Long) {
+        var i = size
+        while (i > 0 && window[i - 1] > pts) {
+            window[i] = window[i - 1]
+            i--
+        }
+        window[i] = pts
+        size++
+    }
+
+    private fun removeFirst(): Long {
+        val first = window[0]
+        System.arraycopy(window, 1, window, 0, size - 1)
+        size--
+        return first
+    }
+}
@@ -5,15 +5,30 @@ import java.nio.ByteBuffer
 data class MediaFrame(
     val data: ByteBuffer,
     val info: Info,
-    val type: Type
+    val type: Type,
+    /**
+     * Owner of data when it is shared between senders, null if data belongs to the sender
+     */
+    val shared: SharedFrame? = null
 ) {
+    /**
+     * @param timestamp presentation timestamp (PTS) in micros
+     * @param dts decode timestamp in micros. Frames are sent in decode order, it is different
+     * to [timestamp] only in video frames reordered by the encoder (B-frames)
+     */
     data class Info(
         val offset: Int,
         val size: Int,
         val timestamp: Long,
         val isKeyFrame: Boolean,
-        val flags: Int = 0
-    )
+        val flags: Int = 0,
+        val dts: Long = timestamp
+    ) {
+        /**
+         * Composition time offset (PTS - DTS) in micros
+         */
+        val compositionOffset: Long get() = timestamp - dts
+    }
 
     enum class Type {
         VIDEO, AUDIO
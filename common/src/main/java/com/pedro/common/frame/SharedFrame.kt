@@ -0,0 +1,57 @@
+package com.pedro.common.frame
+
+import com.pedro.common.BufferPool
+import java.nio.ByteBuffer
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Encoded frame copied once and shared by several senders.
+ *
+ * Each sender holds a reference while the frame is in its queue and releases it once sent or
+ * discarded. The array is recycled when the last reference is released.
+ *
+ * The creator holds the first reference, so it must call [release] after handing the frame to
+ * all senders.
+ *
+ * @param recycle called with the array when the last reference is released
+ */
+class SharedFrame(
+    private val data: ByteArray,
+    val length: Int,
+    val info: MediaFrame.Info,
+    val type: MediaFrame.Type,
+    private val recycle: (ByteArray) -> Unit
+) {
+
+    constructor(
+        data: ByteArray, length: Int, info: MediaFrame.Info, type: MediaFrame.Type, pool: BufferPool
+    ): this(data, length, info, type, { pool.release(it) })
+
+    private val references = AtomicInteger(1)
+
+    fun retain() {
+        if (references.getAndIncrement() <= 0) {
+            references.decrementAndGet()
+            throw IllegalStateException("Frame already released")
+        }
+    }
+
+    fun release() {
+        val count = references.decrementAndGet()
+        if (count == 0) recycle(data)
+        else if (count < 0) throw IllegalStateException("Frame released more times than retained")
+    }
+
+    fun getReferences(): Int = references.get()
+
+    fun isReleased(): Boolean = references.get() <= 0
+
+    /**
+     * @return a buffer with the frame data and its own position and limit, so each sender can
+     * read it without affecting the others. Senders must not modify the content.
+     */
+    fun newBuffer(): ByteBuffer {
+        if (isReleased()) throw IllegalStateException("Frame already released")
+        return ByteBuffer.wrap(data, 0, length).slice()
+    }
+}
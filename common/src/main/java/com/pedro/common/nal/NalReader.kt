@@ -24,53 +24,104 @@ object NalReader {
 
   fun extractNals(buffer: ByteBuffer, codec: VideoCodec, shouldDiscardVideoInfo: Boolean): ArrayList<ByteBuffer> {
     val units = ArrayList<ByteBuffer>()
+    val nalFound = scan(buffer) { start, end ->
+      if (shouldKeepNal(buffer.get(start), codec, shouldDiscardVideoInfo)) {
+        val duplicate = buffer.duplicate()
+        duplicate.position(start)
+        duplicate.limit(end)
+        units.add(duplicate.slice())
+      }
+    }
+    if (!nalFound) units.add(buffer)
+    return units
+  }
 
-    val array = buffer.array()
-    val offset = buffer.arrayOffset()
-    val start = offset + buffer.position()
-    val limit = offset + buffer.limit()
-    var payloadStart = -1
-    var nalFound = false
+  /**
+   * Same as [extractNals] but saving the bounds of each NAL unit in [output] instead of creating a
+   * ByteBuffer per NAL unit. The bounds are indexes of the buffer array.
+   *
+   * Direct buffers are copied once to an array owned by [output].
+   */
+  fun extractNals(buffer: ByteBuffer, codec: VideoCodec, shouldDiscardVideoInfo: Boolean, output: NalUnits) {
+    val offset = if (buffer.hasArray()) {
+      output.reset(buffer.array())
+      buffer.arrayOffset()
+    } else {
+      output.reset(buffer)
+      0
+    }
+    val array = output.array
+    val nalFound = scan(buffer) { start, end ->
+      if (shouldKeepNal(array[offset + start], codec, shouldDiscardVideoInfo)) {
+        output.add(offset + start, offset + end)
+      }
+    }
+    if (!nalFound) output.add(offset + buffer.position(), offset + buffer.limit())
+  }
 
-    var i = start
-    while (i < limit - 2) {
-      if (array[i] == ZERO && array[i + 1] == ZERO && array[i + 2] == ONE) {
-        val previousPayloadEnd = if (i > start && array[i - 1] == ZERO) i - 1 else i
-        if (payloadStart != -1 && previousPayloadEnd > payloadStart) {
-          val duplicate = buffer.duplicate()
-          duplicate.position(payloadStart - offset)
-          duplicate.limit(previousPayloadEnd - offset)
-          val nal = duplicate.slice()
-          nalFound = true
-          if (shouldKeepNal(nal, codec, shouldDiscardVideoInfo)) units.add(nal)
-        }
-        payloadStart = i + 3
+  /**
+   * Find the first start code (00 00 01) in [buffer] between the indexes [from] and [to].
+   *
+   * Only the last byte of each possible start code is read first. A byte that is not 0 or 1 can't
+   * be part of a start code so the 3 start code positions that contain it are discarded at once,
+   * in encoded data only about one of each 3 bytes is read. Valid for heap and direct buffers.
+   *
+   * @return index of the start code or -1 if not found
+   */
+  fun findStartCode(buffer: ByteBuffer, from: Int, to: Int): Int {
+    var i = from + 2
+    while (i < to) {
+      val value = buffer.get(i)
+      if (value > ONE || value < ZERO) {
         i += 3
+      } else if (buffer.get(i - 1) != ZERO) {
+        i += 2
+      } else if (value == ONE && buffer.get(i - 2) == ZERO) {
+        return i - 2
       } else {
         i++
       }
     }
+    return -1
+  }
+
+  /**
+   * Call [onNal] with the buffer bounds of each NAL unit preceded by a start code.
+   *
+   * @return false if no NAL unit was found
+   */
+  private inline fun scan(buffer: ByteBuffer, onNal: (Int, Int) -> Unit): Boolean {
+    val start = buffer.position()
+    val limit = buffer.limit()
+    var payloadStart = -1
+    var nalFound = false
+
+    var i = findStartCode(buffer, start, limit)
+    while (i != -1) {
+      val previousPayloadEnd = if (i > start && buffer.get(i - 1) == ZERO) i - 1 else i
+      if (payloadStart != -1 && previousPayloadEnd > payloadStart) {
+        nalFound = true
+        onNal(payloadStart, previousPayloadEnd)
+      }
+      payloadStart = i + 3
+      i = findStartCode(buffer, payloadStart, limit)
+    }
     if (payloadStart != -1 && payloadStart < limit) {
-      val duplicate = buffer.duplicate()
-      duplicate.position(payloadStart - offset)
-      duplicate.limit(limit - offset)
-      val nal = duplicate.slice()
       nalFound = true
-      if (shouldKeepNal(nal, codec, shouldDiscardVideoInfo)) units.add(nal)
+      onNal(payloadStart, limit)
     }
-    if (!nalFound) units.add(buffer)
-    return units
+    return nalFound
   }
 
-  private fun shouldKeepNal(nal: ByteBuffer, codec: VideoCodec, shouldDiscardVideoInfo: Boolean): Boolean {
+  private fun shouldKeepNal(header: Byte, codec: VideoCodec, shouldDiscardVideoInfo: Boolean): Boolean {
     return when (codec) {
       VideoCodec.H264 -> {
-        val type = (nal.get(0) and 0x1F).toInt()
+        val type = (header and 0x1F).toInt()
         !(type == H264_SEI || type == H264_AUD ||
             (shouldDiscardVideoInfo && (type == H264_SPS || type == H264_PPS)))
       }
       VideoCodec.H265 -> {
-        val type = nal.get(0).toInt().shr(1) and 0x3F
+        val type = header.toInt().shr(1) and 0x3F
         !(type == H265_PRE_SEI || type == H265_SU_SEI || type == H265_AUD ||
             (shouldDiscardVideoInfo && (type == H265_SPS || type == H265_PPS || type == H265_VPS)))
       }
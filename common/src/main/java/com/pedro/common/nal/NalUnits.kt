@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.common.nal
+
+import java.nio.ByteBuffer
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Bounds of the NAL units found in an array by [NalReader.extractNals].
+ *
+ * The same instance is filled for each frame so, once it grew to the NAL count of the stream,
+ * reading the NAL units of a frame doesn't allocate.
+ */
+class NalUnits {
+
+  var array: ByteArray = EMPTY
+    private set
+  var size = 0
+    private set
+  private var starts = IntArray(8)
+  private var ends = IntArray(8)
+  //copy of direct buffers, reused between frames
+  private var copy = ByteArray(0)
+
+  fun getStart(index: Int): Int = starts[index]
+
+  fun getEnd(index: Int): Int = ends[index]
+
+  fun getLength(index: Int): Int = ends[index] - starts[index]
+
+  fun getHeader(index: Int): Byte = array[starts[index]]
+
+  /**
+   * @return true if a NAL unit has the same content that [nal]
+   */
+  fun contains(nal: ByteArray): Boolean {
+    for (index in 0 until size) {
+      if (getLength(index) != nal.size) continue
+      val start = starts[index]
+      var equals = true
+      for (i in nal.indices) {
+        if (array[start + i] != nal[i]) {
+          equals = false
+          break
+        }
+      }
+      if (equals) return true
+    }
+    return false
+  }
+
+  /**
+   * Release the reference to the frame. The copy used for direct buffers is kept to reuse it.
+   */
+  fun clear() {
+    array = EMPTY
+    size = 0
+  }
+
+  internal fun reset(array: ByteArray) {
+    this.array = array
+    size = 0
+  }
+
+  /**
+   * Copy [buffer] without backing array so the bounds are indexes of the buffer.
+   */
+  internal fun reset(buffer: ByteBuffer) {
+    val length = buffer.limit()
+    if (copy.size < length) copy = ByteArray(length)
+    buffer.duplicate().apply { position(0) }.get(copy, 0, length)
+    reset(copy)
+  }
+
+  internal fun add(start: Int, end: Int) {
+    if (size == starts.size) {
+      starts = starts.copyOf(size * 2)
+      ends = ends.copyOf(size * 2)
+    }
+    starts[size] = start
+    ends[size] = end
+    size++
+  }
+
+  private companion object {
+    val EMPTY = ByteArray(0)
+  }
+}
@@ -1,10 +1,17 @@
 package com.pedro.common.socket.base
 
+import java.nio.ByteBuffer
+
 abstract class UdpStreamSocket: StreamSocket() {
 
     abstract suspend fun bind()
     abstract suspend fun write(bytes: ByteArray)
+    abstract suspend fun write(bytes: ByteArray, offset: Int, size: Int)
     abstract suspend fun write(bytes: ByteArray, host: String, port: Int)
+    /**
+     * Send each buffer from position to limit as a datagram.
+     */
+    abstract suspend fun writeBatch(buffers: List<ByteBuffer>)
     abstract suspend fun read(): ByteArray
     abstract suspend fun readPacket(): UdpPacket
     abstract suspend fun setRemoteAddress(host: String, port: Int)
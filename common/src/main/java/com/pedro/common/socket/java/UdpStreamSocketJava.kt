@@ -7,8 +7,11 @@ import com.pedro.common.socket.base.UdpType
 import java.net.DatagramPacket
 import java.net.DatagramSocket
 import java.net.InetAddress
+import java.net.InetSocketAddress
 import java.net.MulticastSocket
 import java.net.SocketOptions
+import java.nio.ByteBuffer
+import java.nio.channels.DatagramChannel
 
 class UdpStreamSocketJava(
     private val host: String,
@@ -21,25 +24,22 @@ class UdpStreamSocketJava(
 
     private var socket: DatagramSocket? = null
     private val packetSize = receiveSize ?: 65536
-    private var remoteHost: String? = null
-    private var remotePort: Int? = null
+    //resolved once in setRemoteAddress
+    private var remoteAddress: InetSocketAddress? = null
+    //unicast and broadcast sockets are created from a channel to write batches
+    private var channel: DatagramChannel? = null
+    private var writeBuffer = ByteBuffer.allocateDirect(2048)
 
     override suspend fun connect() {
         val socket = when (type) {
             UdpType.UNICAST -> {
-                sourcePort?.let {
-                    val address = if (sourceHost != null) InetAddress.getByName(sourceHost) else null
-                    if (address != null) DatagramSocket(sourcePort, address) else DatagramSocket(sourcePort)
-                } ?: DatagramSocket()
+                createChannelSocket(getSourceAddress())
             }
             UdpType.MULTICAST -> {
                 sourcePort?.let { MulticastSocket(sourcePort) } ?: MulticastSocket()
             }
             UdpType.BROADCAST -> {
-                val socket = sourcePort?.let {
-                    val address = if (sourceHost != null) InetAddress.getByName(sourceHost) else null
-                    if (address != null) DatagramSocket(sourcePort, address) else DatagramSocket(sourcePort)
-                } ?: DatagramSocket()
+                val socket = createChannelSocket(getSourceAddress())
                 socket.apply { broadcast = true }
             }
         }
@@ -56,18 +56,19 @@ class UdpStreamSocketJava(
             socket?.close()
             socket = null
         }
+        channel = null
     }
 
     override suspend fun bind() {
         val socket = when (type) {
             UdpType.UNICAST -> {
-                DatagramSocket(port, InetAddress.getByName(host))
+                createChannelSocket(InetSocketAddress(InetAddress.getByName(host), port))
             }
             UdpType.MULTICAST -> {
                 MulticastSocket(port)
             }
             UdpType.BROADCAST -> {
-                val socket = DatagramSocket(port, InetAddress.getByName(host))
+                val socket = createChannelSocket(InetSocketAddress(InetAddress.getByName(host), port))
                 socket.apply { broadcast = true }
             }
         }
@@ -77,14 +78,45 @@ class UdpStreamSocketJava(
     }
 
     override suspend fun write(bytes: ByteArray) {
-        val udpPacket = if (remoteHost != null && remotePort != null) {
-            DatagramPacket(bytes, bytes.size, InetAddress.getByName(remoteHost!!), remotePort!!)
+        write(bytes, 0, bytes.size)
+    }
+
+    override suspend fun write(bytes: ByteArray, offset: Int, size: Int) {
+        val remoteAddress = remoteAddress
+        val udpPacket = if (remoteAddress != null) {
+            DatagramPacket(bytes, offset, size, remoteAddress)
         } else {
-            DatagramPacket(bytes, bytes.size)
+            DatagramPacket(bytes, offset, size)
         }
         socket?.send(udpPacket)
     }
 
+    /**
+     * Send all datagrams in a loop with the channel, heap buffers are copied to a direct buffer
+     * to avoid the temporary direct buffer used by the channel.
+     */
+    override suspend fun writeBatch(buffers: List<ByteBuffer>) {
+        val channel = channel
+        if (channel == null) {
+            for (i in buffers.indices) {
+                val buffer = buffers[i]
+                if (buffer.hasArray()) {
+                    write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining())
+                } else {
+                    val bytes = ByteArray(buffer.remaining())
+                    buffer.duplicate().get(bytes)
+                    write(bytes)
+                }
+            }
+            return
+        }
+        val remoteAddress = remoteAddress
+        for (i in buffers.indices) {
+            val data = toDirect(buffers[i])
+            if (remoteAddress != null) channel.send(data, remoteAddress) else channel.write(data)
+        }
+    }
+
     override suspend fun write(bytes: ByteArray, host: String, port: Int) {
         val udpPacket = DatagramPacket(bytes, bytes.size, InetAddress.getByName(host), port)
         socket?.send(udpPacket)
@@ -103,8 +135,7 @@ class UdpStreamSocketJava(
     }
 
     override suspend fun setRemoteAddress(host: String, port: Int) {
-        this.remoteHost = host
-        this.remotePort = port
+        remoteAddress = InetSocketAddress(InetAddress.getByName(host), port)
     }
 
     override suspend fun getLocalHost(): String {
@@ -118,4 +149,30 @@ class UdpStreamSocketJava(
     override fun isConnected(): Boolean = socket?.isConnected ?: false
 
     override fun isReachable(): Boolean = socket?.inetAddress?.isReachable(timeout.toInt()) ?: false
+
+    private fun getSourceAddress(): InetSocketAddress? {
+        if (sourcePort == null) return null
+        val address = if (sourceHost != null) InetAddress.getByName(sourceHost) else null
+        return InetSocketAddress(address, sourcePort)
+    }
+
+    private fun createChannelSocket(address: InetSocketAddress?): DatagramSocket {
+        val channel = DatagramChannel.open()
+        this.channel = channel
+        return channel.socket().apply { if (address != null) bind(address) }
+    }
+
+    private fun toDirect(buffer: ByteBuffer): ByteBuffer {
+        if (buffer.isDirect) return buffer
+        val size = buffer.remaining()
+        if (writeBuffer.capacity() < size) writeBuffer = ByteBuffer.allocateDirect(size)
+        writeBuffer.clear()
+        if (buffer.hasArray()) {
+            writeBuffer.put(buffer.array(), buffer.arrayOffset() + buffer.position(), size)
+        } else {
+            writeBuffer.put(buffer.duplicate())
+        }
+        writeBuffer.flip()
+        return writeBuffer
+    }
 }
\ No newline at end of file
@@ -18,6 +18,7 @@ import kotlinx.io.Buffer
 import kotlinx.io.readByteArray
 import java.net.ConnectException
 import java.net.InetAddress
+import java.nio.ByteBuffer
 
 class UdpStreamSocketKtor(
     private val host: String,
@@ -80,6 +81,24 @@ class UdpStreamSocketKtor(
         socket?.send(datagram)
     }
 
+    override suspend fun write(bytes: ByteArray, offset: Int, size: Int) {
+        val datagram = Datagram(Buffer().apply { write(bytes, offset, offset + size) }, address)
+        socket?.send(datagram)
+    }
+
+    override suspend fun writeBatch(buffers: List<ByteBuffer>) {
+        for (i in buffers.indices) {
+            val buffer = buffers[i]
+            if (buffer.hasArray()) {
+                write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining())
+            } else {
+                val bytes = ByteArray(buffer.remaining())
+                buffer.duplicate().get(bytes)
+                write(bytes)
+            }
+        }
+    }
+
     override suspend fun write(bytes: ByteArray, host: String, port: Int) {
         val datagram = Datagram(Buffer().apply { write(bytes, 0, bytes.size) }, InetSocketAddress(host, port))
         socket?.send(datagram)
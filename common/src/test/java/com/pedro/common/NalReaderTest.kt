@@ -1,7 +1,9 @@
 package com.pedro.common
 
 import com.pedro.common.nal.NalReader
+import com.pedro.common.nal.NalUnits
 import junit.framework.TestCase.assertEquals
+import junit.framework.TestCase.assertTrue
 import org.junit.Test
 import java.nio.ByteBuffer
 
@@ -63,4 +65,74 @@ class NalReaderTest {
     assertEquals(1, nals.size)
     assertEquals(10_000, nals[0].capacity())
   }
+
+  @Test
+  fun testExtractNalBoundsReusingOutput() {
+    val sei = header.plus(0x06).plus(ByteArray(10) { 0x0f })
+    val sps = header.plus(0x07).plus(ByteArray(10) { 0x0f })
+    val idr = header.plus(0x05).plus(ByteArray(20) { 0x0f })
+    val output = NalUnits()
+    NalReader.extractNals(ByteBuffer.wrap(sei.plus(sps).plus(idr)), VideoCodec.H264, false, output)
+    assertEquals(2, output.size)
+    assertEquals(0x07.toByte(), output.getHeader(0))
+    assertEquals(11, output.getLength(0))
+    assertEquals(0x05.toByte(), output.getHeader(1))
+    assertEquals(21, output.getLength(1))
+    assertTrue(output.contains(sps.copyOfRange(header.size, sps.size)))
+
+    NalReader.extractNals(ByteBuffer.wrap(ByteArray(100) { 0x0f }), VideoCodec.H264, false, output)
+    assertEquals(1, output.size)
+    assertEquals(100, output.getLength(0))
+  }
+
+  @Test
+  fun testReadNalsFromDirectBuffer() {
+    val sps = header.plus(0x07).plus(ByteArray(10) { 0x0f })
+    val idr = byteArrayOf(0x00).plus(header).plus(0x05).plus(ByteArray(20) { 0x0f })
+    val buffer = ByteBuffer.allocateDirect(sps.size + idr.size)
+    buffer.put(sps).put(idr).flip()
+    val nals = NalReader.extractNals(buffer, VideoCodec.H264, false)
+    assertEquals(2, nals.size)
+    assertEquals(11, nals[0].remaining())
+    assertEquals(21, nals[1].remaining())
+    assertEquals(0x05.toByte(), nals[1].get(0))
+
+    val output = NalUnits()
+    NalReader.extractNals(buffer, VideoCodec.H264, false, output)
+    assertEquals(2, output.size)
+    assertEquals(0x07.toByte(), output.getHeader(0))
+    assertEquals(21, output.getLength(1))
+    assertTrue(output.contains(idr.copyOfRange(4, idr.size)))
+
+    //packetizers clear the output after each frame, the copy of the direct buffer must be reused
+    val copy = output.array
+    output.clear()
+    assertEquals(0, output.size)
+    NalReader.extractNals(buffer, VideoCodec.H264, false, output)
+    assertTrue(copy === output.array)
+  }
+
+  @Test
+  fun testFindStartCodeInAnyAlignment() {
+    val random = java.util.Random(1)
+    repeat(500) {
+      val data = ByteArray(random.nextInt(64) + 3) { (random.nextInt(255) + 1).toByte() }
+      //zeros not followed by one to check the words with zeros and no start code
+      repeat(random.nextInt(4)) { data[random.nextInt(data.size)] = 0x00 }
+      val position = random.nextInt(data.size - 2)
+      if (random.nextBoolean()) {
+        data[position] = 0x00
+        data[position + 1] = 0x00
+        data[position + 2] = 0x01
+      }
+      val from = random.nextInt(data.size)
+      val expected = (from until data.size - 2).firstOrNull {
+        data[it].toInt() == 0 && data[it + 1].toInt() == 0 && data[it + 2].toInt() == 1
+      } ?: -1
+      val direct = ByteBuffer.allocateDirect(data.size)
+      direct.put(data).flip()
+      assertEquals(expected, NalReader.findStartCode(ByteBuffer.wrap(data), from, data.size))
+      assertEquals(expected, NalReader.findStartCode(direct, from, data.size))
+    }
+  }
 }
\ No newline at end of file
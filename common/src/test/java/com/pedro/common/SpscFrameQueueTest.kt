@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.pedro.common
+
+import com.pedro.common.frame.MediaFrame
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.ByteBuffer
+import java.util.concurrent.atomic.AtomicReference
+import kotlin.concurrent.thread
+
+/**
+ * Created by pedro on 18/10/26.
+ */
+class SpscFrameQueueTest {
+
+  private fun createFrame(ts: Long, type: MediaFrame.Type, size: Int = 10): MediaFrame {
+    return MediaFrame(ByteBuffer.wrap(byteArrayOf()), MediaFrame.Info(0, size, ts, false), type)
+  }
+
+  @Test
+  fun `GIVEN audio and video frames WHEN take THEN get frames ordered by timestamp`() {
+    val queue = SpscFrameQueue(50)
+    listOf(0L, 30L, 60L, 90L).forEach { queue.trySend(createFrame(it, MediaFrame.Type.VIDEO)) }
+    listOf(10L, 20L, 40L, 100L).forEach { queue.trySend(createFrame(it, MediaFrame.Type.AUDIO)) }
+    val result = (0 until 8).map { queue.take().info.timestamp }
+    assertEquals(listOf(0L, 10L, 20L, 30L, 40L, 60L, 90L, 100L), result)
+    assertNull(queue.poll())
+  }
+
+  @Test
+  fun `GIVEN a full queue WHEN send THEN discard the frame`() {
+    val queue = SpscFrameQueue(50)
+    (0..60).forEach { queue.trySend(createFrame(it.toLong(), MediaFrame.Type.VIDEO)) }
+    assertEquals(50, queue.getSize())
+    assertEquals(0, queue.remainingCapacity())
+    assertFalse(queue.trySend(createFrame(61, MediaFrame.Type.AUDIO)))
+    queue.take()
+    assertTrue(queue.trySend(createFrame(61, MediaFrame.Type.AUDIO)))
+  }
+
+  @Test
+  fun `GIVEN frames WHEN send and take THEN total size is tracked`() {
+    val queue = SpscFrameQueue(50)
+    queue.trySend(createFrame(0, MediaFrame.Type.VIDEO, 1000))
+    queue.trySend(createFrame(1, MediaFrame.Type.AUDIO, 100))
+    queue.trySend(createFrame(2, MediaFrame.Type.VIDEO, 500))
+    assertEquals(1600L, queue.getTotalSize())
+    queue.take()
+    assertEquals(600L, queue.getTotalSize())
+    queue.take()
+    queue.take()
+    assertEquals(0L, queue.getTotalSize())
+    assertEquals(0, queue.getSize())
+  }
+
+  @Test
+  fun `GIVEN more frames than a ring chunk WHEN take THEN get all frames in order`() {
+    val queue = SpscFrameQueue(5000)
+    (0 until 3000).forEach { assertTrue(queue.trySend(createFrame(it.toLong(), MediaFrame.Type.VIDEO))) }
+    //consume part and produce again to force the producer and consumer in different chunks
+    (0 until 1500).forEach { assertEquals(it.toLong(), queue.take().info.timestamp) }
+    (3000 until 4000).forEach { assertTrue(queue.trySend(createFrame(it.toLong(), MediaFrame.Type.VIDEO))) }
+    (1500 until 4000).forEach { assertEquals(it.toLong(), queue.take().info.timestamp) }
+    assertEquals(0, queue.getSize())
+  }
+
+  @Test
+  fun `GIVEN frames WHEN clear THEN all frames are removed`() {
+    val queue = SpscFrameQueue(50)
+    (0 until 10).forEach {
+      queue.trySend(createFrame(it.toLong(), MediaFrame.Type.VIDEO))
+      queue.trySend(createFrame(it.toLong(), MediaFrame.Type.AUDIO))
+    }
+    var removed = 0
+    queue.clear { removed++ }
+    assertEquals(20, removed)
+    assertEquals(0, queue.getSize())
+    assertEquals(0L, queue.getTotalSize())
+  }
+
+  @Test
+  fun `GIVEN frames WHEN drainTo THEN frames are moved to destiny`() {
+    val queue = SpscFrameQueue(50)
+    val destiny = SpscFrameQueue(50)
+    (0 until 10).forEach { queue.trySend(createFrame(it.toLong(), MediaFrame.Type.VIDEO)) }
+    queue.drainTo(destiny)
+    assertEquals(0, queue.getSize())
+    assertEquals(10, destiny.getSize())
+    assertEquals(0L, destiny.take().info.timestamp)
+  }
+
+  @Test
+  fun `GIVEN cache time WHEN send before cache is filled THEN frames are not available`() {
+    val queue = SpscFrameQueue(50)
+    queue.setCacheTime(60_000)
+    (0 until 10).forEach { assertTrue(queue.trySend(createFrame(it.toLong(), MediaFrame.Type.VIDEO))) }
+    assertEquals(0, queue.getSize())
+    assertNull(queue.poll())
+  }
+
+  @Test
+  fun `GIVEN cache time WHEN clock reach the cache time THEN frames are available in order`() {
+    var now = 1000L
+    val queue = SpscFrameQueue(50) { now }
+    queue.setCacheTime(100)
+    assertTrue(queue.trySend(createFrame(0, MediaFrame.Type.VIDEO)))
+    assertEquals(0, queue.getSize())
+    now += 100
+    assertTrue(queue.trySend(createFrame(10, MediaFrame.Type.AUDIO)))
+    assertEquals(1, queue.getSize())
+    assertEquals(0L, queue.take().info.timestamp)
+  }
+
+  @Test
+  fun `GIVEN an empty queue WHEN consumer is interrupted THEN take throw interrupted exception`() {
+    val queue = SpscFrameQueue(50)
+    val error = AtomicReference<Throwable?>()
+    val consumer = thread {
+      try {
+        queue.take()
+      } catch (e: Throwable) {
+        error.set(e)
+      }
+    }
+    Thread.sleep(50)
+    consumer.interrupt()
+    consumer.join(1000)
+    assertTrue(error.get() is InterruptedException)
+  }
+
+  @Test
+  fun `GIVEN a producer thread per media type WHEN consumer take THEN receive all frames in order`() {
+    val queue = SpscFrameQueue(400)
+    val framesPerType = 100_000
+    val producers = MediaFrame.Type.entries.map { type ->
+      thread {
+        var ts = 0L
+        while (ts < framesPerType) {
+          if (queue.trySend(createFrame(ts, type))) ts++ else Thread.yield()
+        }
+      }
+    }
+    val lastTs = LongArray(MediaFrame.Type.entries.size) { -1 }
+    repeat(framesPerType * MediaFrame.Type.entries.size) {
+      val frame = queue.take()
+      val index = frame.type.ordinal
+      assertEquals(lastTs[index] + 1, frame.info.timestamp)
+      lastTs[index] = frame.info.timestamp
+    }
+    producers.forEach { it.join() }
+    assertEquals(0, queue.getSize())
+    assertEquals(0L, queue.getTotalSize())
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.common.abr
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Created by pedro on 18/10/26.
+ */
+class AimdBitrateControllerTest {
+
+  private fun createController(start: Long, min: Long, max: Long): AimdBitrateController {
+    return AimdBitrateController().apply { configure(start, min, max) }
+  }
+
+  @Test(expected = IllegalArgumentException::class)
+  fun `GIVEN min bitrate higher than max WHEN configure THEN throw exception`() {
+    createController(1_000_000, 2_000_000, 1_000_000)
+  }
+
+  @Test
+  fun `GIVEN no congestion WHEN samples each second THEN increase 8 percent until max bitrate`() {
+    val controller = createController(1_000_000, 100_000, 1_200_000)
+    val result = (0 until 5).map { second ->
+      controller.onSample(NetworkSample(second * 1000L, controller.bitrate, 0))
+    }
+    assertEquals(listOf(1_000_000L, 1_080_000L, 1_166_400L, 1_200_000L, 1_200_000L), result)
+  }
+
+  @Test
+  fun `GIVEN encoder producing less than target WHEN no congestion THEN keep bitrate`() {
+    val controller = createController(1_000_000, 100_000, 2_000_000)
+    repeat(5) { second ->
+      assertEquals(1_000_000L, controller.onSample(NetworkSample(second * 1000L, 500_000, 0)))
+    }
+  }
+
+  @Test
+  fun `GIVEN samples faster than a second WHEN increase is too small THEN accumulate until the min change`() {
+    val controller = createController(1_000_000, 100_000, 2_000_000)
+    assertEquals(1_000_000L, controller.onSample(NetworkSample(0, 1_000_000, 0)))
+    assertEquals(1_000_000L, controller.onSample(NetworkSample(200, 1_000_000, 0)))
+    assertTrue(controller.onSample(NetworkSample(400, 1_000_000, 0)) > 1_020_000)
+  }
+
+  @Test
+  fun `GIVEN queue delay WHEN only one sample is over threshold THEN hold and decrease when it is kept`() {
+    val controller = createController(1_000_000, 100_000, 1_000_000)
+    controller.onSample(NetworkSample(0, 1_000_000, 0))
+    //keyframe waiting in the queue, 800ms
+    assertEquals(1_000_000L, controller.onSample(NetworkSample(1000, 1_000_000, 100_000)))
+    assertEquals(AimdBitrateController.Usage.HOLD, controller.usage)
+    controller.onSample(NetworkSample(2000, 1_000_000, 0))
+    controller.onSample(NetworkSample(3000, 1_000_000, 100_000))
+    //1000ms, decrease enough to drain the queue in 2 seconds
+    assertEquals(714_285L, controller.onSample(NetworkSample(4000, 1_000_000, 125_000)))
+    assertEquals(AimdBitrateController.Usage.OVERUSE, controller.usage)
+    //queue draining, keep the bitrate
+    assertEquals(714_285L, controller.onSample(NetworkSample(5000, 1_000_000, 100_000)))
+    assertEquals(AimdBitrateController.Usage.OVERUSE, controller.usage)
+    //queue growing again after hold time
+    assertTrue(controller.onSample(NetworkSample(6000, 1_000_000, 150_000)) < 714_285L)
+  }
+
+  @Test
+  fun `GIVEN unacked bytes WHEN send queue is empty THEN use it as queue delay`() {
+    val controller = createController(1_000_000, 100_000, 1_000_000)
+    controller.onSample(NetworkSample(0, 1_000_000, 0, unackedBytes = 125_000))
+    controller.onSample(NetworkSample(1000, 1_000_000, 0, unackedBytes = 125_000))
+    assertEquals(AimdBitrateController.Usage.OVERUSE, controller.usage)
+    assertTrue(controller.bitrate < 1_000_000L)
+  }
+
+  @Test
+  fun `GIVEN packet loss WHEN between thresholds THEN hold and decrease to received rate when high`() {
+    val controller = createController(1_000_000, 100_000, 1_000_000)
+    controller.onSample(NetworkSample(0, 1_000_000, 0, packetLoss = 0.01f))
+    assertEquals(AimdBitrateController.Usage.NORMAL, controller.usage)
+    assertEquals(1_000_000L, controller.onSample(NetworkSample(1000, 1_000_000, 0, packetLoss = 0.05f)))
+    assertEquals(AimdBitrateController.Usage.HOLD, controller.usage)
+    //80% received and 85% of it
+    val bitrate = controller.onSample(NetworkSample(2000, 1_000_000, 0, packetLoss = 0.2f))
+    assertEquals(AimdBitrateController.Usage.OVERUSE, controller.usage)
+    assertEquals(680_000.0, bitrate.toDouble(), 1.0)
+  }
+
+  @Test
+  fun `GIVEN rtt inflation WHEN over min rtt THEN hold or decrease`() {
+    val controller = createController(1_000_000, 100_000, 1_000_000)
+    controller.onSample(NetworkSample(0, 1_000_000, 0, rtt = 50))
+    controller.onSample(NetworkSample(1000, 1_000_000, 0, rtt = 80))
+    assertEquals(AimdBitrateController.Usage.HOLD, controller.usage)
+    val bitrate = controller.onSample(NetworkSample(2000, 1_000_000, 0, rtt = 200))
+    assertEquals(AimdBitrateController.Usage.OVERUSE, controller.usage)
+    assertEquals(850_000.0, bitrate.toDouble(), 1.0)
+  }
+
+  @Test
+  fun `GIVEN audio in the send rate WHEN decrease THEN use only the video share`() {
+    val controller = createController(1_000_000, 100_000, 1_000_000)
+    controller.onSample(NetworkSample(0, 900_000, 0, rtt = 50, audioBitrate = 128_000))
+    controller.onSample(NetworkSample(1000, 900_000, 0, rtt = 80, audioBitrate = 128_000))
+    val bitrate = controller.onSample(NetworkSample(2000, 900_000, 0, rtt = 200, audioBitrate = 128_000))
+    assertEquals(AimdBitrateController.Usage.OVERUSE, controller.usage)
+    //85% of the 772 kbps of video sent
+    assertEquals(656_200.0, bitrate.toDouble(), 1.0)
+  }
+
+  @Test
+  fun `GIVEN high loss WHEN keep decreasing THEN never go below min bitrate`() {
+    val controller = createController(1_000_000, 600_000, 1_000_000)
+    repeat(10) { second ->
+      val bitrate = controller.onSample(NetworkSample(second * 2000L, controller.bitrate, 0, packetLoss = 0.5f))
+      assertTrue(bitrate >= 600_000)
+    }
+    assertEquals(600_000L, controller.bitrate)
+  }
+
+  @Test
+  fun `GIVEN tcp trace with a capacity drop WHEN replay THEN adapt below capacity, drain the queue and recover`() {
+    val controller = createController(3_000_000, 300_000, 4_000_000)
+    val steps = NetworkSimulator(controller, reliable = true).run("""
+      # seconds capacity(kbps) loss(%) rtt(ms)
+      20 5000 0 50
+      30 1500 0 50
+      40 5000 0 50
+    """)
+    assertEquals(90, steps.size)
+    assertEquals(4_000_000L, steps[19].bitrate)
+    val drop = steps.subList(20, 50)
+    //first decrease in 2 seconds, one sample is needed to confirm the queue delay
+    assertTrue(drop[1].bitrate < 1_500_000)
+    //one decrease per congestion, no oscillation
+    val decreases = drop.zipWithNext().count { (previous, next) -> next.bitrate < previous.bitrate }
+    assertTrue("decreases: $decreases", decreases <= 3)
+    assertTrue(drop.last().sample.queueBytes < 1_500_000 / 8)
+    //near the capacity on average once the queue is drained
+    val average = drop.subList(10, 30).map { it.bitrate }.average()
+    assertTrue("average: $average", average in 1_100_000.0..1_700_000.0)
+    assertEquals(4_000_000L, steps.last().bitrate)
+  }
+
+  @Test
+  fun `GIVEN udp trace with loss and rtt WHEN replay THEN bitrate stays near the link capacity`() {
+    val controller = createController(2_000_000, 200_000, 4_000_000)
+    val steps = NetworkSimulator(controller, reliable = false).run("""
+      20 3000 1 40
+      30 1000 1 40
+      40 3000 1 40
+    """)
+    //rtt inflates before loss, decrease without reach the capacity
+    assertTrue(steps.subList(10, 20).all { it.bitrate in 2_400_000..3_300_000 })
+    val drop = steps.subList(20, 50)
+    assertTrue(drop[2].bitrate < 1_000_000)
+    assertTrue(drop.subList(5, 30).all { it.bitrate in 650_000..1_100_000 })
+    val lossAfterDrop = drop.subList(5, 30).map { it.sample.packetLoss }.average()
+    assertTrue("loss: $lossAfterDrop", lossAfterDrop < 0.05)
+    assertTrue(steps.subList(80, 90).all { it.bitrate in 2_400_000..3_300_000 })
+  }
+
+  @Test
+  fun `GIVEN a controller WHEN reset THEN start again from start bitrate`() {
+    val controller = createController(1_000_000, 100_000, 1_000_000)
+    controller.onSample(NetworkSample(0, 1_000_000, 0, packetLoss = 0.5f))
+    assertTrue(controller.bitrate < 1_000_000L)
+    controller.reset()
+    assertEquals(1_000_000L, controller.bitrate)
+    assertEquals(AimdBitrateController.Usage.NORMAL, controller.usage)
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.common.abr
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Deterministic replay of a network trace with a [BitrateController], one sample per second.
+ *
+ * Each second the encoder produces the target bitrate and:
+ * - Reliable (TCP): data that the link can't send waits in the send queue. Loss and RTT unknown.
+ * - Unreliable (UDP): all data is sent, the link buffers up to [bufferTime] millis of data and
+ * the rest is lost. RTT grows with the data buffered.
+ *
+ * Trace lines are "seconds capacity(kbps) loss(%) rtt(ms)", lines starting with # are ignored.
+ */
+class NetworkSimulator(
+  private val controller: BitrateController,
+  private val reliable: Boolean,
+  private val bufferTime: Long = 500
+) {
+
+  data class TracePoint(val seconds: Int, val capacity: Long, val loss: Float, val rtt: Long)
+
+  data class Step(val second: Int, val capacity: Long, val bitrate: Long, val sample: NetworkSample)
+
+  companion object {
+    fun parseTrace(trace: String): List<TracePoint> {
+      return trace.lines().map { it.trim() }.filter { it.isNotEmpty() && !it.startsWith("#") }.map { line ->
+        val values = line.split(Regex("\\s+"))
+        TracePoint(values[0].toInt(), values[1].toLong() * 1000, values[2].toFloat() / 100, values[3].toLong())
+      }
+    }
+  }
+
+  fun run(trace: String): List<Step> = run(parseTrace(trace))
+
+  fun run(trace: List<TracePoint>): List<Step> {
+    val steps = mutableListOf<Step>()
+    var queueBytes = 0L
+    var bufferedBytes = 0L
+    var second = 0
+    trace.forEach { point ->
+      repeat(point.seconds) {
+        val producedBytes = controller.bitrate / 8
+        val capacityBytes = point.capacity / 8
+        val sample = if (reliable) {
+          queueBytes += producedBytes
+          val sentBytes = minOf(queueBytes, capacityBytes)
+          queueBytes -= sentBytes
+          NetworkSample(second * 1000L, sentBytes * 8, queueBytes)
+        } else {
+          bufferedBytes += producedBytes
+          bufferedBytes -= minOf(bufferedBytes, capacityBytes)
+          val droppedBytes = maxOf(bufferedBytes - capacityBytes * bufferTime / 1000, 0)
+          bufferedBytes -= droppedBytes
+          val lostBytes = droppedBytes + (producedBytes - droppedBytes) * point.loss
+          val loss = if (producedBytes > 0) lostBytes / producedBytes else 0f
+          val rtt = point.rtt + bufferedBytes * 1000 / capacityBytes
+          NetworkSample(second * 1000L, producedBytes * 8, 0, loss, rtt)
+        }
+        controller.onSample(sample)
+        steps.add(Step(second, point.capacity, controller.bitrate, sample))
+        second++
+      }
+    }
+    return steps
+  }
+}
@@ -1,7 +1,9 @@
 package com.pedro.common.base
 
+import com.pedro.common.BufferPool
 import com.pedro.common.ConnectChecker
 import com.pedro.common.frame.MediaFrame
+import com.pedro.common.frame.SharedFrame
 import com.pedro.common.removeInfo
 import kotlinx.coroutines.runBlocking
 import org.junit.Assert.assertArrayEquals
@@ -146,4 +148,58 @@ class BaseSenderTest {
       assertArrayEquals(small, fixedBuffer.readAll())
     }
   }
+
+  @Test
+  fun `GIVEN a shared frame in two senders WHEN both consume it THEN the array returns to the pool after the last one`() = runBlocking {
+    val pool = BufferPool()
+    val data = pool.acquire(100)
+    val frame = byteArrayOf(0, 0, 0, 1, 101, 1, 2, 3)
+    frame.copyInto(data)
+    val sharedFrame = SharedFrame(data, frame.size, MediaFrame.Info(0, frame.size, 0, true), MediaFrame.Type.VIDEO, pool)
+    val sender1 = FakeSender()
+    val sender2 = FakeSender()
+    sender1.forceRunning()
+    sender2.forceRunning()
+
+    sender1.sendSharedFrame(sharedFrame)
+    sender2.sendSharedFrame(sharedFrame)
+    sharedFrame.release()
+    assertEquals(2, sharedFrame.getReferences())
+
+    sender1.consumeOne { mediaFrame ->
+      assertSame(data, mediaFrame.data.array())
+      //reading moves the position of this sender buffer only
+      assertArrayEquals(frame, ByteArray(mediaFrame.data.remaining()).also { mediaFrame.data.get(it) })
+    }
+    assertEquals(1, sharedFrame.getReferences())
+    assertEquals(0, pool.getRetainedBytes())
+
+    sender2.consumeOne { mediaFrame ->
+      assertSame(data, mediaFrame.data.array())
+      assertEquals(0, mediaFrame.data.position())
+      assertArrayEquals(frame, mediaFrame.data.readAll())
+    }
+    assertEquals(0, sharedFrame.getReferences())
+    assertEquals(data.size.toLong(), pool.getRetainedBytes())
+  }
+
+  @Test
+  fun `GIVEN a full sender WHEN send a shared frame THEN discard it releasing only its reference`() = runBlocking {
+    val pool = BufferPool()
+    val data = pool.acquire(100)
+    val sharedFrame = SharedFrame(data, 10, MediaFrame.Info(0, 10, 0, false), MediaFrame.Type.AUDIO, pool)
+    val sender = FakeSender()
+    sender.forceRunning()
+    sender.resizeCache(1)
+
+    sender.sendSharedFrame(sharedFrame)
+    sender.sendSharedFrame(sharedFrame)
+
+    assertEquals(1, sender.getDroppedAudioFrames())
+    assertEquals(2, sharedFrame.getReferences())
+    sender.clearCache()
+    assertEquals(1, sharedFrame.getReferences())
+    sharedFrame.release()
+    assertEquals(data.size.toLong(), pool.getRetainedBytes())
+  }
 }
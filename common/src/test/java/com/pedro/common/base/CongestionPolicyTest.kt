@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.pedro.common.base
+
+import com.pedro.common.FrameQueue
+import com.pedro.common.SpscFrameQueue
+import com.pedro.common.StreamBlockingQueue
+import com.pedro.common.frame.MediaFrame
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.ByteBuffer
+
+/**
+ * Created by pedro on 18/10/26.
+ */
+class CongestionPolicyTest {
+
+  private val queues = listOf<() -> FrameQueue>({ StreamBlockingQueue(10) }, { SpscFrameQueue(10) })
+
+  private fun video(tsMillis: Long, keyFrame: Boolean = false): MediaFrame {
+    return MediaFrame(ByteBuffer.wrap(byteArrayOf()), MediaFrame.Info(0, 100, tsMillis * 1000, keyFrame), MediaFrame.Type.VIDEO)
+  }
+
+  private fun audio(tsMillis: Long): MediaFrame {
+    return MediaFrame(ByteBuffer.wrap(byteArrayOf()), MediaFrame.Info(0, 10, tsMillis * 1000, false), MediaFrame.Type.AUDIO)
+  }
+
+  @Test
+  fun `GIVEN newest policy WHEN queue is full THEN discard audio frame`() {
+    queues.forEach { createQueue ->
+      val queue = createQueue()
+      val policy = CongestionPolicy()
+      (0 until 10L).forEach { assertTrue(policy.send(video(it), queue) {}) }
+      assertFalse(policy.send(audio(10), queue) {})
+      assertFalse(policy.send(video(11), queue) {})
+    }
+  }
+
+  @Test
+  fun `GIVEN gop policy WHEN video reach the reserved part THEN keep audio and discard video`() {
+    queues.forEach { createQueue ->
+      val queue = createQueue()
+      val policy = CongestionPolicy().apply { policy = DropPolicy.GOP }
+      assertTrue(policy.send(video(0, true), queue) {})
+      (1 until 9L).forEach { assertTrue(policy.send(video(it), queue) {}) }
+      //1 frame of 10 reserved for audio and keyframes
+      assertFalse(policy.send(video(9), queue) {})
+      assertTrue(policy.send(audio(9), queue) {})
+      assertEquals(10, queue.getSize())
+    }
+  }
+
+  @Test
+  fun `GIVEN gop policy WHEN a video frame is discarded THEN discard dependent frames until next keyframe`() {
+    queues.forEach { createQueue ->
+      val queue = createQueue()
+      val policy = CongestionPolicy().apply { policy = DropPolicy.GOP }
+      (0 until 9L).forEach { assertTrue(policy.send(video(it, it == 0L), queue) {}) }
+      assertFalse(policy.send(video(9), queue) {})
+      //free space, but the next frames reference the discarded one
+      repeat(5) { queue.take() }
+      assertFalse(policy.send(video(10), queue) {})
+      assertFalse(policy.send(video(11), queue) {})
+      assertTrue(policy.send(audio(11), queue) {})
+      assertEquals(2, policy.getDroppedGopFrames())
+      assertTrue(policy.send(video(12, true), queue) {})
+      assertTrue(policy.send(video(13), queue) {})
+      assertEquals(2, policy.getDroppedGopFrames())
+    }
+  }
+
+  @Test
+  fun `GIVEN gop policy with latency budget WHEN a keyframe is produced with old frames queued THEN purge old frames`() {
+    queues.forEach { createQueue ->
+      val queue = createQueue()
+      val policy = CongestionPolicy().apply {
+        policy = DropPolicy.GOP
+        latencyBudget = 1000
+      }
+      assertTrue(policy.send(video(0, true), queue) {})
+      assertTrue(policy.send(audio(100), queue) {})
+      assertTrue(policy.send(video(500), queue) {})
+      //inside the budget, nothing purged
+      assertTrue(policy.send(video(1000, true), queue) {})
+      assertEquals(4, queue.getSize())
+      assertTrue(policy.send(video(1500), queue) {})
+      val purged = mutableListOf<MediaFrame>()
+      assertTrue(policy.send(video(2500, true), queue) { purged.add(it) })
+      assertEquals(5, purged.size)
+      assertEquals(5, policy.getPurgedFrames())
+      assertEquals(1, queue.getSize())
+      assertEquals(2500_000L, queue.take().info.timestamp)
+    }
+  }
+}
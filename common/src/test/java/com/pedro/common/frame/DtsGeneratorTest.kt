@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.common.frame
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Created by pedro on 18/10/26.
+ */
+class DtsGeneratorTest {
+
+  private val interval = 33_333L
+
+  @Test
+  fun `GIVEN no reorder WHEN get dts THEN dts is pts`() {
+    val generator = DtsGenerator()
+    listOf(0L, 33_333L, 66_666L).forEach {
+      assertEquals(it, generator.getDts(it))
+    }
+  }
+
+  @Test
+  fun `GIVEN frames with b-frames in decode order WHEN get dts THEN dts increase and never after pts`() {
+    val start = 1_000_000L
+    //I0 P3 B1 B2 P6 B4 B5 P9 B7 B8
+    val order = listOf(0, 3, 1, 2, 6, 4, 5, 9, 7, 8)
+    val generator = DtsGenerator(2, interval)
+    var lastDts = -1L
+    val dtsList = order.map {
+      val pts = start + it * interval
+      val dts = generator.getDts(pts)
+      assertTrue("dts $dts after pts $pts", dts <= pts + generator.ptsOffset)
+      assertTrue("dts $dts not increasing", dts > lastDts)
+      lastDts = dts
+      dts
+    }
+    //pts shifted 2 frames and the dts is the pts in presentation order
+    assertEquals(2 * interval, generator.ptsOffset)
+    order.indices.forEach {
+      assertEquals(start + it * interval, dtsList[it])
+    }
+  }
+
+  @Test
+  fun `GIVEN pts near 0 WHEN get dts THEN dts start in 0 spaced a frame`() {
+    val generator = DtsGenerator(1, interval)
+    val dts = listOf(0L, 2 * interval, interval).map { generator.getDts(it) }
+    //no repeated values once converted to millis or 90 kHz
+    assertEquals(listOf(0L, interval, 2 * interval), dts)
+  }
+
+  @Test
+  fun `GIVEN generator used WHEN reset THEN start again from the next pts`() {
+    val generator = DtsGenerator(1, interval)
+    listOf(0L, 2 * interval, interval).forEach { generator.getDts(it) }
+    generator.reset()
+    assertEquals(5_000_000L, generator.getDts(5_000_000L))
+  }
+}
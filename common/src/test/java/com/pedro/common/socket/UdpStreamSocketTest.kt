@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.common.socket
+
+import com.pedro.common.socket.base.SocketType
+import com.pedro.common.socket.base.StreamSocket
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.net.DatagramPacket
+import java.net.DatagramSocket
+import java.net.InetAddress
+import java.nio.ByteBuffer
+
+/**
+ * Created by pedro on 18/10/26.
+ */
+class UdpStreamSocketTest {
+
+  private val server = DatagramSocket(0, InetAddress.getLoopbackAddress()).apply { soTimeout = 2000 }
+
+  @After
+  fun teardown() {
+    server.close()
+  }
+
+  private fun receive(): ByteArray {
+    val packet = DatagramPacket(ByteArray(2048), 2048)
+    server.receive(packet)
+    return packet.data.sliceArray(0 until packet.length)
+  }
+
+  @Test
+  fun `GIVEN heap and direct buffers WHEN write batch THEN receive a datagram per buffer`() = runBlocking {
+    val socket = StreamSocket.createUdpSocket(SocketType.JAVA, "127.0.0.1", server.localPort, 2000)
+    socket.connect()
+    val data = ByteArray(1500) { it.toByte() }
+    val direct = ByteBuffer.allocateDirect(100).apply {
+      put(data, 0, 100)
+      flip()
+    }
+    val buffers = listOf(
+      ByteBuffer.wrap(data, 0, 1316),
+      ByteBuffer.wrap(data, 16, 188),
+      direct,
+      ByteBuffer.wrap(data)
+    )
+    socket.writeBatch(buffers)
+    assertArrayEquals(data.sliceArray(0 until 1316), receive())
+    assertArrayEquals(data.sliceArray(16 until 204), receive())
+    assertArrayEquals(data.sliceArray(0 until 100), receive())
+    assertArrayEquals(data, receive())
+    socket.close()
+  }
+
+  @Test
+  fun `GIVEN a remote address WHEN write batch THEN send datagrams to the remote address`() = runBlocking {
+    //bind to a random local port and send to the server
+    val socket = StreamSocket.createUdpSocket(SocketType.JAVA, "127.0.0.1", 0, 2000)
+    socket.bind()
+    socket.setRemoteAddress("127.0.0.1", server.localPort)
+    socket.writeBatch(listOf(ByteBuffer.wrap(byteArrayOf(1, 2, 3)), ByteBuffer.wrap(byteArrayOf(4, 5))))
+    socket.write(byteArrayOf(6))
+    assertArrayEquals(byteArrayOf(1, 2, 3), receive())
+    assertArrayEquals(byteArrayOf(4, 5), receive())
+    assertEquals(6, receive()[0].toInt())
+    socket.close()
+  }
+}
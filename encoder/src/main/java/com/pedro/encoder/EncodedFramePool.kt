@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.encoder
+
+import android.media.MediaCodec
+import android.util.Log
+import com.pedro.common.BufferPool
+import com.pedro.common.TimeUtils
+import com.pedro.common.frame.MediaFrame
+import com.pedro.common.frame.SharedFrame
+import com.pedro.common.toMediaFrameInfo
+import java.nio.ByteBuffer
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Lease encoded frames copied once from the MediaCodec output buffer.
+ *
+ * The same [SharedFrame] is handed to the stream sender and the record controller, each one
+ * retains it while queued and releases it once written or discarded, so streaming and
+ * recording share a single copy. The array returns to the pool with the last release.
+ *
+ * In debug mode each lease is tracked with the stack of its creator to find frames never
+ * released with [checkLeaks], and released arrays are filled with [POISON] and not reused so a
+ * reader that kept a buffer after release reads garbage instead of a newer frame.
+ * Use it only to find errors, it disables the pool.
+ */
+class EncodedFramePool(
+  debug: Boolean = false,
+  maxBuffersPerSizeClass: Int = 16
+) {
+
+  companion object {
+    private const val TAG = "EncodedFramePool"
+    const val POISON: Byte = 0xDE.toByte()
+  }
+
+  private val bufferPool = BufferPool(maxBuffersPerSizeClass = maxBuffersPerSizeClass)
+  //frames not released by array, arrays are not reused in debug mode
+  private val leases = ConcurrentHashMap<ByteArray, Lease>()
+  private val leased = AtomicLong(0)
+  private val released = AtomicLong(0)
+  @Volatile
+  var debug = debug
+    set(value) {
+      if (!value) leases.clear()
+      field = value
+    }
+
+  /**
+   * Frame still referenced, with the stack of the lease.
+   */
+  class Lease(val type: MediaFrame.Type, val timestamp: Long, val leaseTime: Long, val stack: Throwable)
+
+  data class Stats(val leased: Long, val released: Long, val retainedBytes: Long) {
+    val live: Long get() = leased - released
+  }
+
+  /**
+   * Copy the frame in [buffer] from position 0 to limit. The caller holds the first reference
+   * and must release it after handing the frame to the consumers.
+   */
+  fun lease(buffer: ByteBuffer, info: MediaCodec.BufferInfo, type: MediaFrame.Type): SharedFrame {
+    return lease(buffer, info.toMediaFrameInfo(), type)
+  }
+
+  fun lease(buffer: ByteBuffer, info: MediaFrame.Info, type: MediaFrame.Type): SharedFrame {
+    val length = buffer.limit()
+    val debug = debug
+    val data = if (debug) ByteArray(length) else bufferPool.acquire(length)
+    val source = buffer.duplicate()
+    source.position(0)
+    source.get(data, 0, length)
+    val frame = SharedFrame(data, length, info, type) { array -> recycle(array, debug) }
+    leased.incrementAndGet()
+    if (debug) {
+      leases[data] = Lease(type, info.timestamp, TimeUtils.getCurrentTimeMillis(), Throwable("frame leased here"))
+    }
+    return frame
+  }
+
+  /**
+   * Frames leased more than [maxAge] millis ago and not released. Only in debug mode.
+   */
+  fun checkLeaks(maxAge: Long): List<Lease> {
+    val now = TimeUtils.getCurrentTimeMillis()
+    val result = mutableListOf<Lease>()
+    leases.values.forEach { lease ->
+      if (now - lease.leaseTime > maxAge) {
+        Log.w(TAG, "${lease.type} frame ${lease.timestamp} not released after ${now - lease.leaseTime}ms", lease.stack)
+        result.add(lease)
+      }
+    }
+    return result
+  }
+
+  fun getStats(): Stats = Stats(leased.get(), released.get(), bufferPool.getRetainedBytes())
+
+  fun clear() {
+    bufferPool.clear()
+  }
+
+  private fun recycle(data: ByteArray, debug: Boolean) {
+    released.incrementAndGet()
+    if (debug) {
+      leases.remove(data)
+      data.fill(POISON)
+    } else bufferPool.release(data)
+  }
+}
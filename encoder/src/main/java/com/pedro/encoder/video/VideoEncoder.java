@@ -74,6 +74,7 @@ public class VideoEncoder extends BaseEncoder implements GetCameraData {
   private int level = -1;
   private final SpsColorPatcher spsColorPatcher = new SpsColorPatcher();
   private boolean forceBt709Color = false;
+  private int maxBFrames = 0;
 
   public VideoEncoder(GetVideoData getVideoData) {
     this.getVideoData = getVideoData;
@@ -169,6 +170,10 @@ public class VideoEncoder extends BaseEncoder implements GetCameraData {
         // MediaFormat.KEY_LEVEL, API > 23
         videoFormat.setInteger("level", this.level);
       }
+      if (this.maxBFrames > 0) {
+        // MediaFormat.KEY_MAX_B_FRAMES, API > 28. Ignored by encoders without B-frames support
+        videoFormat.setInteger("max-bframes", this.maxBFrames);
+      }
       // Set BT.709 color metadata so the encoder embeds correct VUI in the SPS NAL unit.
       // Without this, devices default to smpte170m/bt470bg which ffprobe/players read incorrectly.
       // KEY_COLOR_STANDARD / KEY_COLOR_TRANSFER / KEY_COLOR_RANGE added in API 24.
@@ -324,6 +329,20 @@ public class VideoEncoder extends BaseEncoder implements GetCameraData {
     fpsLimiter.setFPS(fps);
   }
 
+  /**
+   * Allow the encoder to produce up to maxBFrames B-frames between reference frames, 0 to disable.
+   * Frames are produced in decode order so the presentation timestamp is not increasing.
+   */
+  public void setMaxBFrames(int maxBFrames) {
+    if (prepared) throw new IllegalStateException("Encoder already prepared, this must be called before prepareVideo");
+    if (maxBFrames < 0) throw new IllegalArgumentException("Invalid maxBFrames: " + maxBFrames + ", must be 0 or higher");
+    this.maxBFrames = maxBFrames;
+  }
+
+  public int getMaxBFrames() {
+    return maxBFrames;
+  }
+
   public void forceBt709Color(boolean enabled) {
     if (prepared) throw new IllegalStateException("Encoder already prepared, this must be called before prepareVideo");
     this.forceBt709Color = enabled;
@@ -533,7 +552,8 @@ public class VideoEncoder extends BaseEncoder implements GetCameraData {
       if (firstTimestamp == 0) firstTimestamp = bufferInfo.presentationTimeUs;
       bufferInfo.presentationTimeUs -= firstTimestamp;
     }
-    return checkValidTimeStamp(bufferInfo);
+    //B-frames are presented before the previous frames in decode order
+    return maxBFrames > 0 || checkValidTimeStamp(bufferInfo);
   }
 
   @Override
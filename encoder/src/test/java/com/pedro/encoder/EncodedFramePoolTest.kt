@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.encoder
+
+import com.pedro.common.frame.MediaFrame
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.ByteBuffer
+
+/**
+ * Created by pedro on 18/10/26.
+ */
+class EncodedFramePoolTest {
+
+  private fun frameOf(vararg bytes: Int): ByteBuffer {
+    return ByteBuffer.wrap(ByteArray(bytes.size) { bytes[it].toByte() })
+  }
+
+  private fun infoOf(size: Int) = MediaFrame.Info(0, size, 1000, true)
+
+  private fun ByteBuffer.toArray(): ByteArray = ByteArray(remaining()).also { duplicate().get(it) }
+
+  @Test
+  fun `GIVEN a frame shared by stream and record WHEN both read it THEN they get the same copy`() {
+    val pool = EncodedFramePool()
+    val source = frameOf(1, 2, 3, 4)
+    val frame = pool.lease(source, infoOf(4), MediaFrame.Type.VIDEO)
+    source.put(0, 9)
+    frame.retain()
+    frame.retain()
+    val stream = frame.newBuffer()
+    val record = frame.newBuffer()
+    frame.release()
+    assertArrayEquals(byteArrayOf(1, 2, 3, 4), stream.toArray())
+    assertArrayEquals(byteArrayOf(1, 2, 3, 4), record.toArray())
+    assertSame(stream.array(), record.array())
+    frame.release()
+    frame.release()
+    assertTrue(frame.isReleased())
+    assertEquals(0, pool.getStats().live)
+  }
+
+  @Test
+  fun `GIVEN a released frame WHEN lease other frame THEN the array is reused`() {
+    val pool = EncodedFramePool()
+    val first = pool.lease(frameOf(1, 2, 3), infoOf(3), MediaFrame.Type.AUDIO)
+    val array = first.newBuffer().array()
+    first.release()
+    assertTrue(pool.getStats().retainedBytes > 0)
+    val second = pool.lease(frameOf(4, 5, 6), infoOf(3), MediaFrame.Type.AUDIO)
+    assertSame(array, second.newBuffer().array())
+    assertArrayEquals(byteArrayOf(4, 5, 6), second.newBuffer().toArray())
+    second.release()
+  }
+
+  @Test
+  fun `GIVEN debug mode WHEN a frame is not released THEN it is reported as leak`() {
+    val pool = EncodedFramePool(debug = true)
+    val leaked = pool.lease(frameOf(1, 2), infoOf(2), MediaFrame.Type.VIDEO)
+    val released = pool.lease(frameOf(3, 4), infoOf(2), MediaFrame.Type.AUDIO)
+    released.release()
+    Thread.sleep(5)
+    val leaks = pool.checkLeaks(0)
+    assertEquals(1, leaks.size)
+    assertEquals(MediaFrame.Type.VIDEO, leaks[0].type)
+    assertEquals(1, pool.getStats().live)
+    leaked.release()
+    assertTrue(pool.checkLeaks(0).isEmpty())
+  }
+
+  @Test
+  fun `GIVEN debug mode WHEN a frame is used after release THEN it fails and the data is poisoned`() {
+    val pool = EncodedFramePool(debug = true)
+    val frame = pool.lease(frameOf(1, 2, 3), infoOf(3), MediaFrame.Type.VIDEO)
+    val kept = frame.newBuffer()
+    frame.release()
+    assertArrayEquals(ByteArray(3) { EncodedFramePool.POISON }, kept.toArray())
+    assertTrue(runCatching { frame.newBuffer() }.isFailure)
+    assertTrue(runCatching { frame.retain() }.isFailure)
+    val next = pool.lease(frameOf(1, 2, 3), infoOf(3), MediaFrame.Type.VIDEO)
+    assertNotSame(kept.array(), next.newBuffer().array())
+    assertFalse(next.isReleased())
+    next.release()
+  }
+}
@@ -29,8 +29,14 @@ import androidx.annotation.RequiresApi
 import com.pedro.common.AudioCodec
 import com.pedro.common.TimeUtils
 import com.pedro.common.VideoCodec
+import com.pedro.common.frame.DtsGenerator
+import com.pedro.common.frame.MediaFrame
+import com.pedro.common.frame.SharedFrame
+import com.pedro.common.toMediaCodecBufferInfo
+import com.pedro.common.toMediaFrameInfo
 import com.pedro.common.tryClear
 import com.pedro.encoder.CodecErrorCallback
+import com.pedro.encoder.EncodedFramePool
 import com.pedro.encoder.Frame
 import com.pedro.encoder.TimestampMode
 import com.pedro.encoder.audio.AudioEncoder
@@ -83,6 +89,11 @@ abstract class StreamBase(
   private val glInterface = GlStreamInterface(context)
   //video/audio record
   private var recordController: RecordController = AndroidMuxerRecordController()
+  //encoded frames copied once and shared by the stream client and the record controller
+  private val framePool = EncodedFramePool()
+  //decode timestamps of the video frames, different to the presentation timestamps with B-frames
+  private var dtsGenerator = DtsGenerator()
+  private var recordDtsGenerator = DtsGenerator()
   private val fpsListener = FpsListener()
   var isStreaming = false
     private set
@@ -149,6 +160,8 @@ abstract class StreamBase(
       }
       val result = videoEncoder.prepareVideoEncoder(width, height, fps, bitrate, rotation,
         iFrameInterval, FormatVideoEncoder.SURFACE, profile, level)
+      dtsGenerator = DtsGenerator(videoEncoder.maxBFrames, 1_000_000L / fps)
+      recordDtsGenerator = DtsGenerator(videoEncoderRecord.maxBFrames, 1_000_000L / fps)
       forceFpsLimit(true)
       return result
     }
@@ -444,6 +457,20 @@ abstract class StreamBase(
     audioSource = source
   }
 
+  /**
+   * Allow the video encoder to produce up to [maxBFrames] B-frames between reference frames, 0 to
+   * disable (default). Only supported by some encoders on API 29+.
+   * Decode timestamps are calculated from the encoder output and sent with the composition offset
+   * in RTMP and PTS+DTS in SRT and UDP. RTP uses the presentation timestamp.
+   * Presentation timestamps of video and audio are delayed [maxBFrames] frames so the first
+   * decode timestamps are not before the first presentation timestamp.
+   * Must be called before prepareVideo.
+   */
+  fun setMaxBFrames(maxBFrames: Int) {
+    videoEncoder.setMaxBFrames(maxBFrames)
+    videoEncoderRecord.setMaxBFrames(maxBFrames)
+  }
+
   /**
    * Set the mode to calculate timestamp. By default CLOCK.
    * Must be called before startRecord/startStream or it will be ignored.
@@ -502,6 +529,22 @@ abstract class StreamBase(
     }
   }
 
+  /**
+   * Track each encoded frame shared by stream and record to find frames never released or used
+   * after release. Disables the buffer pool, use it only to debug custom senders or record
+   * controllers.
+   */
+  fun setFrameLeaseDebug(enabled: Boolean) {
+    framePool.debug = enabled
+  }
+
+  /**
+   * @return frames not released after [maxAge] millis, only with frame lease debug enabled
+   */
+  fun checkFrameLeaks(maxAge: Long): List<EncodedFramePool.Lease> = framePool.checkLeaks(maxAge)
+
+  fun getFramePoolStats(): EncodedFramePool.Stats = framePool.getStats()
+
   /**
    * return surface texture that can be used to render and encode custom data. Return null if video not prepared.
    * start and stop rendering must be managed by the user.
@@ -528,6 +571,8 @@ abstract class StreamBase(
     }
     audioSource.start(getMicrophoneData)
     val startTs = TimeUtils.getCurrentTimeMicro()
+    dtsGenerator.reset()
+    recordDtsGenerator.reset()
     videoEncoder.start(startTs)
     if (differentRecordResolution) videoEncoderRecord.start(startTs)
     audioEncoder.start(startTs)
@@ -559,6 +604,7 @@ abstract class StreamBase(
     videoSource.release()
     audioSource.release()
     if (glInterface.isRunning) glInterface.surfaceTexture.tryClear()
+    framePool.clear()
   }
 
   /**
@@ -597,8 +643,15 @@ abstract class StreamBase(
 
   private val getAacData: GetAudioData = object : GetAudioData {
     override fun getAudioData(audioBuffer: ByteBuffer, info: MediaCodec.BufferInfo) {
-      getAudioDataImp(audioBuffer, info)
-      recordController.recordAudio(audioBuffer, info)
+      //same delay than video presentation timestamps to keep the sync with B-frames
+      val ptsOffset = dtsGenerator.ptsOffset
+      val frame = framePool.lease(audioBuffer, info.toMediaFrameInfo(info.presentationTimeUs + ptsOffset, ptsOffset), MediaFrame.Type.AUDIO)
+      try {
+        getAudioDataImp(frame)
+        recordController.recordAudio(frame)
+      } finally {
+        frame.release()
+      }
     }
 
     override fun onAudioFormat(mediaFormat: MediaFormat) {
@@ -613,8 +666,14 @@ abstract class StreamBase(
 
     override fun getVideoData(videoBuffer: ByteBuffer, info: MediaCodec.BufferInfo) {
       fpsListener.calculateFps()
-      if (!differentRecordResolution) recordController.recordVideo(videoBuffer, info)
-      getVideoDataImp(videoBuffer, info)
+      val dts = dtsGenerator.getDts(info.presentationTimeUs)
+      val frame = framePool.lease(videoBuffer, info.toMediaFrameInfo(dts, dtsGenerator.ptsOffset), MediaFrame.Type.VIDEO)
+      try {
+        if (!differentRecordResolution) recordController.recordVideo(frame)
+        getVideoDataImp(frame)
+      } finally {
+        frame.release()
+      }
     }
 
     override fun onVideoFormat(mediaFormat: MediaFormat) {
@@ -629,7 +688,13 @@ abstract class StreamBase(
     }
 
     override fun getVideoData(videoBuffer: ByteBuffer, info: MediaCodec.BufferInfo) {
-      recordController.recordVideo(videoBuffer, info)
+      val dts = recordDtsGenerator.getDts(info.presentationTimeUs)
+      val frame = framePool.lease(videoBuffer, info.toMediaFrameInfo(dts, recordDtsGenerator.ptsOffset), MediaFrame.Type.VIDEO)
+      try {
+        recordController.recordVideo(frame)
+      } finally {
+        frame.release()
+      }
     }
 
     override fun onVideoFormat(mediaFormat: MediaFormat) {
@@ -644,6 +709,18 @@ abstract class StreamBase(
   protected abstract fun getVideoDataImp(videoBuffer: ByteBuffer, info: MediaCodec.BufferInfo)
   protected abstract fun getAudioDataImp(audioBuffer: ByteBuffer, info: MediaCodec.BufferInfo)
 
+  /**
+   * Send an encoded frame shared with the record controller. Override it to queue the frame in
+   * the client without copy, by default it is copied with [getVideoDataImp].
+   */
+  protected open fun getVideoDataImp(frame: SharedFrame) {
+    getVideoDataImp(frame.newBuffer(), frame.info.toMediaCodecBufferInfo())
+  }
+
+  protected open fun getAudioDataImp(frame: SharedFrame) {
+    getAudioDataImp(frame.newBuffer(), frame.info.toMediaCodecBufferInfo())
+  }
+
   abstract fun getStreamClient(): StreamBaseClient
 
   /**
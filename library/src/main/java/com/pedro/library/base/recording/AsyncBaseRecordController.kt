@@ -23,6 +23,7 @@ import com.pedro.common.TimeUtils.getCurrentTimeMicro
 import com.pedro.common.VideoCodec
 import com.pedro.common.clone
 import com.pedro.common.frame.MediaFrame
+import com.pedro.common.frame.SharedFrame
 import com.pedro.common.toMediaFrameInfo
 import com.pedro.library.base.recording.RecordController.RecordTracks
 import com.pedro.library.base.recording.RecordController.RequestKeyFrame
@@ -34,6 +35,7 @@ import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.runBlocking
 import java.io.FileDescriptor
+import java.io.IOException
 import java.nio.ByteBuffer
 import kotlin.concurrent.Volatile
 import kotlin.math.max
@@ -64,6 +66,9 @@ abstract class AsyncBaseRecordController : RecordController {
   private var muxerChannel: Channel<MediaFrame>? = null
   private var muxerJob: Job? = null
   private val bufferPool = BufferPool()
+  private var sinkConfig = FileChannelRecordSink.Config()
+  @Volatile
+  protected var sink: RecordSink? = null
 
   override fun setRequestKeyFrame(requestKeyFrame: RequestKeyFrame?) {
     this.myRequestKeyFrame = requestKeyFrame
@@ -82,6 +87,19 @@ abstract class AsyncBaseRecordController : RecordController {
     this.audioCodec = audioCodec
   }
 
+  /**
+   * Configure the blocks, flush interval, sync interval and preallocation of the file written by
+   * the next record.
+   */
+  fun setSinkConfig(config: FileChannelRecordSink.Config) {
+    sinkConfig = config
+  }
+
+  /**
+   * @return write latency and backlog of the file in use or null if not recording
+   */
+  fun getSinkStats(): RecordSink.Stats? = sink?.getStats()
+
   override fun getVideoCodec(): VideoCodec = videoCodec
   override fun getAudioCodec(): AudioCodec = audioCodec
   override fun isRunning(): Boolean = recordStatus == RecordController.Status.STARTED || recordStatus == RecordController.Status.RECORDING || recordStatus == RecordController.Status.RESUMED || recordStatus == RecordController.Status.PAUSED
@@ -122,9 +140,11 @@ abstract class AsyncBaseRecordController : RecordController {
   }
 
   private fun updateFormat(oldInfo: MediaFrame.Info): MediaFrame.Info {
-    if (startTs <= 0) startTs = oldInfo.timestamp
+    //start in the decode timestamp, with B-frames it is before the presentation timestamp
+    if (startTs <= 0) startTs = minOf(oldInfo.dts, oldInfo.timestamp)
     val ts = max(0, oldInfo.timestamp - startTs - pauseTime)
-    return oldInfo.copy(timestamp = ts)
+    val dts = max(0, oldInfo.dts - startTs - pauseTime)
+    return oldInfo.copy(timestamp = ts, dts = minOf(dts, ts))
   }
 
   override fun recordVideo(videoBuffer: ByteBuffer, videoInfo: MediaCodec.BufferInfo) {
@@ -135,6 +155,17 @@ abstract class AsyncBaseRecordController : RecordController {
     sendFrame(audioBuffer, audioInfo, MediaFrame.Type.AUDIO)
   }
 
+  /**
+   * Queue the shared frame without copy, a reference is retained until it is written.
+   */
+  override fun recordVideo(frame: SharedFrame) {
+    sendSharedFrame(frame)
+  }
+
+  override fun recordAudio(frame: SharedFrame) {
+    sendSharedFrame(frame)
+  }
+
   private fun sendFrame(buffer: ByteBuffer, info: MediaCodec.BufferInfo, type: MediaFrame.Type) {
     if (recordStatus == RecordController.Status.STOPPED) return
     val channel = muxerChannel ?: return
@@ -144,6 +175,20 @@ abstract class AsyncBaseRecordController : RecordController {
     if (channel.trySend(frame).isFailure) bufferPool.release(frame.data)
   }
 
+  private fun sendSharedFrame(sharedFrame: SharedFrame) {
+    if (recordStatus == RecordController.Status.STOPPED) return
+    val channel = muxerChannel ?: return
+    val i = updateFormat(sharedFrame.info)
+    sharedFrame.retain()
+    val frame = MediaFrame(sharedFrame.newBuffer(), i, sharedFrame.type, sharedFrame)
+    if (channel.trySend(frame).isFailure) sharedFrame.release()
+  }
+
+  private fun release(frame: MediaFrame) {
+    val shared = frame.shared
+    if (shared != null) shared.release() else bufferPool.release(frame.data)
+  }
+
   override fun startRecord(
     fd: FileDescriptor,
     listener: RecordController.Listener?,
@@ -184,7 +229,7 @@ abstract class AsyncBaseRecordController : RecordController {
         try {
           onWriteFrame(frame)
         } finally {
-          bufferPool.release(frame.data)
+          release(frame)
           onFrameRecycled()
         }
       }
@@ -201,10 +246,16 @@ abstract class AsyncBaseRecordController : RecordController {
   }
 
   override fun stopRecord() {
-    muxerChannel?.close()
+    val channel = muxerChannel
+    channel?.close()
     muxerChannel = null
     muxerJob?.cancel()
     runBlocking { muxerJob?.join() }
+    //frames not written, shared frames must be released to not retain it forever
+    while (channel != null) {
+      val frame = channel.tryReceive().getOrNull() ?: break
+      release(frame)
+    }
     bufferPool.clear()
     recordStatus = RecordController.Status.STOPPED
     clearTimestamp()
@@ -219,6 +270,29 @@ abstract class AsyncBaseRecordController : RecordController {
     startTs = 0
   }
 
+  @Throws(IOException::class)
+  protected fun openSink(path: String): RecordSink {
+    return FileChannelRecordSink.open(path, sinkConfig).also { sink = it }
+  }
+
+  @Throws(IOException::class)
+  protected fun openSink(fd: FileDescriptor): RecordSink {
+    return FileChannelRecordSink.open(fd, sinkConfig).also { sink = it }
+  }
+
+  /**
+   * Write the pending bytes and close the sink, reporting a failure to the listener.
+   */
+  protected fun closeSink() {
+    val sink = sink ?: return
+    this.sink = null
+    try {
+      sink.close()
+    } catch (e: IOException) {
+      listener?.onError(e)
+    }
+  }
+
   abstract fun startRecordImp(fd: FileDescriptor, listener: RecordController.Listener?, tracks: RecordTracks)
   abstract fun startRecordImp(path: String, listener: RecordController.Listener?, tracks: RecordTracks)
   abstract fun stopRecordImp()
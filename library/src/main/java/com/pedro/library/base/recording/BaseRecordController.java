@@ -23,7 +23,9 @@ import androidx.annotation.NonNull;
 import com.pedro.common.AudioCodec;
 import com.pedro.common.BitrateManager;
 import com.pedro.common.TimeUtils;
+import com.pedro.common.ExtensionsKt;
 import com.pedro.common.VideoCodec;
+import com.pedro.common.frame.SharedFrame;
 import com.pedro.rtsp.utils.RtpConstants;
 
 import java.nio.ByteBuffer;
@@ -86,6 +88,16 @@ public abstract class BaseRecordController implements RecordController {
     this.audioCodec = audioCodec;
   }
 
+  @Override
+  public void recordVideo(@NonNull SharedFrame frame) {
+    recordVideo(frame.newBuffer(), ExtensionsKt.toMediaCodecBufferInfo(frame.getInfo()));
+  }
+
+  @Override
+  public void recordAudio(@NonNull SharedFrame frame) {
+    recordAudio(frame.newBuffer(), ExtensionsKt.toMediaCodecBufferInfo(frame.getInfo()));
+  }
+
   @Override
   public boolean isRunning() {
     return status == Status.STARTED
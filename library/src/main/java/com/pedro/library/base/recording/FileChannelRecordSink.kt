@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.library.base.recording
+
+import android.os.Build
+import android.system.ErrnoException
+import android.system.Os
+import com.pedro.common.TimeUtils
+import java.io.FileDescriptor
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import kotlin.concurrent.Volatile
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Sink that coalesces small muxer writes into large blocks written through a FileChannel.
+ *
+ * Bytes are copied into a direct buffer and only written when the block is full or the flush
+ * interval expires. An interval flush only writes the aligned part of the block and keeps the
+ * tail, so the writes always start at an aligned file position. File space is preallocated ahead
+ * of the writes when supported and the file is truncated to the real size on close.
+ * The file is synced every sync interval and on close.
+ *
+ * @param fd descriptor of the channel, used to preallocate. Null disables the preallocation
+ * @param timeProvider millis used to check the flush and sync intervals
+ */
+class FileChannelRecordSink(
+  private val channel: FileChannel,
+  private val fd: FileDescriptor?,
+  private val config: Config = Config(),
+  private val timeProvider: () -> Long = { TimeUtils.getCurrentTimeMillis() }
+): RecordSink() {
+
+  /**
+   * @param blockSize bytes coalesced before a write, rounded up to [ALIGNMENT]
+   * @param flushInterval max millis that bytes wait in the block, 0 to wait until the block is full
+   * @param syncInterval millis between syncs to the storage device, 0 to sync only on close
+   * @param preallocateSize bytes reserved each time the written data reach the reserved space,
+   * 0 to disable
+   */
+  data class Config(
+    val blockSize: Int = 256 * 1024,
+    val flushInterval: Long = 500,
+    val syncInterval: Long = 5000,
+    val preallocateSize: Long = 8 * 1024 * 1024
+  )
+
+  companion object {
+    const val ALIGNMENT = 4096
+
+    @Throws(IOException::class)
+    fun open(path: String, config: Config = Config()): FileChannelRecordSink {
+      val file = RandomAccessFile(path, "rw")
+      try {
+        //same behaviour as FileOutputStream, overwrite the old file
+        file.setLength(0)
+      } catch (e: IOException) {
+        file.close()
+        throw e
+      }
+      return FileChannelRecordSink(file.channel, file.fd, config)
+    }
+
+    @Throws(IOException::class)
+    fun open(fd: FileDescriptor, config: Config = Config()): FileChannelRecordSink {
+      return FileChannelRecordSink(FileOutputStream(fd).channel, fd, config)
+    }
+  }
+
+  private val block = ByteBuffer.allocateDirect(
+    (maxOf(config.blockSize, 1) + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT
+  )
+  private val singleByte = ByteArray(1)
+  private var position = channel.position()
+  private var allocated = position
+  private var canPreallocate = fd != null && config.preallocateSize > 0
+  private var lastFlush = timeProvider()
+  private var lastSync = lastFlush
+  private var failed = false
+  private var closed = false
+  //stats
+  @Volatile private var pendingBytes = 0
+  @Volatile private var bytesWritten = 0L
+  @Volatile private var syncedBytes = 0L
+  @Volatile private var writes = 0L
+  @Volatile private var syncs = 0L
+  @Volatile private var lastWriteLatency = 0L
+  @Volatile private var maxWriteLatency = 0L
+  @Volatile private var totalWriteLatency = 0L
+
+  override fun write(b: Int) {
+    singleByte[0] = b.toByte()
+    write(singleByte, 0, 1)
+  }
+
+  override fun write(b: ByteArray, off: Int, len: Int) {
+    if (failed || closed) return
+    var offset = off
+    var remaining = len
+    runCatchingFailure {
+      while (remaining > 0) {
+        val size = minOf(remaining, block.remaining())
+        block.put(b, offset, size)
+        offset += size
+        remaining -= size
+        if (!block.hasRemaining()) writeBlock(true)
+      }
+      onWritten()
+    }
+  }
+
+  override fun write(buffer: ByteBuffer) {
+    if (failed || closed) {
+      buffer.position(buffer.limit())
+      return
+    }
+    runCatchingFailure {
+      while (buffer.hasRemaining()) {
+        val size = minOf(buffer.remaining(), block.remaining())
+        val limit = buffer.limit()
+        buffer.limit(buffer.position() + size)
+        block.put(buffer)
+        buffer.limit(limit)
+        if (!block.hasRemaining()) writeBlock(true)
+      }
+      onWritten()
+    }
+  }
+
+  /**
+   * Write all the pending bytes, even if the block is not aligned.
+   */
+  override fun flush() {
+    if (failed || closed) return
+    runCatchingFailure { writeBlock(true) }
+  }
+
+  override fun close() {
+    if (closed) return
+    closed = true
+    try {
+      if (!failed) {
+        writeBlock(true)
+        if (allocated > position) channel.truncate(position)
+        sync()
+      }
+    } finally {
+      channel.close()
+    }
+  }
+
+  override fun getStats(): Stats {
+    val writes = writes
+    val bytesWritten = bytesWritten
+    return Stats(
+      bytesWritten = bytesWritten,
+      pendingBytes = pendingBytes,
+      unsyncedBytes = bytesWritten - syncedBytes,
+      writes = writes,
+      syncs = syncs,
+      lastWriteLatencyUs = lastWriteLatency,
+      maxWriteLatencyUs = maxWriteLatency,
+      averageWriteLatencyUs = if (writes == 0L) 0 else totalWriteLatency / writes
+    )
+  }
+
+  private fun onWritten() {
+    val now = timeProvider()
+    if (config.flushInterval > 0 && now - lastFlush >= config.flushInterval) {
+      writeBlock(false)
+    }
+    if (config.syncInterval > 0 && now - lastSync >= config.syncInterval) {
+      sync()
+    }
+    pendingBytes = block.position()
+  }
+
+  /**
+   * Write the block to the channel. If not [all], only the aligned part is written and the
+   * tail is moved to the start of the block.
+   */
+  private fun writeBlock(all: Boolean) {
+    lastFlush = timeProvider()
+    val size = block.position()
+    val length = if (all) size else size / ALIGNMENT * ALIGNMENT
+    if (length == 0) return
+    preallocate(position + length)
+    block.flip()
+    block.limit(length)
+    val start = TimeUtils.getCurrentTimeMicro()
+    while (block.hasRemaining()) channel.write(block)
+    val latency = TimeUtils.getCurrentTimeMicro() - start
+    block.limit(size)
+    block.compact()
+    position += length
+    bytesWritten += length
+    writes++
+    lastWriteLatency = latency
+    totalWriteLatency += latency
+    if (latency > maxWriteLatency) maxWriteLatency = latency
+    pendingBytes = block.position()
+  }
+
+  private fun sync() {
+    lastSync = timeProvider()
+    if (syncedBytes == bytesWritten) return
+    channel.force(false)
+    syncedBytes = bytesWritten
+    syncs++
+  }
+
+  private fun preallocate(end: Long) {
+    if (!canPreallocate || end <= allocated) return
+    val fd = fd
+    if (fd == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+      canPreallocate = false
+      return
+    }
+    val length = maxOf(config.preallocateSize, end - allocated)
+    try {
+      Os.posix_fallocate(fd, allocated, length)
+      allocated += length
+    } catch (_: ErrnoException) {
+      //not supported by the file system or not a regular file, write without it
+      canPreallocate = false
+    }
+  }
+
+  private inline fun runCatchingFailure(action: () -> Unit) {
+    try {
+      action()
+    } catch (e: IOException) {
+      failed = true
+      pendingBytes = 0
+      throw e
+    }
+  }
+}
@@ -21,6 +21,8 @@ import android.util.Log
 import com.pedro.common.AudioCodec
 import com.pedro.common.BitrateChecker
 import com.pedro.common.VideoCodec
+import com.pedro.common.frame.SharedFrame
+import com.pedro.common.toMediaCodecBufferInfo
 import java.io.FileDescriptor
 import java.io.IOException
 import java.nio.ByteBuffer
@@ -33,6 +35,18 @@ interface RecordController {
   fun stopRecord()
   fun recordVideo(videoBuffer: ByteBuffer, videoInfo: MediaCodec.BufferInfo)
   fun recordAudio(audioBuffer: ByteBuffer, audioInfo: MediaCodec.BufferInfo)
+
+  /**
+   * Record a frame shared with the stream sender. Controllers that queue frames should retain
+   * it instead of copy it, by default it is copied like [recordVideo].
+   */
+  fun recordVideo(frame: SharedFrame) {
+    recordVideo(frame.newBuffer(), frame.info.toMediaCodecBufferInfo())
+  }
+
+  fun recordAudio(frame: SharedFrame) {
+    recordAudio(frame.newBuffer(), frame.info.toMediaCodecBufferInfo())
+  }
   fun setVideoFormat(videoFormat: MediaFormat)
   fun setAudioFormat(audioFormat: MediaFormat)
   fun resetFormats()
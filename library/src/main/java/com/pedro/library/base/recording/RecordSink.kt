@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.library.base.recording
+
+import java.io.IOException
+import java.io.OutputStream
+import java.nio.ByteBuffer
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Destination of the bytes produced by a muxer record controller.
+ *
+ * A sink is an OutputStream so muxers that already serialize into a stream can write to it
+ * directly. It is written only from the muxer coroutine; getStats can be called from any thread.
+ *
+ * Once a write fails, the IOException is thrown a single time. Later writes are dropped, so the
+ * controller reports the error once instead of once per packet.
+ */
+abstract class RecordSink: OutputStream() {
+
+  /**
+   * @param bytesWritten bytes already handed to the storage
+   * @param pendingBytes bytes accepted by the sink and still waiting to be written
+   * @param unsyncedBytes bytes written but not forced to the storage device yet
+   * @param writes write calls done to the storage
+   * @param syncs sync calls done to the storage
+   * @param lastWriteLatencyUs duration of the last write call
+   * @param maxWriteLatencyUs longest write call duration
+   * @param averageWriteLatencyUs mean write call duration
+   */
+  data class Stats(
+    val bytesWritten: Long,
+    val pendingBytes: Int,
+    val unsyncedBytes: Long,
+    val writes: Long,
+    val syncs: Long,
+    val lastWriteLatencyUs: Long,
+    val maxWriteLatencyUs: Long,
+    val averageWriteLatencyUs: Long
+  )
+
+  /**
+   * Write the remaining bytes of [buffer], consuming them.
+   */
+  @Throws(IOException::class)
+  abstract fun write(buffer: ByteBuffer)
+
+  abstract fun getStats(): Stats
+}
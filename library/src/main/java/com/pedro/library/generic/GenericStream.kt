@@ -23,6 +23,7 @@ import androidx.annotation.RequiresApi
 import com.pedro.common.AudioCodec
 import com.pedro.common.ConnectChecker
 import com.pedro.common.VideoCodec
+import com.pedro.common.frame.SharedFrame
 import com.pedro.common.onMainThreadHandler
 import com.pedro.encoder.input.sources.audio.AudioSource
 import com.pedro.encoder.input.sources.audio.MicrophoneSource
@@ -149,6 +150,16 @@ class GenericStream(
     }
   }
 
+  override fun getAudioDataImp(frame: SharedFrame) {
+    when (connectedType) {
+      ClientType.RTMP -> rtmpClient.sendAudio(frame)
+      ClientType.RTSP -> rtspClient.sendAudio(frame)
+      ClientType.SRT -> srtClient.sendAudio(frame)
+      ClientType.UDP -> udpClient.sendAudio(frame)
+      else -> {}
+    }
+  }
+
   override fun onVideoInfoImp(sps: ByteBuffer, pps: ByteBuffer?, vps: ByteBuffer?) {
     rtmpClient.setVideoInfo(sps, pps, vps)
     rtspClient.setVideoInfo(sps, pps, vps)
@@ -165,4 +176,14 @@ class GenericStream(
       else -> {}
     }
   }
+
+  override fun getVideoDataImp(frame: SharedFrame) {
+    when (connectedType) {
+      ClientType.RTMP -> rtmpClient.sendVideo(frame)
+      ClientType.RTSP -> rtspClient.sendVideo(frame)
+      ClientType.SRT -> srtClient.sendVideo(frame)
+      ClientType.UDP -> udpClient.sendVideo(frame)
+      else -> {}
+    }
+  }
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.library.multiple
+
+import android.media.MediaCodec
+import com.pedro.common.BufferPool
+import com.pedro.common.frame.MediaFrame
+import com.pedro.common.frame.SharedFrame
+import com.pedro.common.toMediaFrameInfo
+import java.nio.ByteBuffer
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Copy each encoded frame once and share it with all clients of a multi stream.
+ *
+ * Without it each client copies the frame in its own pool, so N destinations means N copies of
+ * each frame and N pools retaining arrays. Each client queue holds a reference of the shared
+ * frame instead, and the array returns to the shared pool when the last client sent or discarded
+ * it. Queues, drop policy and stats are still independent per client.
+ */
+class FrameDistributor {
+
+    private val bufferPool = BufferPool(maxBuffersPerSizeClass = 16)
+
+    /**
+     * Copy [buffer] in a SharedFrame and hand it to the clients in [send].
+     */
+    fun distribute(
+        buffer: ByteBuffer, info: MediaCodec.BufferInfo, type: MediaFrame.Type,
+        send: (SharedFrame) -> Unit
+    ) {
+        val length = buffer.limit()
+        val data = bufferPool.acquire(length)
+        val source = buffer.duplicate()
+        source.position(0)
+        source.get(data, 0, length)
+        val frame = SharedFrame(data, length, info.toMediaFrameInfo(), type, bufferPool)
+        try {
+            send(frame)
+        } finally {
+            //the distributor reference, the frame is kept while a client queue has it
+            frame.release()
+        }
+    }
+
+    fun getRetainedBytes(): Long = bufferPool.getRetainedBytes()
+
+    fun clear() {
+        bufferPool.clear()
+    }
+}
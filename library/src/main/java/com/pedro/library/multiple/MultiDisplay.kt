@@ -22,6 +22,7 @@ import androidx.annotation.RequiresApi
 import com.pedro.common.AudioCodec
 import com.pedro.common.ConnectChecker
 import com.pedro.common.VideoCodec
+import com.pedro.common.frame.MediaFrame
 import com.pedro.library.base.DisplayBase
 import com.pedro.library.util.streamclient.RtmpStreamClient
 import com.pedro.library.util.streamclient.RtspStreamClient
@@ -90,6 +91,7 @@ class MultiDisplay(
     private val rtspStreamClients = ArrayList<RtspStreamClient>()
     private val srtStreamClients = ArrayList<SrtStreamClient>()
     private val udpStreamClients = ArrayList<UdpStreamClient>()
+    private val frameDistributor = FrameDistributor()
 
     init {
         if (connectCheckerRtmpList.isNullOrEmpty() && connectCheckerRtspList.isNullOrEmpty()
@@ -237,10 +239,12 @@ class MultiDisplay(
     }
 
     override fun getAudioDataImp(audioBuffer: ByteBuffer, info: MediaCodec.BufferInfo) {
-        for (rtmpClient in rtmpClients) rtmpClient.sendAudio(audioBuffer.duplicate(), info)
-        for (rtspClient in rtspClients) rtspClient.sendAudio(audioBuffer.duplicate(), info)
-        for (srtClient in srtClients) srtClient.sendAudio(audioBuffer.duplicate(), info)
-        for (udpClient in udpClients) udpClient.sendAudio(audioBuffer.duplicate(), info)
+        frameDistributor.distribute(audioBuffer, info, MediaFrame.Type.AUDIO) { frame ->
+            for (rtmpClient in rtmpClients) rtmpClient.sendAudio(frame)
+            for (rtspClient in rtspClients) rtspClient.sendAudio(frame)
+            for (srtClient in srtClients) srtClient.sendAudio(frame)
+            for (udpClient in udpClients) udpClient.sendAudio(frame)
+        }
     }
 
     override fun onVideoInfoImp(sps: ByteBuffer, pps: ByteBuffer?, vps: ByteBuffer?) {
@@ -251,9 +255,11 @@ class MultiDisplay(
     }
 
     override fun getVideoDataImp(videoBuffer: ByteBuffer, info: MediaCodec.BufferInfo) {
-        for (rtmpClient in rtmpClients) rtmpClient.sendVideo(videoBuffer.duplicate(), info)
-        for (rtspClient in rtspClients) rtspClient.sendVideo(videoBuffer.duplicate(), info)
-        for (srtClient in srtClients) srtClient.sendVideo(videoBuffer.duplicate(), info)
-        for (udpClient in udpClients) udpClient.sendVideo(videoBuffer.duplicate(), info)
+        frameDistributor.distribute(videoBuffer, info, MediaFrame.Type.VIDEO) { frame ->
+            for (rtmpClient in rtmpClients) rtmpClient.sendVideo(frame)
+            for (rtspClient in rtspClients) rtspClient.sendVideo(frame)
+            for (srtClient in srtClients) srtClient.sendVideo(frame)
+            for (udpClient in udpClients) udpClient.sendVideo(frame)
+        }
     }
 }
@@ -22,6 +22,7 @@ import androidx.annotation.RequiresApi
 import com.pedro.common.AudioCodec
 import com.pedro.common.ConnectChecker
 import com.pedro.common.VideoCodec
+import com.pedro.common.frame.MediaFrame
 import com.pedro.encoder.input.decoder.AudioDecoderInterface
 import com.pedro.encoder.input.decoder.VideoDecoderInterface
 import com.pedro.library.base.FromFileBase
@@ -87,6 +88,7 @@ class MultiFromFile: FromFileBase {
     private val rtspStreamClients = ArrayList<RtspStreamClient>()
     private val srtStreamClients = ArrayList<SrtStreamClient>()
     private val udpStreamClients = ArrayList<UdpStreamClient>()
+    private val frameDistributor = FrameDistributor()
 
     constructor(
         openGlView: OpenGlView,
@@ -274,10 +276,12 @@ class MultiFromFile: FromFileBase {
     }
 
     override fun getAudioDataImp(audioBuffer: ByteBuffer, info: MediaCodec.BufferInfo) {
-        for (rtmpClient in rtmpClients) rtmpClient.sendAudio(audioBuffer.duplicate(), info)
-        for (rtspClient in rtspClients) rtspClient.sendAudio(audioBuffer.duplicate(), info)
-        for (srtClient in srtClients) srtClient.sendAudio(audioBuffer.duplicate(), info)
-        for (udpClient in udpClients) udpClient.sendAudio(audioBuffer.duplicate(), info)
+        frameDistributor.distribute(audioBuffer, info, MediaFrame.Type.AUDIO) { frame ->
+            for (rtmpClient in rtmpClients) rtmpClient.sendAudio(frame)
+            for (rtspClient in rtspClients) rtspClient.sendAudio(frame)
+            for (srtClient in srtClients) srtClient.sendAudio(frame)
+            for (udpClient in udpClients) udpClient.sendAudio(frame)
+        }
     }
 
     override fun onVideoInfoImp(sps: ByteBuffer, pps: ByteBuffer?, vps: ByteBuffer?) {
@@ -288,9 +292,11 @@ class MultiFromFile: FromFileBase {
     }
 
     override fun getVideoDataImp(videoBuffer: ByteBuffer, info: MediaCodec.BufferInfo) {
-        for (rtmpClient in rtmpClients) rtmpClient.sendVideo(videoBuffer.duplicate(), info)
-        for (rtspClient in rtspClients) rtspClient.sendVideo(videoBuffer.duplicate(), info)
-        for (srtClient in srtClients) srtClient.sendVideo(videoBuffer.duplicate(), info)
-        for (udpClient in udpClients) udpClient.sendVideo(videoBuffer.duplicate(), info)
+        frameDistributor.distribute(videoBuffer, info, MediaFrame.Type.VIDEO) { frame ->
+            for (rtmpClient in rtmpClients) rtmpClient.sendVideo(frame)
+            for (rtspClient in rtspClients) rtspClient.sendVideo(frame)
+            for (srtClient in srtClients) srtClient.sendVideo(frame)
+            for (udpClient in udpClients) udpClient.sendVideo(frame)
+        }
     }
 }
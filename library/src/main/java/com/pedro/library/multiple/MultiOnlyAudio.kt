@@ -18,6 +18,7 @@ package com.pedro.library.multiple
 import android.media.MediaCodec
 import com.pedro.common.AudioCodec
 import com.pedro.common.ConnectChecker
+import com.pedro.common.frame.MediaFrame
 import com.pedro.library.base.OnlyAudioBase
 import com.pedro.library.util.streamclient.RtmpStreamClient
 import com.pedro.library.util.streamclient.RtspStreamClient
@@ -76,6 +77,7 @@ class MultiOnlyAudio(
     private val rtspStreamClients = ArrayList<RtspStreamClient>()
     private val srtStreamClients = ArrayList<SrtStreamClient>()
     private val udpStreamClients = ArrayList<UdpStreamClient>()
+    private val frameDistributor = FrameDistributor()
 
     init {
         if (connectCheckerRtmpList.isNullOrEmpty() && connectCheckerRtspList.isNullOrEmpty()
@@ -208,9 +210,11 @@ class MultiOnlyAudio(
     }
 
     override fun getAudioDataImp(audioBuffer: ByteBuffer, info: MediaCodec.BufferInfo) {
-        for (rtmpClient in rtmpClients) rtmpClient.sendAudio(audioBuffer.duplicate(), info)
-        for (rtspClient in rtspClients) rtspClient.sendAudio(audioBuffer.duplicate(), info)
-        for (srtClient in srtClients) srtClient.sendAudio(audioBuffer.duplicate(), info)
-        for (udpClient in udpClients) udpClient.sendAudio(audioBuffer.duplicate(), info)
+        frameDistributor.distribute(audioBuffer, info, MediaFrame.Type.AUDIO) { frame ->
+            for (rtmpClient in rtmpClients) rtmpClient.sendAudio(frame)
+            for (rtspClient in rtspClients) rtspClient.sendAudio(frame)
+            for (srtClient in srtClients) srtClient.sendAudio(frame)
+            for (udpClient in udpClients) udpClient.sendAudio(frame)
+        }
     }
 }
@@ -22,6 +22,7 @@ import androidx.annotation.RequiresApi
 import com.pedro.common.AudioCodec
 import com.pedro.common.ConnectChecker
 import com.pedro.common.VideoCodec
+import com.pedro.common.frame.SharedFrame
 import com.pedro.encoder.input.sources.audio.AudioSource
 import com.pedro.encoder.input.sources.audio.MicrophoneSource
 import com.pedro.encoder.input.sources.video.Camera2Source
@@ -244,6 +245,9 @@ class MultiStream(
         for (udpClient in udpClients) udpClient.setAudioInfo(sampleRate, isStereo)
     }
 
+    /**
+     * Not used, StreamBase always call getAudioDataImp(frame) that share the frame with the clients.
+     */
     override fun getAudioDataImp(audioBuffer: ByteBuffer, info: MediaCodec.BufferInfo) {
         for (rtmpClient in rtmpClients) rtmpClient.sendAudio(audioBuffer.duplicate(), info)
         for (rtspClient in rtspClients) rtspClient.sendAudio(audioBuffer.duplicate(), info)
@@ -251,6 +255,13 @@ class MultiStream(
         for (udpClient in udpClients) udpClient.sendAudio(audioBuffer.duplicate(), info)
     }
 
+    override fun getAudioDataImp(frame: SharedFrame) {
+        for (rtmpClient in rtmpClients) rtmpClient.sendAudio(frame)
+        for (rtspClient in rtspClients) rtspClient.sendAudio(frame)
+        for (srtClient in srtClients) srtClient.sendAudio(frame)
+        for (udpClient in udpClients) udpClient.sendAudio(frame)
+    }
+
     override fun onVideoInfoImp(sps: ByteBuffer, pps: ByteBuffer?, vps: ByteBuffer?) {
         for (rtmpClient in rtmpClients) rtmpClient.setVideoInfo(sps.duplicate(), pps?.duplicate(), vps?.duplicate())
         for (rtspClient in rtspClients) rtspClient.setVideoInfo(sps.duplicate(), pps?.duplicate(), vps?.duplicate())
@@ -258,10 +269,23 @@ class MultiStream(
         for (udpClient in udpClients) udpClient.setVideoInfo(sps.duplicate(), pps?.duplicate(), vps?.duplicate())
     }
 
+    /**
+     * Not used, StreamBase always call getVideoDataImp(frame) that share the frame with the clients.
+     */
     override fun getVideoDataImp(videoBuffer: ByteBuffer, info: MediaCodec.BufferInfo) {
         for (rtmpClient in rtmpClients) rtmpClient.sendVideo(videoBuffer.duplicate(), info)
         for (rtspClient in rtspClients) rtspClient.sendVideo(videoBuffer.duplicate(), info)
         for (srtClient in srtClients) srtClient.sendVideo(videoBuffer.duplicate(), info)
         for (udpClient in udpClients) udpClient.sendVideo(videoBuffer.duplicate(), info)
     }
+
+    /**
+     * The frame is already shared with the record controller, hand it to all clients.
+     */
+    override fun getVideoDataImp(frame: SharedFrame) {
+        for (rtmpClient in rtmpClients) rtmpClient.sendVideo(frame)
+        for (rtspClient in rtspClients) rtspClient.sendVideo(frame)
+        for (srtClient in srtClients) srtClient.sendVideo(frame)
+        for (udpClient in udpClients) udpClient.sendVideo(frame)
+    }
 }
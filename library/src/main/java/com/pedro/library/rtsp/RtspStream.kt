@@ -23,6 +23,7 @@ import androidx.annotation.RequiresApi
 import com.pedro.common.AudioCodec
 import com.pedro.common.ConnectChecker
 import com.pedro.common.VideoCodec
+import com.pedro.common.frame.SharedFrame
 import com.pedro.encoder.input.sources.audio.AudioSource
 import com.pedro.encoder.input.sources.audio.MicrophoneSource
 import com.pedro.encoder.input.sources.video.Camera2Source
@@ -88,4 +89,12 @@ class RtspStream(
   override fun getAudioDataImp(audioBuffer: ByteBuffer, info: MediaCodec.BufferInfo) {
     rtspClient.sendAudio(audioBuffer, info)
   }
+
+  override fun getVideoDataImp(frame: SharedFrame) {
+    rtspClient.sendVideo(frame)
+  }
+
+  override fun getAudioDataImp(frame: SharedFrame) {
+    rtspClient.sendAudio(frame)
+  }
 }
\ No newline at end of file
@@ -27,16 +27,13 @@ import com.pedro.library.base.recording.AsyncBaseRecordController
 import com.pedro.library.base.recording.RecordController
 import com.pedro.library.base.recording.RecordController.RecordTracks
 import java.io.FileDescriptor
-import java.io.FileOutputStream
 import java.io.IOException
-import java.io.OutputStream
 import java.nio.ByteBuffer
 
 /**
  * Muxer to record AAC files (used in only audio by default).
  */
 class AacMuxerRecordController : AsyncBaseRecordController() {
-  private var outputStream: OutputStream? = null
   private var sampleRate = -1
   private var channels = -1
 
@@ -48,7 +45,7 @@ class AacMuxerRecordController : AsyncBaseRecordController() {
     tracks: RecordTracks
   ) {
     require(tracks == RecordTracks.AUDIO) { "This record controller only support record audio" }
-    outputStream = FileOutputStream(path)
+    openSink(path)
     start()
   }
 
@@ -60,7 +57,7 @@ class AacMuxerRecordController : AsyncBaseRecordController() {
     tracks: RecordTracks
   ) {
     require(tracks == RecordTracks.AUDIO) { "This record controller only support record audio" }
-    outputStream = FileOutputStream(fd)
+    openSink(fd)
     start()
   }
 
@@ -77,12 +74,7 @@ class AacMuxerRecordController : AsyncBaseRecordController() {
   override fun stopRecordImp() {
     sampleRate = -1
     channels = -1
-    try {
-      outputStream?.close()
-    } catch (_: Exception) {
-    } finally {
-      outputStream = null
-    }
+    closeSink()
   }
 
   override suspend fun onWriteFrame(frame: MediaFrame) {
@@ -121,10 +113,10 @@ class AacMuxerRecordController : AsyncBaseRecordController() {
     try {
       if ((info.flags and MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != MediaCodec.BUFFER_FLAG_CODEC_CONFIG) {
         val header = createAdtsHeader(2, info.size - info.offset, sampleRate, channels).array()
-        outputStream?.write(header)
-        val data = ByteArray(byteBuffer.remaining())
-        byteBuffer.get(data)
-        outputStream?.write(data)
+        sink?.let {
+          it.write(header)
+          it.write(byteBuffer)
+        }
         bitrateManager?.calculateBitrate(info.size * 8L)
       }
     } catch (e: Exception) {
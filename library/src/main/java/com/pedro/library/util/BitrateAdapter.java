@@ -16,8 +16,18 @@
 
 package com.pedro.library.util;
 
+import com.pedro.common.StreamingStatsReport;
+import com.pedro.common.TimeUtils;
+import com.pedro.common.abr.AimdBitrateController;
+import com.pedro.common.abr.BitrateController;
+import com.pedro.common.abr.NetworkSample;
+
 /**
  * Created by pedro on 11/07/19.
+ *
+ * Adapt the encoder bitrate to the network. Use {@link #adaptBitrate(StreamingStatsReport)} with
+ * the reports received in ConnectChecker.onStreamingStats to combine queue delay, packet loss and
+ * RTT in a {@link BitrateController}.
  */
 public class BitrateAdapter {
 
@@ -26,15 +36,27 @@ public class BitrateAdapter {
   }
 
   private int maxBitrate;
+  private int minBitrate;
   private int oldBitrate;
   private int averageBitrate;
   private int cont;
   private final Listener listener;
+  private final BitrateController controller;
   private float decreaseRange = 0.8f; //20%
   private float increaseRange = 1.2f; //20%
+  private int audioBitrate;
+  private float overhead = 0.05f; //5%
 
   public BitrateAdapter(Listener listener) {
+    this(listener, new AimdBitrateController());
+  }
+
+  /**
+   * @param controller used by {@link #adaptBitrate(StreamingStatsReport)}
+   */
+  public BitrateAdapter(Listener listener, BitrateController controller) {
     this.listener = listener;
+    this.controller = controller;
     reset();
   }
 
@@ -42,8 +64,56 @@ public class BitrateAdapter {
     this.maxBitrate = bitrate;
     this.oldBitrate = bitrate;
     reset();
+    configureController();
+  }
+
+  /**
+   * @param bitrate min bitrate used by {@link #adaptBitrate(StreamingStatsReport)}. 10% of max
+   * bitrate by default.
+   */
+  public void setMinBitrate(int bitrate) {
+    this.minBitrate = bitrate;
+    configureController();
+  }
+
+  /**
+   * @param bitrate audio encoder bitrate in bits/s. Network estimations and the send rate of the
+   * reports measure all the tracks so it is subtracted to get the video bitrate. 0 by default.
+   */
+  public void setAudioBitrate(int bitrate) {
+    this.audioBitrate = Math.max(0, bitrate);
+  }
+
+  /**
+   * @param overhead in percent. Protocol headers (RTP, SRTP, TWCC extension, UDP/IP) included in
+   * network estimations and subtracted to get the video bitrate. 5% by default.
+   * valid values:
+   * 0 to 50
+   */
+  public void setOverhead(float overhead) {
+    if (overhead >= 0f && overhead <= 50f) {
+      this.overhead = overhead / 100f;
+    }
   }
 
+  /**
+   * Adapt bitrate on fly using the queue delay, packet loss and RTT of the report.
+   * The listener is only called if the bitrate changed.
+   */
+  public void adaptBitrate(StreamingStatsReport report) {
+    if (listener == null || maxBitrate == 0) return;
+    NetworkSample sample = NetworkSample.fromReport(TimeUtils.getCurrentTimeMillis(), report, audioBitrate);
+    int bitrate = (int) controller.onSample(sample);
+    if (bitrate != oldBitrate) {
+      oldBitrate = bitrate;
+      listener.onBitrateAdapted(bitrate);
+    }
+  }
+
+  /**
+   * @deprecated only use the send rate, use {@link #adaptBitrate(StreamingStatsReport)}.
+   */
+  @Deprecated
   public void adaptBitrate(long actualBitrate) {
     averageBitrate += actualBitrate;
     averageBitrate /= 2;
@@ -58,7 +128,10 @@ public class BitrateAdapter {
 
   /**
    * Adapt bitrate on fly based on queue state.
+   *
+   * @deprecated only use the send rate and queue usage, use {@link #adaptBitrate(StreamingStatsReport)}.
    */
+  @Deprecated
   public void adaptBitrate(long actualBitrate, boolean hasCongestion) {
     averageBitrate += actualBitrate;
     averageBitrate /= 2;
@@ -71,6 +144,39 @@ public class BitrateAdapter {
     }
   }
 
+  /**
+   * Adapt bitrate on fly to a bandwidth estimation already calculated by the protocol, like
+   * transport-wide congestion control in WebRTC. The estimation is not averaged.
+   * The audio bitrate (see {@link #setAudioBitrate(int)}) and the overhead are subtracted.
+   * WhipStreamClient.setBandwidthEstimation with a BitrateAdapter calls it with each estimation.
+   *
+   * @param estimatedBitrate bits/s available, including audio and protocol overhead.
+   */
+  public void adaptBitrateToEstimation(long estimatedBitrate) {
+    if (listener == null || maxBitrate == 0) return;
+    long videoBitrate = (long) (estimatedBitrate * (1f - overhead)) - audioBitrate;
+    oldBitrate = (int) Math.max(getMinBitrate(), Math.min(videoBitrate, maxBitrate));
+    listener.onBitrateAdapted(oldBitrate);
+  }
+
+  /**
+   * Adapt bitrate on fly to the packet loss reported by the server, like the fraction lost of
+   * RTCP receiver reports (StreamingStatsReport.receiverReports).
+   * Loss lower than 2% increases 8%, loss higher than 10% reduces by half of the loss and other
+   * values keep the bitrate. draft-ietf-rmcat-gcc-02 6
+   *
+   * @param fractionLost fraction (0-1) of packets lost since the previous report.
+   */
+  public void adaptBitrateToLoss(float fractionLost) {
+    if (listener == null || maxBitrate == 0) return;
+    if (fractionLost < 0.02f) {
+      oldBitrate = (int) Math.min(oldBitrate * 1.08f + 1000, maxBitrate);
+    } else if (fractionLost > 0.1f) {
+      oldBitrate = (int) (oldBitrate * (1f - 0.5f * Math.min(fractionLost, 1f)));
+    }
+    listener.onBitrateAdapted(oldBitrate);
+  }
+
   private int getBitrateAdapted(int bitrate) {
     if (bitrate >= maxBitrate) { //You have high speed and max bitrate. Keep max speed
       oldBitrate = maxBitrate;
@@ -100,6 +206,15 @@ public class BitrateAdapter {
     cont = 0;
   }
 
+  private int getMinBitrate() {
+    return minBitrate > 0 ? Math.min(minBitrate, maxBitrate) : maxBitrate / 10;
+  }
+
+  private void configureController() {
+    if (maxBitrate == 0) return;
+    controller.configure(maxBitrate, getMinBitrate(), maxBitrate);
+  }
+
   public float getDecreaseRange() {
     return decreaseRange;
   }
@@ -31,13 +31,12 @@ import com.pedro.rtmp.flv.video.packet.Vp8Packet
 import com.pedro.rtmp.flv.video.packet.Vp9Packet
 import java.io.ByteArrayOutputStream
 import java.io.FileDescriptor
-import java.io.FileOutputStream
+import java.io.IOException
 import java.io.OutputStream
 import java.nio.ByteBuffer
 
 class FlvMuxerRecordController: AsyncBaseRecordController() {
 
-    private var outputStream: OutputStream? = null
     private var videoPacket: BasePacket? = null
     private var audioPacket: BasePacket? = null
     //metadata config
@@ -49,12 +48,12 @@ class FlvMuxerRecordController: AsyncBaseRecordController() {
     private var sendInfo = false
 
     override fun startRecordImp(path: String, listener: RecordController.Listener?, tracks: RecordTracks) {
-        outputStream = FileOutputStream(path)
+        openSink(path)
         start(listener)
     }
 
     override fun startRecordImp(fd: FileDescriptor, listener: RecordController.Listener?, tracks: RecordTracks) {
-        outputStream = FileOutputStream(fd)
+        openSink(fd)
         start(listener)
     }
 
@@ -72,11 +71,13 @@ class FlvMuxerRecordController: AsyncBaseRecordController() {
             VideoCodec.VP9 -> Vp9Packet()
         }
         sendInfo = false
-        outputStream?.let {
+        sink?.let {
             try {
                 it.write(createFlvFileHeader())
                 writeFlvFileMetadata(it)
-            } catch (_: Exception) {}
+            } catch (e: IOException) {
+                listener?.onError(e)
+            }
         }
         if (tracks == RecordTracks.AUDIO) recordStatus = RecordController.Status.RECORDING
         listener?.onStatusChange(recordStatus)
@@ -85,11 +86,7 @@ class FlvMuxerRecordController: AsyncBaseRecordController() {
     override fun stopRecordImp() {
         videoPacket?.reset(false)
         audioPacket?.reset(false)
-        try {
-            outputStream?.close()
-        } catch (_: Exception) { } finally {
-            outputStream = null
-        }
+        closeSink()
         sendInfo = false
     }
 
@@ -101,7 +98,7 @@ class FlvMuxerRecordController: AsyncBaseRecordController() {
             getVideoInfo(frame.data, frame.info.toMediaCodecBufferInfo())
           } else if (recordStatus == RecordController.Status.RECORDING) {
             videoPacket?.createFlvPacket(frame) { packet ->
-              outputStream?.let { writeFlvPacket(it, packet) }
+              sink?.let { writeFlvPacket(it, packet) }
             }
           }
         }
@@ -109,7 +106,7 @@ class FlvMuxerRecordController: AsyncBaseRecordController() {
       MediaFrame.Type.AUDIO -> {
         if (recordStatus == RecordController.Status.RECORDING && tracks != RecordTracks.VIDEO) {
           audioPacket?.createFlvPacket(frame) { packet ->
-            outputStream?.let { writeFlvPacket(it, packet) }
+            sink?.let { writeFlvPacket(it, packet) }
           }
         }
       }
@@ -287,11 +284,9 @@ class FlvMuxerRecordController: AsyncBaseRecordController() {
         val flvHeaderTag = createHeaderTag(0x12, data.size, 0)
         val flvTagSize = (flvHeaderTag.size + data.size).toUInt32()
 
-        try {
-            outputStream.write(flvHeaderTag)
-            outputStream.write(data)
-            outputStream.write(flvTagSize)
-        } catch (_: Exception) {}
+        outputStream.write(flvHeaderTag)
+        outputStream.write(data)
+        outputStream.write(flvTagSize)
     }
 
     private fun writeFlvPacket(outputStream: OutputStream, flvPacket: FlvPacket) {
@@ -304,9 +299,12 @@ class FlvMuxerRecordController: AsyncBaseRecordController() {
 
         try {
             outputStream.write(flvHeaderTag)
-            outputStream.write(flvPacket.buffer)
+            val payload = flvPacket.payload
+            if (payload != null) payload.write(outputStream) else outputStream.write(flvPacket.buffer)
             outputStream.write(flvTagSize)
-        } catch (_: Exception) {}
+        } catch (e: IOException) {
+            listener?.onError(e)
+        }
     }
 
     private fun createHeaderTag(type: Byte, length: Int, timeStamp: Long): ByteArray {
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.library.util
+
+import android.media.MediaCodec
+import android.media.MediaFormat
+import android.util.Log
+import com.pedro.common.AudioCodec
+import com.pedro.common.VideoCodec
+import com.pedro.common.config.AudioObjectType
+import com.pedro.common.frame.MediaFrame
+import com.pedro.common.nal.NalReader
+import com.pedro.common.nal.NalUnits
+import com.pedro.common.removeHeader
+import com.pedro.common.removeInfo
+import com.pedro.common.toByteArray
+import com.pedro.common.toMediaCodecBufferInfo
+import com.pedro.encoder.video.VideoEncoderHelper
+import com.pedro.library.base.recording.AsyncBaseRecordController
+import com.pedro.library.base.recording.RecordController
+import com.pedro.library.base.recording.RecordController.RecordTracks
+import com.pedro.library.util.fmp4.Fmp4Track
+import com.pedro.library.util.fmp4.Fmp4Writer
+import java.io.FileDescriptor
+import java.io.IOException
+import java.nio.ByteBuffer
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Record fragmented MP4 files without MediaMuxer.
+ *
+ * The moov is written at start and the samples in fragments (moof + mdat), so if the app is killed
+ * the file is playable until the last fragment written. Only the samples of the fragment in
+ * progress are kept in memory.
+ *
+ * Supported codecs: H264, H265 and AV1 video. AAC and Opus audio.
+ */
+class Fmp4MuxerRecordController(
+  private val config: Config = Config()
+): AsyncBaseRecordController() {
+
+  /**
+   * @param fragmentDuration millis of each fragment, 0 to write a fragment per GOP.
+   * If only audio is recorded, 0 means a fragment per second.
+   */
+  data class Config(
+    val fragmentDuration: Long = 0
+  )
+
+  companion object {
+    private const val AUDIO_FRAGMENT_DURATION = 1_000_000L
+  }
+
+  private val writer = Fmp4Writer()
+  private val nalUnits = NalUnits()
+  private var videoTrack: Fmp4Track? = null
+  private var audioTrack: Fmp4Track? = null
+  private var fmp4Tracks = listOf<Fmp4Track>()
+  //sps, pps and vps for H264/H265 without start code or obu sequence for AV1
+  private var videoInfo: List<ByteArray>? = null
+  private var width = 0
+  private var height = 0
+  private var sampleRate = 0
+  private var channels = 0
+
+  @Throws(IOException::class)
+  override fun startRecordImp(
+    path: String,
+    listener: RecordController.Listener?,
+    tracks: RecordTracks
+  ) {
+    checkCodecs(tracks)
+    openSink(path)
+    if (tracks == RecordTracks.AUDIO && sampleRate > 0) init()
+  }
+
+  @Throws(IOException::class)
+  override fun startRecordImp(
+    fd: FileDescriptor,
+    listener: RecordController.Listener?,
+    tracks: RecordTracks
+  ) {
+    checkCodecs(tracks)
+    openSink(fd)
+    if (tracks == RecordTracks.AUDIO && sampleRate > 0) init()
+  }
+
+  override fun stopRecordImp() {
+    writeFragment()
+    closeSink()
+    fmp4Tracks.forEach { it.clearSamples() }
+    fmp4Tracks = listOf()
+    videoTrack = null
+    audioTrack = null
+  }
+
+  override fun setVideoFormat(videoFormat: MediaFormat) {
+    width = videoFormat.getInteger(MediaFormat.KEY_WIDTH)
+    height = videoFormat.getInteger(MediaFormat.KEY_HEIGHT)
+    val csd0 = videoFormat.getByteBuffer("csd-0") ?: return
+    when (getVideoCodec()) {
+      VideoCodec.H264 -> {
+        val pps = videoFormat.getByteBuffer("csd-1") ?: return
+        setVideoInfo(csd0.duplicate(), pps.duplicate())
+      }
+      VideoCodec.H265 -> {
+        val byteBufferList = VideoEncoderHelper.extractVpsSpsPpsFromH265(csd0.duplicate())
+        if (byteBufferList.size == 3) setVideoInfo(byteBufferList[1], byteBufferList[2], byteBufferList[0])
+      }
+      VideoCodec.AV1 -> {
+        if (csd0.remaining() > 4) videoInfo = listOf(csd0.duplicate().toByteArray())
+      }
+      else -> {}
+    }
+  }
+
+  override fun setAudioFormat(audioFormat: MediaFormat) {
+    sampleRate = audioFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE)
+    channels = audioFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT)
+    if (tracks == RecordTracks.AUDIO && recordStatus == RecordController.Status.STARTED) {
+      init()
+    }
+  }
+
+  override fun resetFormats() {
+    videoInfo = null
+    sampleRate = 0
+    channels = 0
+  }
+
+  override suspend fun onWriteFrame(frame: MediaFrame) {
+    when (frame.type) {
+      MediaFrame.Type.VIDEO -> {
+        if (tracks == RecordTracks.AUDIO) return
+        val isKey = frame.info.isKeyFrame || isKeyFrame(frame.data)
+        if (recordStatus == RecordController.Status.STARTED) {
+          if (isKey) {
+            if (videoInfo == null) extractVideoInfo(frame)
+            if (videoInfo != null && (sampleRate > 0 || tracks == RecordTracks.VIDEO)) {
+              myRequestKeyFrame = null
+              init()
+            }
+          } else if (myRequestKeyFrame != null) {
+            myRequestKeyFrame?.onRequestKeyFrame()
+            myRequestKeyFrame = null
+          }
+        } else if (recordStatus == RecordController.Status.RESUMED && isKey) {
+          recordStatus = RecordController.Status.RECORDING
+          listener?.onStatusChange(recordStatus)
+        }
+        if (recordStatus == RecordController.Status.RECORDING) writeVideo(frame, isKey)
+      }
+      MediaFrame.Type.AUDIO -> {
+        if (recordStatus == RecordController.Status.RECORDING && tracks != RecordTracks.VIDEO) {
+          writeAudio(frame)
+        }
+      }
+    }
+  }
+
+  @Throws(IOException::class)
+  private fun checkCodecs(tracks: RecordTracks) {
+    if (tracks != RecordTracks.AUDIO && getVideoCodec() != VideoCodec.H264
+      && getVideoCodec() != VideoCodec.H265 && getVideoCodec() != VideoCodec.AV1) {
+      throw IOException("Unsupported VideoCodec: " + getVideoCodec().name)
+    }
+    if (tracks != RecordTracks.VIDEO && getAudioCodec() == AudioCodec.G711) {
+      throw IOException("Unsupported AudioCodec: " + getAudioCodec().name)
+    }
+  }
+
+  private fun init() {
+    val tracks = mutableListOf<Fmp4Track>()
+    val videoInfo = videoInfo
+    if (this.tracks != RecordTracks.AUDIO && videoInfo != null) {
+      val id = tracks.size + 1
+      val track = when (getVideoCodec()) {
+        VideoCodec.H264 -> Fmp4Track.avc(id, width, height, videoInfo[0], videoInfo[1])
+        VideoCodec.H265 -> Fmp4Track.hevc(id, width, height, videoInfo[0], videoInfo[1], videoInfo[2])
+        else -> Fmp4Track.av1(id, width, height, videoInfo[0])
+      }
+      videoTrack = track
+      tracks.add(track)
+    }
+    if (this.tracks != RecordTracks.VIDEO) {
+      val id = tracks.size + 1
+      val track = when (getAudioCodec()) {
+        AudioCodec.OPUS -> Fmp4Track.opus(id, sampleRate, channels)
+        AudioCodec.HE_AAC -> Fmp4Track.aac(id, sampleRate, channels, AudioObjectType.AAC_SBR)
+        else -> Fmp4Track.aac(id, sampleRate, channels, AudioObjectType.AAC_LC)
+      }
+      audioTrack = track
+      tracks.add(track)
+    }
+    fmp4Tracks = tracks
+    try {
+      sink?.let { writer.writeInit(tracks, it) }
+    } catch (e: IOException) {
+      listener?.onError(e)
+    }
+    recordStatus = RecordController.Status.RECORDING
+    listener?.onStatusChange(recordStatus)
+  }
+
+  private suspend fun writeVideo(frame: MediaFrame, isKey: Boolean) {
+    val track = videoTrack ?: return
+    //samples are stored in decode order, presentation time is the composition offset
+    val ts = frame.info.dts
+    val cut = if (config.fragmentDuration > 0) {
+      track.getFragmentDuration(ts) >= config.fragmentDuration * 1000
+    } else isKey
+    if (cut && track.sampleCount > 0) {
+      track.setFragmentEnd(ts)
+      writeFragment()
+    }
+    val buffer = frame.data.removeInfo(frame.info)
+    track.startSample()
+    if (getVideoCodec() == VideoCodec.AV1) {
+      track.append(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining())
+    } else {
+      //annex b to length prefixed nal units, parameter sets are already in the sample entry
+      NalReader.extractNals(buffer, getVideoCodec(), true, nalUnits)
+      for (i in 0 until nalUnits.size) {
+        track.appendInt(nalUnits.getLength(i))
+        track.append(nalUnits.array, nalUnits.getStart(i), nalUnits.getLength(i))
+      }
+      if (nalUnits.size == 0) {
+        track.cancelSample()
+        return
+      }
+    }
+    track.finishSample(ts, isKey, frame.info.compositionOffset)
+    bitrateManager?.calculateBitrate(frame.info.size * 8L)
+  }
+
+  private suspend fun writeAudio(frame: MediaFrame) {
+    val track = audioTrack ?: return
+    if ((frame.info.flags and MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) return
+    val ts = frame.info.timestamp
+    if (videoTrack == null) {
+      val duration = if (config.fragmentDuration > 0) config.fragmentDuration * 1000 else AUDIO_FRAGMENT_DURATION
+      if (track.getFragmentDuration(ts) >= duration) {
+        track.setFragmentEnd(ts)
+        writeFragment()
+      }
+    }
+    val buffer = frame.data.removeInfo(frame.info)
+    track.startSample()
+    track.append(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining())
+    track.finishSample(ts, true)
+    bitrateManager?.calculateBitrate(frame.info.size * 8L)
+  }
+
+  private fun writeFragment() {
+    val sink = sink ?: return
+    try {
+      writer.writeFragment(fmp4Tracks, sink)
+      //write the fragment now, a fragment only in memory is lost if the app is killed
+      sink.flush()
+    } catch (e: IOException) {
+      listener?.onError(e)
+    }
+  }
+
+  private fun setVideoInfo(sps: ByteBuffer, pps: ByteBuffer, vps: ByteBuffer? = null) {
+    videoInfo = listOfNotNull(sps, pps, vps).map { it.removeHeader().toByteArray() }
+  }
+
+  private fun extractVideoInfo(frame: MediaFrame) {
+    val info = frame.info.toMediaCodecBufferInfo()
+    when (getVideoCodec()) {
+      VideoCodec.H264 -> {
+        val buffers = VideoEncoderHelper.decodeSpsPpsFromBuffer(frame.data.duplicate(), info.size)
+        if (buffers != null) setVideoInfo(buffers.first, buffers.second)
+      }
+      VideoCodec.H265 -> {
+        val byteBufferList = VideoEncoderHelper.extractVpsSpsPpsFromH265(frame.data.duplicate())
+        if (byteBufferList.size == 3) setVideoInfo(byteBufferList[1], byteBufferList[2], byteBufferList[0])
+      }
+      VideoCodec.AV1 -> {
+        val obuSequence = VideoEncoderHelper.extractObuSequence(frame.data.duplicate(), info)
+        if (obuSequence != null) videoInfo = listOf(obuSequence.toByteArray())
+      }
+      else -> {}
+    }
+    if (videoInfo == null) Log.e(TAG, "video info extraction failed")
+  }
+}
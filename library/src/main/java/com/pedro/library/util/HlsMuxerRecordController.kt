@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.library.util
+
+import com.pedro.common.frame.MediaFrame
+import com.pedro.library.base.recording.RecordController
+import com.pedro.library.base.recording.RecordController.RecordTracks
+import java.io.File
+import java.io.FileDescriptor
+import java.io.IOException
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Record MPEG-TS segments and an HLS playlist instead of a single file.
+ *
+ * The path of startRecord is the playlist, segments are written in the same folder named as the
+ * playlist plus the segment index. A segment is cut in a keyframe (or audio frame if only audio is
+ * recorded), see [SegmentCutter], and starts with PAT/PMT, so each segment is playable alone. With
+ * maxSegments > 0 only the last segments are kept, older files are deleted.
+ *
+ * The target duration is fixed when the record starts. Use a keyframe interval lower or equal
+ * than the target duration, otherwise a segment can't be cut in time.
+ *
+ * Recording to a FileDescriptor is not supported because each segment is a new file.
+ */
+class HlsMuxerRecordController(
+  private val config: Config = Config()
+): Mpeg2TsMuxerRecordController() {
+
+  /**
+   * @param targetDuration seconds of each segment
+   * @param maxSegmentSize bytes of a segment that force a cut in the next keyframe, 0 to disable
+   * @param maxSegments segments kept in disk and in the playlist, 0 to keep all
+   */
+  data class Config(
+    val targetDuration: Int = 6,
+    val maxSegmentSize: Long = 0,
+    val maxSegments: Int = 0
+  )
+
+  /**
+   * Decide where a segment ends. RFC 8216 requires that each segment duration rounded to the
+   * nearest integer is lower or equal than the target duration, so a segment is cut in the
+   * first cut point after the target duration or earlier if waiting for the next cut point
+   * (estimated with the last interval between cut points) would exceed it.
+   */
+  internal class SegmentCutter(targetDuration: Int, private val maxSegmentSize: Long) {
+
+    private val targetDurationUs = targetDuration * 1_000_000L
+    //durations from this value are rounded to targetDuration + 1
+    private val maxDurationUs = targetDurationUs + 500_000L
+    var segmentStartTs = -1L
+      private set
+    private var lastCutPointTs = -1L
+
+    /**
+     * @return true if a new segment must start with this frame
+     */
+    fun onFrame(ts: Long, isCutPoint: Boolean, segmentSize: Long): Boolean {
+      if (segmentStartTs < 0) {
+        segmentStartTs = ts
+        if (isCutPoint) lastCutPointTs = ts
+        return false
+      }
+      if (!isCutPoint) return false
+      val duration = ts - segmentStartTs
+      val interval = if (lastCutPointTs >= 0) ts - lastCutPointTs else 0L
+      lastCutPointTs = ts
+      if (duration <= 0) return false
+      val cut = duration >= targetDurationUs || duration + interval >= maxDurationUs ||
+          (maxSegmentSize > 0 && segmentSize >= maxSegmentSize)
+      if (cut) segmentStartTs = ts
+      return cut
+    }
+
+    fun reset() {
+      segmentStartTs = -1
+      lastCutPointTs = -1
+    }
+  }
+
+  /**
+   * Called in the muxer thread, the segment file is closed and can be uploaded.
+   */
+  fun interface SegmentListener {
+    fun onSegmentCompleted(file: File, durationUs: Long)
+    fun onSegmentRemoved(file: File) {}
+  }
+
+  private var playlistFile: File? = null
+  private var directory: File? = null
+  private var baseName = ""
+  private var playlist = HlsPlaylist(config.maxSegments, config.targetDuration)
+  private var segmentIndex = 0
+  private val cutter = SegmentCutter(config.targetDuration, config.maxSegmentSize)
+  private var lastTs = 0L
+  private var segmentListener: SegmentListener? = null
+
+  fun setSegmentListener(segmentListener: SegmentListener?) {
+    this.segmentListener = segmentListener
+  }
+
+  @Throws(IOException::class)
+  override fun startRecordImp(
+    path: String,
+    listener: RecordController.Listener?,
+    tracks: RecordTracks
+  ) {
+    val file = File(path).absoluteFile
+    playlistFile = file
+    directory = file.parentFile
+    baseName = file.nameWithoutExtension
+    playlist = HlsPlaylist(config.maxSegments, config.targetDuration)
+    segmentIndex = 0
+    cutter.reset()
+    lastTs = 0
+    super.startRecordImp(getSegmentFile(segmentIndex).path, listener, tracks)
+  }
+
+  @Throws(IOException::class)
+  override fun startRecordImp(
+    fd: FileDescriptor,
+    listener: RecordController.Listener?,
+    tracks: RecordTracks
+  ) {
+    throw IOException("HLS record needs a path to create the segments and the playlist")
+  }
+
+  override fun stopRecordImp() {
+    super.stopRecordImp()
+    if (playlistFile == null) return
+    if (cutter.segmentStartTs >= 0) {
+      completeSegment(lastTs - cutter.segmentStartTs, true)
+    } else {
+      //nothing recorded, only config in the file
+      getSegmentFile(segmentIndex).delete()
+    }
+    playlistFile = null
+    cutter.reset()
+  }
+
+  override fun onBeforeWriteFrame(frame: MediaFrame) {
+    val ts = frame.info.timestamp
+    if (ts > lastTs) lastTs = ts
+    val isCutPoint = if (tracks == RecordTracks.AUDIO) {
+      frame.type == MediaFrame.Type.AUDIO
+    } else {
+      frame.type == MediaFrame.Type.VIDEO && frame.info.isKeyFrame
+    }
+    val previousStartTs = cutter.segmentStartTs
+    val size = if (isCutPoint) getSinkStats()?.let { it.bytesWritten + it.pendingBytes } ?: 0L else 0L
+    if (cutter.onFrame(ts, isCutPoint, size)) {
+      completeSegment(ts - previousStartTs, false)
+      try {
+        openSink(getSegmentFile(segmentIndex).path)
+        writeConfig()
+      } catch (e: IOException) {
+        listener?.onError(e)
+      }
+    }
+  }
+
+  private fun completeSegment(durationUs: Long, ended: Boolean) {
+    closeSink()
+    val file = getSegmentFile(segmentIndex)
+    segmentIndex++
+    val removed = playlist.add(file.name, durationUs)
+    writePlaylist(ended)
+    segmentListener?.onSegmentCompleted(file, durationUs)
+    //delete after the playlist update to never list a missing file
+    removed?.let {
+      val removedFile = File(directory, it.name)
+      removedFile.delete()
+      segmentListener?.onSegmentRemoved(removedFile)
+    }
+  }
+
+  /**
+   * Replace the playlist with a rename so a reader never gets a partial playlist.
+   */
+  private fun writePlaylist(ended: Boolean) {
+    val playlistFile = playlistFile ?: return
+    try {
+      val tmp = File(directory, "${playlistFile.name}.tmp")
+      tmp.writeText(playlist.write(ended))
+      if (!tmp.renameTo(playlistFile)) throw IOException("Failed to update playlist ${playlistFile.path}")
+    } catch (e: IOException) {
+      listener?.onError(e)
+    }
+  }
+
+  private fun getSegmentFile(index: Int) = File(directory, "${baseName}_$index.ts")
+}
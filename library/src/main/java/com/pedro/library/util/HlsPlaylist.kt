@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.library.util
+
+import java.util.Locale
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Media playlist of a segmented record (RFC 8216).
+ *
+ * With [maxSegments] > 0 the playlist is a sliding window of the last segments, like a live
+ * stream with DVR. Otherwise all the segments are kept and the playlist is an EVENT playlist.
+ *
+ * EXT-X-TARGETDURATION must not change during the playlist life (RFC 8216 section 4.3.3.1), so
+ * [targetDuration] is fixed and the segments added must have a rounded duration lower or equal.
+ */
+class HlsPlaylist(
+  private val maxSegments: Int,
+  private val targetDuration: Int
+) {
+
+  data class Segment(val name: String, val durationUs: Long, val sequence: Long)
+
+  private val segments = ArrayDeque<Segment>()
+  private var nextSequence = 0L
+
+  /**
+   * @return the segment that left the window, that file can be deleted
+   */
+  fun add(name: String, durationUs: Long): Segment? {
+    segments.addLast(Segment(name, durationUs, nextSequence++))
+    return if (maxSegments > 0 && segments.size > maxSegments) segments.removeFirst() else null
+  }
+
+  fun getSegments(): List<Segment> = segments.toList()
+
+  fun write(ended: Boolean): String {
+    val builder = StringBuilder()
+      .append("#EXTM3U\n")
+      .append("#EXT-X-VERSION:3\n")
+      .append("#EXT-X-TARGETDURATION:").append(targetDuration).append("\n")
+      .append("#EXT-X-MEDIA-SEQUENCE:").append(segments.firstOrNull()?.sequence ?: nextSequence).append("\n")
+    if (maxSegments <= 0) builder.append("#EXT-X-PLAYLIST-TYPE:EVENT\n")
+    segments.forEach {
+      builder.append("#EXTINF:").append(String.format(Locale.US, "%.3f", it.durationUs / 1_000_000.0)).append(",\n")
+        .append(it.name).append("\n")
+    }
+    if (ended) builder.append("#EXT-X-ENDLIST\n")
+    return builder.toString()
+  }
+}
@@ -26,17 +26,12 @@ import com.pedro.srt.mpeg2ts.service.Mpeg2TsService
 import com.pedro.srt.srt.packets.SrtPacket
 import com.pedro.srt.srt.packets.data.PacketPosition
 import com.pedro.srt.utils.Constants
-import com.pedro.srt.utils.chunkPackets
 import com.pedro.srt.utils.toCodec
 import java.io.FileDescriptor
-import java.io.FileOutputStream
 import java.io.IOException
-import java.io.OutputStream
 import java.nio.ByteBuffer
 
-class Mpeg2TsMuxerRecordController : AsyncBaseRecordController() {
-
-  private var outputStream: OutputStream? = null
+open class Mpeg2TsMuxerRecordController : AsyncBaseRecordController() {
 
   //metadata config
   private var service = Mpeg2TsService()
@@ -63,7 +58,7 @@ class Mpeg2TsMuxerRecordController : AsyncBaseRecordController() {
     listener: RecordController.Listener?,
     tracks: RecordTracks
   ) {
-    outputStream = FileOutputStream(path)
+    openSink(path)
     start(listener, tracks)
   }
 
@@ -73,7 +68,7 @@ class Mpeg2TsMuxerRecordController : AsyncBaseRecordController() {
     listener: RecordController.Listener?,
     tracks: RecordTracks
   ) {
-    outputStream = FileOutputStream(fd)
+    openSink(fd)
     start(listener, tracks)
   }
 
@@ -94,23 +89,29 @@ class Mpeg2TsMuxerRecordController : AsyncBaseRecordController() {
       }
     }
     sendInfo = false
-    outputStream?.let {
+    sink?.let {
       val videoEnabled = tracks == RecordTracks.VIDEO || tracks == RecordTracks.ALL
       val audioEnabled = tracks == RecordTracks.AUDIO || tracks == RecordTracks.ALL
       setTrackConfig(videoEnabled, audioEnabled)
-
-      val psiList = mutableListOf<Psi>(psiManager.getPat())
-      psiManager.getPmt()?.let { psiList.add(0, it) }
-      psiList.add(psiManager.getSdt())
-      val psiPacketsConfig = mpegTsPacketizer.write(psiList).chunkPackets(chunkSize).map { buffer ->
-        MpegTsPacket(buffer, MpegType.PSI, PacketPosition.SINGLE, isKey = false)
-      }
-      writePackets(psiPacketsConfig)
+      writeConfig()
     }
     if (tracks == RecordTracks.AUDIO) recordStatus = RecordController.Status.RECORDING
     listener?.onStatusChange(recordStatus)
   }
 
+  /**
+   * Write PMT, PAT and SDT in the current sink, needed at the start of each file to be playable.
+   */
+  protected fun writeConfig() {
+    val psiList = mutableListOf<Psi>(psiManager.getPat())
+    psiManager.getPmt()?.let { psiList.add(0, it) }
+    psiList.add(psiManager.getSdt())
+    val psiPacketsConfig = mpegTsPacketizer.writePsi(psiList, chunkSize).map { buffer ->
+      MpegTsPacket(buffer, MpegType.PSI, PacketPosition.SINGLE, isKey = false)
+    }
+    writePackets(psiPacketsConfig)
+  }
+
   private fun setTrackConfig(videoEnabled: Boolean, audioEnabled: Boolean) {
     service.clear()
     if (audioEnabled) service.addTrack(getAudioCodec().toCodec())
@@ -124,12 +125,7 @@ class Mpeg2TsMuxerRecordController : AsyncBaseRecordController() {
     mpegTsPacketizer.reset()
     audioPacket.reset(false)
     videoPacket.reset(false)
-    try {
-      outputStream?.close()
-    } catch (_: Exception) {
-    } finally {
-      outputStream = null
-    }
+    closeSink()
     sendInfo = false
   }
 
@@ -146,12 +142,14 @@ class Mpeg2TsMuxerRecordController : AsyncBaseRecordController() {
 
   private fun writePackets(mpegTsPackets: List<MpegTsPacket>) {
     try {
-      outputStream?.let { outputStream ->
+      sink?.let { sink ->
         mpegTsPackets.forEach { mpegTsPacket ->
-          outputStream.write(mpegTsPacket.buffer)
+          sink.write(mpegTsPacket.buffer)
         }
       }
-    } catch (_: Exception) { }
+    } catch (e: IOException) {
+      listener?.onError(e)
+    }
   }
 
   override suspend fun onWriteFrame(frame: MediaFrame) {
@@ -174,6 +172,7 @@ class Mpeg2TsMuxerRecordController : AsyncBaseRecordController() {
   }
 
   private suspend fun writeMpeg2TsPacket(frame: MediaFrame) {
+    onBeforeWriteFrame(frame)
     getMpegTsPackets(frame) { mpegTsPackets ->
       val isKey = mpegTsPackets[0].isKey
       val psiPackets = psiManager.checkSendInfo(isKey, mpegTsPacketizer, chunkSize)
@@ -182,6 +181,11 @@ class Mpeg2TsMuxerRecordController : AsyncBaseRecordController() {
     }
   }
 
+  /**
+   * Called in the muxer thread before a frame is written, the sink can be replaced here.
+   */
+  protected open fun onBeforeWriteFrame(frame: MediaFrame) {}
+
   private fun getVideoInfo(buffer: ByteBuffer, info: MediaCodec.BufferInfo) {
     if (info.isKeyframe() || isKeyFrame(buffer)) {
       if (!sendInfo) {
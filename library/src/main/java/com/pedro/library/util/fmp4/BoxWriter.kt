@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.library.util.fmp4
+
+import java.io.OutputStream
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Growable big endian buffer to write ISO BMFF boxes (ISO 14496-12).
+ *
+ * Boxes are nested with [begin] and [end], the size of each box is written when it ends.
+ * The same instance is reused for each fragment so it only allocates until it reaches the size of
+ * the biggest moof.
+ */
+class BoxWriter(initialCapacity: Int = 1024) {
+
+  private var buffer = ByteArray(initialCapacity)
+  var size = 0
+    private set
+
+  /**
+   * Start a box of [type], call [end] with the returned position once the content is written.
+   */
+  fun begin(type: String): Int {
+    val position = size
+    writeInt(0)
+    writeType(type)
+    return position
+  }
+
+  /**
+   * Start a full box of [type] with [version] and [flags].
+   */
+  fun beginFull(type: String, version: Int, flags: Int): Int {
+    val position = begin(type)
+    writeInt((version shl 24) or (flags and 0xFFFFFF))
+    return position
+  }
+
+  fun end(position: Int) {
+    setInt(position, size - position)
+  }
+
+  fun writeByte(value: Int) {
+    ensure(1)
+    buffer[size++] = value.toByte()
+  }
+
+  fun writeShort(value: Int) {
+    ensure(2)
+    buffer[size++] = (value ushr 8).toByte()
+    buffer[size++] = value.toByte()
+  }
+
+  fun writeInt(value: Int) {
+    ensure(4)
+    buffer[size++] = (value ushr 24).toByte()
+    buffer[size++] = (value ushr 16).toByte()
+    buffer[size++] = (value ushr 8).toByte()
+    buffer[size++] = value.toByte()
+  }
+
+  fun writeLong(value: Long) {
+    writeInt((value ushr 32).toInt())
+    writeInt(value.toInt())
+  }
+
+  fun writeType(type: String) {
+    for (i in 0 until 4) writeByte(type[i].code)
+  }
+
+  fun writeBytes(bytes: ByteArray, offset: Int = 0, length: Int = bytes.size) {
+    ensure(length)
+    System.arraycopy(bytes, offset, buffer, size, length)
+    size += length
+  }
+
+  fun writeZeros(count: Int) {
+    ensure(count)
+    buffer.fill(0, size, size + count)
+    size += count
+  }
+
+  fun setInt(position: Int, value: Int) {
+    buffer[position] = (value ushr 24).toByte()
+    buffer[position + 1] = (value ushr 16).toByte()
+    buffer[position + 2] = (value ushr 8).toByte()
+    buffer[position + 3] = value.toByte()
+  }
+
+  fun writeTo(output: OutputStream) {
+    output.write(buffer, 0, size)
+  }
+
+  fun toByteArray(): ByteArray = buffer.copyOf(size)
+
+  fun reset() {
+    size = 0
+  }
+
+  private fun ensure(length: Int) {
+    if (size + length > buffer.size) {
+      buffer = buffer.copyOf(maxOf(buffer.size * 2, size + length))
+    }
+  }
+}
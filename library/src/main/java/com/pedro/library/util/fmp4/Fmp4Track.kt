@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.library.util.fmp4
+
+import com.pedro.common.config.AacAudioSpecificConfig
+import com.pedro.common.config.AudioObjectType
+import com.pedro.rtmp.flv.video.config.VideoSpecificConfigAV1
+import com.pedro.rtmp.flv.video.config.VideoSpecificConfigAVC
+import com.pedro.rtmp.flv.video.config.VideoSpecificConfigHEVC
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Track of a fragmented MP4 file, with the sample entry needed by the moov and the samples of the
+ * fragment in progress.
+ *
+ * Samples are appended in a single growable array, so the memory used is the size of the biggest
+ * fragment and it is reused for the next fragments.
+ */
+class Fmp4Track private constructor(
+  val id: Int,
+  val isVideo: Boolean,
+  val timescale: Int,
+  val sampleEntryType: String,
+  val configType: String,
+  val config: ByteArray,
+  val width: Int,
+  val height: Int,
+  val channels: Int,
+  val sampleRate: Int,
+  defaultDuration: Int
+) {
+
+  companion object {
+    const val VIDEO_TIMESCALE = 90000
+    const val OPUS_TIMESCALE = 48000
+    private const val DEFAULT_VIDEO_DURATION = VIDEO_TIMESCALE / 30
+    private const val AAC_FRAME_SAMPLES = 1024
+    private const val OPUS_FRAME_SAMPLES = 960
+    private const val OPUS_PRE_SKIP = 3840
+
+    fun avc(id: Int, width: Int, height: Int, sps: ByteArray, pps: ByteArray): Fmp4Track {
+      val config = VideoSpecificConfigAVC(sps, pps)
+      val buffer = ByteArray(config.size)
+      config.write(buffer, 0)
+      return video(id, "avc1", "avcC", buffer, width, height)
+    }
+
+    fun hevc(id: Int, width: Int, height: Int, sps: ByteArray, pps: ByteArray, vps: ByteArray): Fmp4Track {
+      val config = VideoSpecificConfigHEVC(sps, pps, vps)
+      val buffer = ByteArray(config.size)
+      config.write(buffer, 0)
+      return video(id, "hvc1", "hvcC", buffer, width, height)
+    }
+
+    fun av1(id: Int, width: Int, height: Int, sequenceObu: ByteArray): Fmp4Track {
+      val config = VideoSpecificConfigAV1(sequenceObu)
+      val buffer = ByteArray(config.size)
+      config.write(buffer, 0)
+      return video(id, "av01", "av1C", buffer, width, height)
+    }
+
+    fun aac(id: Int, sampleRate: Int, channels: Int, objectType: AudioObjectType): Fmp4Track {
+      val asc = AacAudioSpecificConfig(objectType, sampleRate, channels).calculate()
+      return Fmp4Track(
+        id, false, sampleRate, "mp4a", "esds", createEsds(id, asc),
+        0, 0, channels, sampleRate, AAC_FRAME_SAMPLES
+      )
+    }
+
+    fun opus(id: Int, sampleRate: Int, channels: Int): Fmp4Track {
+      //Opus Sample Entry, dOps is big endian unlike OpusHead
+      val dOps = BoxWriter(11)
+      dOps.writeByte(0) //version
+      dOps.writeByte(channels)
+      dOps.writeShort(OPUS_PRE_SKIP)
+      dOps.writeInt(sampleRate)
+      dOps.writeShort(0) //output gain
+      dOps.writeByte(0) //channel mapping family
+      return Fmp4Track(
+        id, false, OPUS_TIMESCALE, "Opus", "dOps", dOps.toByteArray(),
+        0, 0, channels, OPUS_TIMESCALE, OPUS_FRAME_SAMPLES
+      )
+    }
+
+    private fun video(
+      id: Int, sampleEntryType: String, configType: String, config: ByteArray, width: Int, height: Int
+    ) = Fmp4Track(
+      id, true, VIDEO_TIMESCALE, sampleEntryType, configType, config,
+      width, height, 0, 0, DEFAULT_VIDEO_DURATION
+    )
+
+    /**
+     * ISO 14496-1 ES_Descriptor with the DecoderConfigDescriptor of AAC, preceded by the full box
+     * version and flags.
+     */
+    private fun createEsds(id: Int, asc: ByteArray): ByteArray {
+      val decoderConfigSize = 13 + 2 + asc.size
+      val esSize = 3 + 2 + decoderConfigSize + 3
+      val esds = BoxWriter(4 + 2 + esSize)
+      esds.writeInt(0) //version and flags
+      esds.writeByte(0x03) //ES_DescrTag
+      esds.writeByte(esSize)
+      esds.writeShort(id)
+      esds.writeByte(0) //flags
+      esds.writeByte(0x04) //DecoderConfigDescrTag
+      esds.writeByte(decoderConfigSize)
+      esds.writeByte(0x40) //Audio ISO/IEC 14496-3
+      esds.writeByte((0x05 shl 2) or 0x01) //audio stream
+      esds.writeZeros(3) //buffer size
+      esds.writeInt(0) //max bitrate
+      esds.writeInt(0) //avg bitrate
+      esds.writeByte(0x05) //DecSpecificInfoTag
+      esds.writeByte(asc.size)
+      esds.writeBytes(asc)
+      esds.writeByte(0x06) //SLConfigDescrTag
+      esds.writeByte(1)
+      esds.writeByte(0x02)
+      return esds.toByteArray()
+    }
+  }
+
+  private var data = ByteArray(0)
+  var dataSize = 0
+    private set
+  private var times = LongArray(64)
+  private var sizes = IntArray(64)
+  private var keys = BooleanArray(64)
+  private var offsets = IntArray(64)
+  var sampleCount = 0
+    private set
+  private var sampleStart = 0
+  private var lastDuration = defaultDuration
+  private var fragmentEnd = -1L
+
+  fun toTimescale(timeUs: Long): Long = timeUs * timescale / 1_000_000
+
+  fun startSample() {
+    sampleStart = dataSize
+  }
+
+  fun append(array: ByteArray, offset: Int, length: Int) {
+    ensure(length)
+    System.arraycopy(array, offset, data, dataSize, length)
+    dataSize += length
+  }
+
+  fun appendInt(value: Int) {
+    ensure(4)
+    data[dataSize++] = (value ushr 24).toByte()
+    data[dataSize++] = (value ushr 16).toByte()
+    data[dataSize++] = (value ushr 8).toByte()
+    data[dataSize++] = value.toByte()
+  }
+
+  /**
+   * @param timeUs decode time of the sample
+   * @param compositionOffsetUs presentation time minus decode time, only not 0 with B-frames
+   */
+  fun finishSample(timeUs: Long, isKey: Boolean, compositionOffsetUs: Long = 0) {
+    if (sampleCount == times.size) {
+      times = times.copyOf(sampleCount * 2)
+      sizes = sizes.copyOf(sampleCount * 2)
+      keys = keys.copyOf(sampleCount * 2)
+      offsets = offsets.copyOf(sampleCount * 2)
+    }
+    times[sampleCount] = toTimescale(timeUs)
+    sizes[sampleCount] = dataSize - sampleStart
+    keys[sampleCount] = isKey
+    offsets[sampleCount] = toTimescale(maxOf(compositionOffsetUs, 0)).toInt()
+    sampleCount++
+  }
+
+  /**
+   * Discard the sample started and not finished.
+   */
+  fun cancelSample() {
+    dataSize = sampleStart
+  }
+
+  /**
+   * Set the time of the first sample of the next fragment, used as end of the last sample.
+   * Without it the duration of the last sample is the duration of the previous one.
+   */
+  fun setFragmentEnd(timeUs: Long) {
+    fragmentEnd = toTimescale(timeUs)
+  }
+
+  fun getData(): ByteArray = data
+  fun getFirstTime(): Long = times[0]
+  fun getSampleSize(index: Int): Int = sizes[index]
+  fun isKey(index: Int): Boolean = keys[index]
+  fun getCompositionOffset(index: Int): Int = offsets[index]
+
+  fun hasCompositionOffsets(): Boolean {
+    for (i in 0 until sampleCount) {
+      if (offsets[i] != 0) return true
+    }
+    return false
+  }
+
+  fun getSampleDuration(index: Int): Int {
+    val next = if (index + 1 < sampleCount) times[index + 1] else fragmentEnd
+    return if (next >= 0) {
+      maxOf(next - times[index], 0).toInt()
+    } else if (index > 0) {
+      maxOf(times[index] - times[index - 1], 0).toInt()
+    } else lastDuration
+  }
+
+  /**
+   * @return micros between the first sample and [timeUs]
+   */
+  fun getFragmentDuration(timeUs: Long): Long {
+    if (sampleCount == 0) return 0
+    return timeUs - times[0] * 1_000_000 / timescale
+  }
+
+  fun clearSamples() {
+    if (sampleCount > 0) lastDuration = getSampleDuration(sampleCount - 1)
+    sampleCount = 0
+    dataSize = 0
+    sampleStart = 0
+    fragmentEnd = -1
+  }
+
+  private fun ensure(length: Int) {
+    if (dataSize + length > data.size) {
+      data = data.copyOf(maxOf(data.size * 2, dataSize + length, 64 * 1024))
+    }
+  }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.library.util.fmp4
+
+import java.io.IOException
+import java.io.OutputStream
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Fragmented MP4 writer (ISO 14496-12, CMAF compatible).
+ *
+ * The init segment (ftyp + moov without samples) is written once at start and then each fragment
+ * is written as moof + mdat, so a truncated file is playable until the last complete fragment.
+ * Durations are not known in advance and are 0 in the moov, players use the fragments.
+ */
+class Fmp4Writer {
+
+  companion object {
+    private const val MOVIE_TIMESCALE = 1000
+    private val MATRIX = intArrayOf(0x00010000, 0, 0, 0, 0x00010000, 0, 0, 0, 0x40000000)
+    //sample_depends_on = 2, keyframe
+    private const val SYNC_SAMPLE_FLAGS = 0x02000000
+    //sample_depends_on = 1 and sample_is_non_sync_sample
+    private const val NON_SYNC_SAMPLE_FLAGS = 0x01010000
+    //data-offset-present, sample-duration-present, sample-size-present, sample-flags-present
+    private const val TRUN_FLAGS = 0x000701
+    //TRUN_FLAGS and sample-composition-time-offsets-present
+    private const val TRUN_FLAGS_CTS = 0x000F01
+    private const val TFHD_DEFAULT_BASE_IS_MOOF = 0x020000
+  }
+
+  private val box = BoxWriter()
+  private var dataOffsets = IntArray(2)
+  private var sequenceNumber = 0
+
+  @Throws(IOException::class)
+  fun writeInit(tracks: List<Fmp4Track>, output: OutputStream) {
+    box.reset()
+    sequenceNumber = 0
+    val ftyp = box.begin("ftyp")
+    box.writeType("iso6")
+    box.writeInt(0)
+    box.writeType("iso6")
+    box.writeType("cmfc")
+    box.writeType("isom")
+    box.writeType("mp41")
+    box.end(ftyp)
+
+    val moov = box.begin("moov")
+    writeMvhd(tracks.maxOf { it.id } + 1)
+    tracks.forEach { writeTrak(it) }
+    val mvex = box.begin("mvex")
+    tracks.forEach {
+      val trex = box.beginFull("trex", 0, 0)
+      box.writeInt(it.id)
+      box.writeInt(1) //default sample description index
+      box.writeInt(0) //default sample duration
+      box.writeInt(0) //default sample size
+      box.writeInt(0) //default sample flags
+      box.end(trex)
+    }
+    box.end(mvex)
+    box.end(moov)
+    box.writeTo(output)
+  }
+
+  /**
+   * Write a moof and mdat with the samples of [tracks] and clear them. Tracks without samples are
+   * skipped.
+   */
+  @Throws(IOException::class)
+  fun writeFragment(tracks: List<Fmp4Track>, output: OutputStream) {
+    if (tracks.all { it.sampleCount == 0 }) return
+    if (dataOffsets.size < tracks.size) dataOffsets = IntArray(tracks.size)
+    box.reset()
+    val moof = box.begin("moof")
+    val mfhd = box.beginFull("mfhd", 0, 0)
+    box.writeInt(++sequenceNumber)
+    box.end(mfhd)
+    tracks.forEachIndexed { index, track ->
+      dataOffsets[index] = -1
+      if (track.sampleCount == 0) return@forEachIndexed
+      val traf = box.begin("traf")
+      val tfhd = box.beginFull("tfhd", 0, TFHD_DEFAULT_BASE_IS_MOOF)
+      box.writeInt(track.id)
+      box.end(tfhd)
+      val tfdt = box.beginFull("tfdt", 1, 0)
+      box.writeLong(track.getFirstTime())
+      box.end(tfdt)
+      //version 1 allows negative offsets, not needed because dts is never after pts
+      val hasOffsets = track.hasCompositionOffsets()
+      val trun = box.beginFull("trun", 0, if (hasOffsets) TRUN_FLAGS_CTS else TRUN_FLAGS)
+      box.writeInt(track.sampleCount)
+      dataOffsets[index] = box.size
+      box.writeInt(0) //data offset, written when the moof size is known
+      for (i in 0 until track.sampleCount) {
+        box.writeInt(track.getSampleDuration(i))
+        box.writeInt(track.getSampleSize(i))
+        box.writeInt(if (!track.isVideo || track.isKey(i)) SYNC_SAMPLE_FLAGS else NON_SYNC_SAMPLE_FLAGS)
+        if (hasOffsets) box.writeInt(track.getCompositionOffset(i))
+      }
+      box.end(trun)
+      box.end(traf)
+    }
+    box.end(moof)
+    //offsets from the moof start to the data of each track in the mdat
+    var dataOffset = box.size + 8
+    tracks.forEachIndexed { index, track ->
+      if (dataOffsets[index] == -1) return@forEachIndexed
+      box.setInt(dataOffsets[index], dataOffset)
+      dataOffset += track.dataSize
+    }
+    box.writeInt(dataOffset - box.size)
+    box.writeType("mdat")
+    box.writeTo(output)
+    tracks.forEach {
+      if (it.sampleCount > 0) output.write(it.getData(), 0, it.dataSize)
+      it.clearSamples()
+    }
+  }
+
+  private fun writeMvhd(nextTrackId: Int) {
+    val mvhd = box.beginFull("mvhd", 0, 0)
+    box.writeInt(0) //creation time
+    box.writeInt(0) //modification time
+    box.writeInt(MOVIE_TIMESCALE)
+    box.writeInt(0) //duration
+    box.writeInt(0x00010000) //rate 1.0
+    box.writeShort(0x0100) //volume 1.0
+    box.writeZeros(10)
+    MATRIX.forEach { box.writeInt(it) }
+    box.writeZeros(24) //pre defined
+    box.writeInt(nextTrackId)
+    box.end(mvhd)
+  }
+
+  private fun writeTrak(track: Fmp4Track) {
+    val trak = box.begin("trak")
+    //track enabled, in movie and in preview
+    val tkhd = box.beginFull("tkhd", 0, 0x000007)
+    box.writeInt(0) //creation time
+    box.writeInt(0) //modification time
+    box.writeInt(track.id)
+    box.writeInt(0) //reserved
+    box.writeInt(0) //duration
+    box.writeZeros(8) //reserved
+    box.writeShort(0) //layer
+    box.writeShort(0) //alternate group
+    box.writeShort(if (track.isVideo) 0 else 0x0100) //volume
+    box.writeShort(0) //reserved
+    MATRIX.forEach { box.writeInt(it) }
+    box.writeInt(track.width shl 16)
+    box.writeInt(track.height shl 16)
+    box.end(tkhd)
+
+    val mdia = box.begin("mdia")
+    val mdhd = box.beginFull("mdhd", 0, 0)
+    box.writeInt(0) //creation time
+    box.writeInt(0) //modification time
+    box.writeInt(track.timescale)
+    box.writeInt(0) //duration
+    box.writeShort(0x55C4) //und language
+    box.writeShort(0) //pre defined
+    box.end(mdhd)
+    val hdlr = box.beginFull("hdlr", 0, 0)
+    box.writeInt(0) //pre defined
+    box.writeType(if (track.isVideo) "vide" else "soun")
+    box.writeZeros(12)
+    val name = if (track.isVideo) "VideoHandler" else "SoundHandler"
+    box.writeBytes(name.toByteArray())
+    box.writeByte(0)
+    box.end(hdlr)
+
+    val minf = box.begin("minf")
+    if (track.isVideo) {
+      val vmhd = box.beginFull("vmhd", 0, 1)
+      box.writeZeros(8) //graphics mode and opcolor
+      box.end(vmhd)
+    } else {
+      val smhd = box.beginFull("smhd", 0, 0)
+      box.writeZeros(4) //balance and reserved
+      box.end(smhd)
+    }
+    val dinf = box.begin("dinf")
+    val dref = box.beginFull("dref", 0, 0)
+    box.writeInt(1)
+    //media data in the same file
+    val url = box.beginFull("url ", 0, 1)
+    box.end(url)
+    box.end(dref)
+    box.end(dinf)
+    writeStbl(track)
+    box.end(minf)
+    box.end(mdia)
+    box.end(trak)
+  }
+
+  /**
+   * Sample tables are empty, samples are in the fragments.
+   */
+  private fun writeStbl(track: Fmp4Track) {
+    val stbl = box.begin("stbl")
+    val stsd = box.beginFull("stsd", 0, 0)
+    box.writeInt(1)
+    val entry = box.begin(track.sampleEntryType)
+    box.writeZeros(6) //reserved
+    box.writeShort(1) //data reference index
+    if (track.isVideo) {
+      box.writeZeros(16) //pre defined and reserved
+      box.writeShort(track.width)
+      box.writeShort(track.height)
+      box.writeInt(0x00480000) //72 dpi
+      box.writeInt(0x00480000)
+      box.writeInt(0) //reserved
+      box.writeShort(1) //frame count
+      box.writeZeros(32) //compressor name
+      box.writeShort(0x0018) //depth
+      box.writeShort(0xFFFF) //pre defined
+    } else {
+      box.writeZeros(8) //reserved
+      box.writeShort(track.channels)
+      box.writeShort(16) //sample size
+      box.writeZeros(4) //pre defined and reserved
+      box.writeInt(track.sampleRate shl 16)
+    }
+    val config = box.begin(track.configType)
+    box.writeBytes(track.config)
+    box.end(config)
+    box.end(entry)
+    box.end(stsd)
+    for (type in arrayOf("stts", "stsc", "stco")) {
+      val table = box.beginFull(type, 0, 0)
+      box.writeInt(0)
+      box.end(table)
+    }
+    val stsz = box.beginFull("stsz", 0, 0)
+    box.writeInt(0) //sample size
+    box.writeInt(0) //sample count
+    box.end(stsz)
+    box.end(stbl)
+  }
+}
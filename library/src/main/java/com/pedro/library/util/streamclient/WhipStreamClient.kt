@@ -17,6 +17,7 @@
 package com.pedro.library.util.streamclient
 
 import com.pedro.common.socket.base.SocketType
+import com.pedro.library.util.BitrateAdapter
 import com.pedro.whip.WhipClient
 import javax.net.ssl.TrustManager
 
@@ -28,6 +29,10 @@ class WhipStreamClient(
   private val streamClientListener: StreamClientListener?
 ): StreamBaseClient() {
 
+  init {
+    whipClient.setOnKeyframeRequest { streamClientListener?.onRequestKeyframe() }
+  }
+
   /**
    * Set Bearer authentication token.
    * Use user or password as token
@@ -44,6 +49,30 @@ class WhipStreamClient(
     whipClient.setAuthorization(token)
   }
 
+  /**
+   * Estimate the available bandwidth with transport-wide congestion control feedback if the
+   * server support it. Use the estimation with [BitrateAdapter.adaptBitrateToEstimation]
+   * to configure the encoder bitrate. Must be called before start stream.
+   *
+   * @param callback called with the estimated bitrate in bits/s, including audio and RTP overhead.
+   * Null to disable the estimation
+   */
+  fun setBandwidthEstimation(startBitrate: Long, minBitrate: Long, maxBitrate: Long, callback: ((Long) -> Unit)?) {
+    whipClient.setBandwidthEstimation(startBitrate, minBitrate, maxBitrate, callback)
+  }
+
+  /**
+   * Same than setBandwidthEstimation with a callback but each estimation is sent to
+   * [BitrateAdapter.adaptBitrateToEstimation], that subtract audio and overhead and call
+   * [BitrateAdapter.Listener] with the video bitrate. Must be called before start stream.
+   * Start, min and max are total bitrates in bits/s, audio and overhead included.
+   */
+  fun setBandwidthEstimation(startBitrate: Long, minBitrate: Long, maxBitrate: Long, bitrateAdapter: BitrateAdapter) {
+    whipClient.setBandwidthEstimation(startBitrate, minBitrate, maxBitrate) { bitrateAdapter.adaptBitrateToEstimation(it) }
+  }
+
+  fun getEstimatedBitrate(): Long = whipClient.estimatedBitrate
+
   override fun setReTries(reTries: Int) {
     whipClient.setReTries(reTries)
   }
@@ -0,0 +1,112 @@
+package com.pedro.library.base.recording
+
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+
+/**
+ * The sink batches muxer writes in aligned blocks. These tests check that no byte is lost or
+ * reordered by the batching and that a failure is reported a single time.
+ */
+class FileChannelRecordSinkTest {
+
+  private lateinit var file: File
+  private var now = 0L
+
+  @Before
+  fun setUp() {
+    file = File.createTempFile("record", ".ts")
+  }
+
+  @After
+  fun tearDown() {
+    file.delete()
+  }
+
+  private fun createSink(config: FileChannelRecordSink.Config): FileChannelRecordSink {
+    val randomAccessFile = RandomAccessFile(file, "rw")
+    return FileChannelRecordSink(randomAccessFile.channel, randomAccessFile.fd, config) { now }
+  }
+
+  private fun packetOf(index: Int) = ByteArray(188) { (index + it).toByte() }
+
+  @Test
+  fun `GIVEN small packets WHEN write THEN they are written in full blocks and the file keeps all of them`() {
+    val sink = createSink(FileChannelRecordSink.Config(blockSize = 8192, flushInterval = 0, syncInterval = 0))
+    val expected = ByteArrayOutputStream()
+    for (i in 0 until 100) {
+      val packet = packetOf(i)
+      sink.write(packet)
+      expected.write(packet)
+    }
+    //18800 bytes, only the 2 full blocks reached the file
+    assertEquals(2, sink.getStats().writes)
+    assertEquals(16384, sink.getStats().bytesWritten)
+    assertEquals(18800 - 16384, sink.getStats().pendingBytes)
+    sink.close()
+
+    assertEquals(3, sink.getStats().writes)
+    assertEquals(0, sink.getStats().unsyncedBytes)
+    assertArrayEquals(expected.toByteArray(), file.readBytes())
+  }
+
+  @Test
+  fun `GIVEN flush interval expired WHEN write THEN only the aligned part is written`() {
+    val sink = createSink(FileChannelRecordSink.Config(blockSize = 65536, flushInterval = 500, syncInterval = 0))
+    val data = ByteArray(10000) { it.toByte() }
+    sink.write(data)
+    assertEquals(0, sink.getStats().writes)
+
+    now += 500
+    sink.write(ByteBuffer.wrap(ByteArray(0)))
+    val stats = sink.getStats()
+    assertEquals(1, stats.writes)
+    assertEquals(2L * FileChannelRecordSink.ALIGNMENT, stats.bytesWritten)
+    assertEquals(10000 - 2 * FileChannelRecordSink.ALIGNMENT, stats.pendingBytes)
+    assertEquals(2L * FileChannelRecordSink.ALIGNMENT, file.length())
+
+    sink.close()
+    assertArrayEquals(data, file.readBytes())
+  }
+
+  @Test
+  fun `GIVEN sync interval expired WHEN write THEN written bytes are synced`() {
+    val sink = createSink(FileChannelRecordSink.Config(blockSize = 4096, flushInterval = 0, syncInterval = 1000))
+    sink.write(ByteArray(4096))
+    assertEquals(4096, sink.getStats().unsyncedBytes)
+
+    now += 1000
+    sink.write(ByteArray(10))
+    assertEquals(0, sink.getStats().unsyncedBytes)
+    assertEquals(1, sink.getStats().syncs)
+    sink.close()
+    assertEquals(4106, file.length())
+  }
+
+  @Test
+  fun `GIVEN a closed file WHEN write THEN the error is thrown once and later writes are dropped`() {
+    val randomAccessFile = RandomAccessFile(file, "rw")
+    val sink = FileChannelRecordSink(
+      randomAccessFile.channel, randomAccessFile.fd,
+      FileChannelRecordSink.Config(blockSize = 4096, flushInterval = 0, syncInterval = 0)
+    ) { now }
+    randomAccessFile.close()
+    try {
+      sink.write(ByteArray(5000))
+      fail("write must fail")
+    } catch (_: IOException) { }
+    sink.write(ByteArray(5000))
+    sink.close()
+    assertEquals(0, sink.getStats().bytesWritten)
+    assertTrue(file.length() == 0L)
+  }
+}
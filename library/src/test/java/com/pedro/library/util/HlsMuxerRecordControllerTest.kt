@@ -0,0 +1,86 @@
+package com.pedro.library.util
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import kotlin.math.roundToLong
+
+/**
+ * Segments are cut in keyframes and the rounded duration of each one must fit in the target
+ * duration of the playlist.
+ */
+class HlsMuxerRecordControllerTest {
+
+  private val frameIntervalUs = 33_333L
+
+  /**
+   * Feed 30 fps video with a keyframe each [gopUs] and collect the segment durations.
+   */
+  private fun cut(cutter: HlsMuxerRecordController.SegmentCutter, gopUs: Long, durationUs: Long): List<Long> {
+    val durations = mutableListOf<Long>()
+    var nextKeyFrameTs = 0L
+    var ts = 0L
+    while (ts < durationUs) {
+      val isKeyFrame = ts >= nextKeyFrameTs
+      if (isKeyFrame) nextKeyFrameTs += gopUs
+      val startTs = cutter.segmentStartTs
+      if (cutter.onFrame(ts, isKeyFrame, 0)) durations.add(ts - startTs)
+      ts += frameIntervalUs
+    }
+    return durations
+  }
+
+  private fun assertFitTarget(durations: List<Long>, targetDuration: Int) {
+    durations.forEach {
+      assertTrue("segment of $it us", (it / 1_000_000.0).roundToLong() <= targetDuration)
+    }
+  }
+
+  @Test
+  fun `GIVEN a gop shorter than target WHEN record THEN cut in the first keyframe after the target`() {
+    val cutter = HlsMuxerRecordController.SegmentCutter(6, 0)
+    val durations = cut(cutter, 2_000_000, 20_000_000)
+    assertEquals(3, durations.size)
+    durations.forEach { assertEquals(6_000_000.0, it.toDouble(), 50_000.0) }
+    assertFitTarget(durations, 6)
+  }
+
+  @Test
+  fun `GIVEN a gop that doesn't divide the target WHEN record THEN cut before exceeding the target`() {
+    val cutter = HlsMuxerRecordController.SegmentCutter(6, 0)
+    //waiting to 6 seconds would produce 8 seconds segments
+    val durations = cut(cutter, 4_000_000, 20_000_000)
+    assertEquals(4, durations.size)
+    durations.forEach { assertEquals(4_000_000.0, it.toDouble(), 50_000.0) }
+    assertFitTarget(durations, 6)
+  }
+
+  @Test
+  fun `GIVEN non keyframes WHEN exceed the target THEN never cut`() {
+    val cutter = HlsMuxerRecordController.SegmentCutter(2, 0)
+    assertFalse(cutter.onFrame(0, true, 0))
+    assertFalse(cutter.onFrame(3_000_000, false, 0))
+    assertFalse(cutter.onFrame(5_000_000, false, 0))
+    assertTrue(cutter.onFrame(6_000_000, true, 0))
+    assertEquals(6_000_000L, cutter.segmentStartTs)
+  }
+
+  @Test
+  fun `GIVEN max segment size WHEN reached THEN cut in the next keyframe`() {
+    val cutter = HlsMuxerRecordController.SegmentCutter(6, 1000)
+    assertFalse(cutter.onFrame(0, true, 0))
+    assertFalse(cutter.onFrame(500_000, false, 2000))
+    assertTrue(cutter.onFrame(1_000_000, true, 2000))
+  }
+
+  @Test
+  fun `GIVEN a reset cutter WHEN record again THEN the first frame starts the segment`() {
+    val cutter = HlsMuxerRecordController.SegmentCutter(6, 0)
+    cut(cutter, 2_000_000, 10_000_000)
+    cutter.reset()
+    assertEquals(-1L, cutter.segmentStartTs)
+    assertFalse(cutter.onFrame(50_000_000, false, 0))
+    assertEquals(50_000_000L, cutter.segmentStartTs)
+  }
+}
@@ -0,0 +1,47 @@
+package com.pedro.library.util
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class HlsPlaylistTest {
+
+  @Test
+  fun `GIVEN unlimited segments WHEN write ended THEN event playlist with all segments and endlist`() {
+    val playlist = HlsPlaylist(0, 6)
+    assertNull(playlist.add("record_0.ts", 6_000_000))
+    //rounded to 6, the target duration is kept
+    assertNull(playlist.add("record_1.ts", 6_433_333))
+    val expected = "#EXTM3U\n" +
+        "#EXT-X-VERSION:3\n" +
+        "#EXT-X-TARGETDURATION:6\n" +
+        "#EXT-X-MEDIA-SEQUENCE:0\n" +
+        "#EXT-X-PLAYLIST-TYPE:EVENT\n" +
+        "#EXTINF:6.000,\n" +
+        "record_0.ts\n" +
+        "#EXTINF:6.433,\n" +
+        "record_1.ts\n" +
+        "#EXT-X-ENDLIST\n"
+    assertEquals(expected, playlist.write(true))
+  }
+
+  @Test
+  fun `GIVEN max segments WHEN add more segments THEN the oldest leave the window and the sequence moves`() {
+    val playlist = HlsPlaylist(2, 4)
+    assertNull(playlist.add("a_0.ts", 4_000_000))
+    assertNull(playlist.add("a_1.ts", 4_000_000))
+    assertEquals("a_0.ts", playlist.add("a_2.ts", 4_000_000)?.name)
+    assertEquals("a_1.ts", playlist.add("a_3.ts", 4_000_000)?.name)
+
+    assertEquals(listOf("a_2.ts", "a_3.ts"), playlist.getSegments().map { it.name })
+    val expected = "#EXTM3U\n" +
+        "#EXT-X-VERSION:3\n" +
+        "#EXT-X-TARGETDURATION:4\n" +
+        "#EXT-X-MEDIA-SEQUENCE:2\n" +
+        "#EXTINF:4.000,\n" +
+        "a_2.ts\n" +
+        "#EXTINF:4.000,\n" +
+        "a_3.ts\n"
+    assertEquals(expected, playlist.write(false))
+  }
+}
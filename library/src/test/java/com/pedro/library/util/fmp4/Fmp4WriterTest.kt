@@ -0,0 +1,180 @@
+package com.pedro.library.util.fmp4
+
+import com.pedro.common.config.AudioObjectType
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+
+/**
+ * Walk the boxes written to check sizes, nesting and that the trun offsets point to the samples.
+ */
+class Fmp4WriterTest {
+
+  private val sps = byteArrayOf(0x67, 0x42, 0x00, 0x1f, 0x95.toByte(), 0xa8.toByte(), 0x14, 0x01, 0x6e, 0x40)
+  private val pps = byteArrayOf(0x68, 0xce.toByte(), 0x3c, 0x80.toByte())
+
+  private class Box(val type: String, val start: Int, val size: Int)
+
+  private fun readBoxes(data: ByteArray, start: Int, end: Int): List<Box> {
+    val boxes = mutableListOf<Box>()
+    val buffer = ByteBuffer.wrap(data)
+    var position = start
+    while (position < end) {
+      val size = buffer.getInt(position)
+      val type = String(data, position + 4, 4)
+      boxes.add(Box(type, position, size))
+      position += size
+    }
+    assertEquals(end, position)
+    return boxes
+  }
+
+  private fun createTracks(): List<Fmp4Track> {
+    return listOf(
+      Fmp4Track.avc(1, 640, 480, sps, pps),
+      Fmp4Track.aac(2, 44100, 2, AudioObjectType.AAC_LC)
+    )
+  }
+
+  private fun addVideo(track: Fmp4Track, timeUs: Long, isKey: Boolean, nal: ByteArray) {
+    track.startSample()
+    track.appendInt(nal.size)
+    track.append(nal, 0, nal.size)
+    track.finishSample(timeUs, isKey)
+  }
+
+  private fun addAudio(track: Fmp4Track, timeUs: Long, frame: ByteArray) {
+    track.startSample()
+    track.append(frame, 0, frame.size)
+    track.finishSample(timeUs, true)
+  }
+
+  @Test
+  fun `GIVEN tracks WHEN write init THEN ftyp and moov with a trak per track and mvex`() {
+    val output = ByteArrayOutputStream()
+    Fmp4Writer().writeInit(createTracks(), output)
+    val data = output.toByteArray()
+
+    val top = readBoxes(data, 0, data.size)
+    assertEquals(listOf("ftyp", "moov"), top.map { it.type })
+    val moov = top[1]
+    val moovChildren = readBoxes(data, moov.start + 8, moov.start + moov.size)
+    assertEquals(listOf("mvhd", "trak", "trak", "mvex"), moovChildren.map { it.type })
+    val mvex = moovChildren[3]
+    assertEquals(listOf("trex", "trex"), readBoxes(data, mvex.start + 8, mvex.start + mvex.size).map { it.type })
+    //stsd of the video track contains avc1 with avcC
+    val text = String(data, Charsets.ISO_8859_1)
+    listOf("avc1", "avcC", "mp4a", "esds", "vmhd", "smhd").forEach {
+      assert(text.contains(it)) { "$it not found" }
+    }
+  }
+
+  @Test
+  fun `GIVEN samples WHEN write fragment THEN trun offsets point to the samples in the mdat`() {
+    val tracks = createTracks()
+    val writer = Fmp4Writer()
+    val output = ByteArrayOutputStream()
+    val key = byteArrayOf(0x65, 1, 2, 3, 4)
+    val inter = byteArrayOf(0x41, 5, 6)
+    val aac = byteArrayOf(0x21, 0x10, 0x05)
+    addVideo(tracks[0], 0, true, key)
+    addAudio(tracks[1], 0, aac)
+    addVideo(tracks[0], 33_334, false, inter)
+    addAudio(tracks[1], 23_219, aac)
+    tracks[0].setFragmentEnd(66_667)
+    writer.writeFragment(tracks, output)
+    val data = output.toByteArray()
+
+    val top = readBoxes(data, 0, data.size)
+    assertEquals(listOf("moof", "mdat"), top.map { it.type })
+    val moof = top[0]
+    val moofChildren = readBoxes(data, moof.start + 8, moof.start + moof.size)
+    assertEquals(listOf("mfhd", "traf", "traf"), moofChildren.map { it.type })
+
+    val buffer = ByteBuffer.wrap(data)
+    val videoTraf = readBoxes(data, moofChildren[1].start + 8, moofChildren[1].start + moofChildren[1].size)
+    assertEquals(listOf("tfhd", "tfdt", "trun"), videoTraf.map { it.type })
+    val trun = videoTraf[2]
+    assertEquals(2, buffer.getInt(trun.start + 12))
+    val dataOffset = buffer.getInt(trun.start + 16)
+    //first sample: duration, size and sync flags
+    assertEquals(3000, buffer.getInt(trun.start + 20))
+    assertEquals(4 + key.size, buffer.getInt(trun.start + 24))
+    assertEquals(0x02000000, buffer.getInt(trun.start + 28))
+    //second sample ends at the fragment end and is not sync
+    assertEquals(3000, buffer.getInt(trun.start + 32))
+    assertEquals(0x01010000, buffer.getInt(trun.start + 40))
+    assertEquals(key.size, buffer.getInt(moof.start + dataOffset))
+    assertArrayEquals(key, data.copyOfRange(moof.start + dataOffset + 4, moof.start + dataOffset + 4 + key.size))
+
+    val audioTraf = readBoxes(data, moofChildren[2].start + 8, moofChildren[2].start + moofChildren[2].size)
+    val audioTrun = audioTraf[2]
+    val audioOffset = buffer.getInt(audioTrun.start + 16)
+    assertArrayEquals(aac, data.copyOfRange(moof.start + audioOffset, moof.start + audioOffset + aac.size))
+    //last audio sample without fragment end uses the previous duration, 23219us at 44100
+    assertEquals(1023, buffer.getInt(audioTrun.start + 32))
+    //samples are cleared after write
+    assertEquals(0, tracks[0].sampleCount)
+    assertEquals(0, tracks[1].dataSize)
+  }
+
+  @Test
+  fun `GIVEN second fragment WHEN write THEN sequence number increases and base time is the first sample`() {
+    val tracks = createTracks().subList(0, 1)
+    val writer = Fmp4Writer()
+    addVideo(tracks[0], 0, true, byteArrayOf(0x65, 1))
+    writer.writeFragment(tracks, ByteArrayOutputStream())
+    addVideo(tracks[0], 2_000_000, true, byteArrayOf(0x65, 2))
+    val output = ByteArrayOutputStream()
+    writer.writeFragment(tracks, output)
+    val data = output.toByteArray()
+    val buffer = ByteBuffer.wrap(data)
+
+    val moofChildren = readBoxes(data, 8, buffer.getInt(0))
+    assertEquals(2, buffer.getInt(moofChildren[0].start + 12))
+    val traf = readBoxes(data, moofChildren[1].start + 8, moofChildren[1].start + moofChildren[1].size)
+    assertEquals(180_000L, buffer.getLong(traf[1].start + 12))
+  }
+
+  @Test
+  fun `GIVEN video samples with composition offsets WHEN write fragment THEN trun includes the offsets`() {
+    val tracks = createTracks().subList(0, 1)
+    val track = tracks[0]
+    //I0 P2 B1 in decode order, dts and pts
+    listOf(Triple(0L, 40_000L, true), Triple(40_000L, 120_000L, false), Triple(80_000L, 80_000L, false)).forEach {
+      track.startSample()
+      track.append(byteArrayOf(0x41, 1), 0, 2)
+      track.finishSample(it.first, it.third, it.second - it.first)
+    }
+    val output = ByteArrayOutputStream()
+    Fmp4Writer().writeFragment(tracks, output)
+    val data = output.toByteArray()
+    val buffer = ByteBuffer.wrap(data)
+
+    val moofChildren = readBoxes(data, 8, buffer.getInt(0))
+    val traf = readBoxes(data, moofChildren[1].start + 8, moofChildren[1].start + moofChildren[1].size)
+    val trun = traf[2]
+    assertEquals(0x000F01, buffer.getInt(trun.start + 8))
+    assertEquals(3, buffer.getInt(trun.start + 12))
+    //duration, size, flags and composition offset per sample
+    assertEquals(3600, buffer.getInt(trun.start + 32))
+    assertEquals(7200, buffer.getInt(trun.start + 48))
+    assertEquals(0, buffer.getInt(trun.start + 64))
+  }
+
+  @Test
+  fun `GIVEN samples without composition offsets WHEN write fragment THEN trun has no offsets`() {
+    val tracks = createTracks().subList(0, 1)
+    addVideo(tracks[0], 0, true, byteArrayOf(0x65, 1))
+    val output = ByteArrayOutputStream()
+    Fmp4Writer().writeFragment(tracks, output)
+    val data = output.toByteArray()
+    val buffer = ByteBuffer.wrap(data)
+
+    val moofChildren = readBoxes(data, 8, buffer.getInt(0))
+    val traf = readBoxes(data, moofChildren[1].start + 8, moofChildren[1].start + moofChildren[1].size)
+    assertEquals(0x000701, buffer.getInt(traf[2].start + 8))
+  }
+}
@@ -15,6 +15,10 @@ android {
   }
   testOptions {
     unitTests.isReturnDefaultValues = true
+    //opt-in benchmarks, enabled with -Pbenchmark
+    unitTests.all { test ->
+      project.findProperty("benchmark")?.let { test.systemProperty("benchmark", it) }
+    }
   }
   publishing {
     singleVariant("release")
@@ -18,10 +18,18 @@ package com.pedro.rtmp.flv
 
 /**
  * Created by pedro on 8/04/21.
+ *
+ * The tag body is [buffer] or, if not null, [payload]. In that case buffer is empty and
+ * [toByteArray] or [FlvPayload.write] must be used to get the body.
  */
 data class FlvPacket(
   val buffer: ByteArray = byteArrayOf(),
   var timeStamp: Long = 0,
   val length: Int = 0,
-  val type: FlvType = FlvType.AUDIO
-)
\ No newline at end of file
+  val type: FlvType = FlvType.AUDIO,
+  val payload: FlvPayload? = null
+) {
+  constructor(payload: FlvPayload, timeStamp: Long, type: FlvType): this(byteArrayOf(), timeStamp, payload.size, type, payload)
+
+  fun toByteArray(): ByteArray = payload?.toByteArray() ?: buffer
+}
\ No newline at end of file
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.pedro.rtmp.flv
+
+import java.io.OutputStream
+import java.nio.ByteBuffer
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * FLV tag body described as the tag header plus slices of the encoder buffer, optionally
+ * prefixed with the slice length as uint32 (AVCC/HVCC NAL units).
+ * This avoid allocate and copy the full frame before send it, the bytes are copied directly
+ * to the destination (RTMP chunk buffer, file, etc).
+ *
+ * Slices are views of the MediaFrame buffer so the payload is only valid inside the
+ * createFlvPacket callback.
+ */
+class FlvPayload(
+  private val header: ByteArray,
+  private val slices: List<ByteBuffer>,
+  private val lengthPrefixed: Boolean
+) {
+
+  companion object {
+    private const val PREFIX_SIZE = 4
+  }
+
+  val size = header.size + slices.sumOf { it.remaining() + if (lengthPrefixed) PREFIX_SIZE else 0 }
+  //cursor used by read, part -1 is the header, even parts are length prefixes and odd parts slices
+  private var part = -1
+  private var partOffset = 0
+
+  /**
+   * Move the cursor of read to the start of the payload
+   */
+  fun rewind() {
+    part = -1
+    partOffset = 0
+  }
+
+  /**
+   * Copy the next [length] bytes of the payload to [dst]
+   */
+  fun read(dst: ByteArray, offset: Int, length: Int) {
+    var dstOffset = offset
+    var remaining = length
+    while (remaining > 0) {
+      val partSize = getPartSize(part)
+      val bytes = minOf(partSize - partOffset, remaining)
+      if (bytes > 0) {
+        copyPart(part, partOffset, dst, dstOffset, bytes)
+        dstOffset += bytes
+        remaining -= bytes
+        partOffset += bytes
+      }
+      if (partOffset == partSize) {
+        if (part + 1 >= slices.size * 2 && remaining > 0) throw IndexOutOfBoundsException("read out of payload")
+        part++
+        partOffset = 0
+      }
+    }
+  }
+
+  fun write(dst: ByteArray, offset: Int) {
+    rewind()
+    read(dst, offset, size)
+  }
+
+  fun write(output: OutputStream) {
+    output.write(header)
+    val prefix = ByteArray(PREFIX_SIZE)
+    slices.forEach {
+      if (lengthPrefixed) {
+        writeLength(it.remaining(), prefix, 0)
+        output.write(prefix)
+      }
+      if (it.hasArray()) {
+        output.write(it.array(), it.arrayOffset() + it.position(), it.remaining())
+      } else {
+        val bytes = ByteArray(it.remaining())
+        it.duplicate().get(bytes)
+        output.write(bytes)
+      }
+    }
+  }
+
+  fun toByteArray(): ByteArray {
+    val bytes = ByteArray(size)
+    write(bytes, 0)
+    return bytes
+  }
+
+  private fun getPartSize(part: Int): Int {
+    if (part == -1) return header.size
+    return if (part % 2 == 0) {
+      if (lengthPrefixed) PREFIX_SIZE else 0
+    } else slices[part / 2].remaining()
+  }
+
+  private fun copyPart(part: Int, partOffset: Int, dst: ByteArray, offset: Int, length: Int) {
+    if (part == -1) {
+      System.arraycopy(header, partOffset, dst, offset, length)
+    } else if (part % 2 == 0) {
+      val prefix = slices[part / 2].remaining()
+      for (i in 0 until length) {
+        dst[offset + i] = (prefix ushr (8 * (PREFIX_SIZE - 1 - partOffset - i))).toByte()
+      }
+    } else {
+      val slice = slices[part / 2]
+      if (slice.hasArray()) {
+        System.arraycopy(slice.array(), slice.arrayOffset() + slice.position() + partOffset, dst, offset, length)
+      } else {
+        slice.duplicate().apply { position(position() + partOffset) }.get(dst, offset, length)
+      }
+    }
+  }
+
+  private fun writeLength(value: Int, dst: ByteArray, offset: Int) {
+    dst[offset] = (value ushr 24).toByte()
+    dst[offset + 1] = (value ushr 16).toByte()
+    dst[offset + 2] = (value ushr 8).toByte()
+    dst[offset + 3] = value.toByte()
+  }
+}
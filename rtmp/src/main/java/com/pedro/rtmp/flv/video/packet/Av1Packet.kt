@@ -22,6 +22,7 @@ import com.pedro.common.removeInfo
 import com.pedro.common.toByteArray
 import com.pedro.rtmp.flv.BasePacket
 import com.pedro.rtmp.flv.FlvPacket
+import com.pedro.rtmp.flv.FlvPayload
 import com.pedro.rtmp.flv.FlvType
 import com.pedro.rtmp.flv.video.VideoDataType
 import com.pedro.rtmp.flv.video.VideoFormat
@@ -62,8 +63,8 @@ class Av1Packet: BasePacket() {
     header[3] = (codec shr 8).toByte()
     header[4] = codec.toByte()
 
-    var buffer: ByteArray
     if (!configSend) {
+      val buffer: ByteArray
       header[0] = (0b10000000 or (VideoDataType.KEYFRAME.value shl 4) or VideoFourCCPacketType.SEQUENCE_START.value).toByte()
       val obuSequence = this.obuSequence
       if (obuSequence != null) {
@@ -80,15 +81,9 @@ class Av1Packet: BasePacket() {
       configSend = true
     }
 
-    val size = fixedBuffer.remaining()
-    buffer = ByteArray(header.size + size)
-
     val nalType = if (mediaFrame.info.isKeyFrame) VideoDataType.KEYFRAME.value else VideoDataType.INTER_FRAME.value
     header[0] = (0b10000000 or (nalType shl 4) or VideoFourCCPacketType.CODED_FRAMES.value).toByte()
-    fixedBuffer.get(buffer, header.size, size)
-
-    System.arraycopy(header, 0, buffer, 0, header.size)
-    callback(FlvPacket(buffer, ts, buffer.size, FlvType.VIDEO))
+    callback(FlvPacket(FlvPayload(header.copyOf(), listOf(fixedBuffer), false), ts, FlvType.VIDEO))
   }
 
   override fun reset(resetInfo: Boolean) {
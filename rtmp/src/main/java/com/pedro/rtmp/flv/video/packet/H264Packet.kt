@@ -24,9 +24,9 @@ import com.pedro.common.nal.NalReader
 import com.pedro.common.removeHeader
 import com.pedro.common.removeInfo
 import com.pedro.common.toByteArray
-import com.pedro.common.writeUInt32
 import com.pedro.rtmp.flv.BasePacket
 import com.pedro.rtmp.flv.FlvPacket
+import com.pedro.rtmp.flv.FlvPayload
 import com.pedro.rtmp.flv.FlvType
 import com.pedro.rtmp.flv.video.VideoDataType
 import com.pedro.rtmp.flv.video.VideoFormat
@@ -70,23 +70,22 @@ class H264Packet: BasePacket() {
     }
 
     val fixedBuffer = mediaFrame.data.removeInfo(mediaFrame.info)
-    val ts = mediaFrame.info.timestamp / 1000
+    //tags are sent in decode order with the decode timestamp
+    val ts = mediaFrame.info.dts / 1000
     //header is 5 bytes length:
     //4 bits FrameType, 4 bits CodecID
     //1 byte AVCPacketType
-    //3 bytes CompositionTime, the cts.
-    val cts = 0
-    header[2] = (cts shr 16).toByte()
-    header[3] = (cts shr 8).toByte()
-    header[4] = cts.toByte()
+    //3 bytes CompositionTime, the cts. Presentation time is ts + cts, not 0 with B-frames
+    val cts = (mediaFrame.info.timestamp / 1000 - ts).toInt()
 
-    var buffer: ByteArray
     if (!configSend) {
       header[0] = ((VideoDataType.KEYFRAME.value shl 4) or VideoFormat.AVC.value).toByte()
       header[1] = Type.SEQUENCE.value
+      //the sequence header has no presentation time
+      header.fill(0, 2, 5)
 
       val config = VideoSpecificConfigAVC(videoInfo[0].toByteArray(), videoInfo[1].toByteArray())
-      buffer = ByteArray(config.size + header.size)
+      val buffer = ByteArray(config.size + header.size)
       config.write(buffer, header.size)
       System.arraycopy(header, 0, buffer, 0, header.size)
       callback(FlvPacket(buffer, ts, buffer.size, FlvType.VIDEO))
@@ -97,9 +96,6 @@ class H264Packet: BasePacket() {
     val nals = NalReader.extractNals(fixedBuffer, VideoCodec.H264, true)
     if (nals.isEmpty()) return
 
-    val size = nals.sumOf { it.capacity() }
-    buffer = ByteArray(header.size + size + naluSize * nals.size)
-
     val type: Int = (nals[0].get(0) and 0x1F).toInt()
     var nalType = VideoDataType.INTER_FRAME.value
     if (type == VideoNalType.IDR.value || mediaFrame.info.isKeyFrame) {
@@ -110,15 +106,11 @@ class H264Packet: BasePacket() {
     }
     header[0] = ((nalType shl 4) or VideoFormat.AVC.value).toByte()
     header[1] = Type.NALU.value
-    var offset = header.size
-    nals.forEach {
-      val nalSize = it.capacity()
-      buffer.writeUInt32(offset, nalSize)
-      it.get(buffer, offset + naluSize, nalSize)
-      offset += naluSize + nalSize
-    }
-    System.arraycopy(header, 0, buffer, 0, header.size)
-    callback(FlvPacket(buffer, ts, buffer.size, FlvType.VIDEO))
+    header[2] = (cts shr 16).toByte()
+    header[3] = (cts shr 8).toByte()
+    header[4] = cts.toByte()
+    //nals are written with a 4 bytes length prefix directly from the encoder buffer
+    callback(FlvPacket(FlvPayload(header.copyOf(), nals, true), ts, FlvType.VIDEO))
   }
 
   override fun reset(resetInfo: Boolean) {
@@ -24,9 +24,9 @@ import com.pedro.common.nal.NalReader
 import com.pedro.common.removeHeader
 import com.pedro.common.removeInfo
 import com.pedro.common.toByteArray
-import com.pedro.common.writeUInt32
 import com.pedro.rtmp.flv.BasePacket
 import com.pedro.rtmp.flv.FlvPacket
+import com.pedro.rtmp.flv.FlvPayload
 import com.pedro.rtmp.flv.FlvType
 import com.pedro.rtmp.flv.video.VideoDataType
 import com.pedro.rtmp.flv.video.VideoFormat
@@ -64,7 +64,8 @@ class H265Packet: BasePacket() {
       return
     }
     val fixedBuffer = mediaFrame.data.removeInfo(mediaFrame.info)
-    val ts = mediaFrame.info.timestamp / 1000
+    //tags are sent in decode order with the decode timestamp
+    val ts = mediaFrame.info.dts / 1000
     //header is 8 bytes length:
     //mark first byte as extended header (0b10000000)
     //4 bits data type, 4 bits packet type
@@ -75,19 +76,19 @@ class H265Packet: BasePacket() {
     header[2] = (codec shr 16).toByte()
     header[3] = (codec shr 8).toByte()
     header[4] = codec.toByte()
-    val cts = 0
+    //presentation time is ts + cts, not 0 with B-frames
+    val cts = (mediaFrame.info.timestamp / 1000 - ts).toInt()
     val ctsLength = 3
     header[5] = (cts shr 16).toByte()
     header[6] = (cts shr 8).toByte()
     header[7] = cts.toByte()
 
-    var buffer: ByteArray
     if (!configSend) {
       //avoid send cts on sequence start
       header[0] = (0b10000000 or (VideoDataType.KEYFRAME.value shl 4) or VideoFourCCPacketType.SEQUENCE_START.value).toByte()
 
       val config = VideoSpecificConfigHEVC(videoInfo[0].toByteArray(), videoInfo[1].toByteArray(), videoInfo[2].toByteArray())
-      buffer = ByteArray(config.size + header.size - ctsLength)
+      val buffer = ByteArray(config.size + header.size - ctsLength)
       config.write(buffer, header.size - ctsLength)
       System.arraycopy(header, 0, buffer, 0, header.size - ctsLength)
       callback(FlvPacket(buffer, ts, buffer.size, FlvType.VIDEO))
@@ -98,9 +99,6 @@ class H265Packet: BasePacket() {
     val nals = NalReader.extractNals(fixedBuffer, VideoCodec.H265, true)
     if (nals.isEmpty()) return
 
-    val size = nals.sumOf { it.capacity() }
-    buffer = ByteArray(header.size + size + naluSize * nals.size)
-
     val type: Int = nals[0].get(0).toInt().shr(1) and 0x3F
     var nalType = VideoDataType.INTER_FRAME.value
     if (type == VideoNalType.IDR_N_LP.value || type == VideoNalType.IDR_W_DLP.value || mediaFrame.info.isKeyFrame) {
@@ -110,15 +108,8 @@ class H265Packet: BasePacket() {
       return
     }
     header[0] = (0b10000000 or (nalType shl 4) or VideoFourCCPacketType.CODED_FRAMES.value).toByte()
-    var offset = header.size
-    nals.forEach {
-      val nalSize = it.capacity()
-      buffer.writeUInt32(offset, nalSize)
-      it.get(buffer, offset + naluSize, nalSize)
-      offset += naluSize + nalSize
-    }
-    System.arraycopy(header, 0, buffer, 0, header.size)
-    callback(FlvPacket(buffer, ts, buffer.size, FlvType.VIDEO))
+    //nals are written with a 4 bytes length prefix directly from the encoder buffer
+    callback(FlvPacket(FlvPayload(header.copyOf(), nals, true), ts, FlvType.VIDEO))
   }
 
   override fun reset(resetInfo: Boolean) {
@@ -6,6 +6,7 @@ import com.pedro.common.removeInfo
 import com.pedro.common.toByteArray
 import com.pedro.rtmp.flv.BasePacket
 import com.pedro.rtmp.flv.FlvPacket
+import com.pedro.rtmp.flv.FlvPayload
 import com.pedro.rtmp.flv.FlvType
 import com.pedro.rtmp.flv.video.VideoDataType
 import com.pedro.rtmp.flv.video.VideoFormat
@@ -48,13 +49,12 @@ class Vp9Packet: BasePacket() {
     header[3] = (codec shr 8).toByte()
     header[4] = codec.toByte()
 
-    var buffer: ByteArray
     if (!configSend) {
       //avoid send cts on sequence start
       header[0] = (0b10000000 or (VideoDataType.KEYFRAME.value shl 4) or VideoFourCCPacketType.SEQUENCE_START.value).toByte()
 
       val config = VideoSpecificConfigVp9(videoInfo.toByteArray())
-      buffer = ByteArray(config.size + header.size)
+      val buffer = ByteArray(config.size + header.size)
       config.write(buffer, header.size)
       System.arraycopy(header, 0, buffer, 0, header.size)
       callback(FlvPacket(buffer, ts, buffer.size, FlvType.VIDEO))
@@ -62,12 +62,9 @@ class Vp9Packet: BasePacket() {
     }
 
     fixedBuffer.rewind()
-    buffer = ByteArray(header.size + fixedBuffer.remaining())
-    fixedBuffer.get(buffer, header.size, fixedBuffer.remaining())
     val nalType = if (mediaFrame.info.isKeyFrame) VideoDataType.KEYFRAME.value else VideoDataType.INTER_FRAME.value
     header[0] = (0b10000000 or (nalType shl 4) or VideoFourCCPacketType.CODED_FRAMES.value).toByte()
-    System.arraycopy(header, 0, buffer, 0, header.size)
-    callback(FlvPacket(buffer, ts, buffer.size, FlvType.VIDEO))
+    callback(FlvPacket(FlvPayload(header.copyOf(), listOf(fixedBuffer), false), ts, FlvType.VIDEO))
   }
 
   override fun reset(resetInfo: Boolean) {
@@ -21,6 +21,7 @@ import com.pedro.common.AudioCodec
 import com.pedro.common.TimeUtils
 import com.pedro.common.VideoCodec
 import com.pedro.rtmp.flv.FlvPacket
+import com.pedro.rtmp.rtmp.chunk.ChunkWriter
 import com.pedro.rtmp.rtmp.message.Acknowledgement
 import com.pedro.rtmp.rtmp.message.Audio
 import com.pedro.rtmp.rtmp.message.RtmpMessage
@@ -65,6 +66,11 @@ abstract class CommandsManager {
   var customMetadata: Map<String, Any> = emptyMap()
   private var bytesRead = 0
   private var lastAcknowledgementSequence = 0
+  //media bytes written and last sequence acknowledged by the server, -1 if none
+  @Volatile
+  private var bytesWritten = 0L
+  @Volatile
+  private var bytesAcknowledged = -1L
 
   protected var width = 640
   protected var height = 480
@@ -75,6 +81,8 @@ abstract class CommandsManager {
   var audioCodec = AudioCodec.AAC
   //Avoid write a packet in middle of other.
   private val writeSync = Mutex(locked = false)
+  //Reused to send each audio/video message in a single socket write, protected by writeSync
+  private val chunkWriter = ChunkWriter()
 
   fun setVideoResolution(width: Int, height: Int) {
     this.width = width
@@ -213,8 +221,7 @@ abstract class CommandsManager {
   suspend fun sendVideoPacket(flvPacket: FlvPacket, socket: RtmpSocket): Int {
     writeSync.withLock {
       val video = Video(flvPacket, streamId)
-      video.writeHeader(socket)
-      video.writeBody(socket, config.writeChunkSize)
+      bytesWritten += chunkWriter.write(video, socket, config.writeChunkSize)
       socket.flush(true)
       return video.header.getPacketLength() //get packet size with header included to calculate bps
     }
@@ -224,13 +231,31 @@ abstract class CommandsManager {
   suspend fun sendAudioPacket(flvPacket: FlvPacket, socket: RtmpSocket): Int {
     writeSync.withLock {
       val audio = Audio(flvPacket, streamId)
-      audio.writeHeader(socket)
-      audio.writeBody(socket, config.writeChunkSize)
+      bytesWritten += chunkWriter.write(audio, socket, config.writeChunkSize)
       socket.flush(true)
       return audio.header.getPacketLength() //get packet size with header included to calculate bps
     }
   }
 
+  fun onAcknowledgement(sequenceNumber: Int) {
+    bytesAcknowledged = sequenceNumber.toLong() and 0xFFFFFFFFL
+  }
+
+  /**
+   * Bytes written that the server should have acknowledged already according to the
+   * acknowledgement window, -1 if the server never sent an acknowledgement.
+   * Only media bytes are counted, so the value is a few KB lower than the real one.
+   */
+  fun getUnackedBytes(): Long {
+    val acknowledged = bytesAcknowledged
+    if (acknowledged < 0) return -1
+    //sequence number is 32 bits and it wraps around
+    val unacked = (bytesWritten - acknowledged) and 0xFFFFFFFFL
+    //the server also counted handshake and commands
+    if (unacked >= 0x80000000L) return 0
+    return maxOf(unacked - config.acknowledgementWindowSize, 0)
+  }
+
   abstract suspend fun sendConnectImp(auth: String, socket: RtmpSocket)
   abstract suspend fun createStreamImp(socket: RtmpSocket)
   abstract suspend fun sendMetadataImp(socket: RtmpSocket)
@@ -246,5 +271,7 @@ abstract class CommandsManager {
     sessionHistory.reset()
     lastAcknowledgementSequence = 0
     bytesRead = 0
+    bytesWritten = 0
+    bytesAcknowledged = -1
   }
 }
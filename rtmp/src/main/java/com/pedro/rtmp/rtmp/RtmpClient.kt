@@ -21,10 +21,13 @@ import android.util.Log
 import com.pedro.common.AudioCodec
 import com.pedro.common.ConnectChecker
 import com.pedro.common.ConnectionFailed
+import com.pedro.common.QueueType
 import com.pedro.common.TimeUtils
 import com.pedro.common.UrlParser
 import com.pedro.common.VideoCodec
+import com.pedro.common.base.DropPolicy
 import com.pedro.common.frame.MediaFrame
+import com.pedro.common.frame.SharedFrame
 import com.pedro.common.onMainThread
 import com.pedro.common.socket.base.SocketType
 import com.pedro.common.socket.base.StreamSocket
@@ -98,6 +101,10 @@ class RtmpClient(private val connectChecker: ConnectChecker) {
     get() = rtmpSender.getDroppedAudioFrames()
   val droppedVideoFrames: Long
     get() = rtmpSender.getDroppedVideoFrames()
+  val droppedGopFrames: Long
+    get() = rtmpSender.getDroppedGopFrames()
+  val purgedFrames: Long
+    get() = rtmpSender.getPurgedFrames()
 
   val cacheSize: Int
     get() = rtmpSender.getCacheSize()
@@ -379,6 +386,7 @@ class RtmpClient(private val connectChecker: ConnectChecker) {
       }
       MessageType.ACKNOWLEDGEMENT -> {
         val acknowledgement = message as Acknowledgement
+        commandsManager.onAcknowledgement(acknowledgement.sequenceNumber)
       }
       MessageType.WINDOW_ACKNOWLEDGEMENT_SIZE -> {
         val windowAcknowledgementSize = message as WindowAcknowledgementSize
@@ -608,6 +616,24 @@ class RtmpClient(private val connectChecker: ConnectChecker) {
     }
   }
 
+  /**
+   * Send a frame shared with other clients without copying it, see [SharedFrame]
+   */
+  fun sendVideo(frame: SharedFrame) {
+    if (!commandsManager.videoDisabled) {
+      rtmpSender.sendSharedFrame(frame)
+    }
+  }
+
+  /**
+   * Send a frame shared with other clients without copying it, see [SharedFrame]
+   */
+  fun sendAudio(frame: SharedFrame) {
+    if (!commandsManager.audioDisabled) {
+      rtmpSender.sendSharedFrame(frame)
+    }
+  }
+
   @JvmOverloads
   @Throws(IllegalArgumentException::class)
   fun hasCongestion(percentUsed: Float = 20f): Boolean {
@@ -639,6 +665,26 @@ class RtmpClient(private val connectChecker: ConnectChecker) {
     rtmpSender.resizeCache(newSize)
   }
 
+  /**
+   * Select the queue used to store frames until send it. Must be called while not streaming.
+   */
+  @Throws(IllegalStateException::class)
+  fun setQueueType(type: QueueType) {
+    rtmpSender.setQueueType(type)
+  }
+
+  fun setDropPolicy(policy: DropPolicy) {
+    rtmpSender.setDropPolicy(policy)
+  }
+
+  /**
+   * Max millis of stream in the queue before discard old frames when a keyframe is produced.
+   * 0 to disable. Only used with DropPolicy.GOP.
+   */
+  fun setLatencyBudget(millis: Long) {
+    rtmpSender.setLatencyBudget(millis)
+  }
+
   fun setLogs(enable: Boolean) {
     rtmpSender.setLogs(enable)
   }
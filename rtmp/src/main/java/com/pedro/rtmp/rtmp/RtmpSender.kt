@@ -121,6 +121,8 @@ class RtmpSender(
     videoPacket.reset(clear)
   }
 
+  override fun getUnackedBytes(): Long = commandsManager.getUnackedBytes()
+
   private suspend fun getFlvPacket(mediaFrame: MediaFrame?, callback: suspend (FlvPacket) -> Unit) {
     if (mediaFrame == null) return
     when (mediaFrame.type) {
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.pedro.rtmp.rtmp.chunk
+
+import com.pedro.rtmp.flv.FlvPayload
+import com.pedro.rtmp.rtmp.message.RtmpHeader
+import com.pedro.rtmp.rtmp.message.RtmpMessage
+import com.pedro.rtmp.utils.socket.RtmpSocket
+import java.io.IOException
+import kotlin.math.min
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Serialize a full message (first header, chunks of body and TYPE_3 headers between chunks)
+ * into a reusable buffer so the socket receive it in a single write call instead of one write
+ * per chunk and per header field.
+ *
+ * The buffer only grows, so after the first keyframe no more allocations are needed.
+ * Not thread safe, the caller must synchronize the access.
+ */
+class ChunkWriter(initialSize: Int = INITIAL_SIZE) {
+
+  companion object {
+    const val INITIAL_SIZE = 64 * 1024
+    private const val MAX_TIMESTAMP = 0xffffff
+  }
+
+  var buffer = ByteArray(initialSize)
+    private set
+
+  /**
+   * @return bytes written in the socket (headers included)
+   */
+  @Throws(IOException::class)
+  suspend fun write(message: RtmpMessage, socket: RtmpSocket, chunkSize: Int): Int {
+    val payload = message.getPayload()
+    val size = if (payload != null) {
+      serialize(message.header, payload, chunkSize)
+    } else {
+      serialize(message.header, message.storeBody(), message.getSize(), chunkSize)
+    }
+    socket.write(buffer, 0, size)
+    return size
+  }
+
+  /**
+   * Write the chunked message in [buffer].
+   *
+   * @return bytes used in [buffer]
+   */
+  fun serialize(header: RtmpHeader, body: ByteArray, length: Int, chunkSize: Int): Int {
+    return serialize(header, body, null, length, chunkSize)
+  }
+
+  /**
+   * Write the chunked message in [buffer] copying the body directly from the payload slices.
+   *
+   * @return bytes used in [buffer]
+   */
+  fun serialize(header: RtmpHeader, payload: FlvPayload, chunkSize: Int): Int {
+    payload.rewind()
+    return serialize(header, null, payload, payload.size, chunkSize)
+  }
+
+  private fun serialize(header: RtmpHeader, body: ByteArray?, payload: FlvPayload?, length: Int, chunkSize: Int): Int {
+    ensureCapacity(getChunkedSize(header, length, chunkSize))
+    val chunkStreamId = header.basicHeader.chunkStreamId
+    val extendedTs = header.timeStamp >= MAX_TIMESTAMP
+    var offset = writeHeader(header, header.basicHeader.chunkType, 0)
+    var pos = 0
+    var remaining = length
+    while (remaining > chunkSize) {
+      copyBody(body, payload, pos, offset, chunkSize)
+      offset += chunkSize
+      pos += chunkSize
+      remaining -= chunkSize
+      buffer[offset++] = ((ChunkType.TYPE_3.mark.toInt() shl 6) or chunkStreamId).toByte()
+      if (extendedTs) offset = writeUInt32(header.timeStamp, offset)
+    }
+    copyBody(body, payload, pos, offset, remaining)
+    return offset + remaining
+  }
+
+  private fun copyBody(body: ByteArray?, payload: FlvPayload?, pos: Int, offset: Int, length: Int) {
+    if (payload != null) payload.read(buffer, offset, length)
+    else if (body != null) System.arraycopy(body, pos, buffer, offset, length)
+  }
+
+  fun getChunkedSize(header: RtmpHeader, length: Int, chunkSize: Int): Int {
+    val chunks = if (length == 0) 1 else (length + chunkSize - 1) / chunkSize
+    val extendedSize = if (header.timeStamp >= MAX_TIMESTAMP) 4 else 0
+    val headerSize = when (header.basicHeader.chunkType) {
+      ChunkType.TYPE_0 -> 11
+      ChunkType.TYPE_1 -> 7
+      ChunkType.TYPE_2 -> 3
+      ChunkType.TYPE_3 -> 0
+    }
+    return 1 + headerSize + extendedSize + length + (chunks - 1) * (1 + extendedSize)
+  }
+
+  private fun ensureCapacity(size: Int) {
+    if (buffer.size < size) buffer = ByteArray(size + size / 4)
+  }
+
+  /**
+   * Same structure that RtmpHeader.writeHeader
+   */
+  private fun writeHeader(header: RtmpHeader, chunkType: ChunkType, start: Int): Int {
+    var offset = start
+    val timeStamp = header.timeStamp
+    buffer[offset++] = ((chunkType.mark.toInt() shl 6) or header.basicHeader.chunkStreamId).toByte()
+    when (chunkType) {
+      ChunkType.TYPE_0 -> {
+        offset = writeUInt24(min(timeStamp, MAX_TIMESTAMP), offset)
+        offset = writeUInt24(header.messageLength, offset)
+        header.messageType?.let { buffer[offset++] = it.mark }
+        offset = writeUInt32LittleEndian(header.messageStreamId, offset)
+      }
+      ChunkType.TYPE_1 -> {
+        offset = writeUInt24(min(timeStamp, MAX_TIMESTAMP), offset)
+        offset = writeUInt24(header.messageLength, offset)
+        header.messageType?.let { buffer[offset++] = it.mark }
+      }
+      ChunkType.TYPE_2 -> {
+        offset = writeUInt24(min(timeStamp, MAX_TIMESTAMP), offset)
+      }
+      ChunkType.TYPE_3 -> {}
+    }
+    //extended timestamp
+    if (timeStamp >= MAX_TIMESTAMP) offset = writeUInt32(timeStamp, offset)
+    return offset
+  }
+
+  private fun writeUInt24(value: Int, offset: Int): Int {
+    buffer[offset] = (value ushr 16).toByte()
+    buffer[offset + 1] = (value ushr 8).toByte()
+    buffer[offset + 2] = value.toByte()
+    return offset + 3
+  }
+
+  private fun writeUInt32(value: Int, offset: Int): Int {
+    buffer[offset] = (value ushr 24).toByte()
+    buffer[offset + 1] = (value ushr 16).toByte()
+    buffer[offset + 2] = (value ushr 8).toByte()
+    buffer[offset + 3] = value.toByte()
+    return offset + 4
+  }
+
+  private fun writeUInt32LittleEndian(value: Int, offset: Int): Int {
+    buffer[offset] = value.toByte()
+    buffer[offset + 1] = (value ushr 8).toByte()
+    buffer[offset + 2] = (value ushr 16).toByte()
+    buffer[offset + 3] = (value ushr 24).toByte()
+    return offset + 4
+  }
+}
@@ -26,7 +26,7 @@ import java.io.InputStream
 /**
  * Created by pedro on 21/04/21.
  */
-class Acknowledgement(private var sequenceNumber: Int = 0):
+class Acknowledgement(var sequenceNumber: Int = 0):
     RtmpMessage(BasicHeader(ChunkType.TYPE_0, ChunkStreamId.PROTOCOL_CONTROL.mark)) {
 
   override fun readBody(input: InputStream) {
@@ -17,6 +17,7 @@
 package com.pedro.rtmp.rtmp.message
 
 import com.pedro.rtmp.flv.FlvPacket
+import com.pedro.rtmp.flv.FlvPayload
 import com.pedro.rtmp.rtmp.chunk.ChunkStreamId
 import com.pedro.rtmp.rtmp.chunk.ChunkType
 import java.io.InputStream
@@ -35,7 +36,9 @@ class Audio(private val flvPacket: FlvPacket = FlvPacket(), streamId: Int = 0):
   override fun readBody(input: InputStream) {
   }
 
-  override fun storeBody(): ByteArray = flvPacket.buffer
+  override fun storeBody(): ByteArray = flvPacket.toByteArray()
+
+  override fun getPayload(): FlvPayload? = flvPacket.payload
 
   override fun getType(): MessageType = MessageType.AUDIO
 
@@ -16,6 +16,7 @@
 
 package com.pedro.rtmp.rtmp.message
 
+import com.pedro.rtmp.flv.FlvPayload
 import com.pedro.rtmp.rtmp.chunk.ChunkType
 import com.pedro.rtmp.rtmp.message.control.UserControl
 import com.pedro.rtmp.rtmp.message.shared.SharedObject
@@ -133,6 +134,11 @@ abstract class RtmpMessage(basicHeader: BasicHeader) {
 
   abstract fun storeBody(): ByteArray
 
+  /**
+   * Body described as slices, used instead of storeBody by ChunkWriter to avoid copy the body.
+   */
+  open fun getPayload(): FlvPayload? = null
+
   abstract fun getType(): MessageType
 
   abstract fun getSize(): Int
@@ -39,6 +39,8 @@ class FakeRtmpSocket: RtmpSocket() {
   var input = ByteArrayInputStream(byteArrayOf())
     private set
   val output = ByteArrayOutputStream()
+  var writeCalls = 0
+    private set
   private var connected = false
 
   fun setInputBytes(byteArray: ByteArray) {
@@ -62,30 +64,37 @@ class FakeRtmpSocket: RtmpSocket() {
   override fun isReachable(): Boolean = connected
 
   override suspend fun write(b: Int) {
+    writeCalls++
     output.write(b)
   }
 
   override suspend fun write(b: ByteArray) {
+    writeCalls++
     output.write(b)
   }
 
   override suspend fun write(b: ByteArray, offset: Int, size: Int) {
+    writeCalls++
     output.write(b, offset, size)
   }
 
   override suspend fun writeUInt16(b: Int) {
+    writeCalls++
     output.writeUInt16(b)
   }
 
   override suspend fun writeUInt24(b: Int) {
+    writeCalls++
     output.writeUInt24(b)
   }
 
   override suspend fun writeUInt32(b: Int) {
+    writeCalls++
     output.writeUInt32(b)
   }
 
   override suspend fun writeUInt32LittleEndian(b: Int) {
+    writeCalls++
     output.writeUInt32LittleEndian(b)
   }
 
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.pedro.rtmp.flv
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+
+/**
+ * Created by pedro on 18/10/26.
+ */
+class FlvPayloadTest {
+
+  private val header = byteArrayOf(0x17, 0x01, 0x00, 0x00, 0x00)
+  private val nal1 = byteArrayOf(0x65, 0x01, 0x02, 0x03)
+  private val nal2 = byteArrayOf(0x41, 0x04)
+
+  @Test
+  fun `GIVEN length prefixed slices WHEN get bytes THEN get header and avcc nal units`() {
+    val payload = FlvPayload(header, listOf(ByteBuffer.wrap(nal1), ByteBuffer.wrap(nal2)), true)
+    val expected = header + byteArrayOf(0, 0, 0, 4) + nal1 + byteArrayOf(0, 0, 0, 2) + nal2
+    assertEquals(expected.size, payload.size)
+    assertArrayEquals(expected, payload.toByteArray())
+    val output = ByteArrayOutputStream()
+    payload.write(output)
+    assertArrayEquals(expected, output.toByteArray())
+  }
+
+  @Test
+  fun `GIVEN slices WHEN read in small pieces THEN get same bytes than full copy`() {
+    val frame = ByteBuffer.wrap(byteArrayOf(9, 9) + nal1 + nal2)
+    frame.position(2)
+    val slice = frame.slice()
+    listOf(true, false).forEach { lengthPrefixed ->
+      val payload = FlvPayload(header, listOf(slice, ByteBuffer.wrap(nal2)), lengthPrefixed)
+      val expected = payload.toByteArray()
+      for (pieceSize in 1..expected.size) {
+        val result = ByteArray(expected.size)
+        payload.rewind()
+        var offset = 0
+        while (offset < result.size) {
+          val length = minOf(pieceSize, result.size - offset)
+          payload.read(result, offset, length)
+          offset += length
+        }
+        assertArrayEquals(expected, result)
+      }
+    }
+  }
+
+  @Test(expected = IndexOutOfBoundsException::class)
+  fun `GIVEN a payload WHEN read more bytes than size THEN throw exception`() {
+    val payload = FlvPayload(header, listOf(ByteBuffer.wrap(nal1)), false)
+    payload.read(ByteArray(payload.size + 1), 0, payload.size + 1)
+  }
+}
@@ -50,6 +50,6 @@ class Av1PacketTest {
 
     assertEquals(2, frames.size)
     assertArrayEquals(expectedConfig, frames[0].buffer)
-    assertArrayEquals(expectedFlvPacket, frames[1].buffer)
+    assertArrayEquals(expectedFlvPacket, frames[1].toByteArray())
   }
 }
\ No newline at end of file
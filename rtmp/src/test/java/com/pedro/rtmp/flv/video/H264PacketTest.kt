@@ -53,6 +53,27 @@ class H264PacketTest {
 
     assertEquals(2, frames.size)
     assertArrayEquals(expectedConfig, frames[0].buffer)
-    assertArrayEquals(expectedFlvPacket, frames[1].buffer)
+    assertArrayEquals(expectedFlvPacket, frames[1].toByteArray())
   }
-}
\ No newline at end of file
+
+  @Test
+  fun `GIVEN a frame with dts before pts WHEN create a h264 packet THEN ts is dts and cts is the difference`() = runTest {
+    val fakeH264 = byteArrayOf(0x00, 0x00, 0x00, 0x01, 0x01, 0x0A, 0x0B)
+    val info = MediaFrame.Info(0, fakeH264.size, 1_100_000, false, dts = 1_000_000)
+    val h264Packet = H264Packet()
+    val sps = byteArrayOf(103, 100, 0, 30, -84, -76, 15, 2, -115, 53, 2, 2, 2, 7, -117, 23, 8)
+    val pps = byteArrayOf(104, -18, 13, -117)
+    h264Packet.sendVideoInfo(ByteBuffer.wrap(sps), ByteBuffer.wrap(pps))
+    val frames = mutableListOf<FlvPacket>()
+    h264Packet.createFlvPacket(MediaFrame(ByteBuffer.wrap(fakeH264), info, MediaFrame.Type.VIDEO)) {
+      frames.add(it)
+    }
+
+    assertEquals(2, frames.size)
+    //sequence header without cts
+    assertArrayEquals(byteArrayOf(23, 0, 0, 0, 0), frames[0].buffer.copyOfRange(0, 5))
+    assertEquals(1000L, frames[1].timeStamp)
+    //cts of 100 ms
+    assertArrayEquals(byteArrayOf(39, 1, 0, 0, 100), frames[1].toByteArray().copyOfRange(0, 5))
+  }
+}
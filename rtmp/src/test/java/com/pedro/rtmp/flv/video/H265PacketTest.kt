@@ -54,6 +54,6 @@ class H265PacketTest {
     }
     assertEquals(2, frames.size)
     assertArrayEquals(expectedConfig, frames[0].buffer)
-    assertArrayEquals(expectedFlvPacket, frames[1].buffer)
+    assertArrayEquals(expectedFlvPacket, frames[1].toByteArray())
   }
 }
\ No newline at end of file
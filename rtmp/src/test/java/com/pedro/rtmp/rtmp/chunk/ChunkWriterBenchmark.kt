@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.pedro.rtmp.rtmp.chunk
+
+import com.pedro.common.toUInt16
+import com.pedro.common.toUInt24
+import com.pedro.common.toUInt32
+import com.pedro.common.toUInt32LittleEndian
+import com.pedro.rtmp.flv.FlvPacket
+import com.pedro.rtmp.flv.FlvType
+import com.pedro.rtmp.rtmp.message.Audio
+import com.pedro.rtmp.rtmp.message.RtmpMessage
+import com.pedro.rtmp.rtmp.message.Video
+import com.pedro.rtmp.utils.RtmpConfig
+import com.pedro.rtmp.utils.socket.RtmpSocket
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assume.assumeTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.BufferedOutputStream
+import java.io.OutputStream
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Micro benchmark in JMH style (warmup iterations + measured iterations, average time per
+ * operation) comparing the legacy per chunk write path with ChunkWriter for a 64 bytes audio
+ * message and a 500 KB video message.
+ *
+ * The socket discard the bytes, so the result show the cost of serialization and socket calls
+ * without network noise.
+ *
+ * Skipped by default, run it with:
+ * ./gradlew :rtmp:testDebugUnitTest -Pbenchmark --tests "*ChunkWriterBenchmark"
+ */
+class ChunkWriterBenchmark {
+
+  private val warmupIterations = 2000
+  private val measureIterations = 5000
+
+  @Before
+  fun setUp() {
+    assumeTrue(System.getProperty("benchmark") != null)
+  }
+
+  /**
+   * Write like TcpSocket does (header fields converted to arrays and a buffered stream) but
+   * discarding the bytes.
+   */
+  private class CountingSocket: RtmpSocket() {
+    var calls = 0L
+    var bytes = 0L
+    private val output = BufferedOutputStream(OutputStream.nullOutputStream())
+
+    private fun count(b: ByteArray, offset: Int = 0, size: Int = b.size) {
+      output.write(b, offset, size)
+      calls++
+      bytes += size
+    }
+
+    override suspend fun flush(isPacket: Boolean) {}
+    override suspend fun connect() {}
+    override suspend fun close() {}
+    override fun isConnected(): Boolean = true
+    override fun isReachable(): Boolean = true
+    override suspend fun write(b: Int) = count(byteArrayOf(b.toByte()))
+    override suspend fun write(b: ByteArray) = count(b)
+    override suspend fun write(b: ByteArray, offset: Int, size: Int) = count(b, offset, size)
+    override suspend fun writeUInt16(b: Int) = count(b.toUInt16())
+    override suspend fun writeUInt24(b: Int) = count(b.toUInt24())
+    override suspend fun writeUInt32(b: Int) = count(b.toUInt32())
+    override suspend fun writeUInt32LittleEndian(b: Int) = count(b.toUInt32LittleEndian())
+    override suspend fun read(): Int = 0
+    override suspend fun readUInt16(): Int = 0
+    override suspend fun readUInt24(): Int = 0
+    override suspend fun readUInt32(): Int = 0
+    override suspend fun readUInt32LittleEndian(): Int = 0
+    override suspend fun readUntil(b: ByteArray) {}
+  }
+
+  private fun measure(name: String, iterations: Int, operation: suspend (CountingSocket) -> Unit): CountingSocket {
+    val socket = CountingSocket()
+    runBlocking {
+      repeat(warmupIterations) { operation(CountingSocket()) }
+      val start = System.nanoTime()
+      repeat(iterations) { operation(socket) }
+      val elapsed = System.nanoTime() - start
+      println("$name: ${elapsed / iterations} ns/op, ${socket.calls / iterations} socket calls/op")
+    }
+    return socket
+  }
+
+  private fun compare(name: String, message: RtmpMessage, iterations: Int) {
+    val chunkSize = RtmpConfig.DEFAULT_CHUNK_SIZE
+    val writer = ChunkWriter()
+    val legacy = measure("$name legacy", iterations) {
+      message.writeHeader(it)
+      message.writeBody(it, chunkSize)
+    }
+    val chunked = measure("$name chunk writer", iterations) {
+      writer.write(message, it, chunkSize)
+    }
+    assertEquals(legacy.bytes, chunked.bytes)
+    assertEquals(iterations.toLong(), chunked.calls)
+  }
+
+  @Test
+  fun `GIVEN a 64 bytes audio message WHEN write with both paths THEN chunk writer use a single socket call`() {
+    val packet = FlvPacket(ByteArray(64), 1234, 64, FlvType.AUDIO)
+    compare("audio 64B", Audio(packet, 1), measureIterations)
+  }
+
+  @Test
+  fun `GIVEN a 500 KB video message WHEN write with both paths THEN chunk writer use a single socket call`() {
+    val size = 500 * 1024
+    val packet = FlvPacket(ByteArray(size), 1234, size, FlvType.VIDEO)
+    compare("video 500KB", Video(packet, 1), measureIterations / 10)
+  }
+}
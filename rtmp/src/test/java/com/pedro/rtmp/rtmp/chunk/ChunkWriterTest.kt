@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.pedro.rtmp.rtmp.chunk
+
+import com.pedro.rtmp.FakeRtmpSocket
+import com.pedro.rtmp.flv.FlvPacket
+import com.pedro.rtmp.flv.FlvPayload
+import com.pedro.rtmp.flv.FlvType
+import com.pedro.rtmp.rtmp.message.Audio
+import com.pedro.rtmp.rtmp.message.RtmpMessage
+import com.pedro.rtmp.rtmp.message.Video
+import com.pedro.rtmp.utils.RtmpConfig
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.ByteBuffer
+
+/**
+ * Created by pedro on 18/10/26.
+ */
+class ChunkWriterTest {
+
+  private suspend fun writeLegacy(message: RtmpMessage, chunkSize: Int): ByteArray {
+    val socket = FakeRtmpSocket()
+    message.writeHeader(socket)
+    message.writeBody(socket, chunkSize)
+    return socket.output.toByteArray()
+  }
+
+  private suspend fun writeChunked(writer: ChunkWriter, message: RtmpMessage, chunkSize: Int): ByteArray {
+    val socket = FakeRtmpSocket()
+    val size = writer.write(message, socket, chunkSize)
+    val bytes = socket.output.toByteArray()
+    assertEquals(size, bytes.size)
+    return bytes
+  }
+
+  private fun createPacket(size: Int, ts: Long, type: FlvType): FlvPacket {
+    return FlvPacket(ByteArray(size) { it.toByte() }, ts, size, type)
+  }
+
+  @Test
+  fun `GIVEN audio and video messages WHEN write using chunk writer THEN get same bytes than legacy path`() = runTest {
+    val writer = ChunkWriter(16)
+    val sizes = listOf(0, 1, 64, RtmpConfig.DEFAULT_CHUNK_SIZE, RtmpConfig.DEFAULT_CHUNK_SIZE + 1, 4096, 500 * 1024)
+    val timestamps = listOf(0L, 1234567L, 0xffffffL, 0x1234567L)
+    sizes.forEach { size ->
+      timestamps.forEach { ts ->
+        listOf(RtmpConfig.DEFAULT_CHUNK_SIZE, 4096).forEach { chunkSize ->
+          val video = Video(createPacket(size, ts, FlvType.VIDEO), 1)
+          assertArrayEquals(writeLegacy(video, chunkSize), writeChunked(writer, video, chunkSize))
+          val audio = Audio(createPacket(size, ts, FlvType.AUDIO), 1)
+          assertArrayEquals(writeLegacy(audio, chunkSize), writeChunked(writer, audio, chunkSize))
+        }
+      }
+    }
+  }
+
+  @Test
+  fun `GIVEN a video message with payload slices WHEN write using chunk writer THEN get same bytes than legacy path`() = runTest {
+    val writer = ChunkWriter(16)
+    val frame = ByteBuffer.wrap(ByteArray(20_000) { (it * 7).toByte() })
+    val slices = listOf(300, 1, 5000, 14_699).runningFold(0) { acc, size -> acc + size }.zipWithNext { start, end ->
+      frame.duplicate().apply { position(start); limit(end) }.slice()
+    }
+    listOf(true, false).forEach { lengthPrefixed ->
+      val payload = FlvPayload(byteArrayOf(0x17, 0x01, 0x00, 0x00, 0x00), slices, lengthPrefixed)
+      val video = Video(FlvPacket(payload, 1234, FlvType.VIDEO), 1)
+      //write twice to check that the payload cursor is restarted
+      assertArrayEquals(writeLegacy(video, 4096), writeChunked(writer, video, 4096))
+      assertArrayEquals(writeLegacy(video, 128), writeChunked(writer, video, 128))
+    }
+  }
+
+  @Test
+  fun `GIVEN audio and video messages WHEN write using chunk writer THEN use a single socket write`() = runTest {
+    val writer = ChunkWriter(16)
+    listOf(Audio(createPacket(64, 1234, FlvType.AUDIO), 1), Video(createPacket(500 * 1024, 1234, FlvType.VIDEO), 1)).forEach { message ->
+      val legacySocket = FakeRtmpSocket()
+      message.writeHeader(legacySocket)
+      message.writeBody(legacySocket, RtmpConfig.DEFAULT_CHUNK_SIZE)
+      val socket = FakeRtmpSocket()
+      writer.write(message, socket, RtmpConfig.DEFAULT_CHUNK_SIZE)
+      assertEquals(1, socket.writeCalls)
+      assertEquals(legacySocket.output.size(), socket.output.size())
+    }
+  }
+
+  @Test
+  fun `GIVEN a big message WHEN serialize THEN buffer grows only when needed`() {
+    val writer = ChunkWriter(16)
+    val video = Video(createPacket(10_000, 0, FlvType.VIDEO))
+    val expectedSize = writer.getChunkedSize(video.header, 10_000, 128)
+    val size = writer.serialize(video.header, video.storeBody(), video.getSize(), 128)
+    assertEquals(expectedSize, size)
+    val buffer = writer.buffer
+    assertTrue(buffer.size >= size)
+    val audio = Audio(createPacket(64, 0, FlvType.AUDIO))
+    writer.serialize(audio.header, audio.storeBody(), audio.getSize(), 128)
+    assertTrue(buffer === writer.buffer)
+  }
+}
@@ -16,7 +16,9 @@
 
 package com.pedro.rtsp.rtcp
 
+import com.pedro.common.ReceiverReportStats
 import com.pedro.common.TimeUtils
+import com.pedro.common.frame.MediaFrame
 import com.pedro.common.socket.base.SocketType
 import com.pedro.common.socket.base.StreamSocket
 import com.pedro.common.socket.base.TcpStreamSocket
@@ -29,10 +31,14 @@ import com.pedro.rtsp.utils.CryptoUtils
 import com.pedro.rtsp.utils.RtpConstants
 import com.pedro.rtsp.utils.RtpTracks
 import com.pedro.rtsp.utils.setLong
+import kotlinx.coroutines.CoroutineScope
 import java.io.IOException
 
 /**
  * Created by pedro on 7/11/18.
+ *
+ * Send SR of each stream and read the reception reports (RR, SR and XR) sent by the server to
+ * know loss, jitter and RTT of our streams.
  */
 abstract class BaseSenderReport internal constructor(private val rtpTracks: RtpTracks) {
 
@@ -43,6 +49,8 @@ abstract class BaseSenderReport internal constructor(private val rtpTracks: RtpT
   private var audioTime: Long = 0
   private var videoPacketCount = 0L
   private var videoOctetCount = 0L
+  //B-frames are sent before the frames presented before them, report the highest video timestamp
+  private var videoRtpTs = 0L
   private var audioPacketCount = 0L
   private var audioOctetCount = 0L
   private var srtcpVideoIndex = 0
@@ -51,6 +59,48 @@ abstract class BaseSenderReport internal constructor(private val rtpTracks: RtpT
 
   private var ssrcVideo = 0L
   private var ssrcAudio = 0L
+  private var videoClock = RtpConstants.clockVideoFrequency
+  private var audioClock = 44100L
+  @Volatile
+  private var videoReport: ReceiverReportStats? = null
+  @Volatile
+  private var audioReport: ReceiverReportStats? = null
+
+  private val reportListener = object : RtcpReportReader.Listener {
+    override fun onReportBlock(
+      ssrc: Long, fractionLost: Int, cumulativeLost: Int, highestSequence: Long,
+      jitter: Long, lastSr: Long, delaySinceLastSr: Long
+    ) {
+      val type = getType(ssrc) ?: return
+      val previous = getReport(type)
+      val rtt = calculateRtt(lastSr, delaySinceLastSr)
+      setReport(type, ReceiverReportStats(
+        ssrc = ssrc,
+        type = type,
+        fractionLost = fractionLost / 256f,
+        cumulativeLost = cumulativeLost.toLong(),
+        jitter = toMillis(jitter, type),
+        rtt = if (rtt >= 0) rtt else previous?.rtt ?: -1
+      ))
+    }
+
+    override fun onStatisticsSummary(ssrc: Long, beginSequence: Int, endSequence: Int, lostPackets: Long, meanJitter: Long) {
+      val type = getType(ssrc) ?: return
+      val previous = getReport(type)
+      //end sequence is the last sequence + 1
+      val packets = (endSequence - beginSequence) and 0xFFFF
+      setReport(type, ReceiverReportStats(
+        ssrc = ssrc,
+        type = type,
+        fractionLost = if (lostPackets >= 0 && packets > 0) {
+          minOf(lostPackets.toFloat() / packets, 1f)
+        } else previous?.fractionLost ?: 0f,
+        cumulativeLost = previous?.cumulativeLost ?: 0,
+        jitter = if (meanJitter >= 0) toMillis(meanJitter, type) else previous?.jitter ?: 0f,
+        rtt = previous?.rtt ?: -1
+      ))
+    }
+  }
 
   companion object {
     @JvmStatic
@@ -118,9 +168,37 @@ abstract class BaseSenderReport internal constructor(private val rtpTracks: RtpT
     cryptoUtils = CryptoUtils(properties)
   }
 
+  /**
+   * RTP clock of each stream, used to convert the jitter reported to millis.
+   */
+  fun setClockRates(videoClock: Long, audioClock: Long) {
+    this.videoClock = videoClock
+    this.audioClock = audioClock
+  }
+
   @Throws(IOException::class)
   abstract suspend fun setSocket(socket: TcpStreamSocket)
 
+  /**
+   * Start to read the RTCP packets sent by the server in [scope], if the transport has its own
+   * sockets. Packets received in other connection must be provided with [onRtcpPacket].
+   */
+  open fun startReading(scope: CoroutineScope) { }
+
+  /**
+   * Read a RTCP compound packet received from the server.
+   * SRTCP packets are ignored, the keys of the server are unknown.
+   */
+  fun onRtcpPacket(buffer: ByteArray, offset: Int, length: Int) {
+    if (cryptoUtils != null) return
+    RtcpReportReader.read(buffer, offset, length, reportListener)
+  }
+
+  /**
+   * @return the last reception report of each stream received from the server
+   */
+  fun getReceiverReports(): List<ReceiverReportStats> = listOfNotNull(videoReport, audioReport)
+
   @Throws(IOException::class)
   suspend fun update(rtpFrame: RtpFrame): Boolean {
     return if (rtpFrame.channelIdentifier == rtpTracks.trackVideo) {
@@ -137,11 +215,12 @@ abstract class BaseSenderReport internal constructor(private val rtpTracks: RtpT
   private suspend fun updateVideo(rtpFrame: RtpFrame): Boolean {
     videoPacketCount++
     videoOctetCount += rtpFrame.length
+    videoRtpTs = maxOf(videoRtpTs, rtpFrame.timeStamp)
     videoBuffer.setLong(videoPacketCount, 20, 24)
     videoBuffer.setLong(videoOctetCount, 24, 28)
     if (TimeUtils.getCurrentTimeMillis() - videoTime >= interval) {
       videoTime = TimeUtils.getCurrentTimeMillis()
-      setData(videoBuffer, TimeUtils.getCurrentTimeNano(), rtpFrame.timeStamp)
+      setData(videoBuffer, TimeUtils.getCurrentTimeNano(), videoRtpTs)
       cryptoUtils?.let {
         sendReport(encrypt(videoBuffer, srtcpVideoIndex++, ssrcVideo, it), rtpFrame)
       } ?: sendReport(videoBuffer, rtpFrame)
@@ -170,12 +249,15 @@ abstract class BaseSenderReport internal constructor(private val rtpTracks: RtpT
   fun reset() {
     videoOctetCount = 0
     videoPacketCount = 0
+    videoRtpTs = 0
     audioOctetCount = 0
     audioPacketCount = 0
     audioTime = 0
     videoTime = 0
     srtcpVideoIndex = 0
     srtcpAudioIndex  = 0
+    videoReport = null
+    audioReport = null
     videoBuffer.setLong(videoPacketCount, 20, 24)
     videoBuffer.setLong(videoOctetCount, 24, 28)
     audioBuffer.setLong(audioPacketCount, 20, 24)
@@ -184,6 +266,52 @@ abstract class BaseSenderReport internal constructor(private val rtpTracks: RtpT
 
   abstract suspend fun close()
 
+  private fun getType(ssrc: Long): MediaFrame.Type? {
+    //ssrc are generated as signed int
+    return when (ssrc) {
+      ssrcVideo and 0xFFFFFFFFL -> MediaFrame.Type.VIDEO
+      ssrcAudio and 0xFFFFFFFFL -> MediaFrame.Type.AUDIO
+      else -> null
+    }
+  }
+
+  private fun getReport(type: MediaFrame.Type): ReceiverReportStats? {
+    return if (type == MediaFrame.Type.VIDEO) videoReport else audioReport
+  }
+
+  private fun setReport(type: MediaFrame.Type, report: ReceiverReportStats) {
+    if (type == MediaFrame.Type.VIDEO) videoReport = report else audioReport = report
+  }
+
+  private fun toMillis(rtpUnits: Long, type: MediaFrame.Type): Float {
+    val clock = if (type == MediaFrame.Type.VIDEO) videoClock else audioClock
+    return rtpUnits * 1000f / clock
+  }
+
+  /**
+   * RFC 3550 6.4.1, RTT = arrival time - LSR - DLSR in units of 1/65536 seconds.
+   * The arrival time uses the same clock than the NTP timestamp of our SR.
+   *
+   * @return RTT in millis or -1 if the server didn't receive a SR yet
+   */
+  private fun calculateRtt(lastSr: Long, delaySinceLastSr: Long): Long {
+    if (lastSr == 0L) return -1
+    val now = getNtpMiddle(TimeUtils.getCurrentTimeNano())
+    val rtt = (now - lastSr - delaySinceLastSr) and 0xFFFFFFFFL
+    //negative, the report is wrong
+    if (rtt > 0x7FFFFFFFL) return -1
+    return rtt * 1000 / 65536
+  }
+
+  /**
+   * Middle 32 bits of the NTP timestamp written in setData.
+   */
+  private fun getNtpMiddle(ntpts: Long): Long {
+    val hb = ntpts / 1000000000
+    val lb = (ntpts - hb * 1000000000) * 4294967296L / 1000000000
+    return ((hb and 0xFFFF) shl 16) or (lb ushr 16)
+  }
+
   private fun setData(buffer: ByteArray, ntpts: Long, rtpts: Long) {
     val hb = ntpts / 1000000000
     val lb = (ntpts - hb * 1000000000) * 4294967296L / 1000000000
@@ -195,17 +323,11 @@ abstract class BaseSenderReport internal constructor(private val rtpTracks: RtpT
   private fun encrypt(
     buffer: ByteArray, index: Int, ssrc: Long, cryptoUtils: CryptoUtils,
   ): ByteArray {
-    var encryptedData = buffer
+    val encryptedData = buffer.copyOf(buffer.size + 4 + RtpConstants.HMAC_SIZE)
     val i = index or (1 shl 31)
-    encryptedData = encryptedData.plus(i.toUInt32())
-    val payload = encryptedData.copyOfRange(8, encryptedData.size - 4)
-    val encryptPayload = cryptoUtils.encrypt(payload, getIvData(ssrc, index, cryptoUtils))
-    encryptPayload.copyInto(encryptedData, 8)
-    val hmac = cryptoUtils.calculateHmac(encryptedData)
-    return encryptedData.plus(hmac)
-  }
-
-  private fun getIvData(ssrc: Long, index: Int, cryptoUtils: CryptoUtils): ByteArray {
-    return cryptoUtils.generateIv(ssrc, index.toLong())
+    i.toUInt32().copyInto(encryptedData, buffer.size)
+    cryptoUtils.encrypt(encryptedData, 8, buffer.size - 8, ssrc, index.toLong())
+    cryptoUtils.calculateHmac(encryptedData, 0, buffer.size + 4, null, encryptedData, buffer.size + 4)
+    return encryptedData
   }
 }
\ No newline at end of file
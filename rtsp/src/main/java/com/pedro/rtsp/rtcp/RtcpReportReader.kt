@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.rtsp.rtcp
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Read the reception reports of a RTCP compound packet received from the server:
+ * - Report blocks of SR (200) and RR (201). RFC 3550 6.4
+ * - Statistics Summary Report Block of XR (207, BT 6). RFC 3611 4.6
+ *
+ * Other packets and XR blocks are ignored. Packets are read in place without allocations.
+ */
+object RtcpReportReader {
+
+  private const val SR = 200
+  private const val RR = 201
+  private const val XR = 207
+  private const val XR_STATISTICS_SUMMARY = 6
+  private const val REPORT_BLOCK_SIZE = 24
+  private const val SENDER_INFO_SIZE = 20
+  private const val STATISTICS_SUMMARY_SIZE = 40
+
+  interface Listener {
+    /**
+     * @param ssrc source of our stream that the block is reporting
+     * @param fractionLost packets lost since the previous report, fixed point with 8 bits of fraction
+     * @param cumulativeLost packets lost since the start, negative with duplicated packets
+     * @param jitter interarrival jitter in RTP timestamp units
+     * @param lastSr middle 32 bits of the NTP timestamp of the last SR received
+     * @param delaySinceLastSr delay since last SR received in units of 1/65536 seconds
+     */
+    fun onReportBlock(
+      ssrc: Long, fractionLost: Int, cumulativeLost: Int, highestSequence: Long,
+      jitter: Long, lastSr: Long, delaySinceLastSr: Long
+    )
+
+    /**
+     * @param lostPackets packets lost between [beginSequence] and [endSequence] or -1 if not reported
+     * @param meanJitter mean jitter in RTP timestamp units or -1 if not reported
+     */
+    fun onStatisticsSummary(ssrc: Long, beginSequence: Int, endSequence: Int, lostPackets: Long, meanJitter: Long) { }
+  }
+
+  /**
+   * @return false if the packet is malformed. Reports read before the error are reported anyway
+   */
+  fun read(buffer: ByteArray, offset: Int, length: Int, listener: Listener): Boolean {
+    var position = offset
+    val end = offset + length
+    while (position + 4 <= end) {
+      val version = buffer[position].toInt() and 0xFF ushr 6
+      if (version != 2) return false
+      val count = buffer[position].toInt() and 0x1F
+      val type = buffer[position + 1].toInt() and 0xFF
+      val size = (readUInt16(buffer, position + 2) + 1) * 4
+      if (position + size > end) return false
+      when (type) {
+        SR -> readReportBlocks(buffer, position + 8 + SENDER_INFO_SIZE, count, position + size, listener)
+        RR -> readReportBlocks(buffer, position + 8, count, position + size, listener)
+        XR -> readExtendedReport(buffer, position + 8, position + size, listener)
+      }
+      position += size
+    }
+    return position == end
+  }
+
+  private fun readReportBlocks(buffer: ByteArray, start: Int, count: Int, end: Int, listener: Listener) {
+    var block = start
+    repeat(count) {
+      if (block + REPORT_BLOCK_SIZE > end) return
+      val ssrc = readUInt32(buffer, block)
+      val fractionLost = buffer[block + 4].toInt() and 0xFF
+      //24 bits signed
+      val cumulativeLost = (readUInt32(buffer, block + 4).toInt() shl 8) shr 8
+      val highestSequence = readUInt32(buffer, block + 8)
+      val jitter = readUInt32(buffer, block + 12)
+      val lastSr = readUInt32(buffer, block + 16)
+      val delaySinceLastSr = readUInt32(buffer, block + 20)
+      listener.onReportBlock(ssrc, fractionLost, cumulativeLost, highestSequence, jitter, lastSr, delaySinceLastSr)
+      block += REPORT_BLOCK_SIZE
+    }
+  }
+
+  /**
+   * Each block has a header of 4 bytes: block type, type specific flags and length in 32 bits
+   * words minus 1.
+   */
+  private fun readExtendedReport(buffer: ByteArray, start: Int, end: Int, listener: Listener) {
+    var block = start
+    while (block + 4 <= end) {
+      val blockType = buffer[block].toInt() and 0xFF
+      val flags = buffer[block + 1].toInt() and 0xFF
+      val size = (readUInt16(buffer, block + 2) + 1) * 4
+      if (block + size > end) return
+      if (blockType == XR_STATISTICS_SUMMARY && size >= STATISTICS_SUMMARY_SIZE) {
+        //L (lost packets) and J (jitter) flags
+        val hasLost = flags and 0x80 != 0
+        val hasJitter = flags and 0x20 != 0
+        listener.onStatisticsSummary(
+          ssrc = readUInt32(buffer, block + 4),
+          beginSequence = readUInt16(buffer, block + 8),
+          endSequence = readUInt16(buffer, block + 10),
+          lostPackets = if (hasLost) readUInt32(buffer, block + 12) else -1,
+          meanJitter = if (hasJitter) readUInt32(buffer, block + 28) else -1
+        )
+      }
+      block += size
+    }
+  }
+
+  private fun readUInt16(buffer: ByteArray, offset: Int): Int {
+    return (buffer[offset].toInt() and 0xFF shl 8) or (buffer[offset + 1].toInt() and 0xFF)
+  }
+
+  private fun readUInt32(buffer: ByteArray, offset: Int): Long {
+    return (buffer[offset].toLong() and 0xFF shl 24) or
+        (buffer[offset + 1].toLong() and 0xFF shl 16) or
+        (buffer[offset + 2].toLong() and 0xFF shl 8) or
+        (buffer[offset + 3].toLong() and 0xFF)
+  }
+}
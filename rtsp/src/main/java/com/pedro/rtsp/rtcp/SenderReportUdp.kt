@@ -20,10 +20,17 @@ import com.pedro.common.socket.base.TcpStreamSocket
 import com.pedro.common.socket.base.UdpStreamSocket
 import com.pedro.rtsp.rtsp.RtpFrame
 import com.pedro.rtsp.utils.RtpTracks
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
 import java.io.IOException
 
 /**
  * Created by pedro on 8/11/18.
+ *
+ * The server sends its reports to the client RTCP port of each track, so each socket is also read.
  */
 class SenderReportUdp(
   private val rtpTracks: RtpTracks,
@@ -31,6 +38,8 @@ class SenderReportUdp(
   private val audioSocket: UdpStreamSocket?,
 ) : BaseSenderReport(rtpTracks) {
 
+  private var readJobs = emptyList<Job>()
+
   @Throws(IOException::class)
   override suspend fun setSocket(socket: TcpStreamSocket) {
     videoSocket?.connect()
@@ -42,11 +51,33 @@ class SenderReportUdp(
     sendReportUDP(buffer, rtpFrame.isVideoFrame(rtpTracks.trackVideo))
   }
 
+  override fun startReading(scope: CoroutineScope) {
+    readJobs.forEach { it.cancel() }
+    readJobs = listOfNotNull(videoSocket, audioSocket).map { socket ->
+      scope.launch { readReports(socket) }
+    }
+  }
+
   override suspend fun close() {
+    readJobs.forEach { it.cancel() }
+    readJobs = emptyList()
     videoSocket?.close()
     audioSocket?.close()
   }
 
+  private suspend fun readReports(socket: UdpStreamSocket) {
+    while (currentCoroutineContext().isActive) {
+      val packet = try {
+        socket.readPacket()
+      } catch (e: Exception) {
+        //timeout without reports, stop only if the socket was closed
+        if (!socket.isConnected()) return
+        continue
+      }
+      onRtcpPacket(packet.data, 0, packet.size)
+    }
+  }
+
   @Throws(IOException::class)
   private suspend fun sendReportUDP(buffer: ByteArray, isVideo: Boolean) {
     if (isVideo) {
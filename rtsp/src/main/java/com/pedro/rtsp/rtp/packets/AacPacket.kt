@@ -44,36 +44,34 @@ class AacPacket(track: Int): BasePacket(0, RtpConstants.payloadType + track) {
   ) {
     val fixedBuffer = mediaFrame.data.removeInfo(mediaFrame.info)
     val length = fixedBuffer.remaining()
-    val maxPayload = maxPacketSize - (RtpConstants.RTP_HEADER_LENGTH + 4 + encryptSize())
+    val maxPayload = maxPacketSize - (rtpHeaderSize + 4 + encryptSize())
     val ts = mediaFrame.info.timestamp * 1000
     var sum = 0
-    val frames = mutableListOf<RtpFrame>()
     while (sum < length) {
       val size = if (length - sum < maxPayload) length - sum else maxPayload
-      val buffer = getBuffer(size + RtpConstants.RTP_HEADER_LENGTH + 4 + encryptSize())
-      fixedBuffer.get(buffer, RtpConstants.RTP_HEADER_LENGTH + 4, size)
-      val rtpTs = updateTimeStamp(buffer, ts)
+      val frame = getFrame(size + rtpHeaderSize + 4 + encryptSize())
+      val buffer = frame.buffer
+      fixedBuffer.get(buffer, rtpHeaderSize + 4, size)
+      frame.timeStamp = updateTimeStamp(buffer, ts)
 
       // AU-headers-length field: contains the size in bits of a AU-header
       // 13+3 = 16 bits -> 13bits for AU-size and 3bits for AU-Index / AU-Index-delta
       // 13 bits will be enough because ADTS uses 13 bits for frame length
-      buffer[RtpConstants.RTP_HEADER_LENGTH] = 0.toByte()
-      buffer[RtpConstants.RTP_HEADER_LENGTH + 1] = 0x10.toByte()
+      buffer[rtpHeaderSize] = 0.toByte()
+      buffer[rtpHeaderSize + 1] = 0x10.toByte()
 
       // AU-size
-      buffer[RtpConstants.RTP_HEADER_LENGTH + 2] = (size shr 5).toByte()
-      buffer[RtpConstants.RTP_HEADER_LENGTH + 3] = (size shl 3).toByte()
+      buffer[rtpHeaderSize + 2] = (size shr 5).toByte()
+      buffer[rtpHeaderSize + 3] = (size shl 3).toByte()
 
       // AU-Index
-      buffer[RtpConstants.RTP_HEADER_LENGTH + 3] = buffer[RtpConstants.RTP_HEADER_LENGTH + 3] and 0xF8.toByte()
-      buffer[RtpConstants.RTP_HEADER_LENGTH + 3] = buffer[RtpConstants.RTP_HEADER_LENGTH + 3] or 0x00
+      buffer[rtpHeaderSize + 3] = buffer[rtpHeaderSize + 3] and 0xF8.toByte()
+      buffer[rtpHeaderSize + 3] = buffer[rtpHeaderSize + 3] or 0x00
       sum += size
       if (sum >= length) markPacket(buffer)
       updateSeq(buffer)
-      encryptPacket(buffer)
-      val rtpFrame = RtpFrame(buffer, rtpTs, buffer.size, channelIdentifier)
-      frames.add(rtpFrame)
+      encryptPacket(frame)
     }
-    if (frames.isNotEmpty()) callback(frames)
+    sendFrames(callback)
   }
 }
\ No newline at end of file
@@ -74,8 +74,7 @@ class Av1Packet(track: Int): BasePacket(
         }
       }
     }
-    val frames = mutableListOf<RtpFrame>()
-    val maxPayload = maxPacketSize - RtpConstants.RTP_HEADER_LENGTH - 1 - encryptSize()
+    val maxPayload = maxPacketSize - rtpHeaderSize - 1 - encryptSize()
     obuList.forEachIndexed { index, obuData ->
       val obu = ByteBuffer.wrap(obuData.getFullDataWithoutSize())
       val size = obu.remaining()
@@ -89,24 +88,23 @@ class Av1Packet(track: Int): BasePacket(
         while (parser.leb128Size(length) + length > maxPayload) length--
         val prefixSize = parser.leb128Size(length)
 
-        val buffer = getBuffer(length + RtpConstants.RTP_HEADER_LENGTH + 1 + prefixSize + encryptSize())
-        val rtpTs = updateTimeStamp(buffer, ts)
-        obu.get(buffer, RtpConstants.RTP_HEADER_LENGTH + 1 + prefixSize, length)
+        val frame = getFrame(length + rtpHeaderSize + 1 + prefixSize + encryptSize())
+        val buffer = frame.buffer
+        frame.timeStamp = updateTimeStamp(buffer, ts)
+        obu.get(buffer, rtpHeaderSize + 1 + prefixSize, length)
         sum += length
         // Last packet before next Obu
         if (sum >= size) {
           lastObuPacket = true
           if (index == obuList.size - 1) markPacket(buffer) //mark end frame
         }
-        buffer[RtpConstants.RTP_HEADER_LENGTH] = generateAv1AggregationHeader(mediaFrame.info.isKeyFrame, firstObuPacket, lastObuPacket, isFirstPacket)
-        parser.writeLeb128(length.toLong()).copyInto(buffer, RtpConstants.RTP_HEADER_LENGTH + 1)
+        buffer[rtpHeaderSize] = generateAv1AggregationHeader(mediaFrame.info.isKeyFrame, firstObuPacket, lastObuPacket, isFirstPacket)
+        parser.writeLeb128(length.toLong()).copyInto(buffer, rtpHeaderSize + 1)
         updateSeq(buffer)
-        encryptPacket(buffer)
-        val rtpFrame = RtpFrame(buffer, rtpTs, buffer.size, channelIdentifier)
-        frames.add(rtpFrame)
+        encryptPacket(frame)
       }
     }
-    if (frames.isNotEmpty()) callback(frames)
+    sendFrames(callback)
   }
 
   override fun reset() {
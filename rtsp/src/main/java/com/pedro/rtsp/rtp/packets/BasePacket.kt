@@ -22,6 +22,7 @@ import com.pedro.rtsp.utils.CryptoProperties
 import com.pedro.rtsp.utils.CryptoUtils
 import com.pedro.rtsp.utils.RtpConstants
 import com.pedro.rtsp.utils.setLong
+import java.util.concurrent.atomic.AtomicInteger
 import kotlin.experimental.and
 import kotlin.experimental.or
 
@@ -37,11 +38,40 @@ abstract class BasePacket(private var clock: Long, private val payloadType: Int)
   protected var cryptoUtils: CryptoUtils? = null
   private var roc = 0
   protected val TAG = "BasePacket"
+  //transport-wide sequence shared by all packetizers of the session, null if disabled
+  private var transportSequence: AtomicInteger? = null
+  private var transportExtensionId = 0
+  //RTP header including header extensions
+  protected var rtpHeaderSize = RtpConstants.RTP_HEADER_LENGTH
+    private set
+  //created on first use, channelIdentifier is set by the subclass after this constructor
+  private val framePool by lazy(LazyThreadSafetyMode.NONE) {
+    RtpFramePool(maxPacketSize, channelIdentifier) { buffer ->
+      buffer[0] = 0x80.toByte()
+      buffer[1] = payloadType.toByte()
+      setLongSSRC(buffer, ssrc)
+    }
+  }
 
   fun setCryptoProperties(cryptoProperties: CryptoProperties) {
     cryptoUtils = CryptoUtils(cryptoProperties)
   }
 
+  /**
+   * Write a transport-wide sequence number header extension in each packet using the one-byte
+   * header format (RFC 8285). The [sequence] is shared by all packetizers of the session.
+   * draft-holmer-rmcat-transport-wide-cc-extensions-01
+   */
+  fun setTransportSequence(extensionId: Int, sequence: AtomicInteger) {
+    transportExtensionId = extensionId
+    transportSequence = sequence
+    rtpHeaderSize = RtpConstants.RTP_HEADER_LENGTH + RtpConstants.TRANSPORT_CC_EXTENSION_LENGTH
+  }
+
+  /**
+   * The frames received in [callback] are reused for the next media frame. Consume them in the
+   * callback or keep a copy using [RtpFrame.copyPacket].
+   */
   abstract suspend fun createAndSendPacket(
     mediaFrame: MediaFrame,
     callback: suspend (List<RtpFrame>) -> Unit
@@ -49,24 +79,43 @@ abstract class BasePacket(private var clock: Long, private val payloadType: Int)
 
   open fun reset() {
     seq = 0
-    ssrc = 0
+    setSSRC(0)
+    framePool.recycle()
   }
 
   fun setSSRC(ssrc: Long) {
     this.ssrc = ssrc
+    framePool.forEachBuffer { setLongSSRC(it, ssrc) }
   }
 
+  fun getAllocatedFrames(): Int = framePool.allocatedFrames
+
   protected fun setClock(clock: Long) {
     this.clock = clock
   }
 
-  protected fun getBuffer(size: Int): ByteArray {
-    val buffer = ByteArray(size)
-    buffer[0] = 0x80.toByte()
-    buffer[1] = payloadType.toByte()
-    setLongSSRC(buffer, ssrc)
-    requestBuffer(buffer)
-    return buffer
+  fun getClock(): Long = clock
+
+  /**
+   * @return a frame of [size] bytes with the fixed part of the RTP header already written.
+   * Sequence, timestamp and marker must be written for each packet.
+   */
+  protected fun getFrame(size: Int): RtpFrame {
+    val frame = framePool.obtain(size)
+    requestBuffer(frame.buffer)
+    return frame
+  }
+
+  /**
+   * Send all frames obtained since the last call and recycle them.
+   */
+  protected suspend fun sendFrames(callback: suspend (List<RtpFrame>) -> Unit) {
+    try {
+      val frames = framePool.frames
+      if (frames.isNotEmpty()) callback(frames)
+    } finally {
+      framePool.recycle()
+    }
   }
 
   protected fun updateTimeStamp(buffer: ByteArray, timestamp: Long): Long {
@@ -87,13 +136,13 @@ abstract class BasePacket(private var clock: Long, private val payloadType: Int)
 
   protected fun encryptSize() = if (cryptoUtils != null) RtpConstants.HMAC_SIZE else 0
 
-  protected fun encryptPacket(buffer: ByteArray) {
+  protected fun encryptPacket(frame: RtpFrame) {
     cryptoUtils?.let {
-      val payloadEndOffset = buffer.size - encryptSize()
-      val payload = buffer.copyOfRange(RtpConstants.RTP_HEADER_LENGTH, payloadEndOffset)
-      it.encrypt(payload, getIvData(it)).copyInto(buffer, RtpConstants.RTP_HEADER_LENGTH)
-      val hmac = it.calculateHmac(buffer.copyOfRange(0, payloadEndOffset), roc)
-      hmac.copyInto(buffer, payloadEndOffset)
+      val buffer = frame.buffer
+      val payloadEndOffset = frame.length - encryptSize()
+      val index = ((roc shl 16) or (seq.toInt() and 0xFFFF))
+      it.encrypt(buffer, rtpHeaderSize, payloadEndOffset - rtpHeaderSize, ssrc, index.toLong())
+      it.calculateHmac(buffer, 0, payloadEndOffset, roc, buffer, payloadEndOffset)
     }
   }
 
@@ -103,10 +152,20 @@ abstract class BasePacket(private var clock: Long, private val payloadType: Int)
 
   private fun requestBuffer(buffer: ByteArray) {
     buffer[1] = buffer[1] and 0x7F
-  }
-
-  private fun getIvData(cryptoUtils: CryptoUtils): ByteArray {
-    val index = ((roc shl 16) or (seq.toInt() and 0xFFFF))
-    return cryptoUtils.generateIv(ssrc, index.toLong())
+    transportSequence?.let {
+      val sequence = it.getAndIncrement()
+      //extension bit
+      buffer[0] = 0x90.toByte()
+      //one-byte header profile and length of 1 word
+      buffer[12] = 0xBE.toByte()
+      buffer[13] = 0xDE.toByte()
+      buffer[14] = 0
+      buffer[15] = 1
+      //id and length - 1
+      buffer[16] = (transportExtensionId shl 4 or 1).toByte()
+      buffer[17] = (sequence shr 8).toByte()
+      buffer[18] = sequence.toByte()
+      buffer[19] = 0
+    }
   }
 }
\ No newline at end of file
@@ -20,6 +20,7 @@ import com.pedro.common.VideoCodec
 import com.pedro.common.frame.MediaFrame
 import com.pedro.common.getData
 import com.pedro.common.nal.NalReader
+import com.pedro.common.nal.NalUnits
 import com.pedro.common.removeInfo
 import com.pedro.rtsp.rtsp.RtpFrame
 import com.pedro.rtsp.utils.RtpConstants
@@ -37,16 +38,17 @@ class H264Packet(track: Int): BasePacket(
   RtpConstants.payloadType + track
 ) {
 
-  private var sps: ByteBuffer? = null
-  private var pps: ByteBuffer? = null
+  private var sps: ByteArray? = null
+  private var pps: ByteArray? = null
+  private val nals = NalUnits()
 
   init {
     channelIdentifier = track
   }
 
   fun sendVideoInfo(sps: ByteBuffer, pps: ByteBuffer) {
-    this.sps = ByteBuffer.wrap(sps.getData())
-    this.pps = ByteBuffer.wrap(pps.getData())
+    this.sps = sps.getData()
+    this.pps = pps.getData()
   }
 
   override suspend fun createAndSendPacket(
@@ -57,66 +59,71 @@ class H264Packet(track: Int): BasePacket(
     // We read a NAL units from ByteBuffer and we send them
     // NAL units are preceded with 0x00000001
     fixedBuffer.rewind()
-    val nals = NalReader.extractNals(fixedBuffer, VideoCodec.H264, false)
-    if (nals.isEmpty()) return
+    NalReader.extractNals(fixedBuffer, VideoCodec.H264, false, nals)
+    if (nals.size == 0) return
 
+    //presentation time, all packets of the frame share it. Not increasing between frames with B-frames
     val ts = mediaFrame.info.timestamp * 1000L
-    val frames = mutableListOf<RtpFrame>()
     if (mediaFrame.info.isKeyFrame) {
       val sps = this.sps
       val pps = this.pps
       if (sps != null && pps != null) {
-        if (!nals.contains(pps)) nals.add(0, pps.duplicate())
-        if (!nals.contains(sps)) nals.add(0, sps.duplicate())
+        if (!nals.contains(sps)) writeNal(sps, 0, sps.size, ts, false)
+        if (!nals.contains(pps)) writeNal(pps, 0, pps.size, ts, false)
       }
     }
-    nals.forEachIndexed { index, data ->
-      val nalType = data.get()
-      val nalSize = data.remaining()
-      // Small NAL unit => Single NAL unit
-      if (nalSize <= maxPacketSize - RtpConstants.RTP_HEADER_LENGTH - 1 - encryptSize()) {
-        val buffer = getBuffer(nalSize + RtpConstants.RTP_HEADER_LENGTH + 1 + encryptSize())
-        buffer[RtpConstants.RTP_HEADER_LENGTH] = nalType
-        data.get(buffer, RtpConstants.RTP_HEADER_LENGTH + 1, nalSize)
-        val rtpTs = updateTimeStamp(buffer, ts)
-        if (index == nals.size - 1) markPacket(buffer) //mark end frame
-        updateSeq(buffer)
-        encryptPacket(buffer)
-        val rtpFrame = RtpFrame(buffer, rtpTs, buffer.size, channelIdentifier)
-        frames.add(rtpFrame)
-      } else {
-        // Set FU-A header
-        val fuHeader = nalType and 0x1F // FU header type
-        // Set FU-A indicator
-        val fuIndicator = (nalType and 0x60).plus(28).toByte() // FU indicator NRI
+    for (index in 0 until nals.size) {
+      writeNal(nals.array, nals.getStart(index), nals.getLength(index), ts, index == nals.size - 1)
+    }
+    nals.clear()
+    sendFrames(callback)
+  }
 
-        var sum = 0
-        while (sum < nalSize) {
-          val length = if (nalSize - sum > maxPacketSize - RtpConstants.RTP_HEADER_LENGTH - 2 - encryptSize()) {
-            maxPacketSize - RtpConstants.RTP_HEADER_LENGTH - 2 - encryptSize()
-          } else {
-            data.remaining()
-          }
-          val buffer = getBuffer(length + RtpConstants.RTP_HEADER_LENGTH + 2 + encryptSize())
-          buffer[RtpConstants.RTP_HEADER_LENGTH] = fuIndicator
-          // Switch start bit
-          buffer[RtpConstants.RTP_HEADER_LENGTH + 1] = if (sum > 0) fuHeader else (fuHeader or 0x80.toByte())
-          val rtpTs = updateTimeStamp(buffer, ts)
-          data.get(buffer, RtpConstants.RTP_HEADER_LENGTH + 2, length)
-          sum += length
-          // Last packet before next NAL
-          if (sum >= nalSize) {
-            // End bit on
-            buffer[RtpConstants.RTP_HEADER_LENGTH + 1] = buffer[RtpConstants.RTP_HEADER_LENGTH + 1].plus(0x40).toByte()
-            if (index == nals.size - 1) markPacket(buffer) //mark end frame
-          }
-          updateSeq(buffer)
-          encryptPacket(buffer)
-          val rtpFrame = RtpFrame(buffer, rtpTs, buffer.size, channelIdentifier)
-          frames.add(rtpFrame)
+  private fun writeNal(data: ByteArray, offset: Int, size: Int, ts: Long, isLastNal: Boolean) {
+    val nalType = data[offset]
+    val nalSize = size - 1
+    var position = offset + 1
+    // Small NAL unit => Single NAL unit
+    if (nalSize <= maxPacketSize - rtpHeaderSize - 1 - encryptSize()) {
+      val frame = getFrame(nalSize + rtpHeaderSize + 1 + encryptSize())
+      val buffer = frame.buffer
+      buffer[rtpHeaderSize] = nalType
+      data.copyInto(buffer, rtpHeaderSize + 1, position, position + nalSize)
+      frame.timeStamp = updateTimeStamp(buffer, ts)
+      if (isLastNal) markPacket(buffer) //mark end frame
+      updateSeq(buffer)
+      encryptPacket(frame)
+    } else {
+      // Set FU-A header
+      val fuHeader = nalType and 0x1F // FU header type
+      // Set FU-A indicator
+      val fuIndicator = (nalType and 0x60).plus(28).toByte() // FU indicator NRI
+
+      var sum = 0
+      while (sum < nalSize) {
+        val length = if (nalSize - sum > maxPacketSize - rtpHeaderSize - 2 - encryptSize()) {
+          maxPacketSize - rtpHeaderSize - 2 - encryptSize()
+        } else {
+          nalSize - sum
+        }
+        val frame = getFrame(length + rtpHeaderSize + 2 + encryptSize())
+        val buffer = frame.buffer
+        buffer[rtpHeaderSize] = fuIndicator
+        // Switch start bit
+        buffer[rtpHeaderSize + 1] = if (sum > 0) fuHeader else (fuHeader or 0x80.toByte())
+        frame.timeStamp = updateTimeStamp(buffer, ts)
+        data.copyInto(buffer, rtpHeaderSize + 2, position, position + length)
+        position += length
+        sum += length
+        // Last packet before next NAL
+        if (sum >= nalSize) {
+          // End bit on
+          buffer[rtpHeaderSize + 1] = buffer[rtpHeaderSize + 1].plus(0x40).toByte()
+          if (isLastNal) markPacket(buffer) //mark end frame
         }
+        updateSeq(buffer)
+        encryptPacket(frame)
       }
     }
-    if (frames.isNotEmpty()) callback(frames)
   }
-}
\ No newline at end of file
+}
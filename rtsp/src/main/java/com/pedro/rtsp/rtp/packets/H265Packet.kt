@@ -20,6 +20,7 @@ import com.pedro.common.VideoCodec
 import com.pedro.common.frame.MediaFrame
 import com.pedro.common.getData
 import com.pedro.common.nal.NalReader
+import com.pedro.common.nal.NalUnits
 import com.pedro.common.removeInfo
 import com.pedro.rtsp.rtsp.RtpFrame
 import com.pedro.rtsp.utils.RtpConstants
@@ -36,18 +37,19 @@ class H265Packet(track: Int): BasePacket(
   RtpConstants.payloadType + track
 ) {
 
-  private var sps: ByteBuffer? = null
-  private var pps: ByteBuffer? = null
-  private var vps: ByteBuffer? = null
+  private var sps: ByteArray? = null
+  private var pps: ByteArray? = null
+  private var vps: ByteArray? = null
+  private val nals = NalUnits()
 
   init {
     channelIdentifier = track
   }
 
   fun sendVideoInfo(sps: ByteBuffer, pps: ByteBuffer, vps: ByteBuffer) {
-    this.sps = ByteBuffer.wrap(sps.getData())
-    this.pps = ByteBuffer.wrap(pps.getData())
-    this.vps = ByteBuffer.wrap(vps.getData())
+    this.sps = sps.getData()
+    this.pps = pps.getData()
+    this.vps = vps.getData()
   }
 
   override suspend fun createAndSendPacket(
@@ -57,77 +59,82 @@ class H265Packet(track: Int): BasePacket(
     val fixedBuffer = mediaFrame.data.removeInfo(mediaFrame.info)
     // We read a NAL units from ByteBuffer and we send them
     // NAL units are preceded with 0x00000001
-    val nals = NalReader.extractNals(fixedBuffer, VideoCodec.H265, false)
-    if (nals.isEmpty()) return
+    NalReader.extractNals(fixedBuffer, VideoCodec.H265, false, nals)
+    if (nals.size == 0) return
 
+    //presentation time, all packets of the frame share it. Not increasing between frames with B-frames
     val ts = mediaFrame.info.timestamp * 1000L
-    val frames = mutableListOf<RtpFrame>()
     if (mediaFrame.info.isKeyFrame) {
       val sps = this.sps
       val pps = this.pps
       val vps = this.vps
       if (sps != null && pps != null && vps != null) {
-        if (!nals.contains(pps)) nals.add(0, pps.duplicate())
-        if (!nals.contains(sps)) nals.add(0, sps.duplicate())
-        if (!nals.contains(vps)) nals.add(0, vps.duplicate())
+        if (!nals.contains(vps)) writeNal(vps, 0, vps.size, ts, false)
+        if (!nals.contains(sps)) writeNal(sps, 0, sps.size, ts, false)
+        if (!nals.contains(pps)) writeNal(pps, 0, pps.size, ts, false)
       }
     }
-    nals.forEachIndexed { index, data ->
-      val nalType = data.get()
-      val nalType2 = data.get()
-      val nalSize = data.remaining()
-      // Small NAL unit => Single NAL unit
-      if (nalSize <= maxPacketSize - RtpConstants.RTP_HEADER_LENGTH - 2 - encryptSize()) {
-        val buffer = getBuffer(nalSize + RtpConstants.RTP_HEADER_LENGTH + 2 + encryptSize())
-        //Set PayloadHdr (exact copy of nal unit header)
-        buffer[RtpConstants.RTP_HEADER_LENGTH] = nalType
-        buffer[RtpConstants.RTP_HEADER_LENGTH + 1] = nalType2
-        data.get(buffer, RtpConstants.RTP_HEADER_LENGTH + 2, nalSize)
-        val rtpTs = updateTimeStamp(buffer, ts)
-        if (index == nals.size - 1) markPacket(buffer) //mark end frame
-        updateSeq(buffer)
-        encryptPacket(buffer)
-        val rtpFrame = RtpFrame(buffer, rtpTs, buffer.size, channelIdentifier)
-        frames.add(rtpFrame)
-      } else {
-        // Set FU header
-        //   +---------------+
-        //   |0|1|2|3|4|5|6|7|
-        //   +-+-+-+-+-+-+-+-+
-        //   |S|E|  FuType   |
-        //   +---------------+
-        val type: Int = nalType.toInt().shr(1) and 0x3F
-        val fuHeader = type.toByte() // FU header type
+    for (index in 0 until nals.size) {
+      writeNal(nals.array, nals.getStart(index), nals.getLength(index), ts, index == nals.size - 1)
+    }
+    nals.clear()
+    sendFrames(callback)
+  }
 
-        var sum = 0
-        while (sum < nalSize) {
-          val length = if (nalSize - sum > maxPacketSize - RtpConstants.RTP_HEADER_LENGTH - 3 - encryptSize()) {
-            maxPacketSize - RtpConstants.RTP_HEADER_LENGTH - 3 - encryptSize()
-          } else {
-            data.remaining()
-          }
-          val buffer = getBuffer(length + RtpConstants.RTP_HEADER_LENGTH + 3 + encryptSize())
-          //Set PayloadHdr (16bit type=49)
-          buffer[RtpConstants.RTP_HEADER_LENGTH] = (49 shl 1).toByte()
-          buffer[RtpConstants.RTP_HEADER_LENGTH + 1] = 1
-          // Switch start bit
-          buffer[RtpConstants.RTP_HEADER_LENGTH + 2] = if (sum > 0) fuHeader else (fuHeader or 0x80.toByte())
-          val rtpTs = updateTimeStamp(buffer, ts)
-          data.get(buffer, RtpConstants.RTP_HEADER_LENGTH + 3, length)
-          sum += length
-          // Last packet before next NAL
-          if (sum >= nalSize) {
-            // End bit on
-            buffer[RtpConstants.RTP_HEADER_LENGTH + 2] = buffer[RtpConstants.RTP_HEADER_LENGTH + 2].plus(0x40).toByte()
-            if (index == nals.size - 1) markPacket(buffer) //mark end frame
-          }
-          updateSeq(buffer)
-          encryptPacket(buffer)
-          val rtpFrame = RtpFrame(buffer, rtpTs, buffer.size, channelIdentifier)
-          frames.add(rtpFrame)
+  private fun writeNal(data: ByteArray, offset: Int, size: Int, ts: Long, isLastNal: Boolean) {
+    val nalType = data[offset]
+    val nalType2 = data[offset + 1]
+    val nalSize = size - 2
+    var position = offset + 2
+    // Small NAL unit => Single NAL unit
+    if (nalSize <= maxPacketSize - rtpHeaderSize - 2 - encryptSize()) {
+      val frame = getFrame(nalSize + rtpHeaderSize + 2 + encryptSize())
+      val buffer = frame.buffer
+      //Set PayloadHdr (exact copy of nal unit header)
+      buffer[rtpHeaderSize] = nalType
+      buffer[rtpHeaderSize + 1] = nalType2
+      data.copyInto(buffer, rtpHeaderSize + 2, position, position + nalSize)
+      frame.timeStamp = updateTimeStamp(buffer, ts)
+      if (isLastNal) markPacket(buffer) //mark end frame
+      updateSeq(buffer)
+      encryptPacket(frame)
+    } else {
+      // Set FU header
+      //   +---------------+
+      //   |0|1|2|3|4|5|6|7|
+      //   +-+-+-+-+-+-+-+-+
+      //   |S|E|  FuType   |
+      //   +---------------+
+      val type: Int = nalType.toInt().shr(1) and 0x3F
+      val fuHeader = type.toByte() // FU header type
+
+      var sum = 0
+      while (sum < nalSize) {
+        val length = if (nalSize - sum > maxPacketSize - rtpHeaderSize - 3 - encryptSize()) {
+          maxPacketSize - rtpHeaderSize - 3 - encryptSize()
+        } else {
+          nalSize - sum
+        }
+        val frame = getFrame(length + rtpHeaderSize + 3 + encryptSize())
+        val buffer = frame.buffer
+        //Set PayloadHdr (16bit type=49)
+        buffer[rtpHeaderSize] = (49 shl 1).toByte()
+        buffer[rtpHeaderSize + 1] = 1
+        // Switch start bit
+        buffer[rtpHeaderSize + 2] = if (sum > 0) fuHeader else (fuHeader or 0x80.toByte())
+        frame.timeStamp = updateTimeStamp(buffer, ts)
+        data.copyInto(buffer, rtpHeaderSize + 3, position, position + length)
+        position += length
+        sum += length
+        // Last packet before next NAL
+        if (sum >= nalSize) {
+          // End bit on
+          buffer[rtpHeaderSize + 2] = buffer[rtpHeaderSize + 2].plus(0x40).toByte()
+          if (isLastNal) markPacket(buffer) //mark end frame
         }
+        updateSeq(buffer)
+        encryptPacket(frame)
       }
     }
-    if (frames.isNotEmpty()) callback(frames)
   }
-}
\ No newline at end of file
+}
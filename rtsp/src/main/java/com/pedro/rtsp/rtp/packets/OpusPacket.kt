@@ -39,22 +39,20 @@ class OpusPacket(track: Int): BasePacket(
     callback: suspend (List<RtpFrame>) -> Unit
   ) {
     val length = mediaFrame.info.size - mediaFrame.data.position()
-    val maxPayload = maxPacketSize - RtpConstants.RTP_HEADER_LENGTH - encryptSize()
+    val maxPayload = maxPacketSize - rtpHeaderSize - encryptSize()
     val ts = mediaFrame.info.timestamp * 1000
     var sum = 0
-    val frames = mutableListOf<RtpFrame>()
     while (sum < length) {
       val size = if (length - sum < maxPayload) length - sum else maxPayload
-      val buffer = getBuffer(size + RtpConstants.RTP_HEADER_LENGTH + encryptSize())
-      mediaFrame.data.get(buffer, RtpConstants.RTP_HEADER_LENGTH, size)
-      val rtpTs = updateTimeStamp(buffer, ts)
+      val frame = getFrame(size + rtpHeaderSize + encryptSize())
+      val buffer = frame.buffer
+      mediaFrame.data.get(buffer, rtpHeaderSize, size)
+      frame.timeStamp = updateTimeStamp(buffer, ts)
       sum += size
       if (sum >= length) markPacket(buffer)
       updateSeq(buffer)
-      encryptPacket(buffer)
-      val rtpFrame = RtpFrame(buffer, rtpTs, buffer.size, channelIdentifier)
-      frames.add(rtpFrame)
+      encryptPacket(frame)
     }
-    if (frames.isNotEmpty()) callback(frames)
+    sendFrames(callback)
   }
 }
\ No newline at end of file
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.rtsp.rtp.packets
+
+import com.pedro.rtsp.rtsp.RtpFrame
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * RtpFrames reused by a packetizer to avoid allocating a buffer and a frame per RTP packet.
+ *
+ * A media frame is split in packets of at most [bufferSize] bytes, so all buffers are created with
+ * that size and only the length of the frame changes. Frames are taken in order while packetizing
+ * a media frame and all of them are returned with [recycle] once the callback consumed [frames].
+ * In steady state the pool has as many frames as the biggest media frame needed and nothing is
+ * allocated.
+ *
+ * Not thread safe, used only from the packetizer caller.
+ *
+ * @param onCreate called once with each new buffer to write the parts of the packet that never change
+ */
+class RtpFramePool(
+  private val bufferSize: Int,
+  private val channelIdentifier: Int,
+  private val onCreate: (ByteArray) -> Unit = {}
+) {
+
+  private val pool = ArrayList<RtpFrame>()
+  private val used = ArrayList<RtpFrame>()
+  /**
+   * Frames taken since the last [recycle], in order.
+   */
+  val frames: List<RtpFrame> = used
+  var allocatedFrames = 0
+    private set
+
+  /**
+   * @return a frame with a buffer of at least [length] bytes. The buffer content is the one of
+   * the last packet that used it, except the bytes written by [onCreate].
+   */
+  fun obtain(length: Int): RtpFrame {
+    val index = used.size
+    var frame = if (index < pool.size) pool[index] else null
+    if (frame == null || frame.buffer.size < length) {
+      frame = RtpFrame(ByteArray(maxOf(length, bufferSize)), 0, 0, channelIdentifier)
+      onCreate(frame.buffer)
+      if (index < pool.size) pool[index] = frame else pool.add(frame)
+      allocatedFrames++
+    }
+    frame.length = length
+    used.add(frame)
+    return frame
+  }
+
+  fun recycle() {
+    used.clear()
+  }
+
+  fun forEachBuffer(action: (ByteArray) -> Unit) {
+    pool.forEach { action(it.buffer) }
+  }
+
+  fun clear() {
+    used.clear()
+    pool.clear()
+  }
+}
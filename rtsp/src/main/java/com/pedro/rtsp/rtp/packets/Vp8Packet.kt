@@ -56,29 +56,27 @@ class Vp8Packet(track: Int): BasePacket(
 
     val size = fixedBuffer.remaining()
     var sum = 0
-    val frames = mutableListOf<RtpFrame>()
     while (sum < size) {
       val isFirstPacket = sum == 0
-      val length = if (size - sum > maxPacketSize - RtpConstants.RTP_HEADER_LENGTH - headerSize - encryptSize()) {
-        maxPacketSize - RtpConstants.RTP_HEADER_LENGTH - headerSize - encryptSize()
+      val length = if (size - sum > maxPacketSize - rtpHeaderSize - headerSize - encryptSize()) {
+        maxPacketSize - rtpHeaderSize - headerSize - encryptSize()
       } else {
         fixedBuffer.remaining()
       }
-      val buffer = getBuffer(length + RtpConstants.RTP_HEADER_LENGTH + headerSize + encryptSize())
-      val rtpTs = updateTimeStamp(buffer, ts)
-      fixedBuffer.get(buffer, RtpConstants.RTP_HEADER_LENGTH + headerSize, length)
+      val frame = getFrame(length + rtpHeaderSize + headerSize + encryptSize())
+      val buffer = frame.buffer
+      frame.timeStamp = updateTimeStamp(buffer, ts)
+      fixedBuffer.get(buffer, rtpHeaderSize + headerSize, length)
       sum += length
       if (sum >= size) markPacket(buffer) //mark end frame
-      buffer[RtpConstants.RTP_HEADER_LENGTH] = generateDescriptorHeader(isFirstPacket)
-      buffer[RtpConstants.RTP_HEADER_LENGTH + 1] = 0x80.toByte() //PID enabled and the rest disabled
-      buffer[RtpConstants.RTP_HEADER_LENGTH + 2] = (0x80 or (pictureId shr 8)).toByte()
-      buffer[RtpConstants.RTP_HEADER_LENGTH + 3] = pictureId.toByte()
+      buffer[rtpHeaderSize] = generateDescriptorHeader(isFirstPacket)
+      buffer[rtpHeaderSize + 1] = 0x80.toByte() //PID enabled and the rest disabled
+      buffer[rtpHeaderSize + 2] = (0x80 or (pictureId shr 8)).toByte()
+      buffer[rtpHeaderSize + 3] = pictureId.toByte()
       updateSeq(buffer)
-      encryptPacket(buffer)
-      val rtpFrame = RtpFrame(buffer, rtpTs, buffer.size, channelIdentifier)
-      frames.add(rtpFrame)
+      encryptPacket(frame)
     }
-    if (frames.isNotEmpty()) callback(frames)
+    sendFrames(callback)
   }
 
   override fun reset() {
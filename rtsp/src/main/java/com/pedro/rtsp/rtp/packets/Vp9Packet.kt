@@ -55,34 +55,32 @@ class Vp9Packet(track: Int): BasePacket(
 
     val size = fixedBuffer.remaining()
     var sum = 0
-    val frames = mutableListOf<RtpFrame>()
     while (sum < size) {
       val isFirstPacket = sum == 0
       var isLastPacket = false
       val headerSize = 3 + if (mediaFrame.info.isKeyFrame && isFirstPacket) 1 else 0
-      val length = if (size - sum > maxPacketSize - RtpConstants.RTP_HEADER_LENGTH - headerSize - encryptSize()) {
-        maxPacketSize - RtpConstants.RTP_HEADER_LENGTH - headerSize - encryptSize()
+      val length = if (size - sum > maxPacketSize - rtpHeaderSize - headerSize - encryptSize()) {
+        maxPacketSize - rtpHeaderSize - headerSize - encryptSize()
       } else {
         fixedBuffer.remaining()
       }
-      val buffer = getBuffer(length + RtpConstants.RTP_HEADER_LENGTH + headerSize + encryptSize())
-      val rtpTs = updateTimeStamp(buffer, ts)
-      fixedBuffer.get(buffer, RtpConstants.RTP_HEADER_LENGTH + headerSize, length)
+      val frame = getFrame(length + rtpHeaderSize + headerSize + encryptSize())
+      val buffer = frame.buffer
+      frame.timeStamp = updateTimeStamp(buffer, ts)
+      fixedBuffer.get(buffer, rtpHeaderSize + headerSize, length)
       sum += length
       if (sum >= size) {
         isLastPacket = true
         markPacket(buffer) //mark end frame
       }
-      buffer[RtpConstants.RTP_HEADER_LENGTH] = generateDescriptorHeader(mediaFrame.info.isKeyFrame, isFirstPacket, isLastPacket)
-      buffer[RtpConstants.RTP_HEADER_LENGTH + 1] = (0x80 or (pictureId shr 8)).toByte()
-      buffer[RtpConstants.RTP_HEADER_LENGTH + 2] = pictureId.toByte()
-      if (mediaFrame.info.isKeyFrame && isFirstPacket) buffer[RtpConstants.RTP_HEADER_LENGTH + 3] = 0x00
+      buffer[rtpHeaderSize] = generateDescriptorHeader(mediaFrame.info.isKeyFrame, isFirstPacket, isLastPacket)
+      buffer[rtpHeaderSize + 1] = (0x80 or (pictureId shr 8)).toByte()
+      buffer[rtpHeaderSize + 2] = pictureId.toByte()
+      if (mediaFrame.info.isKeyFrame && isFirstPacket) buffer[rtpHeaderSize + 3] = 0x00
       updateSeq(buffer)
-      encryptPacket(buffer)
-      val rtpFrame = RtpFrame(buffer, rtpTs, buffer.size, channelIdentifier)
-      frames.add(rtpFrame)
+      encryptPacket(frame)
     }
-    if (frames.isNotEmpty()) callback(frames)
+    sendFrames(callback)
   }
 
   override fun reset() {
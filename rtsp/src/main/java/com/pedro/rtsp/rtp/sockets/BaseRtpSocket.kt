@@ -64,6 +64,14 @@ abstract class BaseRtpSocket {
   @Throws(IOException::class)
   abstract suspend fun sendFrame(rtpFrame: RtpFrame)
 
+  /**
+   * Send all packets of a frame. UDP sockets send it in a batch.
+   */
+  @Throws(IOException::class)
+  open suspend fun sendFrames(rtpFrames: List<RtpFrame>) {
+    rtpFrames.forEach { sendFrame(it) }
+  }
+
   abstract suspend fun flush()
 
   abstract suspend fun close()
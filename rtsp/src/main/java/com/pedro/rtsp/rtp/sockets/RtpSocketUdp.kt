@@ -21,6 +21,7 @@ import com.pedro.common.socket.base.UdpStreamSocket
 import com.pedro.rtsp.rtsp.RtpFrame
 import com.pedro.rtsp.utils.RtpTracks
 import java.io.IOException
+import java.nio.ByteBuffer
 
 /**
  * Created by pedro on 7/11/18.
@@ -42,6 +43,18 @@ class RtpSocketUdp(
     sendFrameUDP(rtpFrame)
   }
 
+  @Throws(IOException::class)
+  override suspend fun sendFrames(rtpFrames: List<RtpFrame>) {
+    val videoDatagrams = mutableListOf<ByteBuffer>()
+    val audioDatagrams = mutableListOf<ByteBuffer>()
+    rtpFrames.forEach { rtpFrame ->
+      val datagrams = if (rtpFrame.isVideoFrame(rtpTracks.trackVideo)) videoDatagrams else audioDatagrams
+      datagrams.add(ByteBuffer.wrap(rtpFrame.buffer, 0, rtpFrame.length))
+    }
+    if (videoDatagrams.isNotEmpty()) videoSocket?.writeBatch(videoDatagrams)
+    if (audioDatagrams.isNotEmpty()) audioSocket?.writeBatch(audioDatagrams)
+  }
+
   override suspend fun flush() { }
 
   override suspend fun close() {
@@ -52,9 +65,9 @@ class RtpSocketUdp(
   @Throws(IOException::class)
   private suspend fun sendFrameUDP(rtpFrame: RtpFrame) {
     if (rtpFrame.isVideoFrame(rtpTracks.trackVideo)) {
-      videoSocket?.write(rtpFrame.buffer)
+      videoSocket?.write(rtpFrame.buffer, 0, rtpFrame.length)
     } else {
-      audioSocket?.write(rtpFrame.buffer)
+      audioSocket?.write(rtpFrame.buffer, 0, rtpFrame.length)
     }
   }
 }
\ No newline at end of file
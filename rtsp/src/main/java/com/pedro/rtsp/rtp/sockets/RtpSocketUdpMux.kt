@@ -20,6 +20,7 @@ import com.pedro.common.socket.base.TcpStreamSocket
 import com.pedro.common.socket.base.UdpStreamSocket
 import com.pedro.rtsp.rtsp.RtpFrame
 import java.io.IOException
+import java.nio.ByteBuffer
 
 /**
  * Created by pedro on 7/11/18.
@@ -33,7 +34,12 @@ class RtpSocketUdpMux(private val udpSocket: UdpStreamSocket) : BaseRtpSocket()
 
   @Throws(IOException::class)
   override suspend fun sendFrame(rtpFrame: RtpFrame) {
-    udpSocket.write(rtpFrame.buffer)
+    udpSocket.write(rtpFrame.buffer, 0, rtpFrame.length)
+  }
+
+  @Throws(IOException::class)
+  override suspend fun sendFrames(rtpFrames: List<RtpFrame>) {
+    udpSocket.writeBatch(rtpFrames.map { ByteBuffer.wrap(it.buffer, 0, it.length) })
   }
 
   override suspend fun flush() { }
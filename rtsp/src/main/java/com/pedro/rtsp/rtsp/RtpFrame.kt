@@ -20,27 +20,38 @@ import com.pedro.rtsp.utils.RtpConstants
 
 /**
  * Created by pedro on 7/11/18.
+ *
+ * Only the first [length] bytes of [buffer] are part of the packet. Frames created by a packetizer
+ * are reused after the callback, copy it if you need to keep it.
  */
-data class RtpFrame(val buffer: ByteArray, val timeStamp: Long, val length: Int, val channelIdentifier: Int) {
+data class RtpFrame(val buffer: ByteArray, var timeStamp: Long, var length: Int, val channelIdentifier: Int) {
 
   fun isVideoFrame(videoTrack: Int): Boolean = channelIdentifier == videoTrack
 
+  /**
+   * @return a frame with a copy of the packet, not affected by the reuse of this frame
+   */
+  fun copyPacket(): RtpFrame = RtpFrame(buffer.copyOf(length), timeStamp, length, channelIdentifier)
+
   override fun equals(other: Any?): Boolean {
     if (this === other) return true
     if (javaClass != other?.javaClass) return false
 
     other as RtpFrame
 
-    if (!buffer.contentEquals(other.buffer)) return false
     if (timeStamp != other.timeStamp) return false
     if (length != other.length) return false
+    for (i in 0 until length) {
+      if (buffer[i] != other.buffer[i]) return false
+    }
     if (channelIdentifier != other.channelIdentifier) return false
 
     return true
   }
 
   override fun hashCode(): Int {
-    var result = buffer.contentHashCode()
+    var result = 1
+    for (i in 0 until length) result = 31 * result + buffer[i]
     result = 31 * result + timeStamp.hashCode()
     result = 31 * result + length
     result = 31 * result + channelIdentifier
@@ -21,9 +21,12 @@ import android.util.Log
 import com.pedro.common.AudioCodec
 import com.pedro.common.ConnectChecker
 import com.pedro.common.ConnectionFailed
+import com.pedro.common.QueueType
 import com.pedro.common.UrlParser
 import com.pedro.common.VideoCodec
+import com.pedro.common.base.DropPolicy
 import com.pedro.common.frame.MediaFrame
+import com.pedro.common.frame.SharedFrame
 import com.pedro.common.onMainThread
 import com.pedro.common.socket.base.SocketType
 import com.pedro.common.socket.base.StreamSocket
@@ -83,6 +86,10 @@ class RtspClient(private val connectChecker: ConnectChecker) {
     get() = rtspSender.getDroppedAudioFrames()
   val droppedVideoFrames: Long
     get() = rtspSender.getDroppedVideoFrames()
+  val droppedGopFrames: Long
+    get() = rtspSender.getDroppedGopFrames()
+  val purgedFrames: Long
+    get() = rtspSender.getPurgedFrames()
 
   val cacheSize: Int
     get() = rtspSender.getCacheSize()
@@ -385,14 +392,16 @@ class RtspClient(private val connectChecker: ConnectChecker) {
 
   private suspend fun handleServerCommands() {
     //Read and print server commands received each 2 seconds
+    var interleaved = false
     while (scope.isActive && isStreaming) {
       val error = runCatching {
         if (isAlive()) {
-          delay(2000.milliseconds)
+          //an interleaved packet can be followed by more packets, read it without wait
+          if (!interleaved) delay(2000.milliseconds)
+          interleaved = false
           socket?.let { socket ->
             if (socket.isConnected()) {
-              val command = commandsManager.getResponse(socket)
-              //Do something depend of command if required
+              interleaved = readServerData(socket)
             }
           }
         } else {
@@ -408,6 +417,26 @@ class RtspClient(private val connectChecker: ConnectChecker) {
     }
   }
 
+  /**
+   * Read a server command or a packet interleaved in the connection with TCP protocol, like RTCP
+   * receiver reports. Interleaved packets start with '$', channel and length (RFC 2326 10.12).
+   *
+   * @return true if an interleaved packet was read
+   */
+  private suspend fun readServerData(socket: TcpStreamSocket): Boolean {
+    val first = socket.read(1)[0]
+    if (first != '$'.code.toByte()) {
+      val command = commandsManager.getResponse(socket, firstChar = first.toInt().toChar())
+      //Do something depend of command if required
+      return false
+    }
+    val header = socket.read(3)
+    val channel = header[0].toInt() and 0xFF
+    val length = (header[1].toInt() and 0xFF shl 8) or (header[2].toInt() and 0xFF)
+    rtspSender.onInterleavedPacket(channel, socket.read(length))
+    return true
+  }
+
   /*
     Send a heartbeat to know if server is alive using Echo Protocol.
     Your firewall could block it.
@@ -473,6 +502,24 @@ class RtspClient(private val connectChecker: ConnectChecker) {
     }
   }
 
+  /**
+   * Send a frame shared with other clients without copying it, see [SharedFrame]
+   */
+  fun sendVideo(frame: SharedFrame) {
+    if (!commandsManager.videoDisabled) {
+      rtspSender.sendSharedFrame(frame)
+    }
+  }
+
+  /**
+   * Send a frame shared with other clients without copying it, see [SharedFrame]
+   */
+  fun sendAudio(frame: SharedFrame) {
+    if (!commandsManager.audioDisabled) {
+      rtspSender.sendSharedFrame(frame)
+    }
+  }
+
   @JvmOverloads
   @Throws(IllegalArgumentException::class)
   fun hasCongestion(percentUsed: Float = 20f): Boolean {
@@ -515,6 +562,26 @@ class RtspClient(private val connectChecker: ConnectChecker) {
     rtspSender.resizeCache(newSize)
   }
 
+  /**
+   * Select the queue used to store frames until send it. Must be called while not streaming.
+   */
+  @Throws(IllegalStateException::class)
+  fun setQueueType(type: QueueType) {
+    rtspSender.setQueueType(type)
+  }
+
+  fun setDropPolicy(policy: DropPolicy) {
+    rtspSender.setDropPolicy(policy)
+  }
+
+  /**
+   * Max millis of stream in the queue before discard old frames when a keyframe is produced.
+   * 0 to disable. Only used with DropPolicy.GOP.
+   */
+  fun setLatencyBudget(millis: Long) {
+    rtspSender.setLatencyBudget(millis)
+  }
+
   fun setLogs(enable: Boolean) {
     rtspSender.setLogs(enable)
   }
@@ -19,6 +19,7 @@ package com.pedro.rtsp.rtsp
 import android.util.Log
 import com.pedro.common.AudioCodec
 import com.pedro.common.ConnectChecker
+import com.pedro.common.ReceiverReportStats
 import com.pedro.common.VideoCodec
 import com.pedro.common.base.BaseSender
 import com.pedro.common.frame.MediaFrame
@@ -57,6 +58,8 @@ class RtspSender(
   private var audioPacket: BasePacket = AacPacket(commandsManager.rtpTracks.trackAudio)
   private var rtpSocket: BaseRtpSocket? = null
   private var baseSenderReport: BaseSenderReport? = null
+  //reports already used to calculate the packet loss
+  private var lossReports = emptyList<ReceiverReportStats>()
 
   @Throws(IOException::class)
   fun setSocketsInfo(
@@ -103,6 +106,8 @@ class RtspSender(
     val ssrcVideo = Random().nextInt().toLong()
     val ssrcAudio = Random().nextInt().toLong()
     baseSenderReport?.setSSRC(ssrcVideo, ssrcAudio)
+    baseSenderReport?.setClockRates(videoPacket.getClock(), audioPacket.getClock())
+    baseSenderReport?.startReading(scope)
     videoPacket.setSSRC(ssrcVideo)
     audioPacket.setSSRC(ssrcAudio)
     val isTcp = rtpSocket is RtpSocketTcp
@@ -112,8 +117,8 @@ class RtspSender(
           getRtpPackets(mediaFrame) { rtpFrames ->
             var size = 0L
             var isVideo = false
+            rtpSocket?.sendFrames(rtpFrames)
             rtpFrames.forEach { rtpFrame ->
-              rtpSocket?.sendFrame(rtpFrame)
               //4 is tcp header length
               val packetSize = (if (isTcp) rtpFrame.length + 4 else rtpFrame.length).toLong()
               bytesSend.addAndGet(packetSize)
@@ -155,6 +160,32 @@ class RtspSender(
     rtpSocket?.close()
     audioPacket.reset()
     videoPacket.reset()
+    lossReports = emptyList()
+  }
+
+  /**
+   * Packet received from the server interleaved in the RTSP connection (TCP protocol).
+   * Odd channels are RTCP, the server is not expected to send RTP.
+   */
+  fun onInterleavedPacket(channel: Int, data: ByteArray) {
+    if (channel % 2 == 1) baseSenderReport?.onRtcpPacket(data, 0, data.size)
+  }
+
+  override fun getReceiverReports(): List<ReceiverReportStats> {
+    return baseSenderReport?.getReceiverReports() ?: emptyList()
+  }
+
+  override fun getRtt(): Long = getReceiverReports().maxOfOrNull { it.rtt } ?: -1
+
+  /**
+   * Max fraction lost of the reports received since the previous call. Servers send a report
+   * each few seconds, so -1 is returned between reports.
+   */
+  override fun getPacketLoss(): Float {
+    val reports = getReceiverReports()
+    val newReports = reports.filter { report -> lossReports.none { it === report } }
+    lossReports = reports
+    return newReports.maxOfOrNull { it.fractionLost } ?: -1f
   }
 
   private suspend fun getRtpPackets(mediaFrame: MediaFrame?, callback: suspend (List<RtpFrame>) -> Unit) {
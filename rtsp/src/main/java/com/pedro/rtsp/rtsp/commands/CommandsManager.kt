@@ -276,9 +276,15 @@ open class CommandsManager {
     return teardown
   }
 
+  /**
+   * @param firstChar first char of the response if it was already read from the socket
+   */
   @Throws(IOException::class)
-  suspend fun getResponse(socket: TcpStreamSocket, method: Method = Method.UNKNOWN, track: Int? = null): Command {
-    var response = ""
+  suspend fun getResponse(
+    socket: TcpStreamSocket, method: Method = Method.UNKNOWN, track: Int? = null,
+    firstChar: Char? = null
+  ): Command {
+    var response = firstChar?.toString() ?: ""
     var line: String?
     while (socket.readLine().also { line = it } != null) {
       response += "${line ?: ""}\n"
@@ -18,8 +18,6 @@
 
 package com.pedro.rtsp.utils
 
-import com.pedro.common.toUInt32
-import java.nio.ByteBuffer
 import javax.crypto.Cipher
 import javax.crypto.Mac
 import javax.crypto.spec.SecretKeySpec
@@ -30,11 +28,21 @@ import kotlin.experimental.xor
  *
  * Crypto class used to encrypt in SRTP implementation
  * RFC 3711
+ *
+ * Packets are encrypted and authenticated in place. The AES-CM keystream of a packet is
+ * generated with a single cipher call from counter blocks where the salt and block counter are
+ * precomputed, so only the SSRC and index bytes are updated per packet.
+ *
+ * Not thread safe, each packetizer or report has its own instance.
  */
 class CryptoUtils(
   private val cryptoProperties: CryptoProperties
 ) {
 
+  companion object {
+    private const val BLOCK_SIZE = 16
+  }
+
   private val mac = Mac.getInstance("HmacSHA1").apply {
     init(SecretKeySpec(cryptoProperties.authKey, "HmacSHA1"))
   }
@@ -44,51 +52,108 @@ class CryptoUtils(
   // so they diverge after the first 16-byte block. We implement AES-CM manually.
   private val ecbCipher = Cipher.getInstance("AES/ECB/NoPadding")
   private val aesKey = SecretKeySpec(cryptoProperties.sessionKey, "AES")
+  //counter blocks with salt and block counter precomputed, only ssrc and index change per packet
+  private var counterBlocks = ByteArray(0)
+  private var keystream = ByteArray(0)
+  private val hmac = ByteArray(mac.macLength)
+  private val roc = ByteArray(4)
 
   init {
     ecbCipher.init(Cipher.ENCRYPT_MODE, aesKey)
   }
 
-  fun encrypt(buffer: ByteArray, ivData: ByteArray): ByteArray {
-    // RFC 3711 4.1.1 AES Counter Mode: keystream_j = E(k, (IV + j) mod 2^128)
-    // The SRTP IV has its low 16 bits set to zero, so the block counter j occupies
-    // bits 15..0 → bytes 14..15 in a 16-byte big-endian block
-    val result = ByteArray(buffer.size)
-    val block = ByteArray(16)
-    var offset = 0
-    var j = 0
-    while (offset < buffer.size) {
-      ivData.copyInto(block)
-      block[15] = (block[15].toInt() xor (j and 0xFF)).toByte()
-      block[14] = (block[14].toInt() xor ((j shr 8) and 0xFF)).toByte()
-      val keystream = ecbCipher.doFinal(block)
-      val toCopy = minOf(16, buffer.size - offset)
-      for (i in 0 until toCopy) result[offset + i] = buffer[offset + i] xor keystream[i]
-      offset += 16
-      j++
+  /**
+   * Encrypt [length] bytes of [buffer] from [offset] in place.
+   * RFC 3711 4.1.1 AES Counter Mode: keystream_j = E(k, (IV + j) mod 2^128)
+   * IV = (salt * 2^16) XOR (SSRC * 2^64) XOR (index * 2^16)
+   */
+  fun encrypt(buffer: ByteArray, offset: Int, length: Int, ssrc: Long, index: Long) {
+    val salt = cryptoProperties.salt
+    val blocksSize = ensureBlocks(length)
+    var block = 0
+    while (block < blocksSize) {
+      counterBlocks[block + 4] = salt[4] xor (ssrc shr 24).toByte()
+      counterBlocks[block + 5] = salt[5] xor (ssrc shr 16).toByte()
+      counterBlocks[block + 6] = salt[6] xor (ssrc shr 8).toByte()
+      counterBlocks[block + 7] = salt[7] xor ssrc.toByte()
+      counterBlocks[block + 8] = salt[8] xor (index shr 40).toByte()
+      counterBlocks[block + 9] = salt[9] xor (index shr 32).toByte()
+      counterBlocks[block + 10] = salt[10] xor (index shr 24).toByte()
+      counterBlocks[block + 11] = salt[11] xor (index shr 16).toByte()
+      counterBlocks[block + 12] = salt[12] xor (index shr 8).toByte()
+      counterBlocks[block + 13] = salt[13] xor index.toByte()
+      block += BLOCK_SIZE
+    }
+    ecbCipher.update(counterBlocks, 0, blocksSize, keystream, 0)
+    for (i in 0 until length) {
+      buffer[offset + i] = buffer[offset + i] xor keystream[i]
+    }
+  }
+
+  /**
+   * Write the HMAC of [length] bytes of [buffer] from [offset], followed by [roc] if not null,
+   * in [output] at [outputOffset].
+   */
+  fun calculateHmac(
+    buffer: ByteArray, offset: Int, length: Int, roc: Int?,
+    output: ByteArray, outputOffset: Int
+  ) {
+    updateHmac(buffer, offset, length, roc)
+    hmac.copyInto(output, outputOffset, 0, RtpConstants.HMAC_SIZE)
+  }
+
+  /**
+   * Check that the HMAC of [length] bytes of [buffer] from [offset], followed by [roc] if not null,
+   * is equal to the tag in [tag] at [tagOffset]. Compared in constant time.
+   */
+  fun verifyHmac(
+    buffer: ByteArray, offset: Int, length: Int, roc: Int?,
+    tag: ByteArray, tagOffset: Int
+  ): Boolean {
+    updateHmac(buffer, offset, length, roc)
+    var result = 0
+    for (i in 0 until RtpConstants.HMAC_SIZE) {
+      result = result or (hmac[i].toInt() xor tag[tagOffset + i].toInt())
     }
-    return result
+    return result == 0
   }
 
   fun calculateHmac(buffer: ByteArray, roc: Int? = null): ByteArray {
-    mac.reset()
-    mac.update(buffer)
-    roc?.let { mac.update(roc.toUInt32()) }
-    return mac.doFinal().copyOf(RtpConstants.HMAC_SIZE)
+    val output = ByteArray(RtpConstants.HMAC_SIZE)
+    calculateHmac(buffer, 0, buffer.size, roc, output, 0)
+    return output
   }
 
-  fun generateIv(
-    ssrc: Long,
-    index: Long
-  ): ByteArray {
-    val ivBase = ByteArray(16)
-    ByteBuffer.wrap(ivBase, 4, 4).putInt(ssrc.toInt())
-    val indexBytes = ByteBuffer.allocate(8).putLong(index).array()
-    System.arraycopy(indexBytes, 2, ivBase, 8, 6)
+  private fun updateHmac(buffer: ByteArray, offset: Int, length: Int, roc: Int?) {
+    mac.update(buffer, offset, length)
+    roc?.let {
+      this.roc[0] = (it ushr 24).toByte()
+      this.roc[1] = (it ushr 16).toByte()
+      this.roc[2] = (it ushr 8).toByte()
+      this.roc[3] = it.toByte()
+      mac.update(this.roc)
+    }
+    mac.doFinal(hmac, 0)
+  }
 
-    val paddedSalt = ByteArray(16).apply { cryptoProperties.salt.copyInto(this) }
-    return ByteArray(16).apply {
-      for (i in this.indices) this[i] = ivBase[i] xor paddedSalt[i]
+  /**
+   * Grow counter blocks if needed to encrypt [length] bytes.
+   *
+   * @return size in bytes of the blocks needed
+   */
+  private fun ensureBlocks(length: Int): Int {
+    val blocksSize = (length + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE
+    if (blocksSize > counterBlocks.size) {
+      counterBlocks = ByteArray(blocksSize)
+      keystream = ByteArray(blocksSize)
+      val salt = cryptoProperties.salt
+      for (block in 0 until blocksSize / BLOCK_SIZE) {
+        val position = block * BLOCK_SIZE
+        salt.copyInto(counterBlocks, position, 0, minOf(salt.size, 14))
+        counterBlocks[position + 14] = (block ushr 8).toByte()
+        counterBlocks[position + 15] = block.toByte()
+      }
     }
+    return blocksSize
   }
-}
\ No newline at end of file
+}
@@ -29,6 +29,10 @@ object RtpConstants {
   //RFC 3551. The payload type 8 (PCMA) is statically mapped to 8khz mono
   const val clockG711Frequency = 8000L
   const val RTP_HEADER_LENGTH = 12
+  //one-byte header extension with a transport-wide sequence number, 16 bits and 1 byte of padding
+  const val TRANSPORT_CC_EXTENSION_LENGTH = 8
+  //offset of the transport-wide sequence number in a packet with the extension
+  const val TRANSPORT_CC_SEQUENCE_OFFSET = 17
   const val MTU = 1500
   const val REPORT_PACKET_LENGTH = 28
   const val payloadType = 96
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.rtsp.rtcp
+
+import com.pedro.common.ReceiverReportStats
+import com.pedro.common.TimeUtils
+import com.pedro.common.frame.MediaFrame
+import com.pedro.common.socket.base.SocketType
+import com.pedro.common.socket.base.StreamSocket
+import com.pedro.common.socket.java.TcpStreamSocketJava
+import com.pedro.rtsp.rtsp.Protocol
+import com.pedro.rtsp.utils.RtpConstants
+import com.pedro.rtsp.utils.RtpTracks
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.mockito.MockedStatic
+import org.mockito.Mockito
+import java.net.DatagramPacket
+import java.net.DatagramSocket
+import java.net.InetAddress
+import java.nio.ByteBuffer
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * A local UDP socket acts as the server, sending scripted RR to the client RTCP ports.
+ */
+class ReceiverReportTest {
+
+  private lateinit var timeUtilsMocked: MockedStatic<TimeUtils>
+  //10 seconds, the middle 32 bits of the NTP timestamp is 10 shl 16
+  private val fakeTime = 10_000_000_000L
+  private val ntpMiddle = 10L shl 16
+  private val ssrcVideo = 0x11223344L
+  //generated as negative int
+  private val ssrcAudio = -0x22L
+  private val host = InetAddress.getByName("127.0.0.1")
+  private lateinit var server: DatagramSocket
+  private val scope = CoroutineScope(Dispatchers.IO)
+
+  @Before
+  fun setup() {
+    timeUtilsMocked = Mockito.mockStatic(TimeUtils::class.java)
+    timeUtilsMocked.`when`<Long>(TimeUtils::getCurrentTimeNano).then { fakeTime }
+    server = DatagramSocket(0, host)
+  }
+
+  @After
+  fun teardown() {
+    scope.cancel()
+    server.close()
+    timeUtilsMocked.close()
+  }
+
+  private fun createRr(ssrc: Long, fractionLost: Int, cumulativeLost: Int, jitter: Int, lastSr: Long, delaySinceLastSr: Long): ByteArray {
+    val buffer = ByteBuffer.allocate(32)
+    buffer.put(0x81.toByte()).put(201.toByte()).putShort(7)
+    buffer.putInt(0x55) //ssrc of the server
+    buffer.putInt(ssrc.toInt())
+    buffer.putInt((fractionLost shl 24) or (cumulativeLost and 0xFFFFFF))
+    buffer.putInt(1000)
+    buffer.putInt(jitter)
+    buffer.putInt(lastSr.toInt())
+    buffer.putInt(delaySinceLastSr.toInt())
+    return buffer.array()
+  }
+
+  private fun freePort(): Int = DatagramSocket(0, host).use { it.localPort }
+
+  private suspend fun waitReports(report: BaseSenderReport, count: Int, condition: (List<ReceiverReportStats>) -> Boolean = { true }): List<ReceiverReportStats> {
+    return withTimeout(5_000) {
+      var reports = report.getReceiverReports()
+      while (reports.size < count || !condition(reports)) {
+        delay(10)
+        reports = report.getReceiverReports()
+      }
+      reports
+    }
+  }
+
+  @Test
+  fun `GIVEN a server sending RR to udp rtcp ports WHEN read reports THEN get loss, jitter and rtt of each stream`() = runBlocking {
+    val videoPort = freePort()
+    val audioPort = freePort()
+    val report = BaseSenderReport.getInstance(
+      RtpTracks(), SocketType.JAVA, Protocol.UDP, "127.0.0.1", StreamSocket.DEFAULT_TIMEOUT,
+      videoPort, audioPort, server.localPort, server.localPort
+    )
+    report.setSSRC(ssrcVideo, ssrcAudio)
+    report.setClockRates(RtpConstants.clockVideoFrequency, RtpConstants.clockOpusFrequency)
+    //udp reports only connect its own sockets
+    report.setSocket(TcpStreamSocketJava("127.0.0.1", 0, false))
+    report.startReading(scope)
+
+    //rtt 250ms - 125ms
+    val video = createRr(ssrcVideo, 64, 10, 900, ntpMiddle - 16384, 8192)
+    server.send(DatagramPacket(video, video.size, host, videoPort))
+    //no SR received by the server yet
+    val audio = createRr(ssrcAudio, 0, -2, 480, 0, 0)
+    server.send(DatagramPacket(audio, audio.size, host, audioPort))
+
+    val reports = waitReports(report, 2)
+    val videoReport = reports.first { it.type == MediaFrame.Type.VIDEO }
+    assertEquals(ssrcVideo, videoReport.ssrc)
+    assertEquals(0.25f, videoReport.fractionLost)
+    assertEquals(10L, videoReport.cumulativeLost)
+    assertEquals(10f, videoReport.jitter)
+    assertEquals(125L, videoReport.rtt)
+    val audioReport = reports.first { it.type == MediaFrame.Type.AUDIO }
+    assertEquals(ssrcAudio and 0xFFFFFFFFL, audioReport.ssrc)
+    assertEquals(0f, audioReport.fractionLost)
+    assertEquals(-2L, audioReport.cumulativeLost)
+    assertEquals(10f, audioReport.jitter)
+    assertEquals(-1L, audioReport.rtt)
+
+    //next report without lsr keeps the last rtt known
+    val next = createRr(ssrcVideo, 128, 30, 1800, 0, 0)
+    server.send(DatagramPacket(next, next.size, host, videoPort))
+    val nextReport = waitReports(report, 2) { list ->
+      list.first { it.type == MediaFrame.Type.VIDEO }.cumulativeLost == 30L
+    }.first { it.type == MediaFrame.Type.VIDEO }
+    assertEquals(0.5f, nextReport.fractionLost)
+    assertEquals(20f, nextReport.jitter)
+    assertEquals(125L, nextReport.rtt)
+
+    report.close()
+  }
+
+  @Test
+  fun `GIVEN a report of other ssrc WHEN read THEN it is ignored`() {
+    val report = SenderReportTcp(RtpTracks())
+    report.setSSRC(ssrcVideo, ssrcAudio)
+    val rr = createRr(0x99, 64, 10, 900, 0, 0)
+    report.onRtcpPacket(rr, 0, rr.size)
+    assertEquals(0, report.getReceiverReports().size)
+    val valid = createRr(ssrcVideo, 64, 10, 900, 0, 0)
+    report.onRtcpPacket(valid, 0, valid.size)
+    assertEquals(1, report.getReceiverReports().size)
+    report.reset()
+    assertEquals(0, report.getReceiverReports().size)
+  }
+}
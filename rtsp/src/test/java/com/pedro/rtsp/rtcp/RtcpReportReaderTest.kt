@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.rtsp.rtcp
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.ByteBuffer
+
+/**
+ * Created by pedro on 18/10/26.
+ */
+class RtcpReportReaderTest {
+
+  private class Block(
+    val ssrc: Long, val fractionLost: Int, val cumulativeLost: Int, val highestSequence: Long,
+    val jitter: Long, val lastSr: Long, val delaySinceLastSr: Long
+  )
+
+  private class Summary(val ssrc: Long, val beginSequence: Int, val endSequence: Int, val lostPackets: Long, val meanJitter: Long)
+
+  private val blocks = mutableListOf<Block>()
+  private val summaries = mutableListOf<Summary>()
+  private val listener = object : RtcpReportReader.Listener {
+    override fun onReportBlock(
+      ssrc: Long, fractionLost: Int, cumulativeLost: Int, highestSequence: Long,
+      jitter: Long, lastSr: Long, delaySinceLastSr: Long
+    ) {
+      blocks.add(Block(ssrc, fractionLost, cumulativeLost, highestSequence, jitter, lastSr, delaySinceLastSr))
+    }
+
+    override fun onStatisticsSummary(ssrc: Long, beginSequence: Int, endSequence: Int, lostPackets: Long, meanJitter: Long) {
+      summaries.add(Summary(ssrc, beginSequence, endSequence, lostPackets, meanJitter))
+    }
+  }
+
+  private fun ByteBuffer.putReportBlock(ssrc: Long, fractionLost: Int, cumulativeLost: Int, jitter: Long) {
+    putInt(ssrc.toInt())
+    putInt((fractionLost shl 24) or (cumulativeLost and 0xFFFFFF))
+    putInt(70000) //extended highest sequence
+    putInt(jitter.toInt())
+    putInt(0x12345678) //lsr
+    putInt(0x00010000) //dlsr, 1 second
+  }
+
+  @Test
+  fun `GIVEN a compound packet with SR and RR WHEN read THEN report all blocks`() {
+    val buffer = ByteBuffer.allocate(28 + 24 + 8 + 48)
+    //SR with 1 block
+    buffer.put(0x81.toByte()).put(200.toByte()).putShort(12)
+    buffer.putInt(1)
+    buffer.put(ByteArray(20))
+    buffer.putReportBlock(0xAABBCCDDL, 64, 10, 900)
+    //RR with 2 blocks
+    buffer.put(0x82.toByte()).put(201.toByte()).putShort(13)
+    buffer.putInt(1)
+    buffer.putReportBlock(2, 0, -2, 480)
+    buffer.putReportBlock(3, 255, 0x7FFFFF, 0)
+
+    assertTrue(RtcpReportReader.read(buffer.array(), 0, buffer.capacity(), listener))
+    assertEquals(3, blocks.size)
+    assertEquals(0xAABBCCDDL, blocks[0].ssrc)
+    assertEquals(64, blocks[0].fractionLost)
+    assertEquals(10, blocks[0].cumulativeLost)
+    assertEquals(70000L, blocks[0].highestSequence)
+    assertEquals(900L, blocks[0].jitter)
+    assertEquals(0x12345678L, blocks[0].lastSr)
+    assertEquals(0x00010000L, blocks[0].delaySinceLastSr)
+    assertEquals(-2, blocks[1].cumulativeLost)
+    assertEquals(480L, blocks[1].jitter)
+    assertEquals(255, blocks[2].fractionLost)
+    assertEquals(0x7FFFFF, blocks[2].cumulativeLost)
+  }
+
+  @Test
+  fun `GIVEN a XR with statistics summary WHEN read THEN report lost packets and mean jitter`() {
+    val buffer = ByteBuffer.allocate(8 + 8 + 40)
+    buffer.put(0x80.toByte()).put(207.toByte()).putShort(13)
+    buffer.putInt(1)
+    //unknown block type is skipped
+    buffer.put(4).put(0).putShort(1).putInt(0)
+    //statistics summary with lost and jitter flags
+    buffer.put(6).put(0xA0.toByte()).putShort(9)
+    buffer.putInt(5)
+    buffer.putShort(100).putShort(300)
+    buffer.putInt(20) //lost
+    buffer.putInt(0) //duplicated
+    buffer.putInt(10).putInt(500).putInt(90).putInt(30) //min, max, mean and dev jitter
+    buffer.putInt(0) //ttl
+
+    assertTrue(RtcpReportReader.read(buffer.array(), 0, buffer.capacity(), listener))
+    assertEquals(1, summaries.size)
+    assertEquals(5L, summaries[0].ssrc)
+    assertEquals(100, summaries[0].beginSequence)
+    assertEquals(300, summaries[0].endSequence)
+    assertEquals(20L, summaries[0].lostPackets)
+    assertEquals(90L, summaries[0].meanJitter)
+  }
+
+  @Test
+  fun `GIVEN a truncated packet WHEN read THEN return false`() {
+    val buffer = ByteBuffer.allocate(32)
+    buffer.put(0x81.toByte()).put(201.toByte()).putShort(12)
+    assertFalse(RtcpReportReader.read(buffer.array(), 0, buffer.capacity(), listener))
+    assertTrue(blocks.isEmpty())
+  }
+}
@@ -109,9 +109,9 @@ class Av1PacketTest {
     assertArrayEquals(expectedSecondHeader, frames[1].buffer.copyOfRange(0, expectedSecondHeader.size))
     assertArrayEquals(expectedThirdHeader, frames[2].buffer.copyOfRange(0, expectedThirdHeader.size))
     //the leb128 of each packet declares 1457, 1457 and 87, that is the element without losing a byte
-    assertArrayEquals(element.copyOfRange(0, 1457), frames[0].buffer.copyOfRange(15, frames[0].buffer.size))
-    assertArrayEquals(element.copyOfRange(1457, 2914), frames[1].buffer.copyOfRange(15, frames[1].buffer.size))
-    assertArrayEquals(element.copyOfRange(2914, 3001), frames[2].buffer.copyOfRange(14, frames[2].buffer.size))
+    assertArrayEquals(element.copyOfRange(0, 1457), frames[0].buffer.copyOfRange(15, frames[0].length))
+    assertArrayEquals(element.copyOfRange(1457, 2914), frames[1].buffer.copyOfRange(15, frames[1].length))
+    assertArrayEquals(element.copyOfRange(2914, 3001), frames[2].buffer.copyOfRange(14, frames[2].length))
   }
 
   @Test
@@ -139,8 +139,8 @@ class Av1PacketTest {
     //aggregation header 0x08 -> Z=0 Y=0 N=1, and the leb128 -79, 11 declares the 1457 bytes
     val expectedHeader = byteArrayOf(-128, -32, 0, 1, 0, -87, -118, -57, 7, 91, -51, 21, 8, -79, 11)
     assertEquals(1, frames.size)
-    assertEquals(RtpConstants.MTU - 28, frames[0].buffer.size)
+    assertEquals(RtpConstants.MTU - 28, frames[0].length)
     assertArrayEquals(expectedHeader, frames[0].buffer.copyOfRange(0, expectedHeader.size))
-    assertArrayEquals(element, frames[0].buffer.copyOfRange(15, frames[0].buffer.size))
+    assertArrayEquals(element, frames[0].buffer.copyOfRange(15, frames[0].length))
   }
 }
@@ -26,6 +26,7 @@ import junit.framework.TestCase.assertEquals
 import kotlinx.coroutines.test.runTest
 import org.junit.Test
 import java.nio.ByteBuffer
+import java.util.concurrent.atomic.AtomicInteger
 import javax.crypto.Cipher
 import javax.crypto.Mac
 import javax.crypto.spec.IvParameterSpec
@@ -56,6 +57,33 @@ class G711PacketTest {
     assertEquals(packetResult, frames[0])
   }
 
+  @Test
+  fun `GIVEN g711 data and transport sequence WHEN create rtp packets THEN get packets with transport-wide sequence extension`() = runTest {
+    val timestamp = 123456789L
+    val fakeG711 = ByteArray(30) { 0x05 }
+    val rtpTracks = RtpTracks()
+    val g711Packet = G711Packet(rtpTracks.trackAudio)
+    g711Packet.setSSRC(123456789)
+    val transportSequence = AtomicInteger(0xFFFF)
+    g711Packet.setTransportSequence(3, transportSequence)
+    val frames = mutableListOf<RtpFrame>()
+    repeat(2) {
+      val info = MediaFrame.Info(0, fakeG711.size, timestamp, false)
+      val mediaFrame = MediaFrame(ByteBuffer.wrap(fakeG711), info, MediaFrame.Type.AUDIO)
+      g711Packet.createAndSendPacket(mediaFrame) { packets -> packets.forEach { frames.add(it.copyPacket()) } }
+    }
+
+    val expectedSize = RtpConstants.RTP_HEADER_LENGTH + RtpConstants.TRANSPORT_CC_EXTENSION_LENGTH + fakeG711.size
+    val expectedRtp = byteArrayOf(-112, -120, 0, 1, 0, 15, 18, 6, 7, 91, -51, 21)
+      .plus(byteArrayOf(-66, -34, 0, 1, 0x31, -1, -1, 0)).plus(fakeG711)
+    assertEquals(2, frames.size)
+    assertEquals(RtpFrame(expectedRtp, 987654L, expectedSize, rtpTracks.trackAudio), frames[0])
+    //transport sequence wrap and continue
+    assertEquals(0, frames[1].buffer[RtpConstants.TRANSPORT_CC_SEQUENCE_OFFSET].toInt())
+    assertEquals(0, frames[1].buffer[RtpConstants.TRANSPORT_CC_SEQUENCE_OFFSET + 1].toInt())
+    assertEquals(0x10001, transportSequence.get())
+  }
+
   /**
    * Validates the SRTP output of [G711Packet] against a packet built independently with the JCE.
    *
@@ -117,7 +145,7 @@ class G711PacketTest {
 
     val expectedBuffer = authenticated.plus(hmac)
 
-    assertEquals(expectedBuffer.toList(), frames[0].buffer.toList())
+    assertEquals(expectedBuffer.toList(), frames[0].buffer.copyOf(frames[0].length).toList())
     assertEquals(rtpTimeStamp, frames[0].timeStamp)
     assertEquals(rtpTracks.trackAudio, frames[0].channelIdentifier)
   }
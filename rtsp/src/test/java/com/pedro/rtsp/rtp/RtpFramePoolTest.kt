@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.rtsp.rtp
+
+import com.pedro.common.frame.MediaFrame
+import com.pedro.rtsp.rtp.packets.AacPacket
+import com.pedro.rtsp.rtp.packets.BasePacket
+import com.pedro.rtsp.rtp.packets.H264Packet
+import com.pedro.rtsp.rtsp.RtpFrame
+import com.pedro.rtsp.utils.RtpTracks
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.lang.management.ManagementFactory
+import java.nio.ByteBuffer
+
+/**
+ * Created by pedro on 18/10/26.
+ */
+class RtpFramePoolTest {
+
+  private val rtpTracks = RtpTracks()
+  private val warmUpFrames = 100
+  private val measuredFrames = 2000
+
+  @Test
+  fun `GIVEN a h264 packetizer in steady state WHEN create packets THEN no packet is allocated`() = runTest {
+    val h264Packet = H264Packet(rtpTracks.trackVideo)
+    h264Packet.setSSRC(123456789)
+    h264Packet.sendVideoInfo(ByteBuffer.wrap(byteArrayOf(0x67, 0x01, 0x02)), ByteBuffer.wrap(byteArrayOf(0x68, 0x03)))
+    val header = byteArrayOf(0x00, 0x00, 0x00, 0x01, 0x65)
+    val keyFrame = header.plus(ByteArray(5000) { it.toByte() })
+    val frameHeader = byteArrayOf(0x00, 0x00, 0x00, 0x01, 0x41)
+    val frame = frameHeader.plus(ByteArray(3000) { it.toByte() })
+    val keyInfo = MediaFrame.Info(0, keyFrame.size, 0, true)
+    val info = MediaFrame.Info(0, frame.size, 0, false)
+    val keyMediaFrame = MediaFrame(ByteBuffer.wrap(keyFrame), keyInfo, MediaFrame.Type.VIDEO)
+    val mediaFrame = MediaFrame(ByteBuffer.wrap(frame), info, MediaFrame.Type.VIDEO)
+
+    assertSteadyState(h264Packet) { index ->
+      if (index % 30 == 0) keyMediaFrame else mediaFrame
+    }
+  }
+
+  @Test
+  fun `GIVEN an aac packetizer in steady state WHEN create packets THEN no packet is allocated`() = runTest {
+    val aacPacket = AacPacket(rtpTracks.trackAudio)
+    aacPacket.setSSRC(123456789)
+    aacPacket.setAudioInfo(44100)
+    val aac = ByteArray(400) { it.toByte() }
+    val info = MediaFrame.Info(0, aac.size, 0, true)
+    val mediaFrame = MediaFrame(ByteBuffer.wrap(aac), info, MediaFrame.Type.AUDIO)
+
+    assertSteadyState(aacPacket) { mediaFrame }
+  }
+
+  @Test
+  fun `GIVEN reused frames WHEN create a smaller packet THEN the packet has no data of the previous one`() = runTest {
+    val h264Packet = H264Packet(rtpTracks.trackVideo)
+    h264Packet.setSSRC(123456789)
+    val header = byteArrayOf(0x00, 0x00, 0x00, 0x01, 0x05)
+    val bigH264 = header.plus(ByteArray(2500) { 0x0f })
+    val smallH264 = header.plus(ByteArray(300) { 0x00 })
+    val timestamp = 123456789L
+    val bigInfo = MediaFrame.Info(0, bigH264.size, timestamp, true)
+    val smallInfo = MediaFrame.Info(0, smallH264.size, timestamp, true)
+    val bigBuffers = mutableListOf<ByteArray>()
+    h264Packet.createAndSendPacket(MediaFrame(ByteBuffer.wrap(bigH264), bigInfo, MediaFrame.Type.VIDEO)) { frames ->
+      frames.forEach { bigBuffers.add(it.buffer) }
+    }
+    val frames = mutableListOf<RtpFrame>()
+    h264Packet.createAndSendPacket(MediaFrame(ByteBuffer.wrap(smallH264), smallInfo, MediaFrame.Type.VIDEO)) { frames.addAll(it) }
+
+    val expectedRtp = byteArrayOf(-128, -32, 0, 3, 0, -87, -118, -57, 7, 91, -51, 21, 5).plus(smallH264.copyOfRange(header.size, smallH264.size))
+    val expectedPacketResult = RtpFrame(expectedRtp, 11111111L, expectedRtp.size, rtpTracks.trackVideo)
+    assertEquals(1, frames.size)
+    assertSame(bigBuffers[0], frames[0].buffer)
+    assertEquals(expectedPacketResult, frames[0])
+  }
+
+  @Test
+  fun `GIVEN reused frames WHEN change ssrc THEN packets use the new ssrc`() = runTest {
+    val aacPacket = AacPacket(rtpTracks.trackAudio)
+    aacPacket.setSSRC(1)
+    aacPacket.setAudioInfo(44100)
+    val aac = ByteArray(100) { it.toByte() }
+    val info = MediaFrame.Info(0, aac.size, 0, true)
+    aacPacket.createAndSendPacket(MediaFrame(ByteBuffer.wrap(aac), info, MediaFrame.Type.AUDIO)) { }
+    aacPacket.setSSRC(0x01020304)
+    val frames = mutableListOf<RtpFrame>()
+    aacPacket.createAndSendPacket(MediaFrame(ByteBuffer.wrap(aac), info, MediaFrame.Type.AUDIO)) { frames.addAll(it) }
+
+    assertEquals(1, aacPacket.getAllocatedFrames())
+    val ssrc = frames[0].buffer.copyOfRange(8, 12)
+    assertEquals(listOf<Byte>(1, 2, 3, 4), ssrc.toList())
+  }
+
+  private suspend fun assertSteadyState(packet: BasePacket, mediaFrame: (Int) -> MediaFrame) {
+    var packets = 0
+    val callback: suspend (List<RtpFrame>) -> Unit = { packets += it.size }
+    for (i in 0 until warmUpFrames) send(packet, mediaFrame(i), callback)
+    val allocatedFrames = packet.getAllocatedFrames()
+    packets = 0
+
+    val threadBean = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+    val threadId = Thread.currentThread().id
+    val startBytes = threadBean?.getThreadAllocatedBytes(threadId) ?: 0
+    for (i in 0 until measuredFrames) send(packet, mediaFrame(i), callback)
+    val allocatedBytes = (threadBean?.getThreadAllocatedBytes(threadId) ?: 0) - startBytes
+
+    assertEquals(allocatedFrames, packet.getAllocatedFrames())
+    //only the media frame slice and the coroutine frames are allocated, less than a packet buffer
+    assertTrue("allocated $allocatedBytes bytes for $measuredFrames frames", allocatedBytes / measuredFrames < 256)
+  }
+
+  private suspend fun send(packet: BasePacket, mediaFrame: MediaFrame, callback: suspend (List<RtpFrame>) -> Unit) {
+    mediaFrame.data.clear()
+    packet.createAndSendPacket(mediaFrame, callback)
+  }
+}
@@ -34,6 +34,7 @@ import org.junit.runner.RunWith
 import org.mockito.Mock
 import org.mockito.junit.MockitoJUnitRunner
 import org.mockito.kotlin.argumentCaptor
+import org.mockito.kotlin.eq
 import org.mockito.kotlin.times
 import org.mockito.kotlin.verify
 
@@ -79,7 +80,7 @@ class RtpStreamSocketTest {
     }
     val resultValue = argumentCaptor<ByteArray>()
     withContext(Dispatchers.IO) {
-      verify(udpSocket, times((10))).write(resultValue.capture())
+      verify(udpSocket, times((10))).write(resultValue.capture(), eq(0), eq(3))
     }
   }
 }
\ No newline at end of file
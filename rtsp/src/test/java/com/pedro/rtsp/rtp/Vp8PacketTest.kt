@@ -98,8 +98,8 @@ class Vp8PacketTest {
     val keyInfo = MediaFrame.Info(0, vp8data.size, timestamp, true)
     val deltaInfo = MediaFrame.Info(0, vp8data.size, timestamp, false)
     val frames = mutableListOf<RtpFrame>()
-    vp8Packet.createAndSendPacket(MediaFrame(ByteBuffer.wrap(vp8data), keyInfo, MediaFrame.Type.VIDEO)) { frames.addAll(it) }
-    vp8Packet.createAndSendPacket(MediaFrame(ByteBuffer.wrap(vp8data), deltaInfo, MediaFrame.Type.VIDEO)) { frames.addAll(it) }
+    vp8Packet.createAndSendPacket(MediaFrame(ByteBuffer.wrap(vp8data), keyInfo, MediaFrame.Type.VIDEO)) { it.forEach { frame -> frames.add(frame.copyPacket()) } }
+    vp8Packet.createAndSendPacket(MediaFrame(ByteBuffer.wrap(vp8data), deltaInfo, MediaFrame.Type.VIDEO)) { it.forEach { frame -> frames.add(frame.copyPacket()) } }
 
     assertEquals(2, frames.size)
     val pid1 = readPictureId(frames[0])
@@ -120,8 +120,8 @@ class Vp9PacketTest {
     val keyInfo = MediaFrame.Info(0, vp9data.size, timestamp, true)
     val deltaInfo = MediaFrame.Info(0, vp9data.size, timestamp, false)
     val frames = mutableListOf<RtpFrame>()
-    vp9Packet.createAndSendPacket(MediaFrame(ByteBuffer.wrap(vp9data), keyInfo, MediaFrame.Type.VIDEO)) { frames.addAll(it) }
-    vp9Packet.createAndSendPacket(MediaFrame(ByteBuffer.wrap(vp9data), deltaInfo, MediaFrame.Type.VIDEO)) { frames.addAll(it) }
+    vp9Packet.createAndSendPacket(MediaFrame(ByteBuffer.wrap(vp9data), keyInfo, MediaFrame.Type.VIDEO)) { it.forEach { frame -> frames.add(frame.copyPacket()) } }
+    vp9Packet.createAndSendPacket(MediaFrame(ByteBuffer.wrap(vp9data), deltaInfo, MediaFrame.Type.VIDEO)) { it.forEach { frame -> frames.add(frame.copyPacket()) } }
 
     assertEquals(2, frames.size)
     val pid1 = readPictureId(frames[0])
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.rtsp.utils
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Test
+
+/**
+ * Created by pedro on 18/10/26.
+ */
+class CryptoUtilsTest {
+
+  private fun String.hexToBytes(): ByteArray = chunked(2).map { it.toInt(16).toByte() }.toByteArray()
+
+  @Test
+  fun `GIVEN RFC 3711 test vector WHEN encrypt zeros THEN get AES-CM keystream`() {
+    val properties = CryptoProperties(
+      ByteArray(20),
+      "2B7E151628AED2A6ABF7158809CF4F3C".hexToBytes(),
+      "F0F1F2F3F4F5F6F7F8F9FAFBFCFD".hexToBytes()
+    )
+    val cryptoUtils = CryptoUtils(properties)
+    //ssrc and index 0 so the IV is the salt
+    val buffer = ByteArray(48)
+    cryptoUtils.encrypt(buffer, 0, buffer.size, 0, 0)
+    val expected = ("E03EAD0935C95E80E166B16DD92B4EB4" +
+        "D23513162B02D0F72A43A2FE4A5F97AB" +
+        "41E95B3BB0A2E8DD477901E4FCA894C0").hexToBytes()
+    assertArrayEquals(expected, buffer)
+  }
+
+  @Test
+  fun `GIVEN a packet slice WHEN encrypt twice THEN only the slice change and get the original data`() {
+    val properties = CryptoProperties(ByteArray(20) { 1 }, ByteArray(16) { 2 }, ByteArray(14) { 3 })
+    val cryptoUtils = CryptoUtils(properties)
+    val data = ByteArray(1500) { it.toByte() }
+    val buffer = data.copyOf()
+    cryptoUtils.encrypt(buffer, 12, 1000, 123456789, 70000)
+    assertArrayEquals(data.copyOfRange(0, 12), buffer.copyOfRange(0, 12))
+    assertArrayEquals(data.copyOfRange(1012, 1500), buffer.copyOfRange(1012, 1500))
+    cryptoUtils.encrypt(buffer, 12, 1000, 123456789, 70000)
+    assertArrayEquals(data, buffer)
+  }
+
+  @Test
+  fun `GIVEN a packet slice and roc WHEN calculate hmac in place THEN get the same hmac that with a copy`() {
+    val properties = CryptoProperties(ByteArray(20) { 1 }, ByteArray(16) { 2 }, ByteArray(14) { 3 })
+    val cryptoUtils = CryptoUtils(properties)
+    val buffer = ByteArray(200) { it.toByte() }
+    val expected = cryptoUtils.calculateHmac(buffer.copyOfRange(0, 190).plus(byteArrayOf(0, 0, 0, 5)))
+    cryptoUtils.calculateHmac(buffer, 0, 190, 5, buffer, 190)
+    assertArrayEquals(expected, buffer.copyOfRange(190, 200))
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.srt.fec
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * L x D matrix of a row/column XOR FEC (SMPTE 2022-1).
+ *
+ * Source packets fill the matrix by rows. Each row of [columns] packets is protected by a row
+ * FEC packet and each column of [rows] packets by a column FEC packet, so a single loss per
+ * row or a burst of up to [columns] consecutive losses can be recovered.
+ *
+ * @param columns L, packets per row
+ * @param rows D, packets per column. 1 to send only row FEC
+ */
+data class FecConfig(
+  val columns: Int = 10,
+  val rows: Int = 5
+) {
+
+  init {
+    require(columns in 1..20) { "columns must be in range 1..20" }
+    require(rows in 1..20) { "rows must be in range 1..20" }
+    require(columns * rows <= 100) { "matrix size must be 100 packets at most" }
+    require(columns > 1 || rows > 1) { "matrix must have more than 1 packet" }
+  }
+
+  val rowFec = columns > 1
+  val columnFec = rows > 1
+
+  /**
+   * Bytes of FEC sent per byte of source.
+   */
+  fun getOverhead(): Float {
+    return (if (rowFec) 1f / columns else 0f) + (if (columnFec) 1f / rows else 0f)
+  }
+}
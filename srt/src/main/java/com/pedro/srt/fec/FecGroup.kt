@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.srt.fec
+
+import kotlin.experimental.xor
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * XOR of the packets of a row or a column of a [FecMatrix].
+ *
+ * Payloads shorter than [clipSize] are padded with zeros, so the length clip is needed to
+ * recover the size of a lost packet.
+ *
+ * @param index column of the group or -1 if it is a row
+ */
+class FecGroup(clipSize: Int, val index: Int) {
+
+  val payloadClip = ByteArray(clipSize)
+  var lengthClip = 0
+    private set
+  var timestampClip = 0
+    private set
+  var flagsClip = 0
+    private set
+  //sequence number of the first and last packet of the group
+  var base = 0
+    private set
+  var last = 0
+    private set
+  var count = 0
+    private set
+
+  fun isRow() = index < 0
+
+  fun add(sequence: Int, buffer: ByteArray, offset: Int, length: Int, ts: Int, flags: Int) {
+    require(length <= payloadClip.size) { "payload size $length bigger than clip size ${payloadClip.size}" }
+    if (count == 0) base = sequence
+    last = sequence
+    for (i in 0 until length) {
+      payloadClip[i] = payloadClip[i] xor buffer[offset + i]
+    }
+    lengthClip = lengthClip xor length
+    timestampClip = timestampClip xor ts
+    flagsClip = flagsClip xor flags
+    count++
+  }
+
+  fun reset() {
+    payloadClip.fill(0)
+    lengthClip = 0
+    timestampClip = 0
+    flagsClip = 0
+    count = 0
+  }
+}
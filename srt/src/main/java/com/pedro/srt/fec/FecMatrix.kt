@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.srt.fec
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Row/column XOR FEC encoder. Source packets must be added in sequence order, each one fills the
+ * next position of the matrix and [onGroup] is called with each row or column completed.
+ * The group is reset after the callback so it must be serialized inside it.
+ *
+ * Columns are aligned with the start of the matrix (non staircase layout), so all column
+ * groups are completed with the last row.
+ *
+ * Not thread safe, the caller must synchronize the access.
+ *
+ * @param clipSize max payload size of source packets
+ */
+class FecMatrix(
+  val config: FecConfig,
+  val clipSize: Int,
+  private val onGroup: (FecGroup) -> Unit
+) {
+
+  private val row = FecGroup(clipSize, -1)
+  private val columns = Array(if (config.columnFec) config.columns else 0) { FecGroup(clipSize, it) }
+  private val size = config.columns * config.rows
+  private var position = 0
+  var sourcePackets = 0L
+    private set
+  var fecPackets = 0L
+    private set
+
+  fun add(sequence: Int, buffer: ByteArray, offset: Int, length: Int, ts: Int, flags: Int) {
+    val column = position % config.columns
+    if (config.rowFec) {
+      row.add(sequence, buffer, offset, length, ts, flags)
+      if (column == config.columns - 1) complete(row)
+    }
+    if (config.columnFec) {
+      val group = columns[column]
+      group.add(sequence, buffer, offset, length, ts, flags)
+      if (position / config.columns == config.rows - 1) complete(group)
+    }
+    sourcePackets++
+    position = (position + 1) % size
+  }
+
+  /**
+   * Discard incomplete groups and start a new matrix with the next packet.
+   */
+  fun reset() {
+    row.reset()
+    columns.forEach { it.reset() }
+    position = 0
+    sourcePackets = 0
+    fecPackets = 0
+  }
+
+  private fun complete(group: FecGroup) {
+    onGroup(group)
+    fecPackets++
+    group.reset()
+  }
+}
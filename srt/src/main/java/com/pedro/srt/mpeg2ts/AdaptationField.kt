@@ -56,6 +56,45 @@ data class AdaptationField(
     private val adaptationExtension: ByteArray? = null,
     private val stuffingBytes: ByteArray? = null,
 ) {
+
+    companion object {
+        //length and flags
+        private const val BASE_SIZE = 2
+        private const val PCR_SIZE = 6
+
+        fun getSize(hasPcr: Boolean): Int = if (hasPcr) BASE_SIZE + PCR_SIZE else BASE_SIZE
+
+        /**
+         * Write in place the adaptation field used by PES packets, with only random access
+         * indicator, optional [pcr] and [stuffingSize] stuffing bytes.
+         * Same result than getData without allocate an AdaptationField per packet.
+         */
+        fun write(buffer: ByteBuffer, randomAccessIndicator: Boolean, pcr: Long?, stuffingSize: Int = 0) {
+            val length = getSize(pcr != null) + stuffingSize
+            buffer.put((length - 1).toByte())
+            buffer.put(((randomAccessIndicator.toInt() shl 6) or ((pcr != null).toInt() shl 4)).toByte())
+            pcr?.let { addClockReference(buffer, it) }
+            repeat(stuffingSize) { buffer.put(0xFF.toByte()) }
+        }
+
+        private fun addClockReference(buffer: ByteBuffer, timestamp: Long) {
+            val pcrBase = (timestamp * 9 / 100) % (1L shl 33)
+            val pcrExt = (timestamp * 27) % 300
+
+            /**
+             * PCR Base -> 33 bits
+             * Reserved -> 6 bits (0b111111)
+             * PCR Ext -> 9 bits
+             */
+            buffer.putInt((pcrBase shr 1).toInt())
+            buffer.putShort(
+                (((pcrBase and 0x1) shl 15)
+                    or (0b111111 shl 9)
+                    or (pcrExt and 0x1FF)).toShort()
+            )
+        }
+    }
+
     private val transportPrivateDataLength: Int = transportPrivateData?.size ?: 0
     private val length: Int = calculateSize()
 
@@ -97,21 +136,4 @@ data class AdaptationField(
             (if (transportPrivateDataLength > 0) transportPrivateDataLength + 1 else 0) +
             (adaptationExtension?.size ?: 0) + (stuffingBytes?.size ?: 0)
     }
-
-    private fun addClockReference(buffer: ByteBuffer, timestamp: Long) {
-        val pcrBase = (timestamp * 9 / 100) % (1L shl 33)
-        val pcrExt = (timestamp * 27) % 300
-
-        /**
-         * PCR Base -> 33 bits
-         * Reserved -> 6 bits (0b111111)
-         * PCR Ext -> 9 bits
-         */
-        buffer.putInt((pcrBase shr 1).toInt())
-        buffer.putShort(
-            (((pcrBase and 0x1) shl 15)
-                or (0b111111 shl 9)
-                or (pcrExt and 0x1FF)).toShort()
-        )
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.srt.mpeg2ts
+
+import com.pedro.common.BufferPool
+import com.pedro.srt.srt.packets.data.PacketPosition
+import java.nio.ByteBuffer
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Provide TS packets located directly inside pooled datagram buffers.
+ *
+ * Each datagram is a BufferPool array with [headerSpace] bytes reserved at the start (SRT data
+ * packet header) followed by up to chunk size TS packets, so the datagram can be sent as is after
+ * write the header in place.
+ */
+class MpegTsDatagramWriter(
+  private val bufferPool: BufferPool,
+  private val headerSpace: Int,
+  private var chunkSize: Int
+) {
+
+  private val datagrams = mutableListOf<ByteBuffer>()
+  private var current: ByteBuffer? = null
+  private var packetsInDatagram = 0
+
+  fun setChunkSize(chunkSize: Int) {
+    this.chunkSize = maxOf(chunkSize, 1)
+  }
+
+  /**
+   * @return the current datagram with position and limit set to the next TS packet
+   */
+  fun nextPacket(): ByteBuffer {
+    var datagram = current
+    if (datagram == null || packetsInDatagram >= chunkSize) {
+      datagram = ByteBuffer.wrap(bufferPool.acquire(headerSpace + chunkSize * MpegTsPacketizer.packetSize))
+      datagrams.add(datagram)
+      current = datagram
+      packetsInDatagram = 0
+    }
+    val start = headerSpace + packetsInDatagram * MpegTsPacketizer.packetSize
+    datagram.limit(start + MpegTsPacketizer.packetSize)
+    datagram.position(start)
+    packetsInDatagram++
+    return datagram
+  }
+
+  /**
+   * Close the datagrams written since the last call.
+   */
+  fun finish(type: MpegType, isKey: Boolean): List<MpegTsPacket> {
+    val packets = ArrayList<MpegTsPacket>(datagrams.size)
+    datagrams.forEach { datagram ->
+      packets.add(MpegTsPacket(
+        buffer = datagram.array(),
+        type = type,
+        packetPosition = PacketPosition.SINGLE,
+        isKey = isKey,
+        offset = headerSpace,
+        length = datagram.limit() - headerSpace,
+        pooled = true
+      ))
+    }
+    datagrams.clear()
+    current = null
+    packetsInDatagram = 0
+    return packets
+  }
+
+  fun release(packet: MpegTsPacket) {
+    if (packet.pooled) bufferPool.release(packet.buffer)
+  }
+
+  fun reset() {
+    datagrams.forEach { bufferPool.release(it.array()) }
+    datagrams.clear()
+    current = null
+    packetsInDatagram = 0
+  }
+}
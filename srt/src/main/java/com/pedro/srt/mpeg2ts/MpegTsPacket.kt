@@ -22,10 +22,16 @@ import com.pedro.srt.srt.packets.data.PacketPosition
  * Created by pedro on 20/8/23.
  *
  * Contains multiple TS packets in a buffer no longer to MTU - data header size
+ *
+ * When [pooled] the buffer comes from a BufferPool, TS packets start at [offset] and the bytes
+ * before it are reserved to write the transport header in place.
  */
 data class MpegTsPacket(
   val buffer: ByteArray,
   val type: MpegType,
   val packetPosition: PacketPosition,
-  val isKey: Boolean
+  val isKey: Boolean,
+  val offset: Int = 0,
+  val length: Int = buffer.size,
+  val pooled: Boolean = false
 )
\ No newline at end of file
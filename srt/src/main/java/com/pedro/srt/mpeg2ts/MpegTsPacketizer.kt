@@ -26,6 +26,8 @@ import java.nio.ByteBuffer
 /**
  * Created by pedro on 28/8/23.
  *
+ * PSI tables are copied from the TS packet cached in each [Psi], patching only the continuity
+ * counter. PES headers and adaptation fields are written in place in the output packet.
  */
 class MpegTsPacketizer(private val psiManager: PsiManager) {
 
@@ -35,7 +37,8 @@ class MpegTsPacketizer(private val psiManager: PsiManager) {
   }
 
   private var pesContinuity = 0
-  private var psiContinuity = mutableMapOf<Int, Int>()
+  //indexed by pid, 13 bits
+  private val psiContinuity = ByteArray(0x2000)
 
   //4 bytes header
   private fun writeHeader(buffer: ByteBuffer, startIndicator: Boolean, pid: Int, adaptationFieldControl: AdaptationFieldControl, continuity: Int) {
@@ -58,74 +61,123 @@ class MpegTsPacketizer(private val psiManager: PsiManager) {
    */
   fun write(payload: List<MpegTsPayload>): List<ByteArray> {
     val packets = mutableListOf<ByteArray>()
+    writePackets(payload, { ByteBuffer.allocate(packetSize) }) { buffer ->
+      packets.add(buffer.toByteArray())
+    }
+    return packets
+  }
+
+  /**
+   * Write the PSI tables grouped in arrays of up to [chunkSize] TS packets, ready to send.
+   */
+  fun writePsi(psiList: List<Psi>, chunkSize: Int): List<ByteArray> {
+    val size = maxOf(chunkSize, 1)
+    val chunks = ArrayList<ByteArray>((psiList.size + size - 1) / size)
+    var index = 0
+    while (index < psiList.size) {
+      val count = minOf(size, psiList.size - index)
+      val chunk = ByteArray(count * packetSize)
+      for (i in 0 until count) {
+        writePsi(chunk, i * packetSize, psiList[index + i])
+      }
+      chunks.add(chunk)
+      index += count
+    }
+    return chunks
+  }
+
+  /**
+   * Write the mpeg2ts packets directly in the pooled datagrams of [datagramWriter].
+   * Each datagram contains up to chunk size TS packets so no extra copy is needed to join them.
+   *
+   * @return datagrams ready to send, the buffers must be released to the pool after used
+   */
+  fun write(
+    payload: List<MpegTsPayload>,
+    datagramWriter: MpegTsDatagramWriter,
+    type: MpegType,
+    isKey: Boolean
+  ): List<MpegTsPacket> {
+    writePackets(payload, { datagramWriter.nextPacket() }) { }
+    return datagramWriter.finish(type, isKey)
+  }
+
+  /**
+   * @param nextPacket provide a buffer with exactly [packetSize] bytes remaining
+   * @param onPacket called with each TS packet completely written
+   */
+  private inline fun writePackets(
+    payload: List<MpegTsPayload>,
+    nextPacket: () -> ByteBuffer,
+    onPacket: (ByteBuffer) -> Unit
+  ) {
     payload.forEach { mpegTsPayload ->
-      var buffer = ByteBuffer.allocate(packetSize)
+      var buffer = nextPacket()
 
       when (mpegTsPayload) {
         is Psi -> {
-          val continuity = psiContinuity[mpegTsPayload.pid] ?: 0
-          writeHeader(buffer, true, mpegTsPayload.pid, AdaptationFieldControl.PAYLOAD, continuity)
-          mpegTsPayload.write(buffer)
-          val stuffingSize = buffer.remaining()
-          writeStuffingBytes(buffer, stuffingSize, false)
-          packets.add(buffer.toByteArray())
-          psiContinuity[mpegTsPayload.pid] = (continuity + 1) and 0xF
+          writePsi(buffer.array(), buffer.arrayOffset() + buffer.position(), mpegTsPayload)
+          buffer.position(buffer.position() + packetSize)
+          onPacket(buffer)
         }
         is Pes -> {
-          val data = mpegTsPayload.bufferData
-
           val isAudio = psiManager.getAudioPid().toInt() == mpegTsPayload.pid
           val pcr = if (isAudio && !mpegTsPayload.isKeyFrame) null else TimeUtils.getCurrentTimeMicro()
-          val baseAdaptationField = AdaptationField(
-            discontinuityIndicator = false,
-            randomAccessIndicator = mpegTsPayload.isKeyFrame, //only video can be true
-            pcr = pcr
-          )
-          val baseAdaptationSize = baseAdaptationField.getSize()
-          val isSmall = data.remaining() < packetSize - headerSize - baseAdaptationSize - mpegTsPayload.headerLength
+          val baseAdaptationSize = AdaptationField.getSize(pcr != null)
+          val isSmall = mpegTsPayload.remaining() < packetSize - headerSize - baseAdaptationSize - mpegTsPayload.headerLength
           writeHeader(buffer, true, mpegTsPayload.pid, AdaptationFieldControl.ADAPTATION_PAYLOAD, pesContinuity)
 
           if (isSmall) {
-            val stuffingSize = packetSize - headerSize - baseAdaptationSize - mpegTsPayload.headerLength - data.remaining()
-            val adaptationField = AdaptationField(
-              discontinuityIndicator = false,
-              randomAccessIndicator = mpegTsPayload.isKeyFrame,
-              pcr = pcr,
-              stuffingBytes = ByteArray(stuffingSize) { 0xFF.toByte() }
-            )
-            buffer.put(adaptationField.getData())
+            val stuffingSize = packetSize - headerSize - baseAdaptationSize - mpegTsPayload.headerLength - mpegTsPayload.remaining()
+            //random access indicator, only video can be true
+            AdaptationField.write(buffer, mpegTsPayload.isKeyFrame, pcr, stuffingSize)
             mpegTsPayload.writeHeader(buffer)
-            buffer.put(data)
-            packets.add(buffer.toByteArray())
+            mpegTsPayload.readData(buffer, mpegTsPayload.remaining())
+            onPacket(buffer)
             pesContinuity = (pesContinuity + 1) and 0xF
             return@forEach
           }
-          buffer.put(baseAdaptationField.getData())
+          AdaptationField.write(buffer, mpegTsPayload.isKeyFrame, pcr)
           mpegTsPayload.writeHeader(buffer)
           var isFirstPacket = true
           var adaptationFieldControl = AdaptationFieldControl.PAYLOAD
-          while (data.hasRemaining()) {
-            val lastPacket = data.remaining() < buffer.remaining() - headerSize
+          while (mpegTsPayload.hasRemaining()) {
+            if (!isFirstPacket) buffer = nextPacket()
+            val lastPacket = mpegTsPayload.remaining() < buffer.remaining() - headerSize
             if (!isFirstPacket) {
               if (lastPacket) adaptationFieldControl = AdaptationFieldControl.ADAPTATION_PAYLOAD
               writeHeader(buffer, false, mpegTsPayload.pid, adaptationFieldControl, pesContinuity)
             }
             if (lastPacket) {
-              val stuffingSize = buffer.remaining() - data.remaining()
+              val stuffingSize = buffer.remaining() - mpegTsPayload.remaining()
               writeStuffingBytes(buffer, stuffingSize, true)
             }
-            val size = minOf(data.remaining(), buffer.remaining())
-            buffer.put(data.array(), data.position(), size)
-            data.position(data.position() + size)
-            packets.add(buffer.toByteArray())
+            val size = minOf(mpegTsPayload.remaining(), buffer.remaining())
+            mpegTsPayload.readData(buffer, size)
+            onPacket(buffer)
             pesContinuity = (pesContinuity + 1) and 0xF
-            buffer = ByteBuffer.allocate(packetSize)
             isFirstPacket = false
           }
         }
       }
     }
-    return packets
+  }
+
+  /**
+   * Copy the cached TS packet of [psi] in [output] at [offset] with the next continuity counter.
+   * The packet is serialized, including CRC, only the first time or after a version upgrade.
+   */
+  private fun writePsi(output: ByteArray, offset: Int, psi: Psi) {
+    val packet = psi.packet ?: ByteBuffer.allocate(packetSize).let { buffer ->
+      writeHeader(buffer, true, psi.pid, AdaptationFieldControl.PAYLOAD, 0)
+      psi.write(buffer)
+      writeStuffingBytes(buffer, buffer.remaining(), false)
+      buffer.array().also { psi.packet = it }
+    }
+    val continuity = psiContinuity[psi.pid].toInt()
+    packet.copyInto(output, offset)
+    output[offset + 3] = ((packet[3].toInt() and 0xF0) or continuity).toByte()
+    psiContinuity[psi.pid] = ((continuity + 1) and 0xF).toByte()
   }
 
   private fun writeStuffingBytes(byteBuffer: ByteBuffer, size: Int, addHeader: Boolean) {
@@ -134,18 +186,17 @@ class MpegTsPacketizer(private val psiManager: PsiManager) {
         byteBuffer.put((size - 1).toByte()) //this byte is not included in the size
       }
       else -> {
-        val bytes = ByteArray(fillSize) { 0xFF.toByte() }
         if (addHeader) {
           byteBuffer.put((size - 1).toByte()) //this byte is not included in the size
           byteBuffer.put(0x00)
         }
-        byteBuffer.put(bytes)
+        repeat(fillSize) { byteBuffer.put(0xFF.toByte()) }
       }
     }
   }
 
   fun reset() {
     pesContinuity = 0
-    psiContinuity.clear()
+    psiContinuity.fill(0)
   }
 }
\ No newline at end of file
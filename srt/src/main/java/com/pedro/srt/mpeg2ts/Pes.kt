@@ -22,27 +22,45 @@ import kotlin.experimental.and
 
 /**
  * Created by pedro on 28/8/23.
+ *
+ * The payload can be a list of buffers (start codes, NALs, ADTS header...) read in order, so the
+ * packetizer copies each segment directly to the TS packet without joining them first.
+ *
+ * The DTS is written only if it is different to the PTS (video with B-frames).
  */
 class Pes(
   pid: Int,
   isKeyFrame: Boolean,
   private val streamId: PesType,
   private val pts: Long,
-  val bufferData: ByteBuffer
+  private val segments: List<ByteBuffer>,
+  private val dts: Long = pts
 ): MpegTsPayload(pid, isKeyFrame) {
 
-  val headerLength = 14
+  constructor(
+    pid: Int,
+    isKeyFrame: Boolean,
+    streamId: PesType,
+    pts: Long,
+    bufferData: ByteBuffer,
+    dts: Long = pts
+  ): this(pid, isKeyFrame, streamId, pts, listOf(bufferData), dts)
 
-  private val length = headerLength + bufferData.remaining()
+  private val hasDts = dts != pts
+  private val pesHeaderLength = if (hasDts) 10 else 5 //pts and dts size
+  val headerLength = 9 + pesHeaderLength
+
+  private var remaining = segments.sumOf { it.remaining() }
+  private var segmentIndex = 0
+  private val length = headerLength + remaining
   private val markerBits = 2
   private val scramblingControl = 0
   private val priority = false
   private val dataAlignmentIndicator = false
   private val copyright = false
   private val originalOrCopy = true
-  private val ptsdtsIndicator = 2 //(only pts)
+  private val ptsdtsIndicator = if (hasDts) 3 else 2 //(pts and dts or only pts)
   private val otherFlags = 0 // ESCR flag, ES rate flag, DSM trick mode flag, Additional copy info flag, CRC flag, extension flag
-  private val pesHeaderLength = 5 //pts size
 
   fun writeHeader(buffer: ByteBuffer) {
     buffer.putShort(0)
@@ -56,14 +74,50 @@ class Pes(
     val flags = ((ptsdtsIndicator shl 6) or otherFlags).toByte()
     buffer.put(flags)
     buffer.put(pesHeaderLength.toByte())
-    addTimestamp(buffer, pts, 0b0010) //indicate no dts
+    if (hasDts) {
+      addTimestamp(buffer, pts, 0b0011) //indicate pts followed by dts
+      addTimestamp(buffer, dts, 0b0001)
+    } else {
+      addTimestamp(buffer, pts, 0b0010) //indicate no dts
+    }
   }
 
   private fun addTimestamp(buffer: ByteBuffer, timestamp: Long, fourBits: Byte) {
-    val pts = (timestamp * 9 / 100) % (1L shl 33)
+    val pts = (timestamp * 9 / 100).mod(1L shl 33)
 
     buffer.put((((fourBits and 0xF).toInt() shl 4) or ((pts shr 29) and 0xE).toInt() or 1).toByte())
     buffer.putShort((((pts shr 14) and 0xFFFE) or 1).toShort())
     buffer.putShort((((pts shl 1) and 0xFFFE) or 1).toShort())
   }
-}
\ No newline at end of file
+
+  fun hasRemaining(): Boolean = remaining > 0
+
+  fun remaining(): Int = remaining
+
+  /**
+   * Copy the next [size] bytes of the payload into [buffer]. Heap and direct segments are
+   * supported, no intermediate buffers are created.
+   */
+  fun readData(buffer: ByteBuffer, size: Int) {
+    var pending = minOf(size, remaining)
+    while (pending > 0) {
+      val segment = segments[segmentIndex]
+      if (!segment.hasRemaining()) {
+        segmentIndex++
+        continue
+      }
+      val length = minOf(pending, segment.remaining())
+      if (segment.hasArray()) {
+        buffer.put(segment.array(), segment.arrayOffset() + segment.position(), length)
+        segment.position(segment.position() + length)
+      } else {
+        val limit = segment.limit()
+        segment.limit(segment.position() + length)
+        buffer.put(segment)
+        segment.limit(limit)
+      }
+      pending -= length
+      remaining -= length
+    }
+  }
+}
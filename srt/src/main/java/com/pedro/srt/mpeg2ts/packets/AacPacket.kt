@@ -25,9 +25,6 @@ import com.pedro.srt.mpeg2ts.MpegType
 import com.pedro.srt.mpeg2ts.Pes
 import com.pedro.srt.mpeg2ts.PesType
 import com.pedro.srt.mpeg2ts.psi.PsiManager
-import com.pedro.srt.srt.packets.data.PacketPosition
-import com.pedro.srt.utils.chunkPackets
-import java.nio.ByteBuffer
 
 /**
  * Created by pedro on 20/8/23.
@@ -50,15 +47,10 @@ class AacPacket(
     val length = fixedBuffer.remaining()
     if (length < 0) return
 
-    val payload = ByteArray(length + headerSize)
-    val adts = AudioUtils.createAdtsHeader(type, payload.size, sampleRate, channels)
-    adts.get(payload, 0, headerSize)
-    fixedBuffer.get(payload, headerSize, length)
+    val adts = AudioUtils.createAdtsHeader(type, length + headerSize, sampleRate, channels)
 
-    val pes = Pes(psiManager.getAudioPid().toInt(), true, PesType.AUDIO, mediaFrame.info.timestamp, ByteBuffer.wrap(payload))
-    val mpeg2tsPackets = mpegTsPacketizer.write(listOf(pes)).chunkPackets(chunkSize).map { buffer ->
-        MpegTsPacket(buffer, MpegType.AUDIO, PacketPosition.SINGLE, isKey = false)
-    }
+    val pes = Pes(psiManager.getAudioPid().toInt(), true, PesType.AUDIO, mediaFrame.info.timestamp, listOf(adts, fixedBuffer))
+    val mpeg2tsPackets = writePes(pes, MpegType.AUDIO, isKey = false)
     if (mpeg2tsPackets.isNotEmpty()) callback(mpeg2tsPackets)
   }
 
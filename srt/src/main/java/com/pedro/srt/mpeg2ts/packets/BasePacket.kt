@@ -16,10 +16,16 @@
 
 package com.pedro.srt.mpeg2ts.packets
 
+import com.pedro.common.BufferPool
 import com.pedro.common.frame.MediaFrame
+import com.pedro.srt.mpeg2ts.MpegTsDatagramWriter
 import com.pedro.srt.mpeg2ts.MpegTsPacket
 import com.pedro.srt.mpeg2ts.MpegTsPacketizer
+import com.pedro.srt.mpeg2ts.MpegType
+import com.pedro.srt.mpeg2ts.Pes
 import com.pedro.srt.mpeg2ts.psi.PsiManager
+import com.pedro.srt.srt.packets.data.PacketPosition
+import com.pedro.srt.utils.chunkPackets
 
 /**
  * Created by pedro on 20/8/23.
@@ -48,6 +54,7 @@ abstract class BasePacket(
 
   protected val mpegTsPacketizer =  MpegTsPacketizer(psiManager)
   protected var chunkSize = limitSize / MpegTsPacketizer.packetSize //max number of ts packets per srtpacket
+  private var datagramWriter: MpegTsDatagramWriter? = null
 
   abstract suspend fun createAndSendPacket(
     mediaFrame: MediaFrame,
@@ -58,11 +65,34 @@ abstract class BasePacket(
 
   fun reset(resetInfo: Boolean) {
     mpegTsPacketizer.reset()
+    datagramWriter?.reset()
     resetPacket(resetInfo)
   }
 
   fun setLimitSize(limitSize: Int) {
     this.limitSize = limitSize
     chunkSize = limitSize / MpegTsPacketizer.packetSize
+    datagramWriter?.setChunkSize(chunkSize)
+  }
+
+  /**
+   * Write TS packets directly in datagrams acquired from [bufferPool] reserving [headerSpace]
+   * bytes for the transport header. Use null to go back to a new ByteArray per datagram.
+   * The callback receives pooled packets that must be released to the same pool after send.
+   */
+  fun setDatagramPool(bufferPool: BufferPool?, headerSpace: Int) {
+    datagramWriter?.reset()
+    datagramWriter = bufferPool?.let { MpegTsDatagramWriter(it, headerSpace, chunkSize) }
+  }
+
+  protected fun writePes(pes: Pes, type: MpegType, isKey: Boolean): List<MpegTsPacket> {
+    val datagramWriter = datagramWriter
+    return if (datagramWriter != null) {
+      mpegTsPacketizer.write(listOf(pes), datagramWriter, type, isKey)
+    } else {
+      mpegTsPacketizer.write(listOf(pes)).chunkPackets(chunkSize).map { buffer ->
+        MpegTsPacket(buffer, type, PacketPosition.SINGLE, isKey)
+      }
+    }
   }
 }
\ No newline at end of file
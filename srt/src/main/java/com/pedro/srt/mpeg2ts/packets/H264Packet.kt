@@ -27,9 +27,7 @@ import com.pedro.srt.mpeg2ts.MpegType
 import com.pedro.srt.mpeg2ts.Pes
 import com.pedro.srt.mpeg2ts.PesType
 import com.pedro.srt.mpeg2ts.psi.PsiManager
-import com.pedro.srt.srt.packets.data.PacketPosition
-import com.pedro.srt.utils.chunkPackets
-import com.pedro.srt.utils.getPayload
+import com.pedro.srt.utils.getPayloadSegments
 import java.nio.ByteBuffer
 
 /**
@@ -68,7 +66,7 @@ class H264Packet(
       if (!nals.contains(sps)) nals.add(0, sps.duplicate())
     }
 
-    val payload = nals.getPayload {
+    val payload = nals.getPayloadSegments {
       ByteBuffer.allocate(6).apply {
         putInt(0x00000001) //annex-b header
         put(0x09.toByte())
@@ -76,10 +74,8 @@ class H264Packet(
         flip()
       }
     }
-    val pes = Pes(psiManager.getVideoPid().toInt(), isKeyFrame, PesType.VIDEO, mediaFrame.info.timestamp, payload)
-    val mpeg2tsPackets = mpegTsPacketizer.write(listOf(pes)).chunkPackets(chunkSize).map { buffer ->
-      MpegTsPacket(buffer, MpegType.VIDEO, PacketPosition.SINGLE, isKeyFrame)
-    }
+    val pes = Pes(psiManager.getVideoPid().toInt(), isKeyFrame, PesType.VIDEO, mediaFrame.info.timestamp, payload, mediaFrame.info.dts)
+    val mpeg2tsPackets = writePes(pes, MpegType.VIDEO, isKeyFrame)
     if (mpeg2tsPackets.isNotEmpty()) callback(mpeg2tsPackets)
   }
 
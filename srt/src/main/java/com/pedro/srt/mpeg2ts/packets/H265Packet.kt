@@ -27,9 +27,7 @@ import com.pedro.srt.mpeg2ts.MpegType
 import com.pedro.srt.mpeg2ts.Pes
 import com.pedro.srt.mpeg2ts.PesType
 import com.pedro.srt.mpeg2ts.psi.PsiManager
-import com.pedro.srt.srt.packets.data.PacketPosition
-import com.pedro.srt.utils.chunkPackets
-import com.pedro.srt.utils.getPayload
+import com.pedro.srt.utils.getPayloadSegments
 import java.nio.ByteBuffer
 
 /**
@@ -71,7 +69,7 @@ class H265Packet(
       if (!nals.contains(vps)) nals.add(0, vps.duplicate())
     }
 
-    val payload = nals.getPayload {
+    val payload = nals.getPayloadSegments {
       ByteBuffer.allocate(7).apply {
         putInt(0x00000001) //annex-b header
         put(0x46.toByte())
@@ -80,10 +78,8 @@ class H265Packet(
         flip()
       }
     }
-    val pes = Pes(psiManager.getVideoPid().toInt(), isKeyFrame, PesType.VIDEO, mediaFrame.info.timestamp, payload)
-    val mpeg2tsPackets = mpegTsPacketizer.write(listOf(pes)).chunkPackets(chunkSize).map { buffer ->
-      MpegTsPacket(buffer, MpegType.VIDEO, PacketPosition.SINGLE, isKeyFrame)
-    }
+    val pes = Pes(psiManager.getVideoPid().toInt(), isKeyFrame, PesType.VIDEO, mediaFrame.info.timestamp, payload, mediaFrame.info.dts)
+    val mpeg2tsPackets = writePes(pes, MpegType.VIDEO, isKeyFrame)
     if (mpeg2tsPackets.isNotEmpty()) callback(mpeg2tsPackets)
   }
 
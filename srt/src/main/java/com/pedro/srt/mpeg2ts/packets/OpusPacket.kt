@@ -23,8 +23,6 @@ import com.pedro.srt.mpeg2ts.MpegType
 import com.pedro.srt.mpeg2ts.Pes
 import com.pedro.srt.mpeg2ts.PesType
 import com.pedro.srt.mpeg2ts.psi.PsiManager
-import com.pedro.srt.srt.packets.data.PacketPosition
-import com.pedro.srt.utils.chunkPackets
 import com.pedro.srt.utils.toByteArray
 import java.nio.ByteBuffer
 
@@ -45,14 +43,9 @@ class OpusPacket(
     if (length < 0) return
 
     val header = createControlHeader(length)
-    val payload = ByteArray(length + header.size)
-    fixedBuffer.get(payload, header.size, length)
-    System.arraycopy(header, 0, payload, 0, header.size)
 
-    val pes = Pes(psiManager.getAudioPid().toInt(), true, PesType.PRIVATE_STREAM_1, mediaFrame.info.timestamp, ByteBuffer.wrap(payload))
-    val mpeg2tsPackets = mpegTsPacketizer.write(listOf(pes)).chunkPackets(chunkSize).map { buffer ->
-      MpegTsPacket(buffer, MpegType.AUDIO, PacketPosition.SINGLE, false)
-    }
+    val pes = Pes(psiManager.getAudioPid().toInt(), true, PesType.PRIVATE_STREAM_1, mediaFrame.info.timestamp, listOf(ByteBuffer.wrap(header), fixedBuffer))
+    val mpeg2tsPackets = writePes(pes, MpegType.AUDIO, false)
     if (mpeg2tsPackets.isNotEmpty()) callback(mpeg2tsPackets)
   }
 
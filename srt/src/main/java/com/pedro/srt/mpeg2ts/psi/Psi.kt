@@ -23,12 +23,15 @@ import java.nio.ByteBuffer
 
 /**
  * Created by pedro on 28/8/23.
+ *
+ * The TS packet of the table is serialized only once and cached until the version is upgraded or
+ * [invalidate] is called because the content changed.
  */
 abstract class Psi(
   pid: Int,
   private val id: Byte,
   private val idExtension: Short,
-  var version: Byte,
+  version: Byte,
   private val sectionSyntaxIndicator: Boolean = true,
   private val privateBit: Boolean = false,
   private val indicator: Boolean = true, //true current, false next
@@ -40,6 +43,21 @@ abstract class Psi(
   private val sectionLengthUnusedBits = 0
   private var sectionLength = 0
 
+  var version: Byte = version
+    set(value) {
+      field = value
+      packet = null
+    }
+
+  /**
+   * TS packet with the table written by the packetizer, with continuity counter 0.
+   */
+  internal var packet: ByteArray? = null
+
+  fun invalidate() {
+    packet = null
+  }
+
   fun write(byteBuffer: ByteBuffer) {
     byteBuffer.put(0x00)
     val crc32InitialPosition = byteBuffer.position()
@@ -18,11 +18,9 @@ package com.pedro.srt.mpeg2ts.psi
 
 import com.pedro.srt.mpeg2ts.MpegTsPacket
 import com.pedro.srt.mpeg2ts.MpegTsPacketizer
-import com.pedro.srt.mpeg2ts.MpegTsPayload
 import com.pedro.srt.mpeg2ts.MpegType
 import com.pedro.srt.mpeg2ts.service.Mpeg2TsService
 import com.pedro.srt.srt.packets.data.PacketPosition
-import com.pedro.srt.utils.chunkPackets
 import kotlin.random.Random
 
 /**
@@ -35,6 +33,7 @@ class PsiManager(
   private val idExtension = Random.nextInt(Byte.MIN_VALUE.toInt(), Byte.MAX_VALUE.toInt()).toShort()
   private var sdtCount = 0
   private var patCount = 0
+  private val psiList = ArrayList<Psi>(3)
 
   companion object {
     const val sdtPeriod = 200
@@ -54,19 +53,21 @@ class PsiManager(
   )
 
   fun checkSendInfo(isKey: Boolean = false, mpegTsPacketizer: MpegTsPacketizer, chunkSize: Int): List<MpegTsPacket> {
-    val pmt = service.pmt ?: return arrayListOf()
-    val psiPackets = mutableListOf<MpegTsPayload>()
+    val pmt = service.pmt ?: return emptyList()
+    psiList.clear()
     if (patCount >= patPeriod || isKey) {
-      psiPackets.addAll(listOf(pat, pmt))
+      psiList.add(pat)
+      psiList.add(pmt)
       patCount = 0
     }
     if (sdtCount >= sdtPeriod) {
-      psiPackets.add(sdt)
+      psiList.add(sdt)
       sdtCount = 0
     }
     sdtCount++
     patCount++
-    return mpegTsPacketizer.write(psiPackets).chunkPackets(chunkSize).map { b ->
+    if (psiList.isEmpty()) return emptyList()
+    return mpegTsPacketizer.writePsi(psiList, chunkSize).map { b ->
       MpegTsPacket(b, MpegType.PSI, PacketPosition.SINGLE, isKey = false)
     }
   }
@@ -100,5 +101,9 @@ class PsiManager(
     this.service = service
     sdt.service = service
     pat.service = service
+    //tables content depend of the service, serialize it again in the next send
+    sdt.invalidate()
+    pat.invalidate()
+    service.pmt?.invalidate()
   }
 }
\ No newline at end of file
@@ -18,34 +18,65 @@ package com.pedro.srt.srt
 
 import android.util.Log
 import com.pedro.common.AudioCodec
+import com.pedro.common.BufferPool
 import com.pedro.common.TimeUtils
 import com.pedro.common.VideoCodec
+import com.pedro.srt.fec.FecConfig
 import com.pedro.srt.mpeg2ts.MpegTsPacket
+import com.pedro.srt.mpeg2ts.MpegTsPacketizer
+import com.pedro.srt.srt.congestion.CongestionController
+import com.pedro.srt.srt.congestion.LiveCongestionController
+import com.pedro.srt.srt.congestion.TokenBucket
 import com.pedro.srt.srt.packets.DataPacket
 import com.pedro.srt.srt.packets.SrtPacket
+import com.pedro.srt.srt.packets.control.Ack
 import com.pedro.srt.srt.packets.control.Ack2
 import com.pedro.srt.srt.packets.control.KeepAlive
+import com.pedro.srt.srt.packets.control.KeyMaterial
+import com.pedro.srt.srt.packets.control.Nak
 import com.pedro.srt.srt.packets.control.Shutdown
 import com.pedro.srt.srt.packets.control.handshake.EncryptionType
 import com.pedro.srt.srt.packets.control.handshake.Handshake
 import com.pedro.srt.srt.packets.data.KeyBasedEncryption
+import com.pedro.srt.srt.packets.data.PacketPosition
 import com.pedro.srt.utils.Constants
 import com.pedro.srt.utils.EncryptInfo
 import com.pedro.srt.utils.EncryptionUtil
 import com.pedro.srt.utils.SrtSocket
+import kotlinx.coroutines.delay
 import kotlinx.coroutines.sync.Mutex
 import kotlinx.coroutines.sync.withLock
 import java.io.IOException
+import java.nio.ByteBuffer
+import java.util.concurrent.atomic.AtomicLong
 import kotlin.random.Random
+import kotlin.time.Duration.Companion.nanoseconds
 
 /**
  * Created by pedro on 23/8/23.
  */
 class CommandsManager {
 
+  companion object {
+    //used to size the retransmission window if the max bandwidth is not configured
+    private const val DEFAULT_BANDWIDTH = 20_000_000L
+    //delay is in millis, shorter waits are accumulated in the bucket
+    private const val MIN_WAIT = 1_000_000L
+    //each packet with sequence multiple of 16 and the next are a probe pair used by the
+    //receiver to estimate the link capacity so must be sent back to back
+    private const val PROBE_MASK = 0xF
+    //resend keys announced until the receiver respond, in micros
+    private const val KEY_MATERIAL_INTERVAL = 500_000
+    private const val KEY_MATERIAL_RETRIES = 10
+  }
+
   private val TAG = "CommandsManager"
-  //used for packet lost
-  private val packetHandlingQueue = mutableListOf<DataPacket>()
+  //used for packet lost, created on first write to size it with latency and bandwidth
+  private var retransmissionWindow: RetransmissionWindow? = null
+  //last sequence confirmed by an ACK, applied to the window in the write path. -1 if none
+  @Volatile
+  private var lastAcknowledged = -1
+  private val retransmitPacket = DataPacket()
 
   var sequenceNumber: Int = generateInitialSequence()
   var messageNumber = 1
@@ -58,14 +89,37 @@ class CommandsManager {
   var videoDisabled = false
   var host = ""
   var latency = 120 //in millis
+  var maxBandwidth = 0L //in bits per second, 0 if unknown
   //Avoid write a packet in middle of other.
   private val writeSync = Mutex(locked = false)
   private var encryptor: EncryptionUtil? = null
+  var keyRefreshRate = EncryptionUtil.DEFAULT_REFRESH_RATE
+  var keyPreAnnounce = EncryptionUtil.DEFAULT_PRE_ANNOUNCE
+  //keys announced after a rotation waiting for the receiver response
+  @Volatile
+  private var keyMaterial: EncryptInfo? = null
+  private var keyMaterialTs = 0
+  private var keyMaterialRetries = 0
   var videoCodec = VideoCodec.H264
   var audioCodec = AudioCodec.AAC
+  //datagrams of pooled MpegTsPackets, released when they leave the retransmission window
+  val datagramPool = BufferPool(maxBuffersPerSizeClass = 256, maxRetainedBytes = 1024 * 1024)
+  var congestionController: CongestionController = LiveCongestionController()
+  private val tokenBucket = TokenBucket()
+  //FEC packet filter negotiated in the handshake, null if disabled
+  var fecConfig: FecConfig? = null
+  private var fecFilter: FecFilter? = null
+  private var fecPackets: List<DataPacket> = emptyList()
+  //receiver feedback reported in the streaming stats, rtt in micros
+  @Volatile
+  var rtt = 0
+    private set
+  private val sentPackets = AtomicLong(0)
+  private val lostPackets = AtomicLong(0)
+  private val lossCounter = LossCounter()
 
   fun setPassphrase(passphrase: String, type: EncryptionType) {
-    encryptor = if (passphrase.isEmpty() || type == EncryptionType.NONE) null else EncryptionUtil(type, passphrase)
+    encryptor = if (passphrase.isEmpty() || type == EncryptionType.NONE) null else EncryptionUtil(type, passphrase, keyRefreshRate, keyPreAnnounce)
   }
 
   fun getEncryptInfo(): EncryptInfo? {
@@ -78,6 +132,44 @@ class CommandsManager {
 
   fun encryptionEnabled() = encryptor != null
 
+  /**
+   * Packet filter config for the handshake, empty if FEC is disabled.
+   */
+  fun getFilterConfig(): String {
+    return fecConfig?.let { FecFilter.getConfigString(it) } ?: ""
+  }
+
+  /**
+   * Max payload of data packets, reduced with FEC to fit the FEC header in the MTU.
+   */
+  fun getMaxPayloadSize(): Int {
+    return MTU - SrtPacket.headerSize - if (fecConfig != null) FecFilter.HEADER_SIZE else 0
+  }
+
+  /**
+   * Create the FEC filter, must be called after the handshake with the MTU negotiated.
+   *
+   * @param filter packet filter of the conclusion response. FEC packets are only sent if the peer
+   * agreed a FEC config, otherwise a receiver without filter would read them as media.
+   * @return true if FEC is enabled
+   */
+  fun configureFec(filter: String?): Boolean {
+    fecFilter = if (fecConfig != null && filter != null) {
+      FecFilter.parseConfig(filter)?.let { config ->
+        //payload clip of the size of data packets, only full TS packets are sent
+        val payloadSize = getMaxPayloadSize() / MpegTsPacketizer.packetSize * MpegTsPacketizer.packetSize
+        FecFilter(config, payloadSize)
+      }
+    } else null
+    return fecFilter != null
+  }
+
+  fun isFecEnabled(): Boolean = fecFilter != null
+
+  fun getFecSourcePackets(): Long = fecFilter?.getSourcePackets() ?: 0
+
+  fun getFecPackets(): Long = fecFilter?.getFecPackets() ?: 0
+
   fun loadStartTs() {
     startTS = TimeUtils.getCurrentTimeMicro()
     localSocketId = generateSocketId()
@@ -111,58 +203,243 @@ class CommandsManager {
     }
   }
 
+  /**
+   * Pooled packets are sent writing the header in the space reserved before the TS packets.
+   * The datagram is kept as retransmission buffer and released to [datagramPool] when confirmed
+   * or discarded.
+   */
   @Throws(IOException::class)
   suspend fun writeData(packet: MpegTsPacket, socket: SrtSocket?): Int {
     writeSync.withLock {
-      if (sequenceNumber.toUInt() > 0x7FFFFFFFu) sequenceNumber = 0
-      val dataPacket = DataPacket(
-        encryption = if (encryptor != null) KeyBasedEncryption.PAIR_KEY else KeyBasedEncryption.NONE,
-        sequenceNumber = sequenceNumber,
-        packetPosition = packet.packetPosition,
-        messageNumber = messageNumber++,
-        payload = encryptor?.encrypt(packet.buffer, sequenceNumber) ?: packet.buffer,
-        ts = getTs(),
-        socketId = socketId
-      )
-      sequenceNumber++
-      packetHandlingQueue.add(dataPacket)
-      dropTooLatePackets(dataPacket.ts)
-      dataPacket.write()
-      socket?.write(dataPacket)
-      return dataPacket.getSize()
+      val dataPacket = createDataPacket(packet)
+      val size = if (packet.pooled) {
+        dataPacket.writeHeaderInPlace()
+        socket?.writeInPlace(dataPacket)
+        dataPacket.getDatagramSize()
+      } else {
+        dataPacket.write()
+        socket?.write(dataPacket)
+        dataPacket.getSize()
+      }
+      fecPackets.forEach { fecPacket ->
+        consumeFec(fecPacket)
+        socket?.write(fecPacket)
+      }
+      checkKeyMaterial(socket)
+      return size
     }
   }
 
+  /**
+   * Send all packets of a frame with a single socket batch write.
+   */
   @Throws(IOException::class)
-  suspend fun reSendPackets(lostRanges: List<Pair<Int, Int>>, socket: SrtSocket?) {
+  suspend fun writeDataBatch(packets: List<MpegTsPacket>, socket: SrtSocket?): Int {
     writeSync.withLock {
-      val dataPackets = packetHandlingQueue.filter { packet ->
-        lostRanges.any { (min, max) ->
-          ((packet.sequenceNumber - min) and 0x7FFFFFFF) <= ((max - min) and 0x7FFFFFFF)
+      var size = 0
+      val datagrams = ArrayList<ByteBuffer>(packets.size)
+      for (i in packets.indices) {
+        val packet = packets[i]
+        val dataPacket = createDataPacket(packet)
+        if (packet.pooled) {
+          dataPacket.writeHeaderInPlace()
+          datagrams.add(ByteBuffer.wrap(dataPacket.payload, dataPacket.payloadOffset - SrtPacket.headerSize, dataPacket.getDatagramSize()))
+          size += dataPacket.getDatagramSize()
+        } else {
+          dataPacket.write()
+          datagrams.add(ByteBuffer.wrap(dataPacket.getData()))
+          size += dataPacket.getSize()
+        }
+        fecPackets.forEach { fecPacket ->
+          consumeFec(fecPacket)
+          datagrams.add(ByteBuffer.wrap(fecPacket.getData()))
         }
       }
-      dataPackets.forEach { packet ->
-        packet.retransmitted = true
-        packet.write()
-        socket?.write(packet)
-      }
+      socket?.writeBatch(datagrams)
+      checkKeyMaterial(socket)
+      return size
     }
   }
 
-  suspend fun updateHandlingQueue(lastPacketSequence: Int) {
+  /**
+   * Packets per batch allowed by the congestion controller burst, 0 if the whole frame can be
+   * sent in a batch.
+   */
+  fun getBatchSize(): Int {
+    val controller = congestionController
+    if (controller.sendingRate <= 0) return 0
+    return maxOf(1, controller.burstSize / MTU)
+  }
+
+  /**
+   * Encrypt the packet in place, packets are not reused after send, and add it to the
+   * retransmission window and the FEC filter. FEC packets completed are saved in [fecPackets]
+   * to send it after the data packet. Must be called with the write lock.
+   */
+  private fun createDataPacket(packet: MpegTsPacket): DataPacket {
+    if (sequenceNumber.toUInt() > 0x7FFFFFFFu) sequenceNumber = 0
+    val encryption = encryptor?.encrypt(packet.buffer, packet.offset, packet.length, sequenceNumber) ?: KeyBasedEncryption.NONE
+    val dataPacket = DataPacket(
+      encryption = encryption,
+      sequenceNumber = sequenceNumber,
+      packetPosition = packet.packetPosition,
+      messageNumber = messageNumber++,
+      payload = packet.buffer,
+      payloadOffset = packet.offset,
+      payloadSize = packet.length,
+      ts = getTs(),
+      socketId = socketId
+    )
+    sequenceNumber++
+    sentPackets.incrementAndGet()
+    congestionController.onInput(dataPacket.ts, SrtPacket.headerSize + packet.length)
+    addToWindow(dataPacket)
+    fecPackets = fecFilter?.add(dataPacket) ?: emptyList()
+    return dataPacket
+  }
+
+  /**
+   * Wait until a datagram of [size] bytes can be sent with the current sending rate.
+   * Must be called out of the write lock to not block control packets.
+   */
+  suspend fun waitToSend(size: Int) {
+    val controller = congestionController
+    val wait = tokenBucket.consume(size, controller.sendingRate, controller.burstSize)
+    if (wait >= MIN_WAIT && (sequenceNumber and PROBE_MASK) != 1) delay(wait.nanoseconds)
+  }
+
+  fun configureCongestionControl() {
+    tokenBucket.reset()
+    congestionController.configure(maxBandwidth, MTU)
+  }
+
+  fun onAck(ack: Ack) {
+    if (ack.rtt > 0) rtt = ack.rtt
+    congestionController.onAck(getTs(), ack.rtt, ack.estimatedLinkCapacity, ack.receivingRate)
+  }
+
+  fun onLoss(nak: Nak) {
+    lostPackets.addAndGet(lossCounter.countNew(nak.getNakRanges()).toLong())
+    congestionController.onLoss(getTs(), nak.getLostCount())
+  }
+
+  /**
+   * @return fraction (0-1) of packets reported lost by NAK since the previous call, -1 if no
+   * packets were sent. Each lost packet is counted once even if the NAK is repeated
+   */
+  fun getPacketLoss(): Float {
+    val sent = sentPackets.getAndSet(0)
+    val lost = lostPackets.getAndSet(0)
+    return if (sent == 0L) -1f else minOf(lost.toFloat() / sent, 1f)
+  }
+
+  fun onCongestionWarning() {
+    congestionController.onCongestionWarning(getTs())
+  }
+
+  /**
+   * Called when the receiver respond to a key material request, the keys announced are ready.
+   */
+  fun onKeyMaterialResponse() {
+    keyMaterial = null
+  }
+
+  /**
+   * Announce keys after a rotation and resend it until the receiver respond.
+   * Must be called with the write lock.
+   */
+  @Throws(IOException::class)
+  private suspend fun checkKeyMaterial(socket: SrtSocket?) {
+    val encryptor = encryptor ?: return
+    val ts = getTs()
+    if (encryptor.pollKeyMaterialChanged()) {
+      keyMaterial = encryptor.getEncryptInfo()
+      keyMaterialRetries = 0
+      keyMaterialTs = ts - KEY_MATERIAL_INTERVAL
+    }
+    val encryptInfo = keyMaterial ?: return
+    if (ts - keyMaterialTs < KEY_MATERIAL_INTERVAL) return
+    if (keyMaterialRetries++ >= KEY_MATERIAL_RETRIES) {
+      Log.w(TAG, "key material not confirmed by the receiver")
+      keyMaterial = null
+      return
+    }
+    keyMaterialTs = ts
+    val packet = KeyMaterial(encryptInfo)
+    packet.write(ts, socketId)
+    socket?.write(packet)
+  }
+
+  @Throws(IOException::class)
+  suspend fun reSendPackets(lostRanges: List<Pair<Int, Int>>, socket: SrtSocket?) {
     writeSync.withLock {
-      packetHandlingQueue.removeAll {
-        //discard confirmed packets
-        val diff = (lastPacketSequence - it.sequenceNumber) and 0x7FFFFFFF
-        diff in 1 until 0x40000000
+      val window = retransmissionWindow ?: return
+      applyAcknowledged(window)
+      lostRanges.forEach { (min, max) ->
+        window.forEachInRange(min, max) { slot ->
+          val packet = retransmitPacket.apply {
+            sequenceNumber = window.getSequence(slot)
+            packetPosition = PacketPosition.from(window.getPacketPosition(slot))
+            encryption = KeyBasedEncryption.from(window.getEncryption(slot))
+            retransmitted = true
+            messageNumber = window.getMessageNumber(slot)
+            ts = window.getTs(slot)
+            socketId = this@CommandsManager.socketId
+            payload = window.getPayload(slot)
+            payloadOffset = window.getOffset(slot)
+            payloadSize = window.getSize(slot)
+          }
+          //retransmissions are sent now but use the bandwidth of the next data packets
+          tokenBucket.consume(SrtPacket.headerSize + packet.payloadSize, congestionController.sendingRate, congestionController.burstSize)
+          if (packet.payloadOffset >= SrtPacket.headerSize) {
+            packet.writeHeaderInPlace()
+            socket?.writeInPlace(packet)
+          } else {
+            packet.write()
+            socket?.write(packet)
+          }
+        }
       }
     }
   }
 
-  private fun dropTooLatePackets(nowTs: Int) {
-    val thresholdUs = latency * 1000
-    val firstKept = packetHandlingQueue.indexOfFirst { (nowTs - it.ts) <= thresholdUs }
-    if (firstKept > 0) packetHandlingQueue.subList(0, firstKept).clear()
+  /**
+   * Only save the value, confirmed packets are discarded in the write path to avoid wait
+   * for the write lock on each ACK.
+   */
+  fun updateHandlingQueue(lastPacketSequence: Int) {
+    lastAcknowledged = lastPacketSequence
+  }
+
+  private fun addToWindow(dataPacket: DataPacket) {
+    val window = retransmissionWindow ?: RetransmissionWindow(
+      RetransmissionWindow.calculateCapacity(
+        latency, if (maxBandwidth > 0) maxBandwidth else DEFAULT_BANDWIDTH, MTU - SrtPacket.headerSize
+      )
+    ) { payload, offset -> releaseDatagram(payload, offset) }.also { retransmissionWindow = it }
+    applyAcknowledged(window)
+    window.add(
+      dataPacket.sequenceNumber, dataPacket.ts, dataPacket.messageNumber,
+      dataPacket.packetPosition.value, dataPacket.encryption.value,
+      dataPacket.payload, dataPacket.payloadOffset, dataPacket.payloadSize
+    )
+    window.removeTooLate(dataPacket.ts, latency * 1000)
+  }
+
+  /**
+   * FEC packets are sent now but use the bandwidth of the next data packets like retransmissions.
+   */
+  private fun consumeFec(fecPacket: DataPacket) {
+    tokenBucket.consume(fecPacket.getSize(), congestionController.sendingRate, congestionController.burstSize)
+  }
+
+  private fun applyAcknowledged(window: RetransmissionWindow) {
+    val lastAcknowledged = lastAcknowledged
+    if (lastAcknowledged != -1) window.removeConfirmed(lastAcknowledged)
+  }
+
+  private fun releaseDatagram(payload: ByteArray, offset: Int) {
+    if (offset >= SrtPacket.headerSize) datagramPool.release(payload)
   }
 
   @Throws(IOException::class)
@@ -199,7 +476,18 @@ class CommandsManager {
     socketId = 0
     startTS = 0L
     host = ""
-    packetHandlingQueue.clear()
+    retransmissionWindow?.clear()
+    retransmissionWindow = null
+    lastAcknowledged = -1
+    keyMaterial = null
+    fecFilter = null
+    fecPackets = emptyList()
+    congestionController.reset()
+    tokenBucket.reset()
+    rtt = 0
+    sentPackets.set(0)
+    lostPackets.set(0)
+    lossCounter.reset()
   }
 
   private fun generateInitialSequence(): Int {
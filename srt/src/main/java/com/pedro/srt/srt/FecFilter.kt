@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.srt.srt
+
+import com.pedro.srt.fec.FecConfig
+import com.pedro.srt.fec.FecGroup
+import com.pedro.srt.fec.FecMatrix
+import com.pedro.srt.srt.packets.DataPacket
+import com.pedro.srt.srt.packets.data.KeyBasedEncryption
+import com.pedro.srt.srt.packets.data.PacketPosition
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * SRT packet filter FEC, compatible with the builtin "fec" filter of libsrt with even layout.
+ *
+ * The matrix starts with the first data packet after the handshake. FEC packets are data packets
+ * with message number 0, the sequence number of the last packet of the group and the
+ * timestamp clip as timestamp. Payload:
+ *
+ * 0                   1                   2                   3
+ * 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |  Group index  |  Flags clip   |          Length clip          |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |                         Payload clip                          |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ *
+ * Group index is the column or -1 for rows. Flags clip is the XOR of the encryption flags,
+ * the payloads are protected after encryption.
+ *
+ * Not thread safe, the caller must synchronize the access.
+ *
+ * @param payloadSize max payload size of data packets
+ */
+class FecFilter(
+  val config: FecConfig,
+  payloadSize: Int
+) {
+
+  companion object {
+    const val HEADER_SIZE = 4
+
+    /**
+     * Config sent in the handshake SRT_CMD_FILTER extension.
+     */
+    fun getConfigString(config: FecConfig): String {
+      return "fec,cols:${config.columns},rows:${config.rows},layout:even,arq:onreq"
+    }
+
+    /**
+     * Read the filter config agreed by the peer in the handshake response.
+     *
+     * @return null if it is not a FEC config supported by this filter
+     */
+    fun parseConfig(filter: String): FecConfig? {
+      val fields = filter.split(",").map { it.trim() }
+      if (fields.firstOrNull() != "fec") return null
+      val values = fields.drop(1).associate { it.substringBefore(":") to it.substringAfter(":") }
+      if ((values["layout"] ?: "even") != "even") return null
+      val columns = values["cols"]?.toIntOrNull() ?: return null
+      val rows = values["rows"]?.toIntOrNull() ?: 1
+      return try {
+        FecConfig(columns, rows)
+      } catch (_: IllegalArgumentException) {
+        null
+      }
+    }
+  }
+
+  private val pending = ArrayList<DataPacket>()
+  private var socketId = 0
+  private val matrix = FecMatrix(config, payloadSize) { group -> pending.add(createPacket(group)) }
+
+  /**
+   * Add a data packet to the matrix.
+   *
+   * @return FEC packets completed with this packet, empty if none. Valid until the next call
+   */
+  fun add(dataPacket: DataPacket): List<DataPacket> {
+    pending.clear()
+    socketId = dataPacket.socketId
+    matrix.add(
+      dataPacket.sequenceNumber, dataPacket.payload, dataPacket.payloadOffset, dataPacket.payloadSize,
+      dataPacket.ts, dataPacket.encryption.value
+    )
+    return pending
+  }
+
+  fun getSourcePackets() = matrix.sourcePackets
+
+  fun getFecPackets() = matrix.fecPackets
+
+  fun reset() {
+    pending.clear()
+    matrix.reset()
+  }
+
+  private fun createPacket(group: FecGroup): DataPacket {
+    val payload = ByteArray(HEADER_SIZE + group.payloadClip.size)
+    payload[0] = group.index.toByte()
+    payload[1] = group.flagsClip.toByte()
+    payload[2] = (group.lengthClip ushr 8).toByte()
+    payload[3] = group.lengthClip.toByte()
+    group.payloadClip.copyInto(payload, HEADER_SIZE)
+    return DataPacket(
+      sequenceNumber = group.last,
+      packetPosition = PacketPosition.SINGLE,
+      encryption = KeyBasedEncryption.NONE,
+      messageNumber = 0,
+      ts = group.timestampClip,
+      socketId = socketId,
+      payload = payload
+    ).apply { write() }
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.srt.srt
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Count the packets reported lost by NAK only one time. The receiver repeats the losses not
+ * recovered yet (periodic NAK), so only the sequences after the highest already counted are new.
+ *
+ * Not thread safe, use it from the thread that read the NAK packets.
+ */
+class LossCounter {
+
+  companion object {
+    private const val SEQUENCE_MASK = 0x7FFFFFFF
+    //half of the sequence space, used to know if a sequence is before or after other
+    private const val HALF_SEQUENCE = 0x40000000
+  }
+
+  private var lastLostSequence = -1
+
+  /**
+   * @param lostRanges ranges (min, max) of lost sequences, both included
+   * @return packets lost not reported before
+   */
+  fun countNew(lostRanges: List<Pair<Int, Int>>): Int {
+    var count = 0
+    lostRanges.forEach { (min, max) ->
+      var first = min
+      if (lastLostSequence >= 0) {
+        //range already counted
+        if (((max - lastLostSequence) and SEQUENCE_MASK) !in 1 until HALF_SEQUENCE) return@forEach
+        if (((first - lastLostSequence) and SEQUENCE_MASK) !in 1 until HALF_SEQUENCE) {
+          first = (lastLostSequence + 1) and SEQUENCE_MASK
+        }
+      }
+      count += ((max - first) and SEQUENCE_MASK) + 1
+      lastLostSequence = max
+    }
+    return count
+  }
+
+  fun reset() {
+    lastLostSequence = -1
+  }
+}
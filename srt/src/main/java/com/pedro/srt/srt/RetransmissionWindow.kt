@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.srt.srt
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Sent data packets kept in case of a NAK, stored in a fixed ring indexed by
+ * sequenceNumber and mask.
+ *
+ * Sequence numbers are consecutive so the window is always the range [first, first + size).
+ * Lookup of a lost sequence is O(1) and confirmed or too late packets are always the oldest,
+ * so trimming only moves the start of the ring.
+ *
+ * Not thread safe, the caller must synchronize the access.
+ *
+ * @param onRelease called with the payload and payload offset of each packet that leaves the window
+ */
+class RetransmissionWindow(
+  capacity: Int,
+  private val onRelease: (ByteArray, Int) -> Unit = { _, _ -> }
+) {
+
+  companion object {
+    private const val SEQUENCE_MASK = 0x7FFFFFFF
+    //half of the sequence space, used to know if a sequence is before or after other
+    private const val HALF_SEQUENCE = 0x40000000
+    const val MIN_CAPACITY = 1024
+    const val MAX_CAPACITY = 1 shl 16
+
+    /**
+     * Packets needed to keep [latency] millis of stream at [bitrate] bits/s doubled to
+     * support retransmissions and bitrate peaks.
+     */
+    fun calculateCapacity(latency: Int, bitrate: Long, payloadSize: Int): Int {
+      val bytes = bitrate / 8 * latency / 1000
+      val packets = (bytes / maxOf(payloadSize, 1) * 2).coerceIn(MIN_CAPACITY.toLong(), MAX_CAPACITY.toLong()).toInt()
+      return Integer.highestOneBit(packets - 1) shl 1
+    }
+  }
+
+  val capacity = if (capacity <= 1) 1 else Integer.highestOneBit(capacity - 1) shl 1
+  private val mask = this.capacity - 1
+  private val sequences = IntArray(this.capacity)
+  private val timestamps = IntArray(this.capacity)
+  private val messageNumbers = IntArray(this.capacity)
+  private val packetPositions = IntArray(this.capacity)
+  private val encryptions = IntArray(this.capacity)
+  private val payloads = arrayOfNulls<ByteArray>(this.capacity)
+  private val offsets = IntArray(this.capacity)
+  private val sizes = IntArray(this.capacity)
+  private var first = 0
+  var size = 0
+    private set
+
+  fun add(
+    sequence: Int, ts: Int, messageNumber: Int, packetPosition: Int, encryption: Int,
+    payload: ByteArray, offset: Int, size: Int
+  ) {
+    if (this.size > 0 && sequence != ((first + this.size) and SEQUENCE_MASK)) {
+      //not consecutive, the sequence was reset. Old packets are useless
+      clear()
+    }
+    if (this.size == capacity) removeFirst()
+    if (this.size == 0) first = sequence
+    val slot = sequence and mask
+    sequences[slot] = sequence
+    timestamps[slot] = ts
+    messageNumbers[slot] = messageNumber
+    packetPositions[slot] = packetPosition
+    encryptions[slot] = encryption
+    payloads[slot] = payload
+    offsets[slot] = offset
+    sizes[slot] = size
+    this.size++
+  }
+
+  /**
+   * Discard packets before [lastAcknowledged], the receiver confirmed all of them.
+   */
+  fun removeConfirmed(lastAcknowledged: Int) {
+    while (size > 0) {
+      val diff = (lastAcknowledged - first) and SEQUENCE_MASK
+      if (diff !in 1 until HALF_SEQUENCE) break
+      removeFirst()
+    }
+  }
+
+  /**
+   * Discard packets older than [threshold] micros, the receiver will not play it anymore.
+   */
+  fun removeTooLate(nowTs: Int, threshold: Int) {
+    while (size > 1 && nowTs - timestamps[first and mask] > threshold) {
+      removeFirst()
+    }
+  }
+
+  /**
+   * Call [action] with the slot of each sequence in [min, max] still in the window.
+   */
+  inline fun forEachInRange(min: Int, max: Int, action: (Int) -> Unit) {
+    val range = getRange(min, max)
+    if (range == -1L) return
+    val start = (range ushr 32).toInt()
+    val end = range.toInt()
+    for (offset in start..end) action(slotOf(offset))
+  }
+
+  /**
+   * @return start and end offsets from the first packet packed in a Long, or -1 if out of window
+   */
+  fun getRange(min: Int, max: Int): Long {
+    if (size == 0) return -1
+    val minOffset = (min - first) and SEQUENCE_MASK
+    val maxOffset = (max - first) and SEQUENCE_MASK
+    //the range ends before the window
+    if (maxOffset >= HALF_SEQUENCE) return -1
+    val start = if (minOffset >= HALF_SEQUENCE) 0 else minOffset
+    if (start >= size) return -1
+    val end = minOf(maxOffset, size - 1)
+    if (end < start) return -1
+    return (start.toLong() shl 32) or end.toLong()
+  }
+
+  fun slotOf(offset: Int): Int = (first + offset) and mask
+
+  fun getSequence(slot: Int): Int = sequences[slot]
+  fun getTs(slot: Int): Int = timestamps[slot]
+  fun getMessageNumber(slot: Int): Int = messageNumbers[slot]
+  fun getPacketPosition(slot: Int): Int = packetPositions[slot]
+  fun getEncryption(slot: Int): Int = encryptions[slot]
+  fun getPayload(slot: Int): ByteArray = payloads[slot] ?: throw IllegalStateException("empty slot $slot")
+  fun getOffset(slot: Int): Int = offsets[slot]
+  fun getSize(slot: Int): Int = sizes[slot]
+
+  fun clear() {
+    while (size > 0) removeFirst()
+  }
+
+  private fun removeFirst() {
+    val slot = first and mask
+    payloads[slot]?.let { onRelease(it, offsets[slot]) }
+    payloads[slot] = null
+    first = (first + 1) and SEQUENCE_MASK
+    size--
+  }
+}
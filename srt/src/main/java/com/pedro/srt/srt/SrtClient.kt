@@ -21,15 +21,20 @@ import android.util.Log
 import com.pedro.common.AudioCodec
 import com.pedro.common.ConnectChecker
 import com.pedro.common.ConnectionFailed
+import com.pedro.common.QueueType
 import com.pedro.common.UrlParser
 import com.pedro.common.VideoCodec
+import com.pedro.common.base.DropPolicy
 import com.pedro.common.frame.MediaFrame
+import com.pedro.common.frame.SharedFrame
 import com.pedro.common.onMainThread
 import com.pedro.common.socket.base.SocketType
 import com.pedro.common.socket.base.StreamSocket
 import com.pedro.common.toMediaFrameInfo
 import com.pedro.common.validMessage
+import com.pedro.srt.fec.FecConfig
 import com.pedro.srt.mpeg2ts.service.Mpeg2TsService
+import com.pedro.srt.srt.congestion.CongestionController
 import com.pedro.srt.srt.packets.ControlPacket
 import com.pedro.srt.srt.packets.DataPacket
 import com.pedro.srt.srt.packets.SrtPacket
@@ -38,6 +43,7 @@ import com.pedro.srt.srt.packets.control.Ack2
 import com.pedro.srt.srt.packets.control.CongestionWarning
 import com.pedro.srt.srt.packets.control.DropReq
 import com.pedro.srt.srt.packets.control.KeepAlive
+import com.pedro.srt.srt.packets.control.KeyMaterial
 import com.pedro.srt.srt.packets.control.Nak
 import com.pedro.srt.srt.packets.control.PeerError
 import com.pedro.srt.srt.packets.control.Shutdown
@@ -92,6 +98,10 @@ class SrtClient(private val connectChecker: ConnectChecker) {
     get() = srtSender.getDroppedAudioFrames()
   val droppedVideoFrames: Long
     get() = srtSender.getDroppedVideoFrames()
+  val droppedGopFrames: Long
+    get() = srtSender.getDroppedGopFrames()
+  val purgedFrames: Long
+    get() = srtSender.getPurgedFrames()
 
   val cacheSize: Int
     get() = srtSender.getCacheSize()
@@ -105,6 +115,23 @@ class SrtClient(private val connectChecker: ConnectChecker) {
     private set
   var packetsLost = 0
     private set
+  /**
+   * Rate used to pace data packets in bits per second, 0 if not paced.
+   */
+  val sendingRate: Long
+    get() = commandsManager.congestionController.sendingRate
+  /**
+   * Data and FEC packets added by the packet filter, 0 if FEC is disabled.
+   */
+  val fecSourcePackets: Long
+    get() = commandsManager.getFecSourcePackets()
+  val fecPackets: Long
+    get() = commandsManager.getFecPackets()
+  /**
+   * True if the server agreed the FEC packet filter in the handshake.
+   */
+  val isFecEnabled: Boolean
+    get() = commandsManager.isFecEnabled()
   var socketType = SocketType.JAVA
   var socketTimeout = StreamSocket.DEFAULT_TIMEOUT
 
@@ -134,6 +161,43 @@ class SrtClient(private val connectChecker: ConnectChecker) {
     srtSender.setDelay(millis)
   }
 
+  /**
+   * Expected max bandwidth of the stream in bits per second, used to size the retransmission
+   * window with the latency and to pace data packets.
+   * Must be called before connect
+   */
+  fun setMaxBandwidth(bitsPerSecond: Long) {
+    if (!isStreaming) commandsManager.maxBandwidth = bitsPerSecond
+  }
+
+  /**
+   * Set the congestion controller used to pace data packets. LiveCongestionController by default.
+   * Must be called before connect
+   */
+  fun setCongestionController(congestionController: CongestionController) {
+    if (!isStreaming) commandsManager.congestionController = congestionController
+  }
+
+  /**
+   * Write TS packets directly in reusable datagrams instead of create and join a ByteArray per
+   * TS packet. Reduce GC pressure with high bitrates.
+   * Must be called before connect
+   */
+  fun setZeroCopy(enabled: Boolean) {
+    if (!isStreaming) srtSender.setZeroCopy(enabled)
+  }
+
+  /**
+   * Send row/column XOR FEC packets with the packet filter of libsrt ("fec" with even layout).
+   * Lost packets recovered by the receiver avoid a retransmission. If the server doesn't accept
+   * the filter in the handshake, FEC is disabled for the connection, see [isFecEnabled].
+   * Use null to disable it.
+   * Must be called before connect
+   */
+  fun setFec(config: FecConfig?) {
+    if (!isStreaming) commandsManager.fecConfig = config
+  }
+
   /**
    * Set passphrase for encrypt. Use empty value to disable it.
    */
@@ -146,6 +210,21 @@ class SrtClient(private val connectChecker: ConnectChecker) {
     }
   }
 
+  /**
+   * Rotate the encryption key after [refreshRate] packets announcing the new key [preAnnounce]
+   * packets before. preAnnounce must be lower than half of refreshRate.
+   * Must be called before setPassphrase and connect
+   */
+  fun setKeyRefreshRate(refreshRate: Int, preAnnounce: Int) {
+    if (!isStreaming) {
+      if (preAnnounce !in 1 until refreshRate / 2) {
+        throw IllegalArgumentException("preAnnounce must be lower than half of refreshRate")
+      }
+      commandsManager.keyRefreshRate = refreshRate
+      commandsManager.keyPreAnnounce = preAnnounce
+    }
+  }
+
   /**
    * Must be called before connect
    */
@@ -242,7 +321,8 @@ class SrtClient(private val connectChecker: ConnectChecker) {
 
           commandsManager.writeHandshake(socket, response.copy(
             encryption = commandsManager.getEncryptType(),
-            extensionField = ExtensionField.calculateValue(response.extensionField, commandsManager.encryptionEnabled(), path.isNotEmpty()),
+            extensionField = ExtensionField.calculateValue(response.extensionField, commandsManager.encryptionEnabled(),
+              path.isNotEmpty() || commandsManager.fecConfig != null),
             handshakeType = HandshakeType.CONCLUSION,
             handshakeExtension = HandshakeExtension(
               flags = ExtensionContentFlag.TSBPDSND.value or ExtensionContentFlag.TSBPDRCV.value or
@@ -251,7 +331,8 @@ class SrtClient(private val connectChecker: ConnectChecker) {
               receiverDelay = commandsManager.latency,
               senderDelay = commandsManager.latency,
               path = path,
-              encryptInfo = commandsManager.getEncryptInfo()
+              encryptInfo = commandsManager.getEncryptInfo(),
+              filter = commandsManager.getFilterConfig()
             )))
           val responseConclusion = commandsManager.readHandshake(socket)
           if (responseConclusion.isErrorType()) {
@@ -263,6 +344,10 @@ class SrtClient(private val connectChecker: ConnectChecker) {
             commandsManager.socketId = responseConclusion.srtSocketId
             commandsManager.MTU = responseConclusion.MTU
             commandsManager.sequenceNumber = responseConclusion.initialPacketSequence
+            commandsManager.configureCongestionControl()
+            if (commandsManager.fecConfig != null && !commandsManager.configureFec(responseConclusion.filter)) {
+              Log.w(TAG, "FEC disabled, packet filter not accepted by the server")
+            }
             onMainThread {
               connectChecker.onConnectionSuccess()
             }
@@ -382,6 +467,7 @@ class SrtClient(private val connectChecker: ConnectChecker) {
             commandsManager.updateHandlingQueue(lastPacketSequence)
             if (ackSequence != 0) {
               rtt = srtPacket.rtt
+              commandsManager.onAck(srtPacket)
               commandsManager.writeAck2(ackSequence, socket)
             }
           }
@@ -389,6 +475,7 @@ class SrtClient(private val connectChecker: ConnectChecker) {
             //packet lost reported, we should resend it
             val lostRanges = srtPacket.getNakRanges()
             this.packetsLost += srtPacket.getLostCount()
+            commandsManager.onLoss(srtPacket)
             commandsManager.reSendPackets(lostRanges, socket)
           }
           is Shutdown -> {
@@ -405,7 +492,13 @@ class SrtClient(private val connectChecker: ConnectChecker) {
           is Handshake -> {
             //this never should happen, handshake is already done
           }
-          is Ack2, is DropReq, is CongestionWarning -> {
+          is CongestionWarning -> {
+            commandsManager.onCongestionWarning()
+          }
+          is KeyMaterial -> {
+            if (srtPacket.isResponse) commandsManager.onKeyMaterialResponse()
+          }
+          is Ack2, is DropReq -> {
             //this never should happen
           }
         }
@@ -434,6 +527,24 @@ class SrtClient(private val connectChecker: ConnectChecker) {
     }
   }
 
+  /**
+   * Send a frame shared with other clients without copying it, see [SharedFrame]
+   */
+  fun sendVideo(frame: SharedFrame) {
+    if (!commandsManager.videoDisabled) {
+      srtSender.sendSharedFrame(frame)
+    }
+  }
+
+  /**
+   * Send a frame shared with other clients without copying it, see [SharedFrame]
+   */
+  fun sendAudio(frame: SharedFrame) {
+    if (!commandsManager.audioDisabled) {
+      srtSender.sendSharedFrame(frame)
+    }
+  }
+
   @Throws(IllegalArgumentException::class)
   fun hasCongestion(): Boolean {
     return hasCongestion(20f)
@@ -469,6 +580,26 @@ class SrtClient(private val connectChecker: ConnectChecker) {
     srtSender.resizeCache(newSize)
   }
 
+  /**
+   * Select the queue used to store frames until send it. Must be called while not streaming.
+   */
+  @Throws(IllegalStateException::class)
+  fun setQueueType(type: QueueType) {
+    srtSender.setQueueType(type)
+  }
+
+  fun setDropPolicy(policy: DropPolicy) {
+    srtSender.setDropPolicy(policy)
+  }
+
+  /**
+   * Max millis of stream in the queue before discard old frames when a keyframe is produced.
+   * 0 to disable. Only used with DropPolicy.GOP.
+   */
+  fun setLatencyBudget(millis: Long) {
+    srtSender.setLatencyBudget(millis)
+  }
+
   fun setLogs(enable: Boolean) {
     srtSender.setLogs(enable)
   }
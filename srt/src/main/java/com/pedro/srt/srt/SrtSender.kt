@@ -38,7 +38,6 @@ import com.pedro.srt.mpeg2ts.service.Mpeg2TsService
 import com.pedro.srt.srt.packets.SrtPacket
 import com.pedro.srt.srt.packets.data.PacketPosition
 import com.pedro.srt.utils.SrtSocket
-import com.pedro.srt.utils.chunkPackets
 import com.pedro.srt.utils.toCodec
 import kotlinx.coroutines.isActive
 import java.nio.ByteBuffer
@@ -58,13 +57,14 @@ class SrtSender(
   }
   private val limitSize: Int
     get() {
-      return commandsManager.MTU - SrtPacket.headerSize
+      return commandsManager.getMaxPayloadSize()
     }
 
   private val mpegTsPacketizer = MpegTsPacketizer(psiManager)
   private var audioPacket: BasePacket = AacPacket(limitSize, psiManager)
   private var videoPacket: BasePacket = H264Packet(limitSize, psiManager)
   var socket: SrtSocket? = null
+  private var zeroCopy = false
 
   private fun setTrackConfig(videoEnabled: Boolean, audioEnabled: Boolean) {
     service.clear()
@@ -125,18 +125,30 @@ class SrtSender(
     }
   }
 
+  /**
+   * Write TS packets directly in pooled datagrams with space reserved for the SRT header, so each
+   * frame is copied only once from the MediaFrame to the socket.
+   * Must be called before start.
+   */
+  fun setZeroCopy(enabled: Boolean) {
+    if (!running) zeroCopy = enabled
+  }
+
   override suspend fun onRun() {
     val limitSize = this.limitSize
     val chunkSize = limitSize / MpegTsPacketizer.packetSize
     audioPacket.setLimitSize(limitSize)
     videoPacket.setLimitSize(limitSize)
+    val datagramPool = if (zeroCopy) commandsManager.datagramPool else null
+    audioPacket.setDatagramPool(datagramPool, SrtPacket.headerSize)
+    videoPacket.setDatagramPool(datagramPool, SrtPacket.headerSize)
 
     setTrackConfig(!commandsManager.videoDisabled, !commandsManager.audioDisabled)
     //send config
     val psiList = mutableListOf<Psi>(psiManager.getPat())
     psiManager.getPmt()?.let { psiList.add(it) }
     psiList.add(psiManager.getSdt())
-    val psiPacketsConfig = mpegTsPacketizer.write(psiList).chunkPackets(chunkSize).map { buffer ->
+    val psiPacketsConfig = mpegTsPacketizer.writePsi(psiList, chunkSize).map { buffer ->
       MpegTsPacket(buffer, MpegType.PSI, PacketPosition.SINGLE, isKey = false)
     }
     sendPackets(psiPacketsConfig, MpegType.PSI)
@@ -172,13 +184,24 @@ class SrtSender(
     videoPacket.reset(clear)
   }
 
+  override fun getRtt(): Long = commandsManager.rtt.let { if (it > 0) it / 1000L else -1 }
+
+  override fun getPacketLoss(): Float = commandsManager.getPacketLoss()
+
   private suspend fun sendPackets(packets: List<MpegTsPacket>, type: MpegType): Long {
     if (packets.isEmpty()) return 0
     var bytesSend = 0L
-    packets.forEach { mpegTsPacket ->
-      var size = 0
-      size += commandsManager.writeData(mpegTsPacket, socket)
-      bytesSend += size
+    //whole frame in a batch or split in bursts allowed by the pacing
+    val batchSize = commandsManager.getBatchSize().let { if (it <= 0) packets.size else it }
+    var start = 0
+    while (start < packets.size) {
+      val end = minOf(packets.size, start + batchSize)
+      val batch = packets.subList(start, end)
+      var batchBytes = 0
+      for (i in batch.indices) batchBytes += SrtPacket.headerSize + batch[i].length
+      commandsManager.waitToSend(batchBytes)
+      bytesSend += commandsManager.writeDataBatch(batch, socket)
+      start = end
     }
     if (type == MpegType.VIDEO) videoFramesSent.incrementAndGet()
     else if (type == MpegType.AUDIO) audioFramesSent.incrementAndGet()
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.srt.srt.congestion
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Decide the rate used to pace data packets using the feedback received from the receiver.
+ * Callbacks are called from the thread that read server packets and [sendingRate] from the
+ * sender thread.
+ */
+interface CongestionController {
+
+  /**
+   * Current sending rate in bits per second. 0 to send without pacing.
+   */
+  val sendingRate: Long
+
+  /**
+   * Max bytes that can be sent back to back.
+   */
+  val burstSize: Int
+
+  /**
+   * Called after the handshake.
+   *
+   * @param maxBandwidth configured bandwidth in bits per second, 0 if unknown
+   * @param mtu negotiated MTU in bytes
+   */
+  fun configure(maxBandwidth: Long, mtu: Int)
+
+  /**
+   * Called with the info of each full ACK.
+   *
+   * @param ts current time in micros
+   * @param rtt in micros
+   * @param estimatedLinkCapacity in packets per second, 0 if unknown
+   * @param receivingRate in bytes per second
+   */
+  fun onAck(ts: Int, rtt: Int, estimatedLinkCapacity: Int, receivingRate: Int)
+
+  /**
+   * Called from the sender thread with each new data packet, before pacing it.
+   * Retransmissions are not included.
+   *
+   * @param ts current time in micros
+   * @param size bytes of the packet including the SRT header
+   */
+  fun onInput(ts: Int, size: Int) { }
+
+  /**
+   * Called when a NAK is received.
+   */
+  fun onLoss(ts: Int, lostPackets: Int)
+
+  /**
+   * Called when a congestion warning is received.
+   */
+  fun onCongestionWarning(ts: Int)
+
+  fun reset()
+}
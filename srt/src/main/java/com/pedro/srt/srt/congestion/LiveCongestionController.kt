@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.srt.srt.congestion
+
+import com.pedro.srt.utils.Constants
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Congestion control for live streams based on SRT LiveCC.
+ *
+ * The sending rate is the configured max bandwidth plus [overhead] percent reserved for
+ * retransmissions, limited by the link capacity reported in ACKs. Without max bandwidth, the
+ * measured input rate is used instead and the link capacity is ignored because it is often lower
+ * than the encoder bitrate. Packets are not paced until the first input rate is measured.
+ * Congestion warnings reduce the rate and it is recovered once per RTT.
+ * Losses are ignored, live streams must keep the bitrate and lost packets are retransmitted.
+ *
+ * @param overhead percent of the max bandwidth or input rate added for retransmissions
+ */
+class LiveCongestionController(
+  private val overhead: Int = 25
+): CongestionController {
+
+  companion object {
+    private const val MIN_FACTOR = 0.5
+    private const val DECREASE_FACTOR = 0.875
+    private const val INCREASE_STEP = 0.0625
+    //time that the bucket can be sending at full rate, in micros
+    private const val BURST_TIME = 5_000
+    private const val MIN_RTT = 10_000
+    //input rate measure periods in micros, the first one is shorter to start pacing earlier
+    private const val INPUT_RATE_FAST_START = 500_000
+    private const val INPUT_RATE_PERIOD = 1_000_000
+  }
+
+  private var maxBandwidth = 0L
+  private var mtu = Constants.MTU
+  private var linkCapacity = 0L
+  private var rtt = 0
+  private var factor = 1.0
+  private var lastChangeTs = 0
+  private var inputBytes = 0L
+  private var inputStartTs = 0
+  private var inputPeriod = INPUT_RATE_FAST_START
+  private var measuringInput = false
+  @Volatile
+  private var inputRate = 0L
+  @Volatile
+  override var sendingRate = 0L
+    private set
+  override val burstSize: Int
+    get() = maxOf(mtu * 2, (sendingRate / 8 * BURST_TIME / 1_000_000).toInt())
+
+  override fun configure(maxBandwidth: Long, mtu: Int) {
+    this.maxBandwidth = maxBandwidth
+    this.mtu = mtu
+    updateRate()
+  }
+
+  override fun onAck(ts: Int, rtt: Int, estimatedLinkCapacity: Int, receivingRate: Int) {
+    if (rtt > 0) this.rtt = rtt
+    if (estimatedLinkCapacity > 0) {
+      val capacity = estimatedLinkCapacity.toLong() * mtu * 8
+      //smooth the value, a single estimation is not reliable
+      linkCapacity = if (linkCapacity == 0L) capacity else (linkCapacity * 7 + capacity) / 8
+    }
+    if (factor < 1.0 && ts - lastChangeTs > maxOf(this.rtt, MIN_RTT)) {
+      factor = minOf(1.0, factor + INCREASE_STEP)
+      lastChangeTs = ts
+    }
+    updateRate()
+  }
+
+  /**
+   * Measure the input rate in periods, only used without max bandwidth.
+   */
+  override fun onInput(ts: Int, size: Int) {
+    if (maxBandwidth > 0) return
+    if (!measuringInput) {
+      measuringInput = true
+      inputStartTs = ts
+    }
+    val elapsed = ts - inputStartTs
+    if (elapsed >= inputPeriod) {
+      inputRate = inputBytes * 8 * 1_000_000 / elapsed
+      inputBytes = 0
+      inputStartTs = ts
+      inputPeriod = INPUT_RATE_PERIOD
+      updateRate()
+    }
+    inputBytes += size
+  }
+
+  override fun onLoss(ts: Int, lostPackets: Int) { }
+
+  override fun onCongestionWarning(ts: Int) {
+    //only one decrease per RTT, the warnings of the same congestion arrive together
+    if (factor < 1.0 && ts - lastChangeTs <= maxOf(rtt, MIN_RTT)) return
+    factor = maxOf(MIN_FACTOR, factor * DECREASE_FACTOR)
+    lastChangeTs = ts
+    updateRate()
+  }
+
+  override fun reset() {
+    maxBandwidth = 0
+    mtu = Constants.MTU
+    linkCapacity = 0
+    rtt = 0
+    factor = 1.0
+    lastChangeTs = 0
+    inputBytes = 0
+    inputStartTs = 0
+    inputPeriod = INPUT_RATE_FAST_START
+    measuringInput = false
+    inputRate = 0
+    sendingRate = 0
+  }
+
+  private fun updateRate() {
+    val bandwidth = if (maxBandwidth > 0) maxBandwidth else inputRate
+    val target = bandwidth * (100 + overhead) / 100
+    val rate = if (maxBandwidth == 0L || linkCapacity == 0L) target else minOf(target, linkCapacity)
+    sendingRate = (rate * factor).toLong()
+  }
+}
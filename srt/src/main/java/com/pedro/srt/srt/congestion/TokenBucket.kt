@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.srt.srt.congestion
+
+import com.pedro.common.TimeUtils
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Token bucket in bytes used to space datagrams at a rate.
+ * Tokens can be negative, meaning that the caller must wait before send more data.
+ */
+class TokenBucket(
+  private val clock: () -> Long = { TimeUtils.getCurrentTimeNano() }
+) {
+
+  private var tokens = 0.0
+  private var lastTime = -1L
+
+  /**
+   * Take [size] bytes from the bucket.
+   *
+   * @param rate in bits per second, 0 to disable the bucket
+   * @param burstSize max tokens that can be saved
+   * @return nanos to wait before send the data, 0 if it can be sent now
+   */
+  @Synchronized
+  fun consume(size: Int, rate: Long, burstSize: Int): Long {
+    if (rate <= 0) {
+      lastTime = -1
+      return 0
+    }
+    val now = clock()
+    if (lastTime < 0) {
+      tokens = burstSize.toDouble()
+    } else {
+      val elapsed = (now - lastTime).coerceAtLeast(0)
+      tokens = minOf(burstSize.toDouble(), tokens + elapsed * rate / 8.0 / 1_000_000_000.0)
+    }
+    lastTime = now
+    tokens -= size
+    return if (tokens >= 0) 0 else (-tokens * 8.0 * 1_000_000_000.0 / rate).toLong()
+  }
+
+  @Synchronized
+  fun reset() {
+    tokens = 0.0
+    lastTime = -1
+  }
+}
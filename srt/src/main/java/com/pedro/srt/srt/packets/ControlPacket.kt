@@ -50,7 +50,14 @@ abstract class ControlPacket(
 ): SrtPacket() {
 
   protected fun writeHeader(ts: Int, socketId: Int) {
-    val headerData = PacketType.CONTROL.value and 0xff shl 31 or (controlType.value and 0x7fff shl 16) or subtype.value
+    writeHeader(ts, socketId, subtype.value)
+  }
+
+  /**
+   * @param subtypeValue subtype field, used as extended type in user defined packets
+   */
+  protected fun writeHeader(ts: Int, socketId: Int, subtypeValue: Int) {
+    val headerData = PacketType.CONTROL.value and 0xff shl 31 or (controlType.value and 0x7fff shl 16) or subtypeValue
     buffer.writeUInt32(headerData)
     buffer.writeUInt32(typeSpecificInformation)
     buffer.writeUInt32(ts)
@@ -58,6 +65,14 @@ abstract class ControlPacket(
   }
 
   protected fun readHeader(input: InputStream) {
+    readHeader(input, false)
+  }
+
+  /**
+   * @param extendedType allow subtype values other than 0, used in user defined packets
+   * @return subtype value
+   */
+  protected fun readHeader(input: InputStream, extendedType: Boolean): Int {
     val headerData = input.readUInt32()
     val packetType = PacketType.from((headerData ushr 31) and 0x01)
     if (packetType != PacketType.CONTROL) {
@@ -66,11 +81,12 @@ abstract class ControlPacket(
     controlType = ControlType.from((headerData ushr 16) and 0x7FFF)
     val subtypeValue = headerData and 0xFFFF
     if (subtypeValue == 0) subtype = ControlType.SUB_TYPE
-    else throw IOException("unknown subtype: $subtypeValue")
+    else if (!extendedType) throw IOException("unknown subtype: $subtypeValue")
 
     typeSpecificInformation = input.readUInt32()
     ts = input.readUInt32()
     socketId = input.readUInt32()
+    return subtypeValue
   }
 
   override fun toString(): String {
@@ -82,5 +98,10 @@ abstract class ControlPacket(
       val headerData = input.readUInt32()
       return ControlType.from((headerData ushr 16) and 0x7FFF)
     }
+
+    fun getSubtype(input: InputStream): Int {
+      val headerData = input.readUInt32()
+      return headerData and 0xFFFF
+    }
   }
 }
\ No newline at end of file
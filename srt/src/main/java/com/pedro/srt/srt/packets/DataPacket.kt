@@ -38,19 +38,44 @@ class DataPacket(
   var messageNumber: Int = 0,
   var ts: Int = 0,
   var socketId: Int = 0,
-  var payload: ByteArray = byteArrayOf()
+  var payload: ByteArray = byteArrayOf(),
+  var payloadOffset: Int = 0,
+  var payloadSize: Int = payload.size
 ): SrtPacket() {
 
   fun write() {
     resetBuffer()
-    val headerData = (PacketType.DATA.value shl 31) or (sequenceNumber and 0x7FFFFFFF)
-    val info = (packetPosition.value shl 30) or (order.toInt() shl 29) or
-        (encryption.value shl 27) or (retransmitted.toInt() shl 26) or (messageNumber and 0x03FFFFFF)
-    buffer.writeUInt32(headerData)
-    buffer.writeUInt32(info)
+    buffer.writeUInt32(getHeaderData())
+    buffer.writeUInt32(getInfo())
     buffer.writeUInt32(ts)
     buffer.writeUInt32(socketId)
-    buffer.write(payload)
+    buffer.write(payload, payloadOffset, payloadSize)
+  }
+
+  /**
+   * Write the header in the [SrtPacket.headerSize] bytes reserved in the payload array before
+   * [payloadOffset]. Used with pooled datagrams to send the payload without copy it.
+   */
+  fun writeHeaderInPlace() {
+    val offset = payloadOffset - headerSize
+    putInt(payload, offset, getHeaderData())
+    putInt(payload, offset + 4, getInfo())
+    putInt(payload, offset + 8, ts)
+    putInt(payload, offset + 12, socketId)
+  }
+
+  private fun getHeaderData(): Int = (PacketType.DATA.value shl 31) or (sequenceNumber and 0x7FFFFFFF)
+
+  private fun getInfo(): Int {
+    return (packetPosition.value shl 30) or (order.toInt() shl 29) or
+        (encryption.value shl 27) or (retransmitted.toInt() shl 26) or (messageNumber and 0x03FFFFFF)
+  }
+
+  private fun putInt(datagram: ByteArray, offset: Int, value: Int) {
+    datagram[offset] = (value ushr 24).toByte()
+    datagram[offset + 1] = (value ushr 16).toByte()
+    datagram[offset + 2] = (value ushr 8).toByte()
+    datagram[offset + 3] = value.toByte()
   }
 
   fun read(input: InputStream) {
@@ -70,10 +95,14 @@ class DataPacket(
     val payload = ByteArray(input.available())
     input.readUntil(payload)
     this.payload = payload
+    payloadOffset = 0
+    payloadSize = payload.size
   }
 
   fun getSize(): Int = buffer.size()
 
+  fun getDatagramSize(): Int = headerSize + payloadSize
+
   override fun toString(): String {
     return "DataPacket(sequenceNumber=$sequenceNumber, packetPosition=$packetPosition, order=$order, encryption=$encryption, retransmitted=$retransmitted, messageNumber=$messageNumber, ts=$ts, socketId=$socketId, payload=${payload.contentToString()})"
   }
@@ -22,10 +22,12 @@ import com.pedro.srt.srt.packets.control.CongestionWarning
 import com.pedro.srt.srt.packets.control.ControlType
 import com.pedro.srt.srt.packets.control.DropReq
 import com.pedro.srt.srt.packets.control.KeepAlive
+import com.pedro.srt.srt.packets.control.KeyMaterial
 import com.pedro.srt.srt.packets.control.Nak
 import com.pedro.srt.srt.packets.control.PeerError
 import com.pedro.srt.srt.packets.control.Shutdown
 import com.pedro.srt.srt.packets.control.handshake.Handshake
+import com.pedro.srt.srt.packets.control.handshake.extension.ExtensionType
 import java.io.ByteArrayInputStream
 import java.io.ByteArrayOutputStream
 import java.io.IOException
@@ -99,7 +101,16 @@ abstract class SrtPacket {
               peerError.read(input)
               return peerError
             }
-            ControlType.USER_DEFINED -> throw IOException("user defined type is not allowed")
+            ControlType.USER_DEFINED -> {
+              when (ControlPacket.getSubtype(ByteArrayInputStream(headerData))) {
+                ExtensionType.SRT_CMD_KM_REQ.value, ExtensionType.SRT_CMD_KM_RSP.value -> {
+                  val keyMaterial = KeyMaterial()
+                  keyMaterial.read(input)
+                  return keyMaterial
+                }
+                else -> throw IOException("user defined type is not allowed")
+              }
+            }
             else -> throw IOException("unknown control type: ${type.name}")
           }
         }
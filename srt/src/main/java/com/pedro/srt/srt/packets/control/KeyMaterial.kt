@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.srt.srt.packets.control
+
+import com.pedro.common.readUntil
+import com.pedro.srt.srt.packets.ControlPacket
+import com.pedro.srt.srt.packets.control.handshake.extension.ExtensionType
+import com.pedro.srt.srt.packets.control.handshake.extension.KeyMaterialMessage
+import com.pedro.srt.utils.EncryptInfo
+import java.io.InputStream
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * User defined control packet used to announce keys after the handshake (KM_REQ)
+ * and the receiver response (KM_RSP).
+ * The CIF is a key material message, the same used in the handshake extension.
+ */
+class KeyMaterial(
+  private val encryptInfo: EncryptInfo? = null
+): ControlPacket(ControlType.USER_DEFINED) {
+
+  var extendedType = ExtensionType.SRT_CMD_KM_REQ.value
+    private set
+  var message = byteArrayOf()
+    private set
+
+  val isResponse: Boolean
+    get() = extendedType == ExtensionType.SRT_CMD_KM_RSP.value
+
+  fun write(ts: Int, socketId: Int) {
+    val encryptInfo = encryptInfo ?: throw IllegalArgumentException("encrypt info is needed to write key material")
+    super.writeHeader(ts, socketId, extendedType)
+    buffer.write(KeyMaterialMessage(encryptInfo).getData())
+  }
+
+  fun read(input: InputStream) {
+    extendedType = super.readHeader(input, true)
+    val data = ByteArray(input.available())
+    input.readUntil(data)
+    message = data
+  }
+
+  override fun toString(): String {
+    return "${super.toString()}, KeyMaterial(extendedType=$extendedType, size=${message.size})"
+  }
+}
@@ -19,11 +19,13 @@ package com.pedro.srt.srt.packets.control.handshake
 import com.pedro.common.readUInt16
 import com.pedro.common.readUInt32
 import com.pedro.common.readUInt32LittleEndian
+import com.pedro.common.readUntil
 import com.pedro.common.toUInt32
 import com.pedro.common.writeUInt16
 import com.pedro.common.writeUInt32
 import com.pedro.srt.srt.packets.ControlPacket
 import com.pedro.srt.srt.packets.control.ControlType
+import com.pedro.srt.srt.packets.control.handshake.extension.ExtensionType
 import com.pedro.srt.srt.packets.control.handshake.extension.HandshakeExtension
 import com.pedro.srt.utils.Constants
 import java.io.InputStream
@@ -81,6 +83,13 @@ data class Handshake(
   var handshakeExtension: HandshakeExtension? = null
 ): ControlPacket(ControlType.HANDSHAKE) {
 
+  /**
+   * Packet filter config of the SRT_CMD_FILTER extension in a read handshake, null if the peer
+   * didn't send it.
+   */
+  var filter: String? = null
+    private set
+
   fun write(ts: Int, socketId: Int) {
     //control packet header (16 bytes)
     super.writeHeader(ts, socketId)
@@ -134,6 +143,19 @@ data class Handshake(
     srtSocketId = input.readUInt32()
     synCookie = input.readUInt32()
     ipAddress = readAddress(input)
+    readExtensions(input)
+  }
+
+  private fun readExtensions(input: InputStream) {
+    //each extension is type (16 bits), length in blocks of 4 bytes (16 bits) and content
+    while (input.available() >= 4) {
+      val type = input.readUInt16()
+      val length = input.readUInt16() * 4
+      if (input.available() < length) break
+      val data = ByteArray(length)
+      input.readUntil(data)
+      if (type == ExtensionType.SRT_CMD_FILTER.value) filter = HandshakeExtension.readString(data)
+    }
   }
 
   private fun readAddress(input: InputStream): String {
@@ -31,15 +31,37 @@ data class HandshakeExtension(
   private val receiverDelay: Int = 120,
   private val senderDelay: Int = 0,
   private val path: String = "",
-  private val encryptInfo: EncryptInfo? = null
+  private val encryptInfo: EncryptInfo? = null,
+  private val filter: String = ""
 ): SrtPacket() {
 
+  companion object {
+    /**
+     * Decode a string extension (stream id or packet filter), inverse of [fixPathData].
+     */
+    fun readString(data: ByteArray): String {
+      val bytes = reverseBlocks(data.asList())
+      var length = bytes.size
+      while (length > 0 && bytes[length - 1] == 0.toByte()) length--
+      return String(bytes, 0, length, Charsets.UTF_8)
+    }
+
+    private fun reverseBlocks(bytes: List<Byte>): ByteArray {
+      val blocks = bytes.chunked(4)
+      val result = mutableListOf<Byte>()
+      blocks.map { it.reversed() }.forEach {
+        result.addAll(it)
+      }
+      return result.toByteArray()
+    }
+  }
+
   fun write() {
     buffer.writeUInt16(ExtensionType.SRT_CMD_HS_REQ.value)
     //this extension contain a length of 3 with 4 bytes size block
     buffer.writeUInt16(3)
     buffer.write(getVersionData(version))
-    buffer.writeUInt32(flags)
+    buffer.writeUInt32(if (filter.isNotEmpty()) flags or ExtensionContentFlag.PACKET_FILTER.value else flags)
     buffer.writeUInt16(receiverDelay)
     buffer.writeUInt16(senderDelay)
     if (path.isNotEmpty()) {
@@ -48,6 +70,13 @@ data class HandshakeExtension(
       buffer.writeUInt16(data.size / 4)
       buffer.write(data)
     }
+    //packet filter config, same encoding than stream id
+    if (filter.isNotEmpty()) {
+      buffer.writeUInt16(ExtensionType.SRT_CMD_FILTER.value)
+      val data = fixPathData(filter.toByteArray(Charsets.UTF_8))
+      buffer.writeUInt16(data.size / 4)
+      buffer.write(data)
+    }
     //encrypted info
     if (encryptInfo != null) {
       buffer.writeUInt16(ExtensionType.SRT_CMD_KM_REQ.value)
@@ -85,13 +114,4 @@ data class HandshakeExtension(
       reverseBlocks(list)
     }
   }
-
-  private fun reverseBlocks(bytes: List<Byte>): ByteArray {
-    val blocks = bytes.chunked(4)
-    val result = mutableListOf<Byte>()
-    blocks.map { it.reversed() }.forEach {
-      result.addAll(it)
-    }
-    return result.toByteArray()
-  }
 }
\ No newline at end of file
@@ -22,7 +22,7 @@ import java.io.IOException
  * Created by pedro on 23/8/23.
  */
 enum class KeyBasedEncryption(val value: Int) {
-  NONE(0), PAIR_KEY(1), ODD_KEY(2);
+  NONE(0), PAIR_KEY(1), ODD_KEY(2), BOTH_KEYS(3);
 
   companion object {
     infix fun from(value: Int): KeyBasedEncryption = entries.firstOrNull { it.value == value } ?: throw IOException("unknown key based encryption: $value")
@@ -19,11 +19,9 @@ package com.pedro.srt.utils
 import com.pedro.srt.srt.packets.control.handshake.EncryptionType
 import com.pedro.srt.srt.packets.control.handshake.extension.CipherType
 import com.pedro.srt.srt.packets.data.KeyBasedEncryption
-import java.nio.ByteBuffer
 import java.security.SecureRandom
 import javax.crypto.Cipher
 import javax.crypto.SecretKeyFactory
-import javax.crypto.spec.IvParameterSpec
 import javax.crypto.spec.PBEKeySpec
 import javax.crypto.spec.SecretKeySpec
 import kotlin.experimental.xor
@@ -32,11 +30,27 @@ import kotlin.experimental.xor
  * Created by pedro on 12/11/23.
  * Need API 26+
  *
+ * AES-CTR keystream is generated with a cached AES/ECB cipher per key encrypting counter blocks
+ * precomputed with the salt, so only the sequence bytes are updated per packet.
+ *
+ * Keys are rotated after [refreshRate] packets. The new key is announced [preAnnounce] packets
+ * before the switch and the old key is removed [preAnnounce] packets after it.
  */
-class EncryptionUtil(val type: EncryptionType, passphrase: String) {
+class EncryptionUtil @JvmOverloads constructor(
+  val type: EncryptionType,
+  passphrase: String,
+  private val refreshRate: Int = DEFAULT_REFRESH_RATE,
+  private val preAnnounce: Int = DEFAULT_PRE_ANNOUNCE
+) {
+
+  companion object {
+    const val DEFAULT_REFRESH_RATE = 1 shl 24
+    const val DEFAULT_PRE_ANNOUNCE = 1 shl 12
+    private const val BLOCK_SIZE = 16
+    private const val EVEN = 0
+    private const val ODD = 1
+  }
 
-  //only pair is developed, odd is not supported for now
-  private val keyBasedEncryption = KeyBasedEncryption.PAIR_KEY
   private val cipherType = CipherType.CTR
   private val salt: ByteArray
   private val keyLength: Int = when (type) {
@@ -45,37 +59,138 @@ class EncryptionUtil(val type: EncryptionType, passphrase: String) {
     EncryptionType.AES192 -> 24
     EncryptionType.AES256 -> 32
   }
-  private var keyData = byteArrayOf()
-  private val block: SecretKeySpec
-  private val cipher = Cipher.getInstance("AES/CTR/NoPadding")
+  private val kek: ByteArray
+  //index 0 is even key and 1 is odd key
+  private val keys = arrayOfNulls<ByteArray>(2)
+  private val ciphers = arrayOfNulls<Cipher>(2)
+  private var active = EVEN
+  private var packetsEncrypted = 0
+  private var keyMaterialChanged = false
+  //counter blocks with salt and block counter precomputed, only sequence bytes change per packet
+  private var counterBlocks = ByteArray(0)
+  private var keystream = ByteArray(0)
+  val activeKey: KeyBasedEncryption
+    get() = if (active == EVEN) KeyBasedEncryption.PAIR_KEY else KeyBasedEncryption.ODD_KEY
 
   init {
+    require(preAnnounce in 1 until refreshRate / 2) { "preAnnounce must be lower than half of refreshRate" }
     salt = generateSecureRandomBytes(16)
-    val sek = generateSecureRandomBytes(keyLength)
-    val kek = calculateKEK(passphrase, salt, keyLength)
-    keyData = wrapKey(kek, sek)
-    block = SecretKeySpec(sek, "AES")
+    kek = calculateKEK(passphrase, salt, keyLength)
+    setKey(EVEN, generateSecureRandomBytes(keyLength))
+    ensureBlocks(Constants.MTU)
   }
 
   fun encrypt(bytes: ByteArray, sequence: Int): ByteArray {
-    val ctr = ByteArray(16)
-    ByteBuffer.wrap(ctr, 10, 4).putInt(sequence)
-    for (i in 0 until 14) ctr[i] = (ctr[i] xor salt[i])
+    val output = bytes.copyOf()
+    encrypt(output, 0, output.size, sequence)
+    return output
+  }
 
-    cipher.init(Cipher.ENCRYPT_MODE, block, IvParameterSpec(ctr))
-    return cipher.doFinal(bytes)
+  /**
+   * Encrypt in place, CTR mode allow use the same array as input and output.
+   *
+   * @return key used to encrypt
+   */
+  fun encrypt(bytes: ByteArray, offset: Int, length: Int, sequence: Int): KeyBasedEncryption {
+    rotateKeys()
+    val blocksSize = ensureBlocks(length)
+    val seq0 = (sequence ushr 24).toByte()
+    val seq1 = (sequence ushr 16).toByte()
+    val seq2 = (sequence ushr 8).toByte()
+    val seq3 = sequence.toByte()
+    var block = 0
+    while (block < blocksSize) {
+      counterBlocks[block + 10] = salt[10] xor seq0
+      counterBlocks[block + 11] = salt[11] xor seq1
+      counterBlocks[block + 12] = salt[12] xor seq2
+      counterBlocks[block + 13] = salt[13] xor seq3
+      block += BLOCK_SIZE
+    }
+    val cipher = ciphers[active] ?: throw IllegalStateException("active key not found")
+    cipher.doFinal(counterBlocks, 0, blocksSize, keystream, 0)
+    for (i in 0 until length) {
+      bytes[offset + i] = bytes[offset + i] xor keystream[i]
+    }
+    return activeKey
+  }
+
+  /**
+   * @return true if the keys changed since the last call and must be announced to the receiver
+   * using [getEncryptInfo]
+   */
+  fun pollKeyMaterialChanged(): Boolean {
+    val changed = keyMaterialChanged
+    keyMaterialChanged = false
+    return changed
   }
 
   fun getEncryptInfo(): EncryptInfo {
+    val even = keys[EVEN]
+    val odd = keys[ODD]
+    val keyBasedEncryption = when {
+      even != null && odd != null -> KeyBasedEncryption.BOTH_KEYS
+      odd != null -> KeyBasedEncryption.ODD_KEY
+      else -> KeyBasedEncryption.PAIR_KEY
+    }
+    //with both keys the even key must be first
+    val sek = (even ?: byteArrayOf()) + (odd ?: byteArrayOf())
     return EncryptInfo(
       keyBasedEncryption = keyBasedEncryption,
       cipher = cipherType,
       salt = salt,
-      key = keyData,
+      key = wrapKey(kek, sek),
       keyLength = keyLength
     )
   }
 
+  private fun rotateKeys() {
+    packetsEncrypted++
+    val next = active xor 1
+    when {
+      packetsEncrypted == refreshRate - preAnnounce -> {
+        setKey(next, generateSecureRandomBytes(keyLength))
+        keyMaterialChanged = true
+      }
+      packetsEncrypted >= refreshRate && keys[next] != null -> {
+        active = next
+        packetsEncrypted = 0
+      }
+      packetsEncrypted == preAnnounce && keys[next] != null -> {
+        //old key decommissioned
+        keys[next] = null
+        ciphers[next] = null
+        keyMaterialChanged = true
+      }
+    }
+  }
+
+  private fun setKey(index: Int, sek: ByteArray) {
+    keys[index] = sek
+    ciphers[index] = Cipher.getInstance("AES/ECB/NoPadding").apply {
+      init(Cipher.ENCRYPT_MODE, SecretKeySpec(sek, "AES"))
+    }
+  }
+
+  /**
+   * Grow counter blocks if needed to encrypt [length] bytes.
+   *
+   * @return size in bytes of the blocks needed
+   */
+  private fun ensureBlocks(length: Int): Int {
+    val blocksSize = (length + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE
+    if (blocksSize > counterBlocks.size) {
+      counterBlocks = ByteArray(blocksSize)
+      keystream = ByteArray(blocksSize)
+      for (block in 0 until blocksSize / BLOCK_SIZE) {
+        val position = block * BLOCK_SIZE
+        salt.copyInto(counterBlocks, position, 0, 14)
+        counterBlocks[position + 14] = (block ushr 8).toByte()
+        counterBlocks[position + 15] = block.toByte()
+      }
+    }
+    return blocksSize
+  }
+
   private fun generateSecureRandomBytes(length: Int): ByteArray {
     val secureRandom = SecureRandom()
     val randomBytes = ByteArray(length)
@@ -100,4 +215,4 @@ class EncryptionUtil(val type: EncryptionType, passphrase: String) {
   private fun calculateKEK(passphrase: String, salt: ByteArray, keyLength: Int): ByteArray {
     return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1").generateSecret(PBEKeySpec(passphrase.toCharArray(), salt.sliceArray(8 until salt.size), 2048, keyLength * 8)).encoded
   }
-}
\ No newline at end of file
+}
@@ -83,4 +83,20 @@ fun List<ByteBuffer>.getPayload(onAud: () -> ByteBuffer? = { null }): ByteBuffer
   }
   payload.flip()
   return payload
-}
\ No newline at end of file
+}
+
+private val annexBStartCode = byteArrayOf(0x00, 0x00, 0x00, 0x01)
+
+/**
+ * Same content than [getPayload] but as a list of segments that point to the NALs, so the
+ * mpegts packetizer can copy them without join the whole frame in a new buffer.
+ */
+fun List<ByteBuffer>.getPayloadSegments(onAud: () -> ByteBuffer? = { null }): List<ByteBuffer> {
+  val segments = ArrayList<ByteBuffer>(this.size * 2 + 1)
+  onAud()?.let { segments.add(it) }
+  this.forEach {
+    segments.add(ByteBuffer.wrap(annexBStartCode))
+    segments.add(it)
+  }
+  return segments
+}
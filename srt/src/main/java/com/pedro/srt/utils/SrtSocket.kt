@@ -18,7 +18,9 @@ package com.pedro.srt.utils
 
 import com.pedro.common.socket.base.SocketType
 import com.pedro.common.socket.base.StreamSocket
+import com.pedro.srt.srt.packets.DataPacket
 import com.pedro.srt.srt.packets.SrtPacket
+import java.nio.ByteBuffer
 
 /**
  * Created by pedro on 22/8/23.
@@ -44,5 +46,19 @@ class SrtSocket(type: SocketType, host: String, port: Int, timeout: Long) {
     socket.write(buffer)
   }
 
+  /**
+   * Send a data packet with the header already written in place before the payload.
+   */
+  suspend fun writeInPlace(dataPacket: DataPacket) {
+    socket.write(dataPacket.payload, dataPacket.payloadOffset - SrtPacket.headerSize, dataPacket.getDatagramSize())
+  }
+
+  /**
+   * Send each buffer as a datagram in a single batch.
+   */
+  suspend fun writeBatch(datagrams: List<ByteBuffer>) {
+    socket.writeBatch(datagrams)
+  }
+
   suspend fun readBuffer() = socket.read()
 }
\ No newline at end of file
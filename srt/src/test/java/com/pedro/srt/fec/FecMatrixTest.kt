@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.srt.fec
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import kotlin.experimental.xor
+import kotlin.random.Random
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Send a stream protected with FEC through a lossy socket stand-in and recover it with a
+ * receiver to measure bandwidth overhead and recovery rate.
+ */
+class FecMatrixTest {
+
+  private val clipSize = 1316
+
+  private class Fec(val group: FecGroup) {
+    val index = group.index
+    val base = group.base
+    val payload = group.payloadClip.copyOf()
+    val length = group.lengthClip
+  }
+
+  /**
+   * Drop packets with [lossRate] probability, after a loss next packets are lost with
+   * [burstRate] probability.
+   */
+  private class LossySocket(private val lossRate: Double, private val burstRate: Double = 0.0, seed: Int = 1) {
+    private val random = Random(seed)
+    private var lost = false
+    var sent = 0L
+    var sentBytes = 0L
+    var dropped = 0L
+
+    fun write(size: Int): Boolean {
+      sent++
+      sentBytes += size
+      lost = random.nextDouble() < if (lost) burstRate else lossRate
+      if (lost) dropped++
+      return !lost
+    }
+  }
+
+  /**
+   * Receiver that recover packets with groups that lost only one packet until no more packets
+   * can be recovered.
+   */
+  private class Receiver(private val config: FecConfig) {
+    val packets = HashMap<Int, ByteArray>()
+    val groups = ArrayList<Fec>()
+
+    fun recover(): Int {
+      var recovered = 0
+      var progress = true
+      while (progress) {
+        progress = false
+        groups.forEach { fec ->
+          val members = if (fec.index < 0) List(config.columns) { fec.base + it }
+          else List(config.rows) { fec.base + it * config.columns }
+          val missing = members.filter { !packets.containsKey(it) }
+          if (missing.size != 1) return@forEach
+          val payload = fec.payload.copyOf()
+          var length = fec.length
+          members.forEach { sequence ->
+            val packet = packets[sequence] ?: return@forEach
+            for (i in packet.indices) payload[i] = payload[i] xor packet[i]
+            length = length xor packet.size
+          }
+          packets[missing[0]] = payload.copyOf(length)
+          recovered++
+          progress = true
+        }
+      }
+      return recovered
+    }
+  }
+
+  private fun createPayload(sequence: Int): ByteArray {
+    val size = if (sequence % 7 == 6) 188 * 3 else clipSize
+    return ByteArray(size) { (sequence * 31 + it).toByte() }
+  }
+
+  private fun send(config: FecConfig, packets: Int, socket: LossySocket): Pair<Receiver, Long> {
+    val receiver = Receiver(config)
+    var fecBytes = 0L
+    val matrix = FecMatrix(config, clipSize) { group ->
+      val size = 4 + group.payloadClip.size
+      fecBytes += size
+      if (socket.write(size)) receiver.groups.add(Fec(group))
+    }
+    for (sequence in 0 until packets) {
+      val payload = createPayload(sequence)
+      if (socket.write(payload.size)) receiver.packets[sequence] = payload
+      matrix.add(sequence, payload, 0, payload.size, sequence * 100, 0)
+    }
+    return Pair(receiver, fecBytes)
+  }
+
+  @Test
+  fun `GIVEN a matrix WHEN add packets THEN get row and column groups with the expected overhead`() {
+    val config = FecConfig(columns = 10, rows = 5)
+    val socket = LossySocket(0.0)
+    val (receiver, fecBytes) = send(config, 100 * 50, socket)
+    assertEquals(100 * (10 + 5), receiver.groups.size)
+    val sourceBytes = socket.sentBytes - fecBytes
+    val overhead = fecBytes.toFloat() / sourceBytes
+    //payloads shorter than the clip increase the overhead
+    assertTrue("overhead $overhead", overhead >= config.getOverhead() && overhead < config.getOverhead() * 1.2f)
+    val rows = receiver.groups.filter { it.index < 0 }
+    assertEquals(listOf(0, 10, 20), rows.take(3).map { it.base })
+    val columns = receiver.groups.filter { it.index >= 0 }
+    assertEquals((0 until 10).toList(), columns.take(10).map { it.index })
+  }
+
+  @Test
+  fun `GIVEN a burst loss of a row WHEN recover with columns THEN get all packets`() {
+    val config = FecConfig(columns = 10, rows = 5)
+    val receiver = send(config, 50, LossySocket(0.0)).first
+    (20 until 30).forEach { receiver.packets.remove(it) }
+    assertEquals(10, receiver.recover())
+    (0 until 50).forEach { assertArrayEquals(createPayload(it), receiver.packets[it]) }
+  }
+
+  @Test
+  fun `GIVEN random loss WHEN recover with row and column FEC THEN recover most of lost packets`() {
+    val packets = 100 * 50
+    val results = listOf(FecConfig(10, 5), FecConfig(10, 1), FecConfig(5, 5)).map { config ->
+      val socket = LossySocket(0.01, seed = 7)
+      val (receiver, _) = send(config, packets, socket)
+      val lost = packets - receiver.packets.size
+      val recovered = receiver.recover()
+      recovered.toFloat() / lost
+    }
+    //2D recover almost all packets, row only recover single losses in a row
+    assertTrue("2D recovery ${results[0]}", results[0] > 0.95f)
+    assertTrue("row recovery ${results[1]}", results[1] > 0.8f)
+    assertTrue("5x5 recovery ${results[2]}", results[2] > 0.95f)
+  }
+
+  @Test
+  fun `GIVEN burst loss WHEN recover THEN 2D FEC recover more than row FEC`() {
+    val packets = 100 * 50
+    val results = listOf(FecConfig(10, 5), FecConfig(10, 1)).map { config ->
+      val socket = LossySocket(0.005, burstRate = 0.5, seed = 3)
+      val (receiver, _) = send(config, packets, socket)
+      val lost = packets - receiver.packets.size
+      receiver.recover().toFloat() / lost
+    }
+    assertTrue("2D ${results[0]} row ${results[1]}", results[0] > results[1])
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.srt.mpeg2ts
+
+import com.pedro.common.BufferPool
+import com.pedro.common.TimeUtils
+import com.pedro.srt.mpeg2ts.psi.PsiManager
+import com.pedro.srt.mpeg2ts.service.Mpeg2TsService
+import com.pedro.srt.srt.packets.SrtPacket
+import com.pedro.srt.utils.Constants
+import com.pedro.srt.utils.chunkPackets
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.mockito.MockedStatic
+import org.mockito.Mockito
+import java.nio.ByteBuffer
+
+/**
+ * Created by pedro on 18/10/26.
+ */
+class MpegTsDatagramWriterTest {
+
+  private val service = Mpeg2TsService()
+  private lateinit var timeUtilsMock: MockedStatic<TimeUtils>
+  private val chunkSize = (Constants.MTU - SrtPacket.headerSize) / MpegTsPacketizer.packetSize
+
+  @Before
+  fun setup() {
+    timeUtilsMock = Mockito.mockStatic(TimeUtils::class.java)
+    timeUtilsMock.`when`<Long>(TimeUtils::getCurrentTimeMicro).thenReturn(700000)
+  }
+
+  @After
+  fun teardown() {
+    timeUtilsMock.close()
+  }
+
+  @Test
+  fun `GIVEN a big pes WHEN write in pooled datagrams THEN get the same bytes than chunked packets`() {
+    val data = ByteArray(10000) { it.toByte() }
+    val expected = MpegTsPacketizer(PsiManager(service))
+      .write(listOf(Pes(256, true, PesType.VIDEO, 1400000, ByteBuffer.wrap(data))))
+      .chunkPackets(chunkSize)
+
+    val writer = MpegTsDatagramWriter(BufferPool(), SrtPacket.headerSize, chunkSize)
+    val segments = listOf(ByteBuffer.wrap(data, 0, 3000), ByteBuffer.wrap(data, 3000, 7000))
+    val packets = MpegTsPacketizer(PsiManager(service))
+      .write(listOf(Pes(256, true, PesType.VIDEO, 1400000, segments)), writer, MpegType.VIDEO, true)
+
+    assertEquals(expected.size, packets.size)
+    packets.forEachIndexed { index, packet ->
+      assertTrue(packet.pooled)
+      assertEquals(SrtPacket.headerSize, packet.offset)
+      val bytes = packet.buffer.copyOfRange(packet.offset, packet.offset + packet.length)
+      assertArrayEquals(expected[index], bytes)
+    }
+  }
+
+  @Test
+  fun `GIVEN released datagrams WHEN write again THEN reuse the pooled buffers`() {
+    val bufferPool = BufferPool()
+    val writer = MpegTsDatagramWriter(bufferPool, SrtPacket.headerSize, chunkSize)
+    val mpegTsPacketizer = MpegTsPacketizer(PsiManager(service))
+    val data = ByteArray(188 * 20)
+
+    val first = mpegTsPacketizer.write(listOf(Pes(256, true, PesType.VIDEO, 0, ByteBuffer.wrap(data))), writer, MpegType.VIDEO, true)
+    first.forEach { writer.release(it) }
+    val second = mpegTsPacketizer.write(listOf(Pes(256, true, PesType.VIDEO, 0, ByteBuffer.wrap(data))), writer, MpegType.VIDEO, true)
+
+    assertEquals(first.size, second.size)
+    second.forEach { packet -> assertTrue(first.any { it.buffer === packet.buffer }) }
+  }
+}
@@ -84,4 +84,18 @@ class PesTest {
     val buffer = mpegTsPacketizer.write(listOf(pes)).chunkPackets(chunkSize)[0]
     assertArrayEquals(expected.array(), buffer)
   }
+
+  @Test
+  fun `GIVEN a video pes with dts different to pts WHEN write header THEN pts and dts are written`() {
+    val data = ByteBuffer.wrap(ByteArray(10) { 0xAA.toByte() })
+    val expected = byteArrayOf(
+      0, 0, 1, -32, 0, 23, -127, -64, 10, //start code, stream id, length, flags with pts and dts, header length
+      49, 0, 7, -40, 97, //pts 1400000
+      17, 0, 7, -87, 127 //dts 1333333
+    )
+    val pes = Pes(256, false, PesType.VIDEO, 1400000, data, 1333333)
+    val buffer = ByteBuffer.allocate(pes.headerLength)
+    pes.writeHeader(buffer)
+    assertArrayEquals(expected, buffer.array())
+  }
 }
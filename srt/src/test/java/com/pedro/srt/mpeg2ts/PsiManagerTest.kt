@@ -18,7 +18,9 @@ package com.pedro.srt.mpeg2ts
 
 import com.pedro.srt.mpeg2ts.psi.PsiManager
 import com.pedro.srt.mpeg2ts.service.Mpeg2TsService
+import org.junit.Assert.assertArrayEquals
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
 import org.junit.Test
 
 /**
@@ -72,4 +74,32 @@ class PsiManagerTest {
     assertEquals(name, psiManager.getPat().service.name)
     assertEquals(name, psiManager.getSdt().service.name)
   }
-}
\ No newline at end of file
+
+  @Test
+  fun `GIVEN psi packets sent WHEN send again THEN only continuity counter change`() {
+    val psiManager = PsiManager(service)
+    val mpegTsPacketizer = MpegTsPacketizer(psiManager)
+    val first = psiManager.checkSendInfo(true, mpegTsPacketizer, chunkSize)
+    val second = psiManager.checkSendInfo(true, mpegTsPacketizer, chunkSize)
+    assertEquals(2, second.size)
+    first.zip(second).forEach { (a, b) ->
+      assertEquals(0x10, a.buffer[3].toInt())
+      assertEquals(0x11, b.buffer[3].toInt())
+      b.buffer[3] = a.buffer[3]
+      assertArrayEquals(a.buffer, b.buffer)
+    }
+  }
+
+  @Test
+  fun `GIVEN psi packets sent WHEN upgrade version THEN packet is written with the new version`() {
+    val psiManager = PsiManager(service)
+    val mpegTsPacketizer = MpegTsPacketizer(psiManager)
+    val before = psiManager.checkSendInfo(true, mpegTsPacketizer, chunkSize)[0].buffer
+    psiManager.upgradePatVersion()
+    val after = psiManager.checkSendInfo(true, mpegTsPacketizer, chunkSize)[0].buffer
+    //pointer field, table id, section length and id extension before the version
+    assertEquals(0, (before[10].toInt() shr 1) and 0x1F)
+    assertEquals(1, (after[10].toInt() shr 1) and 0x1F)
+    assertNotEquals(before.copyOfRange(13, 21).toList(), after.copyOfRange(13, 21).toList())
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.srt.srt
+
+import com.pedro.srt.fec.FecConfig
+import com.pedro.srt.srt.packets.DataPacket
+import com.pedro.srt.srt.packets.data.KeyBasedEncryption
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Created by pedro on 18/10/26.
+ */
+class FecFilterTest {
+
+  @Test
+  fun `GIVEN data packets WHEN add to filter THEN get row and column FEC packets`() {
+    val config = FecConfig(columns = 2, rows = 2)
+    val filter = FecFilter(config, 188)
+    assertEquals("fec,cols:2,rows:2,layout:even,arq:onreq", FecFilter.getConfigString(config))
+    val payloads = listOf(ByteArray(188) { 1 }, ByteArray(188) { 2 }, ByteArray(100) { 4 }, ByteArray(188) { 8 })
+    val fecPackets = payloads.mapIndexed { index, payload ->
+      val dataPacket = DataPacket(
+        sequenceNumber = 100 + index, encryption = KeyBasedEncryption.PAIR_KEY, messageNumber = index + 1,
+        ts = 1000 * index, socketId = 5, payload = payload
+      )
+      filter.add(dataPacket).toList()
+    }
+    assertTrue(fecPackets[0].isEmpty())
+    assertEquals(1, fecPackets[1].size)
+    //first column completed
+    assertEquals(1, fecPackets[2].size)
+    //last row and second column
+    assertEquals(2, fecPackets[3].size)
+
+    val row = fecPackets[1][0]
+    assertEquals(101, row.sequenceNumber)
+    assertEquals(0, row.messageNumber)
+    assertEquals(KeyBasedEncryption.NONE, row.encryption)
+    assertEquals(0 xor 1000, row.ts)
+    assertEquals(5, row.socketId)
+    assertEquals(FecFilter.HEADER_SIZE + 188, row.payloadSize)
+    assertEquals(-1, row.payload[0].toInt())
+    assertEquals(0, row.payload[1].toInt())
+    assertEquals(0, ((row.payload[2].toInt() and 0xFF) shl 8) or (row.payload[3].toInt() and 0xFF))
+    assertEquals(3, row.payload[FecFilter.HEADER_SIZE].toInt())
+
+    val firstColumn = fecPackets[2][0]
+    assertEquals(0, firstColumn.payload[0].toInt())
+    assertEquals(102, firstColumn.sequenceNumber)
+    assertEquals(188 xor 100, ((firstColumn.payload[2].toInt() and 0xFF) shl 8) or (firstColumn.payload[3].toInt() and 0xFF))
+    assertEquals(1 xor 4, firstColumn.payload[FecFilter.HEADER_SIZE].toInt())
+    assertEquals(1, firstColumn.payload[FecFilter.HEADER_SIZE + 150].toInt())
+
+    val column = fecPackets[3][1]
+    assertEquals(1, column.payload[0].toInt())
+    assertEquals(103, column.sequenceNumber)
+    assertEquals(2 xor 8, column.payload[FecFilter.HEADER_SIZE].toInt())
+    assertEquals(4, filter.getSourcePackets())
+    assertEquals(4, filter.getFecPackets())
+  }
+
+  @Test
+  fun `GIVEN handshake filter configs WHEN parse THEN get FEC config only if supported`() {
+    assertEquals(FecConfig(10, 5), FecFilter.parseConfig("fec,cols:10,rows:5,layout:even,arq:onreq"))
+    assertEquals(FecConfig(4, 1), FecFilter.parseConfig("fec,arq:never,cols:4"))
+    assertNull(FecFilter.parseConfig("fec,cols:10,rows:5,layout:staircase"))
+    assertNull(FecFilter.parseConfig("fec,rows:5"))
+    assertNull(FecFilter.parseConfig("fec,cols:50,rows:50"))
+    assertNull(FecFilter.parseConfig("other,cols:10"))
+    assertNull(FecFilter.parseConfig(""))
+  }
+}
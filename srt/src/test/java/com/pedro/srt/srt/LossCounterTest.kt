@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.srt.srt
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+/**
+ * Created by pedro on 18/10/26.
+ */
+class LossCounterTest {
+
+  @Test
+  fun `GIVEN repeated NAK ranges WHEN count THEN each lost sequence is counted once`() {
+    val counter = LossCounter()
+    assertEquals(5, counter.countNew(listOf(10 to 12, 20 to 21)))
+    //periodic NAK with the same losses
+    assertEquals(0, counter.countNew(listOf(10 to 12, 20 to 21)))
+    //losses not recovered and a new range overlapping the last counted
+    assertEquals(3, counter.countNew(listOf(11 to 11, 20 to 24)))
+    assertEquals(1, counter.countNew(listOf(30 to 30)))
+  }
+
+  @Test
+  fun `GIVEN sequences near the max value WHEN wrap THEN count the new losses`() {
+    val counter = LossCounter()
+    assertEquals(2, counter.countNew(listOf(0x7FFFFFFE to 0x7FFFFFFF)))
+    assertEquals(2, counter.countNew(listOf(0x7FFFFFFF to 1)))
+    counter.reset()
+    assertEquals(2, counter.countNew(listOf(0 to 1)))
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.srt.srt
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+/**
+ * Created by pedro on 18/10/26.
+ */
+class RetransmissionWindowTest {
+
+  private fun RetransmissionWindow.add(sequence: Int, ts: Int = 0) {
+    add(sequence, ts, 1, 3, 0, ByteArray(4), 0, 4)
+  }
+
+  private fun RetransmissionWindow.sequencesInRange(min: Int, max: Int): List<Int> {
+    val result = mutableListOf<Int>()
+    forEachInRange(min, max) { result.add(getSequence(it)) }
+    return result
+  }
+
+  @Test
+  fun `GIVEN a lost range WHEN search in window THEN get only the packets in range`() {
+    val window = RetransmissionWindow(16)
+    (100 until 110).forEach { window.add(it) }
+    assertEquals(listOf(103, 104, 105), window.sequencesInRange(103, 105))
+    assertEquals(listOf(100, 101), window.sequencesInRange(90, 101))
+    assertEquals(listOf(108, 109), window.sequencesInRange(108, 200))
+    assertEquals(emptyList<Int>(), window.sequencesInRange(50, 60))
+  }
+
+  @Test
+  fun `GIVEN sequence wrap WHEN search in window THEN get the packets in both sides`() {
+    val window = RetransmissionWindow(16)
+    (0x7FFFFFFD..0x7FFFFFFF).forEach { window.add(it) }
+    (0..2).forEach { window.add(it) }
+    assertEquals(listOf(0x7FFFFFFF, 0, 1), window.sequencesInRange(0x7FFFFFFF, 1))
+  }
+
+  @Test
+  fun `GIVEN an ack WHEN remove confirmed THEN keep packets from ack sequence`() {
+    val released = mutableListOf<ByteArray>()
+    val window = RetransmissionWindow(16) { payload, _ -> released.add(payload) }
+    (100 until 110).forEach { window.add(it) }
+    window.removeConfirmed(105)
+    assertEquals(5, window.size)
+    assertEquals(5, released.size)
+    assertEquals(listOf(105), window.sequencesInRange(100, 105))
+  }
+
+  @Test
+  fun `GIVEN old packets WHEN remove too late THEN discard packets older than threshold`() {
+    val window = RetransmissionWindow(16)
+    (0 until 10).forEach { window.add(it, ts = it * 10_000) }
+    window.removeTooLate(90_000, 40_000)
+    assertEquals(5, window.size)
+    assertEquals(listOf(5, 6), window.sequencesInRange(0, 6))
+  }
+
+  @Test
+  fun `GIVEN a full window WHEN add a packet THEN discard the oldest`() {
+    val window = RetransmissionWindow(8)
+    (0 until 10).forEach { window.add(it) }
+    assertEquals(8, window.size)
+    assertEquals(listOf(2, 3), window.sequencesInRange(0, 3))
+  }
+
+  @Test
+  fun `GIVEN latency and bitrate WHEN calculate capacity THEN get a power of two in limits`() {
+    assertEquals(RetransmissionWindow.MIN_CAPACITY, RetransmissionWindow.calculateCapacity(120, 1_000_000, 1316))
+    assertEquals(8192, RetransmissionWindow.calculateCapacity(2000, 20_000_000, 1316))
+    assertEquals(RetransmissionWindow.MAX_CAPACITY, RetransmissionWindow.calculateCapacity(10_000, 100_000_000, 1316))
+  }
+}
@@ -23,6 +23,7 @@ import com.pedro.srt.srt.packets.control.Ack2
 import com.pedro.srt.srt.packets.control.CongestionWarning
 import com.pedro.srt.srt.packets.control.DropReq
 import com.pedro.srt.srt.packets.control.KeepAlive
+import com.pedro.srt.srt.packets.control.KeyMaterial
 import com.pedro.srt.srt.packets.control.Nak
 import com.pedro.srt.srt.packets.control.PeerError
 import com.pedro.srt.srt.packets.control.Shutdown
@@ -63,6 +64,13 @@ class SrtPacketTest {
     assertTrue(packet is CongestionWarning)
   }
 
+  @Test
+  fun `GIVEN a key material response packet buffer WHEN read buffer THEN get key material packet`() {
+    val keyMaterialPacket = byteArrayOf(-1, -1, 0, 4, 0, 0, 0, 0, 0, 0, 9, -60, 0, 0, 0, 64, 18, 32, 41, 1)
+    val packet = SrtPacket.getSrtPacket(keyMaterialPacket)
+    assertTrue(packet is KeyMaterial && packet.isResponse)
+  }
+
   @Test
   fun `GIVEN a drop req packet buffer WHEN read buffer THEN get drop req packet`() {
     val dropReqPacket = byteArrayOf(-128, 7, 0, 0, 0, 0, 0, 5, 0, 0, 9, -60, 0, 0, 0, 64, 0, 0, 0, 1, 0, 0, 0, 8)
@@ -40,17 +40,20 @@ class SrtSenderTest {
         Mockito.`when`(commandsManager.audioCodec).thenReturn(AudioCodec.AAC)
         Mockito.`when`(commandsManager.videoCodec).thenReturn(VideoCodec.H264)
         Mockito.`when`(commandsManager.MTU).thenReturn(Constants.MTU)
-        Mockito.lenient().`when`(commandsManager.writeData(any<MpegTsPacket>(), any<SrtSocket>())).then {
-            val packet = it.arguments[0] as MpegTsPacket
-            val size = packet.buffer.size
-            output.write(packet.buffer)
-            latch.countDown().let { size }
+        Mockito.lenient().`when`(commandsManager.writeDataBatch(any<List<MpegTsPacket>>(), any<SrtSocket>())).then {
+            @Suppress("UNCHECKED_CAST")
+            val packets = it.arguments[0] as List<MpegTsPacket>
+            packets.sumOf { packet ->
+                output.write(packet.buffer)
+                latch.countDown()
+                packet.buffer.size
+            }
         }
     }
 
     @Test
     fun `GIVEN video and audio mediaFrames WHEN send to sender THEN write the expected packets`() = runTest {
-        latch = CountDownLatch(4) //writeData must be called 4 times
+        latch = CountDownLatch(4) //4 packets must be written
         val srtSender = SrtSender(connectChecker, commandsManager)
         srtSender.setAudioInfo(44100, true)
         val sps = ByteBuffer.wrap(byteArrayOf(0, 0, 0, 1, 103, 100, 0, 30, -84, -76, 15, 2, -115, 53, 2, 2, 2, 7, -117, 23, 8))
@@ -73,7 +76,7 @@ class SrtSenderTest {
 
     @Test
     fun `GIVEN pooled mediaFrames WHEN send to sender THEN write the same packets than a copy`() = runTest {
-        latch = CountDownLatch(4) //writeData must be called 4 times
+        latch = CountDownLatch(4) //4 packets must be written
         val srtSender = SrtSender(connectChecker, commandsManager)
         srtSender.setAudioInfo(44100, true)
         val sps = ByteBuffer.wrap(byteArrayOf(0, 0, 0, 1, 103, 100, 0, 30, -84, -76, 15, 2, -115, 53, 2, 2, 2, 7, -117, 23, 8))
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.srt.srt.congestion
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Created by pedro on 18/10/26.
+ */
+class LiveCongestionControllerTest {
+
+  @Test
+  fun `GIVEN max bandwidth WHEN configure THEN sending rate include overhead`() {
+    val controller = LiveCongestionController(overhead = 25)
+    controller.configure(4_000_000, 1500)
+    assertEquals(5_000_000, controller.sendingRate)
+  }
+
+  @Test
+  fun `GIVEN no max bandwidth WHEN no link capacity THEN not paced`() {
+    val controller = LiveCongestionController()
+    controller.configure(0, 1500)
+    controller.onAck(10_000, 20_000, 0, 0)
+    assertEquals(0, controller.sendingRate)
+  }
+
+  @Test
+  fun `GIVEN no max bandwidth WHEN input rate is measured THEN pace at input rate plus overhead`() {
+    val controller = LiveCongestionController(overhead = 25)
+    controller.configure(0, 1500)
+    //100 packets/s * 1500 bytes * 8 = 1.2Mbps, lower than the input so it must be ignored
+    controller.onAck(10_000, 20_000, 100, 0)
+    //1000 bytes each ms = 8Mbps
+    for (ts in 0 until 500_000 step 1000) controller.onInput(ts, 1000)
+    assertEquals(0, controller.sendingRate)
+    controller.onInput(500_000, 500)
+    assertEquals(10_000_000, controller.sendingRate)
+    //next periods are 1 second long, 500 bytes each ms = 4Mbps
+    for (ts in 501_000 until 1_500_000 step 1000) controller.onInput(ts, 500)
+    assertEquals(10_000_000, controller.sendingRate)
+    controller.onInput(1_500_000, 500)
+    assertEquals(5_000_000, controller.sendingRate)
+  }
+
+  @Test
+  fun `GIVEN link capacity lower than max bandwidth WHEN ack THEN sending rate is limited by link`() {
+    val controller = LiveCongestionController(overhead = 0)
+    controller.configure(10_000_000, 1500)
+    //250 packets/s * 1500 bytes * 8 = 3Mbps
+    controller.onAck(10_000, 20_000, 250, 0)
+    assertEquals(3_000_000, controller.sendingRate)
+  }
+
+  @Test
+  fun `GIVEN congestion warnings WHEN received in the same rtt THEN decrease only once and recover later`() {
+    val controller = LiveCongestionController(overhead = 0)
+    controller.configure(8_000_000, 1500)
+    controller.onAck(0, 50_000, 0, 0)
+    controller.onCongestionWarning(100_000)
+    controller.onCongestionWarning(110_000)
+    assertEquals(7_000_000, controller.sendingRate)
+    controller.onCongestionWarning(200_000)
+    assertEquals(6_125_000, controller.sendingRate)
+    //recover a step per rtt
+    controller.onAck(260_000, 50_000, 0, 0)
+    assertTrue(controller.sendingRate > 6_125_000)
+    repeat(20) { controller.onAck(260_000 + (it + 1) * 60_000, 50_000, 0, 0) }
+    assertEquals(8_000_000, controller.sendingRate)
+  }
+
+  @Test
+  fun `GIVEN a sending rate WHEN get burst size THEN allow at least 2 packets`() {
+    val controller = LiveCongestionController(overhead = 0)
+    controller.configure(1_000_000, 1500)
+    assertEquals(3000, controller.burstSize)
+    controller.configure(100_000_000, 1500)
+    assertEquals(62_500, controller.burstSize)
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.srt.srt.congestion
+
+import com.pedro.common.TimeUtils
+import com.pedro.common.socket.base.SocketType
+import com.pedro.srt.mpeg2ts.MpegTsPacket
+import com.pedro.srt.mpeg2ts.MpegType
+import com.pedro.srt.srt.CommandsManager
+import com.pedro.srt.srt.packets.SrtPacket
+import com.pedro.srt.srt.packets.data.PacketPosition
+import com.pedro.srt.utils.SrtSocket
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.mockito.MockedStatic
+import org.mockito.Mockito
+import java.net.DatagramPacket
+import java.net.DatagramSocket
+import java.net.InetAddress
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.concurrent.thread
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Send data packets to a local UDP socket acting as SRT server.
+ */
+class PacingTest {
+
+  private lateinit var timeUtilsMock: MockedStatic<TimeUtils>
+  private val server = DatagramSocket(0, InetAddress.getLoopbackAddress())
+  private val received = AtomicInteger(0)
+  private val payload = ByteArray(1316)
+
+  @Before
+  fun setup() {
+    timeUtilsMock = Mockito.mockStatic(TimeUtils::class.java)
+    timeUtilsMock.`when`<Long>(TimeUtils::getCurrentTimeNano).thenAnswer { System.nanoTime() }
+    server.soTimeout = 2000
+    thread {
+      val buffer = ByteArray(1500)
+      runCatching {
+        while (true) {
+          server.receive(DatagramPacket(buffer, buffer.size))
+          received.incrementAndGet()
+        }
+      }
+    }
+  }
+
+  @After
+  fun teardown() {
+    server.close()
+    timeUtilsMock.close()
+  }
+
+  private suspend fun send(commandsManager: CommandsManager, packets: Int): Long {
+    val socket = SrtSocket(SocketType.JAVA, "127.0.0.1", server.localPort, 2000)
+    socket.connect()
+    val startTime = System.nanoTime()
+    repeat(packets) {
+      commandsManager.waitToSend(SrtPacket.headerSize + payload.size)
+      commandsManager.writeData(MpegTsPacket(payload, MpegType.VIDEO, PacketPosition.SINGLE, false), socket)
+    }
+    val elapsed = System.nanoTime() - startTime
+    socket.close()
+    return elapsed
+  }
+
+  @Test
+  fun `GIVEN a max bandwidth WHEN send to server THEN packets are spaced at sending rate`() = runBlocking {
+    val commandsManager = CommandsManager()
+    commandsManager.congestionController = LiveCongestionController(overhead = 0)
+    commandsManager.maxBandwidth = 2_000_000
+    commandsManager.configureCongestionControl()
+    assertEquals(2_000_000, commandsManager.congestionController.sendingRate)
+    //100 packets of 1332 bytes at 2Mbps need 532ms, minus the initial burst
+    val elapsed = send(commandsManager, 100)
+    assertTrue("elapsed ${elapsed / 1_000_000}ms", elapsed >= 450_000_000)
+    Thread.sleep(100)
+    assertEquals(100, received.get())
+  }
+
+  @Test
+  fun `GIVEN a congestion warning WHEN send to server THEN packets are sent slower`() = runBlocking {
+    val commandsManager = CommandsManager()
+    commandsManager.congestionController = LiveCongestionController(overhead = 0)
+    commandsManager.maxBandwidth = 4_000_000
+    commandsManager.configureCongestionControl()
+    commandsManager.onCongestionWarning()
+    assertEquals(3_500_000, commandsManager.congestionController.sendingRate)
+    //100 packets of 1332 bytes at 3.5Mbps need 304ms, at 4Mbps 266ms
+    val elapsed = send(commandsManager, 100)
+    assertTrue("elapsed ${elapsed / 1_000_000}ms", elapsed >= 280_000_000)
+  }
+
+  @Test
+  fun `GIVEN no bandwidth info WHEN send to server THEN packets are not paced`() = runBlocking {
+    val commandsManager = CommandsManager()
+    commandsManager.configureCongestionControl()
+    assertEquals(0, commandsManager.congestionController.sendingRate)
+    send(commandsManager, 100)
+    Thread.sleep(100)
+    assertEquals(100, received.get())
+  }
+}
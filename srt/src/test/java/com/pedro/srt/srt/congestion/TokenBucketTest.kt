@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.srt.srt.congestion
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+/**
+ * Created by pedro on 18/10/26.
+ */
+class TokenBucketTest {
+
+  private var now = 0L
+  private val tokenBucket = TokenBucket { now }
+
+  @Test
+  fun `GIVEN a burst size WHEN consume less than burst THEN no wait`() {
+    assertEquals(0, tokenBucket.consume(1000, 8_000_000, 3000))
+    assertEquals(0, tokenBucket.consume(1000, 8_000_000, 3000))
+    assertEquals(0, tokenBucket.consume(1000, 8_000_000, 3000))
+  }
+
+  @Test
+  fun `GIVEN an empty bucket WHEN consume THEN wait the time needed at rate`() {
+    //1 byte per micro
+    assertEquals(0, tokenBucket.consume(1000, 8_000_000, 1000))
+    assertEquals(1_000_000, tokenBucket.consume(1000, 8_000_000, 1000))
+    now += 1_000_000
+    assertEquals(1_000_000, tokenBucket.consume(1000, 8_000_000, 1000))
+    now += 2_000_000
+    assertEquals(0, tokenBucket.consume(1000, 8_000_000, 1000))
+  }
+
+  @Test
+  fun `GIVEN a long idle time WHEN consume THEN tokens are limited to burst size`() {
+    assertEquals(0, tokenBucket.consume(1000, 8_000_000, 1000))
+    now += 1_000_000_000
+    assertEquals(0, tokenBucket.consume(1000, 8_000_000, 1000))
+    assertEquals(1_000_000, tokenBucket.consume(1000, 8_000_000, 1000))
+  }
+
+  @Test
+  fun `GIVEN rate 0 WHEN consume THEN never wait`() {
+    repeat(100) { assertEquals(0, tokenBucket.consume(1500, 0, 1500)) }
+  }
+}
@@ -23,6 +23,7 @@ import com.pedro.srt.srt.packets.control.handshake.HandshakeType
 import com.pedro.srt.srt.packets.control.handshake.extension.ExtensionContentFlag
 import com.pedro.srt.srt.packets.control.handshake.extension.HandshakeExtension
 import junit.framework.TestCase.assertEquals
+import junit.framework.TestCase.assertNull
 import org.junit.Assert.assertArrayEquals
 import org.junit.Test
 import java.io.ByteArrayInputStream
@@ -86,4 +87,26 @@ class HandshakeTest {
 
     Utils.assertObjectEquals(expectedPacket, packet)
   }
-}
\ No newline at end of file
+
+  @Test
+  fun `GIVEN a conclusion response with packet filter WHEN read it THEN get the filter`() {
+    val filter = "fec,cols:10,rows:5,layout:even,arq:onreq"
+    val handshake = Handshake(
+      handshakeType = HandshakeType.CONCLUSION,
+      handshakeExtension = HandshakeExtension(path = "test", filter = filter)
+    )
+    handshake.write(2500, 0x40)
+    val packet = Handshake()
+    packet.read(ByteArrayInputStream(handshake.getData()))
+    assertEquals(filter, packet.filter)
+
+    val withoutFilter = Handshake(
+      handshakeType = HandshakeType.CONCLUSION,
+      handshakeExtension = HandshakeExtension(path = "test")
+    )
+    withoutFilter.write(2500, 0x40)
+    val packetWithoutFilter = Handshake()
+    packetWithoutFilter.read(ByteArrayInputStream(withoutFilter.getData()))
+    assertNull(packetWithoutFilter.filter)
+  }
+}
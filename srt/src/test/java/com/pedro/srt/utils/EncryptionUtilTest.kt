@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.srt.utils
+
+import com.pedro.srt.srt.packets.control.handshake.EncryptionType
+import com.pedro.srt.srt.packets.data.KeyBasedEncryption
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.ByteBuffer
+import javax.crypto.Cipher
+import javax.crypto.SecretKeyFactory
+import javax.crypto.spec.IvParameterSpec
+import javax.crypto.spec.PBEKeySpec
+import javax.crypto.spec.SecretKeySpec
+import kotlin.experimental.xor
+import kotlin.random.Random
+
+/**
+ * Created by pedro on 18/10/26.
+ */
+class EncryptionUtilTest {
+
+  private val passphrase = "1234567890abcdef"
+
+  private fun unwrapKeys(info: EncryptInfo): ByteArray {
+    val kek = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1").generateSecret(
+      PBEKeySpec(passphrase.toCharArray(), info.salt.sliceArray(8 until info.salt.size), 2048, info.keyLength * 8)
+    ).encoded
+    val cipher = Cipher.getInstance("AESWrap")
+    cipher.init(Cipher.UNWRAP_MODE, SecretKeySpec(kek, "AES"))
+    return cipher.unwrap(info.key, "AES", Cipher.SECRET_KEY).encoded
+  }
+
+  private fun referenceEncrypt(sek: ByteArray, salt: ByteArray, bytes: ByteArray, sequence: Int): ByteArray {
+    val ctr = ByteArray(16)
+    ByteBuffer.wrap(ctr, 10, 4).putInt(sequence)
+    for (i in 0 until 14) ctr[i] = (ctr[i] xor salt[i])
+    val cipher = Cipher.getInstance("AES/CTR/NoPadding")
+    cipher.init(Cipher.ENCRYPT_MODE, SecretKeySpec(sek, "AES"), IvParameterSpec(ctr))
+    return cipher.doFinal(bytes)
+  }
+
+  @Test
+  fun `GIVEN a payload WHEN encrypt in place THEN get the same result than AES CTR`() {
+    EncryptionType.entries.filter { it != EncryptionType.NONE }.forEach { type ->
+      val encryptionUtil = EncryptionUtil(type, passphrase)
+      val info = encryptionUtil.getEncryptInfo()
+      val sek = unwrapKeys(info)
+      assertEquals(info.keyLength, sek.size)
+      listOf(1316, 188, 17, 3000).forEach { size ->
+        val sequence = Random.nextInt(0, Int.MAX_VALUE)
+        val payload = Random.nextBytes(size)
+        val expected = referenceEncrypt(sek, info.salt, payload, sequence)
+        val datagram = ByteArray(size + 16)
+        payload.copyInto(datagram, 16)
+        val key = encryptionUtil.encrypt(datagram, 16, size, sequence)
+        assertEquals(KeyBasedEncryption.PAIR_KEY, key)
+        assertArrayEquals(expected, datagram.sliceArray(16 until datagram.size))
+        assertArrayEquals(expected, encryptionUtil.encrypt(payload, sequence))
+      }
+    }
+  }
+
+  @Test
+  fun `GIVEN a refresh rate WHEN encrypt packets THEN rotate keys announcing it`() {
+    val encryptionUtil = EncryptionUtil(EncryptionType.AES128, passphrase, refreshRate = 8, preAnnounce = 2)
+    val evenKey = unwrapKeys(encryptionUtil.getEncryptInfo())
+    val payload = ByteArray(188)
+    val keys = mutableListOf<KeyBasedEncryption>()
+    val announced = mutableListOf<Int>()
+    var bothKeys = byteArrayOf()
+    for (packet in 1..16) {
+      keys.add(encryptionUtil.encrypt(payload.copyOf(), 0, payload.size, packet))
+      if (encryptionUtil.pollKeyMaterialChanged()) {
+        announced.add(packet)
+        val info = encryptionUtil.getEncryptInfo()
+        if (info.keyBasedEncryption == KeyBasedEncryption.BOTH_KEYS && bothKeys.isEmpty()) bothKeys = unwrapKeys(info)
+      }
+    }
+    val even = KeyBasedEncryption.PAIR_KEY
+    val odd = KeyBasedEncryption.ODD_KEY
+    assertEquals(List(7) { even } + List(8) { odd } + listOf(even), keys)
+    //announce new key, decommission old key, announce new key
+    assertEquals(listOf(6, 10, 14), announced)
+    assertEquals(32, bothKeys.size)
+    assertArrayEquals(evenKey, bothKeys.sliceArray(0 until 16))
+    assertFalse(encryptionUtil.pollKeyMaterialChanged())
+    assertEquals(KeyBasedEncryption.BOTH_KEYS, encryptionUtil.getEncryptInfo().keyBasedEncryption)
+  }
+
+  @Test
+  fun `GIVEN a rotated key WHEN encrypt THEN use the odd key announced`() {
+    val encryptionUtil = EncryptionUtil(EncryptionType.AES128, passphrase, refreshRate = 8, preAnnounce = 2)
+    val salt = encryptionUtil.getEncryptInfo().salt
+    val payload = Random.nextBytes(1316)
+    repeat(6) { encryptionUtil.encrypt(payload.copyOf(), 0, payload.size, it) }
+    assertTrue(encryptionUtil.pollKeyMaterialChanged())
+    val oddKey = unwrapKeys(encryptionUtil.getEncryptInfo()).sliceArray(16 until 32)
+    encryptionUtil.encrypt(payload.copyOf(), 0, payload.size, 6)
+    val data = payload.copyOf()
+    assertEquals(KeyBasedEncryption.ODD_KEY, encryptionUtil.encrypt(data, 0, data.size, 100))
+    assertArrayEquals(referenceEncrypt(oddKey, salt, payload, 100), data)
+  }
+}
@@ -17,9 +17,13 @@
 package com.pedro.udp
 
 import com.pedro.common.AudioCodec
+import com.pedro.common.TimeUtils
 import com.pedro.common.VideoCodec
+import com.pedro.srt.fec.FecConfig
 import com.pedro.srt.mpeg2ts.MpegTsPacket
+import com.pedro.srt.mpeg2ts.MpegTsPacketizer
 import com.pedro.srt.utils.Constants
+import com.pedro.udp.fec.SmpteFecEncoder
 import com.pedro.udp.utils.UdpSocket
 import kotlinx.coroutines.sync.Mutex
 import kotlinx.coroutines.sync.withLock
@@ -38,16 +42,75 @@ class CommandManager {
   private val writeSync = Mutex(locked = false)
   var videoCodec = VideoCodec.H264
   var audioCodec = AudioCodec.AAC
+  //SMPTE 2022-1 FEC, media is sent as RTP and FEC packets to the column and row sockets
+  var fecConfig: FecConfig? = null
+  private var fecEncoder: SmpteFecEncoder? = null
+  var columnFecSocket: UdpSocket? = null
+  var rowFecSocket: UdpSocket? = null
+
+  /**
+   * Create the FEC encoder, must be called before write data.
+   */
+  fun configureFec() {
+    fecEncoder = fecConfig?.let { config ->
+      SmpteFecEncoder(config, MTU / MpegTsPacketizer.packetSize * MpegTsPacketizer.packetSize)
+    }
+  }
+
+  fun getFecSourcePackets(): Long = fecEncoder?.getSourcePackets() ?: 0
+
+  fun getFecPackets(): Long = fecEncoder?.getFecPackets() ?: 0
 
   @Throws(IOException::class)
   suspend fun writeData(packet: MpegTsPacket, socket: UdpSocket?): Int {
     writeSync.withLock {
-      return socket?.write(packet) ?: 0
+      val fecEncoder = fecEncoder ?: return socket?.write(packet) ?: 0
+      return writeFec(fecEncoder, packet.buffer, packet.offset, packet.length, socket)
     }
   }
 
+  /**
+   * Used by CBR mode, datagrams are sent as is because FEC can't be used with CBR.
+   */
+  @Throws(IOException::class)
+  suspend fun writeData(buffer: ByteArray, length: Int, socket: UdpSocket?): Int {
+    writeSync.withLock {
+      return socket?.write(buffer, 0, length) ?: 0
+    }
+  }
+
+  /**
+   * With FEC each packet is sent in a RTP packet followed by the FEC packets completed.
+   */
+  @Throws(IOException::class)
+  suspend fun writeDataBatch(packets: List<MpegTsPacket>, socket: UdpSocket?): Int {
+    writeSync.withLock {
+      val fecEncoder = fecEncoder ?: return socket?.writeBatch(packets) ?: 0
+      var size = 0
+      packets.forEach { packet ->
+        size += writeFec(fecEncoder, packet.buffer, packet.offset, packet.length, socket)
+      }
+      return size
+    }
+  }
+
+  /**
+   * Must be called with the write lock.
+   */
+  private suspend fun writeFec(fecEncoder: SmpteFecEncoder, buffer: ByteArray, offset: Int, length: Int, socket: UdpSocket?): Int {
+    val ts = (TimeUtils.getCurrentTimeMicro() * 9 / 100).toInt()
+    val mediaSize = fecEncoder.packMedia(buffer, offset, length, ts)
+    var size = socket?.write(fecEncoder.media, 0, mediaSize) ?: 0
+    fecEncoder.getColumnPackets().forEach { size += columnFecSocket?.write(it, 0, it.size) ?: 0 }
+    fecEncoder.getRowPackets().forEach { size += rowFecSocket?.write(it, 0, it.size) ?: 0 }
+    return size
+  }
+
   fun reset() {
     MTU = Constants.MTU
     host = ""
+    fecEncoder = null
+    columnFecSocket = null
+    rowFecSocket = null
   }
 }
\ No newline at end of file
@@ -20,16 +20,21 @@ import android.media.MediaCodec
 import android.util.Log
 import com.pedro.common.AudioCodec
 import com.pedro.common.ConnectChecker
+import com.pedro.common.QueueType
 import com.pedro.common.UrlParser
 import com.pedro.common.VideoCodec
+import com.pedro.common.base.DropPolicy
 import com.pedro.common.clone
 import com.pedro.common.frame.MediaFrame
+import com.pedro.common.frame.SharedFrame
 import com.pedro.common.onMainThread
 import com.pedro.common.socket.base.SocketType
 import com.pedro.common.socket.base.StreamSocket
 import com.pedro.common.socket.base.UdpType
 import com.pedro.common.toMediaFrameInfo
 import com.pedro.common.validMessage
+import com.pedro.srt.fec.FecConfig
+import com.pedro.udp.fec.SmpteFecEncoder
 import com.pedro.udp.utils.UdpSocket
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
@@ -71,6 +76,10 @@ class UdpClient(private val connectChecker: ConnectChecker) {
     get() = udpSender.getDroppedAudioFrames()
   val droppedVideoFrames: Long
     get() = udpSender.getDroppedVideoFrames()
+  val droppedGopFrames: Long
+    get() = udpSender.getDroppedGopFrames()
+  val purgedFrames: Long
+    get() = udpSender.getPurgedFrames()
 
   val cacheSize: Int
     get() = udpSender.getCacheSize()
@@ -121,6 +130,51 @@ class UdpClient(private val connectChecker: ConnectChecker) {
     commandManager.audioDisabled = onlyVideo
   }
 
+  /**
+   * Must be called before connect.
+   * Send the stream as RTP with SMPTE 2022-1 row/column XOR FEC. Column FEC is sent to port + 2
+   * and row FEC to port + 4. Use null to disable it.
+   * Can't be used with CBR mode, FEC packets are not included in the mux rate and would break
+   * the pacing and the PCR accuracy.
+   */
+  @Throws(IllegalStateException::class)
+  fun setFec(config: FecConfig?) {
+    if (isStreaming) return
+    if (config != null && udpSender.isCbrEnabled()) throw IllegalStateException("FEC can't be used with CBR mode")
+    commandManager.fecConfig = config
+  }
+
+  /**
+   * Media and FEC packets sent, 0 if FEC is disabled.
+   */
+  fun getFecSourcePackets(): Long = commandManager.getFecSourcePackets()
+
+  fun getFecPackets(): Long = commandManager.getFecPackets()
+
+  /**
+   * Must be called before connect.
+   * Send a constant bitrate stream of [muxRate] bits/s stuffed with null packets and paced,
+   * with PCR every [pcrInterval] millis (40 max). Use 0 to disable.
+   * [muxRate] must be higher than video and audio bitrate plus the overhead of MPEG-TS.
+   * Can't be used with FEC, see [setFec].
+   */
+  @Throws(IllegalStateException::class)
+  fun setCbrMode(muxRate: Long, pcrInterval: Int = 35, pcrDelay: Int = 500) {
+    if (isStreaming) return
+    if (muxRate > 0 && commandManager.fecConfig != null) throw IllegalStateException("CBR mode can't be used with FEC")
+    udpSender.setCbrMode(muxRate, pcrInterval, pcrDelay)
+  }
+
+  /**
+   * @return packets, null packets, PCR and discarded packets of CBR mode or null if disabled
+   */
+  fun getCbrStats() = udpSender.getCbrStats()
+
+  /**
+   * @return jitter and PCR accuracy in nanos of CBR mode or null if disabled
+   */
+  fun getCbrPacerStats() = udpSender.getCbrPacerStats()
+
   fun setReTries(reTries: Int) {
     numRetry = reTries
     this.reTries = reTries
@@ -175,6 +229,11 @@ class UdpClient(private val connectChecker: ConnectChecker) {
           val type = UdpType.getTypeByHost(host)
           socket = UdpSocket(socketType, host, type, port, socketTimeout)
           socket?.connect()
+          if (commandManager.fecConfig != null) {
+            commandManager.columnFecSocket = UdpSocket(socketType, host, type, port + SmpteFecEncoder.COLUMN_PORT_OFFSET, socketTimeout).apply { connect() }
+            commandManager.rowFecSocket = UdpSocket(socketType, host, type, port + SmpteFecEncoder.ROW_PORT_OFFSET, socketTimeout).apply { connect() }
+          }
+          commandManager.configureFec()
 
           udpSender.socket = socket
           udpSender.start()
@@ -202,6 +261,8 @@ class UdpClient(private val connectChecker: ConnectChecker) {
   private suspend fun disconnect(clear: Boolean) {
     if (isStreaming) udpSender.stop(clear)
     socket?.close()
+    commandManager.columnFecSocket?.close()
+    commandManager.rowFecSocket?.close()
     if (clear) {
       reTries = numRetry
       doingRetry = false
@@ -256,6 +317,24 @@ class UdpClient(private val connectChecker: ConnectChecker) {
     }
   }
 
+  /**
+   * Send a frame shared with other clients without copying it, see [SharedFrame]
+   */
+  fun sendVideo(frame: SharedFrame) {
+    if (!commandManager.videoDisabled) {
+      udpSender.sendSharedFrame(frame)
+    }
+  }
+
+  /**
+   * Send a frame shared with other clients without copying it, see [SharedFrame]
+   */
+  fun sendAudio(frame: SharedFrame) {
+    if (!commandManager.audioDisabled) {
+      udpSender.sendSharedFrame(frame)
+    }
+  }
+
   @Throws(IllegalArgumentException::class)
   fun hasCongestion(): Boolean {
     return hasCongestion(20f)
@@ -291,6 +370,26 @@ class UdpClient(private val connectChecker: ConnectChecker) {
     udpSender.resizeCache(newSize)
   }
 
+  /**
+   * Select the queue used to store frames until send it. Must be called while not streaming.
+   */
+  @Throws(IllegalStateException::class)
+  fun setQueueType(type: QueueType) {
+    udpSender.setQueueType(type)
+  }
+
+  fun setDropPolicy(policy: DropPolicy) {
+    udpSender.setDropPolicy(policy)
+  }
+
+  /**
+   * Max millis of stream in the queue before discard old frames when a keyframe is produced.
+   * 0 to disable. Only used with DropPolicy.GOP.
+   */
+  fun setLatencyBudget(millis: Long) {
+    udpSender.setLatencyBudget(millis)
+  }
+
   fun setLogs(enable: Boolean) {
     udpSender.setLogs(enable)
   }
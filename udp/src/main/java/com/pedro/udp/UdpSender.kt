@@ -37,8 +37,9 @@ import com.pedro.srt.mpeg2ts.psi.PsiManager
 import com.pedro.srt.mpeg2ts.service.Mpeg2TsService
 import com.pedro.srt.srt.packets.data.PacketPosition
 import com.pedro.srt.utils.Constants
-import com.pedro.srt.utils.chunkPackets
 import com.pedro.srt.utils.toCodec
+import com.pedro.udp.cbr.CbrMultiplexer
+import com.pedro.udp.cbr.CbrPacer
 import com.pedro.udp.utils.UdpSocket
 import kotlinx.coroutines.isActive
 import kotlinx.coroutines.runInterruptible
@@ -62,6 +63,33 @@ class UdpSender(
   private var audioPacket: BasePacket = AacPacket(limitSize, psiManager)
   private var videoPacket: BasePacket = H264Packet(limitSize, psiManager)
   var socket: UdpSocket? = null
+  private var cbrMultiplexer: CbrMultiplexer? = null
+  private var cbrPacer: CbrPacer? = null
+
+  /**
+   * Send a constant bitrate stream with null packets stuffing and PCR every [pcrInterval] millis.
+   * Must be called before start.
+   *
+   * @param muxRate bits per second of the output stream, 0 to disable
+   */
+  fun setCbrMode(muxRate: Long, pcrInterval: Int = 35, pcrDelay: Int = 500) {
+    if (muxRate <= 0) {
+      cbrMultiplexer = null
+      cbrPacer = null
+      return
+    }
+    val multiplexer = CbrMultiplexer(muxRate, pcrInterval, pcrDelay, packetsPerDatagram = limitSize / MpegTsPacketizer.packetSize)
+    cbrMultiplexer = multiplexer
+    cbrPacer = CbrPacer(multiplexer) { buffer, length ->
+      commandManager.writeData(buffer, length, socket)
+    }
+  }
+
+  fun isCbrEnabled(): Boolean = cbrMultiplexer != null
+
+  fun getCbrStats(): CbrMultiplexer.Stats? = cbrMultiplexer?.getStats()
+
+  fun getCbrPacerStats(): CbrPacer.Stats? = cbrPacer?.getStats()
 
   private fun setTrackConfig(videoEnabled: Boolean, audioEnabled: Boolean) {
     service.clear()
@@ -115,11 +143,22 @@ class UdpSender(
     videoPacket.setLimitSize(limitSize)
 
     setTrackConfig(!commandManager.videoDisabled, !commandManager.audioDisabled)
+    cbrMultiplexer?.let { multiplexer ->
+      multiplexer.reset()
+      multiplexer.setPcrPid(service.pcrPid?.toInt() ?: -1)
+      cbrPacer?.start { error ->
+        Log.e(TAG, "cbr send error: ", error)
+        running = false
+        onMainThread {
+          connectChecker.onConnectionFailed("Error send packet, ${error.validMessage()}")
+        }
+      }
+    }
     //send config
     val psiList = mutableListOf<Psi>(psiManager.getPat())
     psiManager.getPmt()?.let { psiList.add(it) }
     psiList.add(psiManager.getSdt())
-    val psiPacketsConfig = mpegTsPacketizer.write(psiList).chunkPackets(chunkSize).map { b ->
+    val psiPacketsConfig = mpegTsPacketizer.writePsi(psiList, chunkSize).map { b ->
       MpegTsPacket(b, MpegType.PSI, PacketPosition.SINGLE, isKey = false)
     }
     sendPackets(psiPacketsConfig, MpegType.PSI)
@@ -148,6 +187,7 @@ class UdpSender(
   }
 
   override suspend fun stopImp(clear: Boolean) {
+    cbrPacer?.stop()
     psiManager.reset()
     service.clear()
     mpegTsPacketizer.reset()
@@ -157,12 +197,12 @@ class UdpSender(
 
   private suspend fun sendPackets(packets: List<MpegTsPacket>, type: MpegType): Long {
     if (packets.isEmpty()) return 0
-    var bytesSend = 0L
-    packets.forEach { mpegTsPacket ->
-      var size = 0
-      size += commandManager.writeData(mpegTsPacket, socket)
-      bytesSend += size
-    }
+    val multiplexer = cbrMultiplexer
+    val bytesSend = if (multiplexer != null) {
+      packets.sumOf { packet ->
+        if (multiplexer.enqueue(packet.buffer, packet.offset, packet.length)) packet.length.toLong() else 0L
+      }
+    } else commandManager.writeDataBatch(packets, socket).toLong()
     if (type == MpegType.VIDEO) videoFramesSent.incrementAndGet()
     else if (type == MpegType.AUDIO) audioFramesSent.incrementAndGet()
     if (isEnableLogs) {
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.udp.cbr
+
+import com.pedro.srt.mpeg2ts.MpegTsPacketizer
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Build a constant bitrate MPEG-TS (ISO 13818-1) from the TS packets produced for each frame.
+ *
+ * The output is a sequence of datagrams with [packetsPerDatagram] TS packets sent at a fixed
+ * interval, so each packet has a fixed position in the output byte clock. Empty slots are filled
+ * with null packets (PID 0x1FFF) to keep the mux rate. PCR is derived from that byte clock:
+ * existing PCR fields are restamped and a PCR only packet is inserted in the PCR PID if no PCR
+ * was sent during [pcrInterval]. The clock is anchored to the PTS of the first PES so PCR is
+ * [pcrDelay] behind it, leaving that time to the receiver buffer.
+ *
+ * Thread safe, packets are enqueued by the sender and datagrams are taken by the pacer.
+ *
+ * @param muxRate bits per second of the output stream, must be higher than the stream bitrate
+ * @param pcrInterval max millis between PCR, 40 at most (ETSI TR 101 290)
+ * @param pcrDelay millis between PCR and PTS
+ * @param maxQueue millis of stream at mux rate buffered, packets over it are discarded
+ */
+class CbrMultiplexer(
+  val muxRate: Long,
+  pcrInterval: Int = 35,
+  private val pcrDelay: Int = 500,
+  maxQueue: Int = 1000,
+  val packetsPerDatagram: Int = 7
+) {
+
+  companion object {
+    const val NULL_PID = 0x1FFF
+    const val MAX_PCR_INTERVAL = 40
+    private const val PACKET_SIZE = MpegTsPacketizer.packetSize
+    private const val PCR_CLOCK = 27_000_000L
+    private const val PCR_WRAP = (1L shl 33) * 300
+  }
+
+  init {
+    require(muxRate >= PACKET_SIZE * 8L * packetsPerDatagram) { "mux rate too low: $muxRate" }
+  }
+
+  private val pcrIntervalPackets = maxOf(
+    muxRate * pcrInterval.coerceIn(1, MAX_PCR_INTERVAL) / 1000 / (PACKET_SIZE * 8), 1
+  )
+  private val capacity = maxOf((muxRate * maxQueue / 1000 / (PACKET_SIZE * 8)).toInt(), packetsPerDatagram)
+  private val queue = Array(capacity) { ByteArray(PACKET_SIZE) }
+  private var head = 0
+  private var queued = 0
+  private val continuity = IntArray(NULL_PID + 1) { -1 }
+  private val nullPacket = ByteArray(PACKET_SIZE) { 0xFF.toByte() }.apply {
+    this[0] = 0x47
+    this[1] = (NULL_PID shr 8).toByte()
+    this[2] = NULL_PID.toByte()
+    this[3] = 0x10
+  }
+  private val pcrPacket = ByteArray(PACKET_SIZE) { 0xFF.toByte() }
+  @Volatile
+  private var pcrPid = -1
+  //index in the output of the packet with PCR = pcrOrigin
+  private var pcrOrigin = -1L
+  private var packetIndex = 0L
+  private var lastPcrIndex = -1L
+  //stats
+  private var nullPackets = 0L
+  private var pcrPackets = 0L
+  private var droppedPackets = 0L
+  private var maxPcrIntervalPackets = 0L
+
+  val datagramSize = PACKET_SIZE * packetsPerDatagram
+
+  fun setPcrPid(pid: Int) {
+    pcrPid = pid
+  }
+
+  /**
+   * Queue the TS packets in [length] bytes of [buffer] from [offset].
+   *
+   * @return false if the queue is full and the packets were discarded
+   */
+  @Synchronized
+  fun enqueue(buffer: ByteArray, offset: Int, length: Int): Boolean {
+    val packets = length / PACKET_SIZE
+    if (queued + packets > capacity) {
+      droppedPackets += packets
+      return false
+    }
+    for (i in 0 until packets) {
+      val slot = (head + queued) % capacity
+      System.arraycopy(buffer, offset + i * PACKET_SIZE, queue[slot], 0, PACKET_SIZE)
+      queued++
+    }
+    return true
+  }
+
+  /**
+   * Write the next datagram in [output], always [datagramSize] bytes.
+   *
+   * @return position in the datagram of the last packet with PCR or -1
+   */
+  @Synchronized
+  fun nextDatagram(output: ByteArray): Int {
+    var pcrPosition = -1
+    for (i in 0 until packetsPerDatagram) {
+      val offset = i * PACKET_SIZE
+      val pid = pcrPid
+      if (pcrOrigin >= 0 && pid >= 0 && packetIndex - lastPcrIndex >= pcrIntervalPackets) {
+        writePcrPacket(output, offset, pid)
+        pcrPackets++
+        pcrPosition = i
+      } else if (queued > 0) {
+        queue[head].copyInto(output, offset)
+        head = (head + 1) % capacity
+        queued--
+        if (onPacket(output, offset)) pcrPosition = i
+      } else {
+        nullPacket.copyInto(output, offset)
+        nullPackets++
+      }
+      packetIndex++
+    }
+    return pcrPosition
+  }
+
+  /**
+   * @return nanos from the start of the output to the packet in [index] at [muxRate]
+   */
+  fun getTime(index: Long): Long = ticksOf(index, 1_000_000_000L)
+
+  /**
+   * @return PCR in 27MHz units of the packet in [index] of the output, -1 if not anchored yet
+   */
+  @Synchronized
+  fun getPcr(index: Long): Long {
+    if (pcrOrigin < 0) return -1
+    return pcrOf(index)
+  }
+
+  @Synchronized
+  fun getStats(): Stats = Stats(
+    packets = packetIndex,
+    nullPackets = nullPackets,
+    pcrPackets = pcrPackets,
+    droppedPackets = droppedPackets,
+    queuedPackets = queued,
+    maxPcrInterval = getTime(maxPcrIntervalPackets) / 1000
+  )
+
+  @Synchronized
+  fun reset() {
+    head = 0
+    queued = 0
+    continuity.fill(-1)
+    pcrOrigin = -1
+    packetIndex = 0
+    lastPcrIndex = -1
+    nullPackets = 0
+    pcrPackets = 0
+    droppedPackets = 0
+    maxPcrIntervalPackets = 0
+  }
+
+  /**
+   * @param maxPcrInterval max micros between two PCR in the output byte clock
+   */
+  data class Stats(
+    val packets: Long,
+    val nullPackets: Long,
+    val pcrPackets: Long,
+    val droppedPackets: Long,
+    val queuedPackets: Int,
+    val maxPcrInterval: Long
+  )
+
+  /**
+   * Anchor the clock, save continuity and restamp PCR of a packet taken from the queue.
+   *
+   * @return true if the packet has PCR
+   */
+  private fun onPacket(packet: ByteArray, offset: Int): Boolean {
+    val pid = ((packet[offset + 1].toInt() and 0x1F) shl 8) or (packet[offset + 2].toInt() and 0xFF)
+    val adaptationControl = (packet[offset + 3].toInt() shr 4) and 0x03
+    continuity[pid] = packet[offset + 3].toInt() and 0x0F
+    val hasAdaptation = adaptationControl and 0x02 != 0
+    val adaptationLength = if (hasAdaptation) packet[offset + 4].toInt() and 0xFF else -1
+    if (pcrOrigin < 0 && packet[offset + 1].toInt() and 0x40 != 0 && adaptationControl and 0x01 != 0) {
+      val pts = readPts(packet, offset + 4 + adaptationLength + 1)
+      if (pts >= 0) {
+        val delay = pcrDelay * (PCR_CLOCK / 1000)
+        pcrOrigin = (pts * 300 - delay - ticksOf(packetIndex, PCR_CLOCK)).mod(PCR_WRAP)
+      }
+    }
+    val hasPcr = adaptationLength >= 7 && packet[offset + 5].toInt() and 0x10 != 0
+    if (!hasPcr || pcrOrigin < 0) return false
+    writePcr(packet, offset + 6, pcrOf(packetIndex))
+    onPcr()
+    return true
+  }
+
+  private fun writePcrPacket(output: ByteArray, offset: Int, pid: Int) {
+    pcrPacket.copyInto(output, offset)
+    output[offset] = 0x47
+    output[offset + 1] = (pid shr 8).toByte()
+    output[offset + 2] = pid.toByte()
+    //adaptation field only, continuity is not incremented without payload
+    output[offset + 3] = (0x20 or maxOf(continuity[pid], 0)).toByte()
+    output[offset + 4] = (PACKET_SIZE - 5).toByte()
+    output[offset + 5] = 0x10
+    writePcr(output, offset + 6, pcrOf(packetIndex))
+    onPcr()
+  }
+
+  private fun onPcr() {
+    if (lastPcrIndex >= 0) {
+      maxPcrIntervalPackets = maxOf(maxPcrIntervalPackets, packetIndex - lastPcrIndex)
+    }
+    lastPcrIndex = packetIndex
+  }
+
+  private fun pcrOf(index: Long): Long = (pcrOrigin + ticksOf(index, PCR_CLOCK)) % PCR_WRAP
+
+  /**
+   * Time of the packet in [index] in units of a [clock] Hz clock.
+   * Split to avoid overflow in long streams.
+   */
+  private fun ticksOf(index: Long, clock: Long): Long {
+    val bits = index * PACKET_SIZE * 8
+    return bits / muxRate * clock + bits % muxRate * clock / muxRate
+  }
+
+  /**
+   * PCR base 33 bits, 6 reserved bits and PCR extension 9 bits.
+   */
+  private fun writePcr(output: ByteArray, offset: Int, pcr: Long) {
+    val base = pcr / 300
+    val extension = pcr % 300
+    output[offset] = (base shr 25).toByte()
+    output[offset + 1] = (base shr 17).toByte()
+    output[offset + 2] = (base shr 9).toByte()
+    output[offset + 3] = (base shr 1).toByte()
+    output[offset + 4] = (((base and 0x1) shl 7) or 0x7E or (extension shr 8)).toByte()
+    output[offset + 5] = extension.toByte()
+  }
+
+  /**
+   * @return PTS of the PES header in [offset] or -1 if no PES header with PTS
+   */
+  private fun readPts(packet: ByteArray, offset: Int): Long {
+    if (offset + 14 > packet.size) return -1
+    if (packet[offset].toInt() != 0 || packet[offset + 1].toInt() != 0 || packet[offset + 2].toInt() != 1) return -1
+    if (packet[offset + 7].toInt() and 0x80 == 0) return -1
+    val p = offset + 9
+    return ((packet[p].toLong() and 0x0E) shl 29) or
+        ((packet[p + 1].toLong() and 0xFF) shl 22) or
+        ((packet[p + 2].toLong() and 0xFE) shl 14) or
+        ((packet[p + 3].toLong() and 0xFF) shl 7) or
+        ((packet[p + 4].toLong() and 0xFE) shr 1)
+  }
+}
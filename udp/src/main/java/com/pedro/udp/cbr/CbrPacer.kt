@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.udp.cbr
+
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.ExecutorCoroutineDispatcher
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.cancelAndJoin
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import java.util.concurrent.Executors
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Send the datagrams of a [CbrMultiplexer] at a constant interval.
+ *
+ * Runs in a dedicated thread with absolute deadlines, so a late datagram is sent as soon as
+ * possible without moving the next ones. The thread parks until [spinThreshold] nanos before the
+ * deadline and spins the rest because park resolution is usually worse than the interval of a
+ * datagram at high mux rates.
+ *
+ * @param write send the first bytes of the array as a datagram
+ * @param clock monotonic nanos
+ */
+class CbrPacer(
+  private val multiplexer: CbrMultiplexer,
+  private val spinThreshold: Long = 200_000,
+  private val clock: () -> Long = { System.nanoTime() },
+  private val write: suspend (ByteArray, Int) -> Unit
+) {
+
+  private var dispatcher: ExecutorCoroutineDispatcher? = null
+  private var job: Job? = null
+  @Volatile
+  private var stats = Stats()
+
+  /**
+   * Start sending datagrams.
+   *
+   * @param onError called from the pacer thread if write fails, the pacer is stopped
+   */
+  fun start(onError: suspend (Throwable) -> Unit) {
+    if (job != null) return
+    stats = Stats()
+    val dispatcher = Executors.newSingleThreadExecutor { runnable ->
+      Thread(runnable, "CbrPacer").apply { priority = Thread.MAX_PRIORITY }
+    }.asCoroutineDispatcher()
+    this.dispatcher = dispatcher
+    job = CoroutineScope(dispatcher).launch {
+      val error = runCatching { run() }.exceptionOrNull()
+      if (error != null && isActive) onError(error)
+    }
+  }
+
+  suspend fun stop() {
+    job?.cancelAndJoin()
+    job = null
+    dispatcher?.close()
+    dispatcher = null
+  }
+
+  fun getStats(): Stats = stats
+
+  /**
+   * Timing of sent datagrams compared with the output byte clock, all values in nanos.
+   *
+   * @param maxJitter max delay of a datagram from its deadline
+   * @param meanJitter mean delay of datagrams from its deadline
+   * @param maxPcrError max difference between the time a PCR was sent and the time PCR indicates
+   */
+  data class Stats(
+    val datagrams: Long = 0,
+    val lateDatagrams: Long = 0,
+    val maxJitter: Long = 0,
+    val meanJitter: Long = 0,
+    val maxPcrError: Long = 0
+  )
+
+  private suspend fun CoroutineScope.run() {
+    val packetsPerDatagram = multiplexer.packetsPerDatagram
+    val datagram = ByteArray(multiplexer.datagramSize)
+    val start = clock()
+    var index = 0L
+    var late = 0L
+    var totalJitter = 0L
+    var maxJitter = 0L
+    var maxPcrError = 0L
+    while (isActive) {
+      val packetIndex = index * packetsPerDatagram
+      val deadline = start + multiplexer.getTime(packetIndex)
+      waitUntil(deadline)
+      val pcrPosition = multiplexer.nextDatagram(datagram)
+      val sendTime = clock()
+      write(datagram, datagram.size)
+      val jitter = sendTime - deadline
+      if (jitter > spinThreshold) late++
+      totalJitter += jitter
+      maxJitter = maxOf(maxJitter, jitter)
+      if (pcrPosition >= 0) {
+        //all packets of a datagram are sent at the same time
+        val pcrTime = start + multiplexer.getTime(packetIndex + pcrPosition)
+        maxPcrError = maxOf(maxPcrError, Math.abs(sendTime - pcrTime))
+      }
+      index++
+      stats = Stats(index, late, maxJitter, totalJitter / index, maxPcrError)
+    }
+  }
+
+  private fun waitUntil(deadline: Long) {
+    while (true) {
+      val remaining = deadline - clock()
+      if (remaining <= 0) return
+      if (remaining > spinThreshold) LockSupport.parkNanos(remaining - spinThreshold)
+    }
+  }
+}
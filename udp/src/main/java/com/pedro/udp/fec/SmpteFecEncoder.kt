@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.udp.fec
+
+import com.pedro.srt.fec.FecConfig
+import com.pedro.srt.fec.FecGroup
+import com.pedro.srt.fec.FecMatrix
+import kotlin.random.Random
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * SMPTE 2022-1 FEC for MPEG-TS over RTP (RFC 2250).
+ *
+ * Each datagram is sent as a RTP packet and protected by a L x D [FecMatrix]. Column FEC packets
+ * are sent to port + 2 and row FEC packets to port + 4 as RTP packets with the FEC header:
+ *
+ * 0                   1                   2                   3
+ * 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |      SNBase low bits          |        Length Recovery        |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |E| PT recovery |                    Mask                       |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |                          TS recovery                          |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |N|D|type |index|    Offset     |      NA       |SNBase ext bits|
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ *
+ * Not thread safe, the caller must synchronize the access.
+ *
+ * @param payloadSize max size of the datagrams protected
+ */
+class SmpteFecEncoder(
+  val config: FecConfig,
+  payloadSize: Int,
+  private val ssrc: Int = Random.nextInt()
+) {
+
+  companion object {
+    const val RTP_HEADER_SIZE = 12
+    const val FEC_HEADER_SIZE = 16
+    const val MP2T_PAYLOAD_TYPE = 33
+    const val FEC_PAYLOAD_TYPE = 96
+    const val COLUMN_PORT_OFFSET = 2
+    const val ROW_PORT_OFFSET = 4
+  }
+
+  /**
+   * RTP packet created in [packMedia].
+   */
+  val media = ByteArray(RTP_HEADER_SIZE + payloadSize)
+  private var mediaSequence = Random.nextInt(0, 0xFFFF)
+  private var columnSequence = Random.nextInt(0, 0xFFFF)
+  private var rowSequence = Random.nextInt(0, 0xFFFF)
+  private val columnPackets = ArrayList<ByteArray>()
+  private val rowPackets = ArrayList<ByteArray>()
+  private val matrix = FecMatrix(config, payloadSize) { group ->
+    if (group.isRow()) rowPackets.add(createPacket(group, rowSequence++))
+    else columnPackets.add(createPacket(group, columnSequence++))
+  }
+
+  /**
+   * Write in [media] the RTP packet of [length] bytes of [buffer] from [offset] and add it to
+   * the matrix. FEC packets completed are available until the next call.
+   *
+   * @param ts 90kHz timestamp
+   * @return size of the RTP packet in [media]
+   */
+  fun packMedia(buffer: ByteArray, offset: Int, length: Int, ts: Int): Int {
+    columnPackets.clear()
+    rowPackets.clear()
+    val sequence = mediaSequence and 0xFFFF
+    mediaSequence++
+    writeRtpHeader(media, MP2T_PAYLOAD_TYPE, sequence, ts, ssrc)
+    System.arraycopy(buffer, offset, media, RTP_HEADER_SIZE, length)
+    matrix.add(sequence, buffer, offset, length, ts, MP2T_PAYLOAD_TYPE)
+    return RTP_HEADER_SIZE + length
+  }
+
+  fun getColumnPackets(): List<ByteArray> = columnPackets
+
+  fun getRowPackets(): List<ByteArray> = rowPackets
+
+  fun getSourcePackets() = matrix.sourcePackets
+
+  fun getFecPackets() = matrix.fecPackets
+
+  fun reset() {
+    columnPackets.clear()
+    rowPackets.clear()
+    matrix.reset()
+  }
+
+  private fun createPacket(group: FecGroup, sequence: Int): ByteArray {
+    val packet = ByteArray(RTP_HEADER_SIZE + FEC_HEADER_SIZE + group.payloadClip.size)
+    //timestamp is not used and SSRC must be 0 in FEC streams
+    writeRtpHeader(packet, FEC_PAYLOAD_TYPE, sequence and 0xFFFF, 0, 0)
+    val offset = RTP_HEADER_SIZE
+    packet[offset] = (group.base ushr 8).toByte()
+    packet[offset + 1] = group.base.toByte()
+    packet[offset + 2] = (group.lengthClip ushr 8).toByte()
+    packet[offset + 3] = group.lengthClip.toByte()
+    packet[offset + 4] = (0x80 or (group.flagsClip and 0x7F)).toByte()
+    //mask 0
+    writeInt(packet, offset + 8, group.timestampClip)
+    //N 0, D 0 for columns and 1 for rows, type XOR and index 0
+    packet[offset + 12] = if (group.isRow()) 0x40 else 0x00
+    packet[offset + 13] = (if (group.isRow()) 1 else config.columns).toByte()
+    packet[offset + 14] = (if (group.isRow()) config.columns else config.rows).toByte()
+    //SNBase ext bits 0, 16 bits sequence numbers
+    group.payloadClip.copyInto(packet, offset + FEC_HEADER_SIZE)
+    return packet
+  }
+
+  private fun writeRtpHeader(packet: ByteArray, payloadType: Int, sequence: Int, ts: Int, ssrc: Int) {
+    packet[0] = 0x80.toByte()
+    packet[1] = payloadType.toByte()
+    packet[2] = (sequence ushr 8).toByte()
+    packet[3] = sequence.toByte()
+    writeInt(packet, 4, ts)
+    writeInt(packet, 8, ssrc)
+  }
+
+  private fun writeInt(packet: ByteArray, offset: Int, value: Int) {
+    packet[offset] = (value ushr 24).toByte()
+    packet[offset + 1] = (value ushr 16).toByte()
+    packet[offset + 2] = (value ushr 8).toByte()
+    packet[offset + 3] = value.toByte()
+  }
+}
@@ -21,6 +21,7 @@ import com.pedro.common.socket.base.StreamSocket
 import com.pedro.common.socket.base.UdpType
 import com.pedro.srt.mpeg2ts.MpegTsPacket
 import com.pedro.srt.mpeg2ts.MpegTsPacketizer
+import java.nio.ByteBuffer
 
 /**
  * Created by pedro on 6/3/24.
@@ -42,9 +43,27 @@ class UdpSocket(type: SocketType, host: String, udpType: UdpType, port: Int, tim
   fun isReachable() = socket.isReachable()
 
   suspend fun write(mpegTsPacket: MpegTsPacket): Int {
-    val buffer = mpegTsPacket.buffer
-    socket.write(buffer)
-    return buffer.size
+    socket.write(mpegTsPacket.buffer, mpegTsPacket.offset, mpegTsPacket.length)
+    return mpegTsPacket.length
+  }
+
+  suspend fun write(buffer: ByteArray, offset: Int, length: Int): Int {
+    socket.write(buffer, offset, length)
+    return length
+  }
+
+  /**
+   * Send all packets of a frame in a single batch.
+   */
+  suspend fun writeBatch(mpegTsPackets: List<MpegTsPacket>): Int {
+    var size = 0
+    val datagrams = ArrayList<ByteBuffer>(mpegTsPackets.size)
+    mpegTsPackets.forEach { mpegTsPacket ->
+      datagrams.add(ByteBuffer.wrap(mpegTsPacket.buffer, mpegTsPacket.offset, mpegTsPacket.length))
+      size += mpegTsPacket.length
+    }
+    socket.writeBatch(datagrams)
+    return size
   }
 
   suspend fun readBuffer() = socket.read()
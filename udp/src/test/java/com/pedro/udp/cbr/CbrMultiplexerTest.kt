@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.udp.cbr
+
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.net.DatagramPacket
+import java.net.DatagramSocket
+import java.net.InetAddress
+import java.net.SocketTimeoutException
+import kotlin.concurrent.thread
+
+class CbrMultiplexerTest {
+
+  private val packetSize = 188
+  private val pid = 0x100
+
+  @Test
+  fun `GIVEN a few packets WHEN take datagrams THEN stuff with null packets and send PCR from the byte clock`() {
+    val muxRate = 1_000_000L
+    val multiplexer = CbrMultiplexer(muxRate, pcrInterval = 35, pcrDelay = 500)
+    multiplexer.setPcrPid(pid)
+    val pts = 90_000L
+    val packets = createPes(pts, 10)
+    assertTrue(multiplexer.enqueue(packets, 0, packets.size))
+
+    val datagram = ByteArray(multiplexer.datagramSize)
+    val datagrams = 100
+    val pcrs = mutableListOf<Pair<Long, Long>>()
+    var payloadPackets = 0
+    var nullPackets = 0
+    for (i in 0 until datagrams) {
+      multiplexer.nextDatagram(datagram)
+      for (p in 0 until multiplexer.packetsPerDatagram) {
+        val offset = p * packetSize
+        assertEquals(0x47, datagram[offset].toInt())
+        val packetPid = ((datagram[offset + 1].toInt() and 0x1F) shl 8) or (datagram[offset + 2].toInt() and 0xFF)
+        val index = i.toLong() * multiplexer.packetsPerDatagram + p
+        if (packetPid == CbrMultiplexer.NULL_PID) nullPackets++
+        if (packetPid == pid && (datagram[offset + 3].toInt() and 0x10) != 0) payloadPackets++
+        readPcr(datagram, offset)?.let { pcrs.add(Pair(index, it)) }
+      }
+    }
+    assertEquals(10, payloadPackets)
+    val stats = multiplexer.getStats()
+    assertEquals(datagrams * 7L, stats.packets)
+    assertEquals(nullPackets.toLong(), stats.nullPackets)
+    assertEquals(stats.packets - 10 - stats.pcrPackets, stats.nullPackets)
+    assertTrue(stats.maxPcrInterval <= 40_000)
+    //first PCR in the PES, PTS - delay
+    assertEquals(Pair(0L, pts * 300 - 500 * 27_000), pcrs.first())
+    for (i in 1 until pcrs.size) {
+      val (index, pcr) = pcrs[i]
+      val (previousIndex, previousPcr) = pcrs[i - 1]
+      val expected = (index - previousIndex) * packetSize * 8 * 27_000_000 / muxRate
+      assertTrue(Math.abs(pcr - previousPcr - expected) <= 1)
+      assertTrue((index - previousIndex) * packetSize * 8 * 1000 / muxRate <= 40)
+      assertEquals(multiplexer.getPcr(index), pcr)
+    }
+  }
+
+  @Test
+  fun `GIVEN a full queue WHEN enqueue packets THEN discard them`() {
+    val multiplexer = CbrMultiplexer(1_000_000L, maxQueue = 10)
+    val packets = createPes(90_000L, 6)
+    assertTrue(multiplexer.enqueue(packets, 0, packets.size))
+    assertFalse(multiplexer.enqueue(packets, 0, packets.size))
+    assertEquals(6L, multiplexer.getStats().droppedPackets)
+    assertEquals(6, multiplexer.getStats().queuedPackets)
+  }
+
+  @Test
+  fun `GIVEN a local receiver WHEN pace datagrams THEN receive at mux rate with low jitter`() = runBlocking {
+    val muxRate = 2_000_000L
+    val multiplexer = CbrMultiplexer(muxRate)
+    multiplexer.setPcrPid(pid)
+    val packets = createPes(90_000L, 50)
+    multiplexer.enqueue(packets, 0, packets.size)
+    val receiver = DatagramSocket(0, InetAddress.getLoopbackAddress()).apply { soTimeout = 200 }
+    val sender = DatagramSocket()
+    val address = InetAddress.getLoopbackAddress()
+    var received = 0
+    var bytes = 0L
+    val receiverThread = thread {
+      val packet = DatagramPacket(ByteArray(2048), 2048)
+      try {
+        while (true) {
+          receiver.receive(packet)
+          received++
+          bytes += packet.length
+        }
+      } catch (ignored: SocketTimeoutException) { }
+    }
+    val pacer = CbrPacer(multiplexer) { buffer, length ->
+      sender.send(DatagramPacket(buffer, length, address, receiver.localPort))
+    }
+    pacer.start { }
+    Thread.sleep(1000)
+    pacer.stop()
+    receiverThread.join()
+    sender.close()
+    receiver.close()
+
+    val stats = pacer.getStats()
+    assertEquals(stats.datagrams, received.toLong())
+    assertEquals(stats.datagrams * multiplexer.datagramSize, bytes)
+    //~186 datagrams per second at 2Mbps
+    val expected = muxRate / (multiplexer.datagramSize * 8)
+    assertTrue("datagrams ${stats.datagrams}", Math.abs(stats.datagrams - expected) <= expected / 10)
+    assertTrue("mean jitter ${stats.meanJitter}", stats.meanJitter < 2_000_000)
+    assertTrue("pcr error ${stats.maxPcrError}", stats.maxPcrError < 50_000_000)
+    assertTrue(multiplexer.getStats().maxPcrInterval <= 40_000)
+  }
+
+  /**
+   * TS packets of a PES with PTS, the first with PCR.
+   */
+  private fun createPes(pts: Long, count: Int): ByteArray {
+    val buffer = ByteArray(packetSize * count) { 0xAA.toByte() }
+    for (i in 0 until count) {
+      val offset = i * packetSize
+      buffer[offset] = 0x47
+      buffer[offset + 1] = ((if (i == 0) 0x40 else 0) or (pid shr 8)).toByte()
+      buffer[offset + 2] = pid.toByte()
+      if (i == 0) {
+        buffer[offset + 3] = (0x30 or (i and 0x0F)).toByte()
+        buffer[offset + 4] = 7
+        buffer[offset + 5] = 0x10
+        //pes header after 8 bytes of adaptation field
+        val pes = offset + 12
+        buffer[pes] = 0
+        buffer[pes + 1] = 0
+        buffer[pes + 2] = 1
+        buffer[pes + 3] = 0xE0.toByte()
+        buffer[pes + 6] = 0x80.toByte()
+        buffer[pes + 7] = 0x80.toByte()
+        buffer[pes + 8] = 5
+        buffer[pes + 9] = (0x21 or ((pts shr 29).toInt() and 0x0E)).toByte()
+        buffer[pes + 10] = (pts shr 22).toByte()
+        buffer[pes + 11] = ((pts shr 14).toInt() or 0x01).toByte()
+        buffer[pes + 12] = (pts shr 7).toByte()
+        buffer[pes + 13] = ((pts shl 1).toInt() or 0x01).toByte()
+      } else {
+        buffer[offset + 3] = (0x10 or (i and 0x0F)).toByte()
+      }
+    }
+    return buffer
+  }
+
+  private fun readPcr(packet: ByteArray, offset: Int): Long? {
+    if (packet[offset + 3].toInt() and 0x20 == 0) return null
+    if ((packet[offset + 4].toInt() and 0xFF) < 7 || packet[offset + 5].toInt() and 0x10 == 0) return null
+    val p = offset + 6
+    val base = ((packet[p].toLong() and 0xFF) shl 25) or
+        ((packet[p + 1].toLong() and 0xFF) shl 17) or
+        ((packet[p + 2].toLong() and 0xFF) shl 9) or
+        ((packet[p + 3].toLong() and 0xFF) shl 1) or
+        ((packet[p + 4].toLong() and 0x80) shr 7)
+    val extension = ((packet[p + 4].toLong() and 0x01) shl 8) or (packet[p + 5].toLong() and 0xFF)
+    return base * 300 + extension
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2024 pedroSG94.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pedro.udp.fec
+
+import com.pedro.srt.fec.FecConfig
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import kotlin.experimental.xor
+
+/**
+ * Created by pedro on 18/10/26.
+ */
+class SmpteFecEncoderTest {
+
+  private val columns = 4
+  private val rows = 3
+  private val payloadSize = 7 * 188
+  private val ssrc = 0x11223344
+  private val rtpHeader = SmpteFecEncoder.RTP_HEADER_SIZE
+  private val fecHeader = SmpteFecEncoder.FEC_HEADER_SIZE
+
+  private class Result(
+    val media: List<ByteArray>,
+    val columnPackets: List<ByteArray>,
+    val rowPackets: List<ByteArray>
+  )
+
+  /**
+   * Send a full matrix, the last packet of each row is shorter than the others.
+   */
+  private fun encode(): Result {
+    val encoder = SmpteFecEncoder(FecConfig(columns, rows), payloadSize, ssrc)
+    val media = mutableListOf<ByteArray>()
+    val columnPackets = mutableListOf<ByteArray>()
+    val rowPackets = mutableListOf<ByteArray>()
+    for (i in 0 until columns * rows) {
+      val length = if (i % columns == columns - 1) 188 * (i / columns + 1) else payloadSize
+      val payload = ByteArray(length) { (it * 31 + i * 7).toByte() }
+      val size = encoder.packMedia(payload, 0, length, 3000 * i + 1)
+      media.add(encoder.media.copyOf(size))
+      columnPackets.addAll(encoder.getColumnPackets())
+      rowPackets.addAll(encoder.getRowPackets())
+    }
+    assertEquals((columns * rows).toLong(), encoder.getSourcePackets())
+    assertEquals((columns + rows).toLong(), encoder.getFecPackets())
+    return Result(media, columnPackets, rowPackets)
+  }
+
+  private fun readUInt16(packet: ByteArray, offset: Int): Int {
+    return ((packet[offset].toInt() and 0xFF) shl 8) or (packet[offset + 1].toInt() and 0xFF)
+  }
+
+  private fun readInt(packet: ByteArray, offset: Int): Int {
+    return (readUInt16(packet, offset) shl 16) or readUInt16(packet, offset + 2)
+  }
+
+  private fun sequence(packet: ByteArray) = readUInt16(packet, 2)
+
+  private fun payloadType(packet: ByteArray) = packet[1].toInt() and 0x7F
+
+  /**
+   * Rebuild the RTP packet lost using the FEC packet and the other packets of the group.
+   */
+  private fun recover(fec: ByteArray, received: List<ByteArray>, ssrc: Int, sequence: Int): ByteArray {
+    var length = readUInt16(fec, rtpHeader + 2)
+    var ptRecovery = fec[rtpHeader + 4].toInt() and 0x7F
+    var ts = readInt(fec, rtpHeader + 8)
+    val payload = fec.copyOfRange(rtpHeader + fecHeader, fec.size)
+    received.forEach { packet ->
+      length = length xor (packet.size - rtpHeader)
+      ptRecovery = ptRecovery xor payloadType(packet)
+      ts = ts xor readInt(packet, 4)
+      for (i in rtpHeader until packet.size) {
+        payload[i - rtpHeader] = payload[i - rtpHeader] xor packet[i]
+      }
+    }
+    val packet = ByteArray(rtpHeader + length)
+    packet[0] = 0x80.toByte()
+    packet[1] = ptRecovery.toByte()
+    packet[2] = (sequence ushr 8).toByte()
+    packet[3] = sequence.toByte()
+    for (i in 0 until 4) {
+      packet[4 + i] = (ts ushr (24 - i * 8)).toByte()
+      packet[8 + i] = (ssrc ushr (24 - i * 8)).toByte()
+    }
+    payload.copyInto(packet, rtpHeader, 0, length)
+    return packet
+  }
+
+  private fun assertFecHeader(fec: ByteArray, group: List<ByteArray>, isRow: Boolean) {
+    assertEquals(SmpteFecEncoder.FEC_PAYLOAD_TYPE, payloadType(fec))
+    //timestamp not used and SSRC 0
+    assertEquals(0, readInt(fec, 4))
+    assertEquals(0, readInt(fec, 8))
+    assertEquals(rtpHeader + fecHeader + payloadSize, fec.size)
+    //SNBase
+    assertEquals(sequence(group.first()), readUInt16(fec, rtpHeader))
+    //length, PT and TS recovery
+    assertEquals(group.fold(0) { acc, packet -> acc xor (packet.size - rtpHeader) }, readUInt16(fec, rtpHeader + 2))
+    val ptRecovery = group.fold(0) { acc, packet -> acc xor payloadType(packet) }
+    assertEquals(0x80 or ptRecovery, fec[rtpHeader + 4].toInt() and 0xFF)
+    assertEquals(group.fold(0) { acc, packet -> acc xor readInt(packet, 4) }, readInt(fec, rtpHeader + 8))
+    //mask
+    assertEquals(0, readInt(fec, rtpHeader + 4) and 0xFFFFFF)
+    //N 0, D 1 only for rows, type XOR and index 0
+    assertEquals(if (isRow) 0x40 else 0x00, fec[rtpHeader + 12].toInt() and 0xFF)
+    //offset and NA
+    assertEquals(if (isRow) 1 else columns, fec[rtpHeader + 13].toInt() and 0xFF)
+    assertEquals(if (isRow) columns else rows, fec[rtpHeader + 14].toInt() and 0xFF)
+    //SNBase ext bits
+    assertEquals(0, fec[rtpHeader + 15].toInt())
+  }
+
+  @Test
+  fun `GIVEN a full matrix WHEN pack media THEN write RTP packets with consecutive sequence`() {
+    val result = encode()
+    val firstSequence = sequence(result.media[0])
+    result.media.forEachIndexed { i, packet ->
+      assertEquals(0x80, packet[0].toInt() and 0xFF)
+      assertEquals(SmpteFecEncoder.MP2T_PAYLOAD_TYPE, payloadType(packet))
+      assertEquals((firstSequence + i) and 0xFFFF, sequence(packet))
+      assertEquals(3000 * i + 1, readInt(packet, 4))
+      assertEquals(ssrc, readInt(packet, 8))
+    }
+  }
+
+  @Test
+  fun `GIVEN a full matrix WHEN pack media THEN write the FEC header of rows and columns`() {
+    val result = encode()
+    assertEquals(columns, result.columnPackets.size)
+    assertEquals(rows, result.rowPackets.size)
+    val firstSequence = sequence(result.media[0])
+    result.columnPackets.forEach { fec ->
+      val column = (readUInt16(fec, rtpHeader) - firstSequence) and 0xFFFF
+      assertFecHeader(fec, (0 until rows).map { result.media[it * columns + column] }, false)
+    }
+    result.rowPackets.forEachIndexed { row, fec ->
+      assertFecHeader(fec, result.media.subList(row * columns, (row + 1) * columns), true)
+    }
+  }
+
+  @Test
+  fun `GIVEN a lost media packet WHEN recover with column or row FEC THEN get the original packet`() {
+    val result = encode()
+    val firstSequence = sequence(result.media[0])
+    for (lost in result.media.indices) {
+      val row = lost / columns
+      val column = lost % columns
+      val expected = result.media[lost]
+      val columnFec = result.columnPackets.first { ((readUInt16(it, rtpHeader) - firstSequence) and 0xFFFF) == column }
+      val columnReceived = (0 until rows).map { it * columns + column }.filter { it != lost }.map { result.media[it] }
+      assertArrayEquals(expected, recover(columnFec, columnReceived, ssrc, sequence(expected)))
+      val rowReceived = (row * columns until (row + 1) * columns).filter { it != lost }.map { result.media[it] }
+      assertArrayEquals(expected, recover(result.rowPackets[row], rowReceived, ssrc, sequence(expected)))
+    }
+  }
+}
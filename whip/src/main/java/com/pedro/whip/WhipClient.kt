@@ -4,9 +4,12 @@ import android.media.MediaCodec
 import android.util.Log
 import com.pedro.common.AudioCodec
 import com.pedro.common.ConnectChecker
+import com.pedro.common.QueueType
 import com.pedro.common.UrlParser
 import com.pedro.common.VideoCodec
+import com.pedro.common.base.DropPolicy
 import com.pedro.common.frame.MediaFrame
+import com.pedro.common.frame.SharedFrame
 import com.pedro.common.onMainThread
 import com.pedro.common.socket.base.SocketType
 import com.pedro.common.socket.base.StreamSocket
@@ -75,6 +78,10 @@ class WhipClient(private val connectChecker: ConnectChecker) {
         get() = whipSender.getDroppedAudioFrames()
     val droppedVideoFrames: Long
         get() = whipSender.getDroppedVideoFrames()
+    val droppedGopFrames: Long
+        get() = whipSender.getDroppedGopFrames()
+    val purgedFrames: Long
+        get() = whipSender.getPurgedFrames()
 
     val cacheSize: Int
         get() = whipSender.getCacheSize()
@@ -84,12 +91,36 @@ class WhipClient(private val connectChecker: ConnectChecker) {
         get() = whipSender.getSentVideoFrames()
     val bytesSend: Long
         get() = whipSender.getBytesSend()
+    val retransmittedPackets: Long
+        get() = whipSender.getRetransmittedPackets()
+    val estimatedBitrate: Long
+        get() = whipSender.getEstimatedBitrate()
     var socketTimeout = StreamSocket.DEFAULT_TIMEOUT
 
     fun addCertificates(certificates: TrustManager?) {
         commandsManager.addCertificates(certificates)
     }
 
+    /**
+     * Called when the server request a keyframe using PLI or FIR.
+     * Requests are limited to one per RTT.
+     */
+    fun setOnKeyframeRequest(callback: (() -> Unit)?) {
+        whipSender.setOnKeyframeRequest(callback)
+    }
+
+    /**
+     * Estimate the available bandwidth using transport-wide congestion control feedback (TWCC),
+     * only if the server support it. The estimation includes audio and RTP overhead.
+     * Must be called before connect.
+     *
+     * @param callback called with the estimated bitrate in bits/s, use it to configure the
+     * encoder bitrate. Null to disable the estimation
+     */
+    fun setBandwidthEstimation(startBitrate: Long, minBitrate: Long, maxBitrate: Long, callback: ((Long) -> Unit)?) {
+        whipSender.setBandwidthEstimation(startBitrate, minBitrate, maxBitrate, callback)
+    }
+
     fun setDelay(millis: Long) {
         whipSender.setDelay(millis)
     }
@@ -362,7 +393,8 @@ class WhipClient(private val connectChecker: ConnectChecker) {
                     Log.i(TAG, "dtls connected!!")
                     onMainThread { connectChecker.onConnectionSuccess() }
                     whipSender.setSocketsInfo(socket)
-                    whipSender.setCrypto(cryptoProperties[1])
+                    whipSender.setCrypto(cryptoProperties[1], cryptoProperties[3], cryptoProperties[2])
+                    whipSender.setTransportCc(commandsManager.remoteSdpInfo?.transportCcId)
                     whipSender.start()
                 }.exceptionOrNull()
                 if (error != null) {
@@ -386,7 +418,11 @@ class WhipClient(private val connectChecker: ConnectChecker) {
         val first = bytes[0].toInt() and 0xFF
         when (first) {
             in 20..63 -> dtlsTransport.enqueue(bytes)
-            in 128..191 -> { /* RTP/RTCP – ignore after DTLS */ }
+            in 128..191 -> {
+                //RFC 5761 4. RTCP packet types 192-223 when muxed with RTP, RTP is not received in a WHIP session
+                val type = if (bytes.size > 1) bytes[1].toInt() and 0xFF else 0
+                if (type in 192..223) whipSender.handleRtcp(bytes)
+            }
             else -> {
                 try {
                     val command = commandsManager.readStun(bytes)
@@ -458,6 +494,24 @@ class WhipClient(private val connectChecker: ConnectChecker) {
         }
     }
 
+    /**
+     * Send a frame shared with other clients without copying it, see [SharedFrame]
+     */
+    fun sendVideo(frame: SharedFrame) {
+        if (!commandsManager.videoDisabled) {
+            whipSender.sendSharedFrame(frame)
+        }
+    }
+
+    /**
+     * Send a frame shared with other clients without copying it, see [SharedFrame]
+     */
+    fun sendAudio(frame: SharedFrame) {
+        if (!commandsManager.audioDisabled) {
+            whipSender.sendSharedFrame(frame)
+        }
+    }
+
     @JvmOverloads
     @Throws(IllegalArgumentException::class)
     fun hasCongestion(percentUsed: Float = 20f): Boolean {
@@ -496,6 +550,26 @@ class WhipClient(private val connectChecker: ConnectChecker) {
         whipSender.resizeCache(newSize)
     }
 
+    /**
+     * Select the queue used to store frames until send it. Must be called while not streaming.
+     */
+    @Throws(IllegalStateException::class)
+    fun setQueueType(type: QueueType) {
+        whipSender.setQueueType(type)
+    }
+
+    fun setDropPolicy(policy: DropPolicy) {
+        whipSender.setDropPolicy(policy)
+    }
+
+    /**
+     * Max millis of stream in the queue before discard old frames when a keyframe is produced.
+     * 0 to disable. Only used with DropPolicy.GOP.
+     */
+    fun setLatencyBudget(millis: Long) {
+        whipSender.setLatencyBudget(millis)
+    }
+
     fun setLogs(enable: Boolean) {
         whipSender.setLogs(enable)
     }
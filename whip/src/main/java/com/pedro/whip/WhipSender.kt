@@ -3,6 +3,7 @@ package com.pedro.whip
 import android.util.Log
 import com.pedro.common.AudioCodec
 import com.pedro.common.ConnectChecker
+import com.pedro.common.TimeUtils
 import com.pedro.common.VideoCodec
 import com.pedro.common.base.BaseSender
 import com.pedro.common.frame.MediaFrame
@@ -24,31 +25,168 @@ import com.pedro.rtsp.rtp.sockets.RtpSocketTcp
 import com.pedro.rtsp.rtsp.RtpFrame
 import com.pedro.rtsp.utils.CryptoProperties
 import com.pedro.rtsp.utils.RtpConstants
+import com.pedro.whip.congestion.GccEstimator
+import com.pedro.whip.rtcp.RtcpFeedbackReader
+import com.pedro.whip.rtcp.RtpPacketHistory
+import com.pedro.whip.rtcp.SrtcpReceiver
 import com.pedro.whip.webrtc.CommandsManager
 import kotlinx.coroutines.isActive
 import java.io.IOException
 import java.nio.ByteBuffer
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.math.abs
 
 class WhipSender(
     connectChecker: ConnectChecker,
     private val commandsManager: CommandsManager
 ): BaseSender(connectChecker, "WhipSender") {
 
+    companion object {
+        //about 1 second of packets at 10 Mbps
+        private const val VIDEO_HISTORY_SIZE = 1024
+        private const val AUDIO_HISTORY_SIZE = 128
+        private const val VIDEO_NACK_FLAG = 1 shl 16
+        //used as RTT until the first receiver report with a valid RTT
+        private const val DEFAULT_RTT = 300L
+        private const val MIN_KEYFRAME_REQUEST_INTERVAL = 100L
+    }
+
     private var videoPacket: BasePacket = H264Packet(commandsManager.rtpTracks.trackVideo)
     private var audioPacket: BasePacket = AacPacket(commandsManager.rtpTracks.trackAudio)
     private var rtpSocket: BaseRtpSocket? = null
     private var baseSenderReport: BaseSenderReport? = null
+    private var udpSocket: UdpStreamSocket? = null
+    private var srtcpReceiver: SrtcpReceiver? = null
+    //packets sent, only accessed from the send loop
+    private val videoHistory = RtpPacketHistory(VIDEO_HISTORY_SIZE)
+    private val audioHistory = RtpPacketHistory(AUDIO_HISTORY_SIZE)
+    //sequences reported lost, added by the reader and resent by the send loop
+    private val pendingNacks = ConcurrentLinkedQueue<Int>()
+    private val retransmittedPackets = AtomicLong(0)
+    @Volatile
+    private var rtt = DEFAULT_RTT
+    @Volatile
+    private var rttMeasured = false
+    @Volatile
+    private var lastKeyframeRequest = 0L
+    private var onKeyframeRequest: (() -> Unit)? = null
+    //transport-wide congestion control, only used if negotiated and estimation enabled
+    private val transportSequence = AtomicInteger(0)
+    private var transportCcId: Int? = null
+    private var estimator: GccEstimator? = null
+    private var onBandwidthEstimation: ((Long) -> Unit)? = null
+    private var lastEstimationReported = 0L
+
+    private val feedbackListener = object: RtcpFeedbackReader.Listener {
+        override fun onReportBlock(ssrc: Long, lastSr: Long, delaySinceLastSr: Long) {
+            if (lastSr == 0L) return
+            //same clock used by BaseSenderReport to write NTP timestamps
+            val nanos = TimeUtils.getCurrentTimeNano()
+            val seconds = nanos / 1_000_000_000
+            val fraction = (nanos % 1_000_000_000) * 4294967296L / 1_000_000_000
+            val now = ((seconds and 0xFFFF) shl 16) or (fraction ushr 16)
+            val value = (now - lastSr - delaySinceLastSr) and 0xFFFFFFFFL
+            //negative, clock or report not valid
+            if (value >= 0x80000000L) return
+            rtt = value * 1000 / 65536
+            rttMeasured = true
+        }
+
+        override fun onNack(mediaSsrc: Long, sequence: Int) {
+            when (mediaSsrc) {
+                commandsManager.videoSsrc -> pendingNacks.add(sequence or VIDEO_NACK_FLAG)
+                commandsManager.audioSsrc -> pendingNacks.add(sequence)
+            }
+        }
+
+        override fun onKeyframeRequest(mediaSsrc: Long) {
+            if (mediaSsrc != commandsManager.videoSsrc) return
+            //one request per RTT, PLI and FIR are repeated by the receiver until a keyframe arrives
+            val now = TimeUtils.getCurrentTimeMillis()
+            if (now - lastKeyframeRequest < maxOf(rtt, MIN_KEYFRAME_REQUEST_INTERVAL)) return
+            lastKeyframeRequest = now
+            if (isEnableLogs) Log.i(TAG, "keyframe requested by receiver")
+            onKeyframeRequest?.invoke()
+        }
+
+        override fun onTransportPacket(sequence: Int, arrivalTime: Long) {
+            estimator?.onPacketFeedback(sequence, arrivalTime)
+        }
+
+        override fun onTransportFeedbackEnd() {
+            val estimator = estimator ?: return
+            estimator.rtt = rtt
+            val bitrate = estimator.onFeedback(TimeUtils.getCurrentTimeMillis())
+            //report changes bigger than 5% to avoid reconfigure the encoder too often
+            if (abs(bitrate - lastEstimationReported) * 20 > lastEstimationReported) {
+                lastEstimationReported = bitrate
+                if (isEnableLogs) Log.i(TAG, "estimated bitrate: $bitrate")
+                onBandwidthEstimation?.invoke(bitrate)
+            }
+        }
+    }
 
     @Throws(IOException::class)
     fun setSocketsInfo(socket: UdpStreamSocket) {
+        udpSocket = socket
         rtpSocket = BaseRtpSocket.getInstance(socket)
         baseSenderReport = BaseSenderReport.getInstance(commandsManager.rtpTracks, socket)
     }
 
-    fun setCrypto(properties: CryptoProperties) {
-        baseSenderReport?.setCrypto(properties)
+    /**
+     * @param properties used to encrypt RTP packets
+     * @param rtcpProperties used to encrypt RTCP packets
+     * @param remoteRtcpProperties used to decrypt RTCP packets received from the server
+     */
+    fun setCrypto(properties: CryptoProperties, rtcpProperties: CryptoProperties, remoteRtcpProperties: CryptoProperties) {
+        baseSenderReport?.setCrypto(rtcpProperties)
         videoPacket.setCryptoProperties(properties)
         audioPacket.setCryptoProperties(properties)
+        srtcpReceiver = SrtcpReceiver(remoteRtcpProperties)
+    }
+
+    fun setOnKeyframeRequest(callback: (() -> Unit)?) {
+        onKeyframeRequest = callback
+    }
+
+    fun getRetransmittedPackets(): Long = retransmittedPackets.get()
+
+    /**
+     * @param callback called with the estimated bitrate in bits/s or null to disable the estimation
+     */
+    fun setBandwidthEstimation(startBitrate: Long, minBitrate: Long, maxBitrate: Long, callback: ((Long) -> Unit)?) {
+        estimator = if (callback == null) null else GccEstimator(startBitrate, minBitrate, maxBitrate)
+        onBandwidthEstimation = callback
+    }
+
+    fun getEstimatedBitrate(): Long = estimator?.targetBitrate ?: 0
+
+    /**
+     * Write the transport-wide sequence extension negotiated with [extensionId] in all packets.
+     * Ignored if the bandwidth estimation is disabled.
+     */
+    fun setTransportCc(extensionId: Int?) {
+        transportCcId = if (estimator == null) null else extensionId
+        transportCcId?.let {
+            videoPacket.setTransportSequence(it, transportSequence)
+            audioPacket.setTransportSequence(it, transportSequence)
+        }
+    }
+
+    /**
+     * Read a SRTCP packet received from the server. Lost packets are queued to be resent by the
+     * send loop and keyframe requests are reported with the callback.
+     */
+    fun handleRtcp(buffer: ByteArray) {
+        val receiver = srtcpReceiver ?: return
+        val length = receiver.unprotect(buffer, buffer.size)
+        if (length < 0) {
+            if (isEnableLogs) Log.w(TAG, "discarded invalid SRTCP packet")
+            return
+        }
+        RtcpFeedbackReader.read(buffer, 0, length, feedbackListener)
     }
 
     override fun setVideoInfo(sps: ByteBuffer, pps: ByteBuffer?, vps: ByteBuffer?) {
@@ -65,6 +203,7 @@ class WhipSender(
             VideoCodec.VP8 -> Vp8Packet(commandsManager.rtpTracks.trackVideo)
             VideoCodec.VP9 -> Vp9Packet(commandsManager.rtpTracks.trackVideo)
         }
+        transportCcId?.let { videoPacket.setTransportSequence(it, transportSequence) }
     }
 
     override fun setAudioInfo(sampleRate: Int, isStereo: Boolean) {
@@ -73,6 +212,7 @@ class WhipSender(
             AudioCodec.AAC, AudioCodec.HE_AAC -> AacPacket(commandsManager.rtpTracks.trackAudio).apply { setAudioInfo(sampleRate) }
             AudioCodec.OPUS -> OpusPacket(commandsManager.rtpTracks.trackAudio)
         }
+        transportCcId?.let { audioPacket.setTransportSequence(it, transportSequence) }
     }
 
     override suspend fun onRun() {
@@ -90,6 +230,14 @@ class WhipSender(
                         var isVideo = false
                         rtpFrames.forEach { rtpFrame ->
                             rtpSocket?.sendFrame(rtpFrame)
+                            val history = if (rtpFrame.isVideoFrame(commandsManager.rtpTracks.trackVideo)) videoHistory else audioHistory
+                            history.add(rtpFrame.buffer, rtpFrame.length)
+                            if (transportCcId != null) {
+                                val buffer = rtpFrame.buffer
+                                val offset = RtpConstants.TRANSPORT_CC_SEQUENCE_OFFSET
+                                val sequence = (buffer[offset].toInt() and 0xFF shl 8) or (buffer[offset + 1].toInt() and 0xFF)
+                                estimator?.onPacketSent(sequence, TimeUtils.getCurrentTimeMicro(), rtpFrame.length)
+                            }
                             //4 is tcp header length
                             val packetSize = (if (isTcp) rtpFrame.length + 4 else rtpFrame.length).toLong()
                             bytesSend.addAndGet(packetSize)
@@ -107,6 +255,7 @@ class WhipSender(
                             }
                         }
                         rtpSocket?.flush()
+                        retransmit()
                         if (isEnableLogs) {
                             val type = if (isVideo) "Video" else "Audio"
                             Log.i(TAG, "wrote $type packet, size $size")
@@ -126,6 +275,16 @@ class WhipSender(
     }
 
     override suspend fun stopImp(clear: Boolean) {
+        pendingNacks.clear()
+        videoHistory.clear()
+        audioHistory.clear()
+        srtcpReceiver = null
+        rtt = DEFAULT_RTT
+        rttMeasured = false
+        lastKeyframeRequest = 0L
+        retransmittedPackets.set(0)
+        estimator?.reset()
+        lastEstimationReported = 0L
         baseSenderReport?.reset()
         baseSenderReport?.close()
         rtpSocket?.close()
@@ -133,6 +292,32 @@ class WhipSender(
         videoPacket.reset()
     }
 
+    override fun getRtt(): Long = if (rttMeasured) rtt else -1
+
+    /**
+     * Loss of the last transport feedback interval, only known if the estimation is enabled.
+     */
+    override fun getPacketLoss(): Float = estimator?.lossRatio?.toFloat() ?: -1f
+
+    /**
+     * Resend packets reported lost that are still in the history. Packets are resent as they were
+     * sent the first time, the SRTP replay protection of the receiver only discards it if the
+     * original packet arrived.
+     */
+    private suspend fun retransmit() {
+        while (true) {
+            val nack = pendingNacks.poll() ?: return
+            val history = if (nack and VIDEO_NACK_FLAG != 0) videoHistory else audioHistory
+            val slot = history.find(nack and 0xFFFF)
+            if (slot == -1) continue
+            val length = history.getLength(slot)
+            udpSocket?.write(history.getBuffer(slot), 0, length)
+            bytesSend.addAndGet(length.toLong())
+            bytesSendPerSecond.addAndGet(length.toLong())
+            retransmittedPackets.incrementAndGet()
+        }
+    }
+
     private suspend fun getRtpPackets(mediaFrame: MediaFrame?, callback: suspend (List<RtpFrame>) -> Unit) {
         if (mediaFrame == null) return
         when (mediaFrame.type) {
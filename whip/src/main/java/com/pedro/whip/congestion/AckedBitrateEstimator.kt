@@ -0,0 +1,52 @@
+/*
+ *
+ *  * Copyright (C) 2024 pedroSG94.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.pedro.whip.congestion
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Bitrate received by the server, calculated with the size and arrival time of the packets
+ * reported in the transport-wide feedback over windows of [windowSize] micros.
+ */
+class AckedBitrateEstimator(private val windowSize: Long = 500_000) {
+
+  private var windowStart = -1L
+  private var windowBytes = 0L
+  //bits/s, 0 until the first window is completed
+  var bitrate = 0L
+    private set
+
+  fun update(arrivalTime: Long, size: Int) {
+    if (windowStart == -1L) windowStart = arrivalTime
+    val elapsed = arrivalTime - windowStart
+    if (elapsed >= windowSize) {
+      val sample = windowBytes * 8 * 1_000_000 / elapsed
+      bitrate = if (bitrate == 0L) sample else (bitrate + sample) / 2
+      windowStart = arrivalTime
+      windowBytes = 0
+    }
+    windowBytes += size
+  }
+
+  fun reset() {
+    windowStart = -1L
+    windowBytes = 0
+    bitrate = 0
+  }
+}
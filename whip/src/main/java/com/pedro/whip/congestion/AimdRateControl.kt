@@ -0,0 +1,108 @@
+/*
+ *
+ *  * Copyright (C) 2024 pedroSG94.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.pedro.whip.congestion
+
+import kotlin.math.pow
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Rate controller driven by the delay based detector. draft-ietf-rmcat-gcc-02 5.5
+ *
+ * - Overuse: decrease to 85% of the bitrate received by the server.
+ * - Underuse: hold, the queue is draining.
+ * - Normal: increase 8% per second or, near the link capacity measured in the last decreases,
+ * about one packet per response time.
+ *
+ * All times are in millis and bitrates in bits/s.
+ */
+class AimdRateControl(
+  private val startBitrate: Long,
+  private val minBitrate: Long,
+  private val maxBitrate: Long
+) {
+
+  private enum class State {
+    HOLD, INCREASE, DECREASE
+  }
+
+  companion object {
+    private const val BETA = 0.85
+    private const val MULTIPLICATIVE_INCREASE = 1.08
+    private const val PACKET_SIZE_BITS = 1200 * 8
+    private const val MIN_ADDITIVE_INCREASE = 4000.0
+  }
+
+  private var state = State.INCREASE
+  private var lastUpdate = -1L
+  private var lastDecrease = -1L
+  //bitrate received when the last decreases were triggered, -1 if unknown
+  private var linkCapacity = -1.0
+  var bitrate = startBitrate
+    private set
+
+  fun update(usage: DelayBasedEstimator.Usage, ackedBitrate: Long, now: Long, rtt: Long): Long {
+    when (usage) {
+      DelayBasedEstimator.Usage.OVERUSE -> state = State.DECREASE
+      DelayBasedEstimator.Usage.UNDERUSE -> state = State.HOLD
+      DelayBasedEstimator.Usage.NORMAL -> if (state == State.HOLD) state = State.INCREASE
+    }
+    val elapsed = if (lastUpdate == -1L) 0L else minOf(now - lastUpdate, 1000L)
+    when (state) {
+      State.INCREASE -> {
+        //the capacity changed, measure it again
+        if (linkCapacity > 0 && ackedBitrate > linkCapacity * 1.5) linkCapacity = -1.0
+        bitrate = if (linkCapacity > 0) {
+          val responseTime = rtt + 100
+          val increase = maxOf(MIN_ADDITIVE_INCREASE, PACKET_SIZE_BITS * 1000.0 / responseTime)
+          bitrate + (increase * elapsed / 1000).toLong()
+        } else {
+          val increase = MULTIPLICATIVE_INCREASE.pow(elapsed / 1000.0)
+          maxOf((bitrate * increase).toLong(), bitrate + 1000)
+        }
+      }
+      State.DECREASE -> {
+        //one decrease per RTT, the queue needs time to drain
+        val decreaseInterval = rtt.coerceIn(10, 200)
+        if (lastDecrease == -1L || now - lastDecrease >= decreaseInterval) {
+          val base = if (ackedBitrate > 0) ackedBitrate else bitrate
+          bitrate = minOf(bitrate, (base * BETA).toLong())
+          linkCapacity = if (linkCapacity < 0 || ackedBitrate <= 0) ackedBitrate.toDouble()
+          else 0.95 * linkCapacity + 0.05 * ackedBitrate
+          lastDecrease = now
+        }
+        state = State.HOLD
+      }
+      State.HOLD -> { }
+    }
+    //avoid increase far above the bitrate that the encoder really produce
+    if (ackedBitrate > 0) bitrate = minOf(bitrate, (ackedBitrate * 1.5).toLong() + 10_000)
+    bitrate = bitrate.coerceIn(minBitrate, maxBitrate)
+    lastUpdate = now
+    return bitrate
+  }
+
+  fun reset() {
+    state = State.INCREASE
+    lastUpdate = -1L
+    lastDecrease = -1L
+    linkCapacity = -1.0
+    bitrate = startBitrate
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ *
+ *  * Copyright (C) 2024 pedroSG94.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.pedro.whip.congestion
+
+import kotlin.math.abs
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Detect if the network queue is growing using the one way delay variation of the packets.
+ * draft-ietf-rmcat-gcc-02 5
+ *
+ * Packets sent in bursts of [BURST_TIME] are grouped. For each pair of groups the delay variation
+ * is the difference between the arrival delta and the send delta. The accumulated variation is
+ * smoothed and a trendline is calculated with the last [WINDOW_SIZE] groups. A positive trend
+ * means that packets are waiting in a queue. The trend is compared with an adaptive threshold to
+ * know if the network is overused, underused or normal.
+ *
+ * All times are in micros.
+ */
+class DelayBasedEstimator {
+
+  enum class Usage {
+    NORMAL, OVERUSE, UNDERUSE
+  }
+
+  companion object {
+    private const val BURST_TIME = 5_000L
+    private const val WINDOW_SIZE = 20
+    private const val SMOOTHING = 0.9
+    private const val THRESHOLD_GAIN = 4.0
+    private const val MAX_DELTAS = 60
+    private const val OVERUSE_TIME = 10.0
+    private const val INITIAL_THRESHOLD = 12.5
+    private const val MIN_THRESHOLD = 6.0
+    private const val MAX_THRESHOLD = 600.0
+    private const val THRESHOLD_UP = 0.0087
+    private const val THRESHOLD_DOWN = 0.039
+    private const val MAX_THRESHOLD_DIFF = 15.0
+  }
+
+  //current group of packets
+  private var groupFirstSend = -1L
+  private var groupLastSend = 0L
+  private var groupLastArrival = 0L
+  private var previousGroupSend = -1L
+  private var previousGroupArrival = 0L
+  //trendline
+  private var firstArrival = -1L
+  private var numDeltas = 0
+  private var accumulatedDelay = 0.0
+  private var smoothedDelay = 0.0
+  private val arrivalTimes = DoubleArray(WINDOW_SIZE)
+  private val smoothedDelays = DoubleArray(WINDOW_SIZE)
+  private var samples = 0
+  private var sampleIndex = 0
+  //overuse detector
+  private var threshold = INITIAL_THRESHOLD
+  private var lastThresholdUpdate = -1L
+  private var overuseTime = -1.0
+  private var overuseCounter = 0
+  private var previousTrend = 0.0
+  var usage = Usage.NORMAL
+    private set
+
+  /**
+   * Packets must be reported in send order.
+   */
+  fun onPacket(sendTime: Long, arrivalTime: Long) {
+    if (groupFirstSend == -1L) {
+      startGroup(sendTime, arrivalTime)
+      return
+    }
+    if (sendTime - groupFirstSend <= BURST_TIME) {
+      groupLastSend = maxOf(groupLastSend, sendTime)
+      groupLastArrival = maxOf(groupLastArrival, arrivalTime)
+      return
+    }
+    if (previousGroupSend != -1L) {
+      val sendDelta = groupLastSend - previousGroupSend
+      val arrivalDelta = groupLastArrival - previousGroupArrival
+      updateTrend(sendDelta, arrivalDelta, groupLastArrival)
+    }
+    previousGroupSend = groupLastSend
+    previousGroupArrival = groupLastArrival
+    startGroup(sendTime, arrivalTime)
+  }
+
+  fun reset() {
+    groupFirstSend = -1L
+    previousGroupSend = -1L
+    firstArrival = -1L
+    numDeltas = 0
+    accumulatedDelay = 0.0
+    smoothedDelay = 0.0
+    samples = 0
+    sampleIndex = 0
+    threshold = INITIAL_THRESHOLD
+    lastThresholdUpdate = -1L
+    overuseTime = -1.0
+    overuseCounter = 0
+    previousTrend = 0.0
+    usage = Usage.NORMAL
+  }
+
+  private fun startGroup(sendTime: Long, arrivalTime: Long) {
+    groupFirstSend = sendTime
+    groupLastSend = sendTime
+    groupLastArrival = arrivalTime
+  }
+
+  private fun updateTrend(sendDelta: Long, arrivalDelta: Long, arrivalTime: Long) {
+    val delayVariation = (arrivalDelta - sendDelta) / 1000.0
+    numDeltas = minOf(numDeltas + 1, MAX_DELTAS)
+    accumulatedDelay += delayVariation
+    smoothedDelay = SMOOTHING * smoothedDelay + (1 - SMOOTHING) * accumulatedDelay
+    if (firstArrival == -1L) firstArrival = arrivalTime
+    arrivalTimes[sampleIndex] = (arrivalTime - firstArrival) / 1000.0
+    smoothedDelays[sampleIndex] = smoothedDelay
+    sampleIndex = (sampleIndex + 1) % WINDOW_SIZE
+    if (samples < WINDOW_SIZE) samples++
+    val trend = if (samples == WINDOW_SIZE) calculateSlope() else previousTrend
+    detect(trend, sendDelta / 1000.0, arrivalTime)
+  }
+
+  /**
+   * Slope of the linear regression of the smoothed delay over the arrival time.
+   */
+  private fun calculateSlope(): Double {
+    var meanX = 0.0
+    var meanY = 0.0
+    for (i in 0 until samples) {
+      meanX += arrivalTimes[i]
+      meanY += smoothedDelays[i]
+    }
+    meanX /= samples
+    meanY /= samples
+    var numerator = 0.0
+    var denominator = 0.0
+    for (i in 0 until samples) {
+      val x = arrivalTimes[i] - meanX
+      numerator += x * (smoothedDelays[i] - meanY)
+      denominator += x * x
+    }
+    return if (denominator == 0.0) previousTrend else numerator / denominator
+  }
+
+  private fun detect(trend: Double, sendDelta: Double, now: Long) {
+    val modifiedTrend = numDeltas * trend * THRESHOLD_GAIN
+    if (modifiedTrend > threshold) {
+      overuseTime = if (overuseTime == -1.0) sendDelta / 2 else overuseTime + sendDelta
+      overuseCounter++
+      //the queue must grow during some time, a single delayed group is not overuse
+      if (overuseTime > OVERUSE_TIME && overuseCounter > 1 && trend >= previousTrend) {
+        overuseTime = 0.0
+        overuseCounter = 0
+        usage = Usage.OVERUSE
+      }
+    } else if (modifiedTrend < -threshold) {
+      overuseTime = -1.0
+      overuseCounter = 0
+      usage = Usage.UNDERUSE
+    } else {
+      overuseTime = -1.0
+      overuseCounter = 0
+      usage = Usage.NORMAL
+    }
+    previousTrend = trend
+    updateThreshold(modifiedTrend, now)
+  }
+
+  /**
+   * The threshold follow the trend slowly so the detector is not starved by concurrent TCP flows
+   * and it is not triggered by noise. draft-ietf-rmcat-gcc-02 5.4
+   */
+  private fun updateThreshold(modifiedTrend: Double, now: Long) {
+    if (lastThresholdUpdate == -1L) lastThresholdUpdate = now
+    val absTrend = abs(modifiedTrend)
+    //spikes are ignored
+    if (absTrend > threshold + MAX_THRESHOLD_DIFF) {
+      lastThresholdUpdate = now
+      return
+    }
+    val gain = if (absTrend < threshold) THRESHOLD_DOWN else THRESHOLD_UP
+    val elapsed = minOf(now - lastThresholdUpdate, 100_000L) / 1000.0
+    threshold = (threshold + gain * (absTrend - threshold) * elapsed).coerceIn(MIN_THRESHOLD, MAX_THRESHOLD)
+    lastThresholdUpdate = now
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ *
+ *  * Copyright (C) 2024 pedroSG94.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.pedro.whip.congestion
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Sender side bandwidth estimation using transport-wide congestion control feedback.
+ * Similar to Google Congestion Control, draft-ietf-rmcat-gcc-02.
+ *
+ * Packets sent are registered with [onPacketSent], the feedback of each packet is reported with
+ * [onPacketFeedback] and [onFeedback] is called at the end of each feedback to calculate the new
+ * target bitrate. The target is the minimum of the delay based and loss based estimations.
+ *
+ * Packets are registered from the sender thread and the feedback from the reader thread so all
+ * methods are synchronized.
+ *
+ * @param startBitrate bits/s used until the first estimation
+ */
+class GccEstimator(
+  startBitrate: Long,
+  private val minBitrate: Long,
+  private val maxBitrate: Long
+) {
+
+  private val startBitrate = startBitrate.coerceIn(minBitrate, maxBitrate)
+  private val sentPackets = SentPacketHistory()
+  private val ackedBitrateEstimator = AckedBitrateEstimator()
+  private val delayBasedEstimator = DelayBasedEstimator()
+  private val rateControl = AimdRateControl(this.startBitrate, minBitrate, maxBitrate)
+  private val lossBasedEstimator = LossBasedEstimator(this.startBitrate, minBitrate, maxBitrate)
+  //millis
+  @Volatile
+  var rtt = 100L
+  @Volatile
+  var targetBitrate = this.startBitrate
+    private set
+
+  val ackedBitrate: Long
+    @Synchronized get() = ackedBitrateEstimator.bitrate
+  val lossRatio: Double
+    @Synchronized get() = lossBasedEstimator.lossRatio
+
+  /**
+   * @param sendTime micros
+   */
+  @Synchronized
+  fun onPacketSent(sequence: Int, sendTime: Long, size: Int) {
+    sentPackets.add(sequence, sendTime, size)
+  }
+
+  /**
+   * @param arrivalTime micros from a receiver reference or -1 if the packet was not received
+   */
+  @Synchronized
+  fun onPacketFeedback(sequence: Int, arrivalTime: Long) {
+    val slot = sentPackets.find(sequence)
+    if (slot == -1) return
+    val report = sentPackets.getReport(slot)
+    if (report == SentPacketHistory.REPORTED_RECEIVED) return
+    if (arrivalTime < 0) {
+      if (report == SentPacketHistory.NOT_REPORTED) {
+        lossBasedEstimator.onPacket(isLost = true)
+        sentPackets.setReport(slot, SentPacketHistory.REPORTED_LOST)
+      }
+      return
+    }
+    if (report == SentPacketHistory.REPORTED_LOST) lossBasedEstimator.onLostPacketReceived()
+    sentPackets.setReport(slot, SentPacketHistory.REPORTED_RECEIVED)
+    lossBasedEstimator.onPacket(isLost = false)
+    ackedBitrateEstimator.update(arrivalTime, sentPackets.getSize(slot))
+    delayBasedEstimator.onPacket(sentPackets.getSendTime(slot), arrivalTime)
+  }
+
+  /**
+   * @param now millis
+   * @return new target bitrate in bits/s
+   */
+  @Synchronized
+  fun onFeedback(now: Long): Long {
+    val ackedBitrate = ackedBitrateEstimator.bitrate
+    val delayBased = rateControl.update(delayBasedEstimator.usage, ackedBitrate, now, rtt)
+    val lossBased = lossBasedEstimator.update(now, rtt, targetBitrate)
+    targetBitrate = minOf(delayBased, lossBased)
+    return targetBitrate
+  }
+
+  @Synchronized
+  fun reset() {
+    sentPackets.clear()
+    ackedBitrateEstimator.reset()
+    delayBasedEstimator.reset()
+    rateControl.reset()
+    lossBasedEstimator.reset()
+    rtt = 100L
+    targetBitrate = startBitrate
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ *
+ *  * Copyright (C) 2024 pedroSG94.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.pedro.whip.congestion
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Bitrate controller driven by the packet loss reported in the transport-wide feedback.
+ * draft-ietf-rmcat-gcc-02 6
+ *
+ * - Loss < 2%: increase 8% per second from the current target.
+ * - Loss > 10%: decrease by half of the loss, once per RTT plus 300ms.
+ * - Otherwise hold.
+ *
+ * All times are in millis and bitrates in bits/s.
+ */
+class LossBasedEstimator(
+  private val startBitrate: Long,
+  private val minBitrate: Long,
+  private val maxBitrate: Long
+) {
+
+  companion object {
+    //packets needed to calculate a loss ratio representative
+    private const val MIN_PACKETS = 20
+    private const val LOW_LOSS = 0.02
+    private const val HIGH_LOSS = 0.1
+  }
+
+  private var lost = 0
+  private var received = 0
+  private var lastIncrease = -1L
+  private var lastDecrease = -1L
+  var bitrate = startBitrate
+    private set
+  var lossRatio = 0.0
+    private set
+
+  fun onPacket(isLost: Boolean) {
+    if (isLost) lost++ else received++
+  }
+
+  /**
+   * Packets lost are reported lost again if they are received later.
+   */
+  fun onLostPacketReceived() {
+    if (lost > 0) lost--
+  }
+
+  /**
+   * @param targetBitrate bitrate used by the sender, used as base to increase
+   */
+  fun update(now: Long, rtt: Long, targetBitrate: Long): Long {
+    val total = lost + received
+    if (total < MIN_PACKETS) return bitrate
+    lossRatio = lost.toDouble() / total
+    lost = 0
+    received = 0
+    if (lossRatio < LOW_LOSS) {
+      if (lastIncrease == -1L || now - lastIncrease >= 1000) {
+        bitrate = (minOf(bitrate, targetBitrate) * 1.08).toLong() + 1000
+        lastIncrease = now
+      }
+    } else if (lossRatio > HIGH_LOSS) {
+      if (lastDecrease == -1L || now - lastDecrease >= rtt + 300) {
+        bitrate = (bitrate * (1 - 0.5 * lossRatio)).toLong()
+        lastDecrease = now
+      }
+    }
+    bitrate = bitrate.coerceIn(minBitrate, maxBitrate)
+    return bitrate
+  }
+
+  fun reset() {
+    lost = 0
+    received = 0
+    lastIncrease = -1L
+    lastDecrease = -1L
+    bitrate = startBitrate
+    lossRatio = 0.0
+  }
+}
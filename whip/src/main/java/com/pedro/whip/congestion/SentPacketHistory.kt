@@ -0,0 +1,74 @@
+/*
+ *
+ *  * Copyright (C) 2024 pedroSG94.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.pedro.whip.congestion
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Send time and size of the last packets sent indexed by transport-wide sequence number, used to
+ * match the transport-wide feedback with the packets sent.
+ *
+ * Each packet is reported as received only once, a packet reported lost can be reported later
+ * as received if the feedback arrived before the packet.
+ *
+ * Not thread safe, the caller must synchronize the access.
+ */
+class SentPacketHistory(capacity: Int = 1 shl 12) {
+
+  companion object {
+    const val NOT_REPORTED = 0
+    const val REPORTED_LOST = 1
+    const val REPORTED_RECEIVED = 2
+  }
+
+  val capacity = if (capacity <= 1) 1 else minOf(Integer.highestOneBit(capacity - 1) shl 1, 1 shl 16)
+  private val mask = this.capacity - 1
+  private val sequences = IntArray(this.capacity) { -1 }
+  private val sendTimes = LongArray(this.capacity)
+  private val sizes = IntArray(this.capacity)
+  private val reports = IntArray(this.capacity)
+
+  fun add(sequence: Int, sendTime: Long, size: Int) {
+    val slot = sequence and mask
+    sequences[slot] = sequence
+    sendTimes[slot] = sendTime
+    sizes[slot] = size
+    reports[slot] = NOT_REPORTED
+  }
+
+  /**
+   * @return the slot of the packet with [sequence] or -1 if it is not in the history
+   */
+  fun find(sequence: Int): Int {
+    val slot = sequence and mask
+    return if (sequences[slot] == sequence) slot else -1
+  }
+
+  fun getSendTime(slot: Int): Long = sendTimes[slot]
+  fun getSize(slot: Int): Int = sizes[slot]
+  fun getReport(slot: Int): Int = reports[slot]
+
+  fun setReport(slot: Int, report: Int) {
+    reports[slot] = report
+  }
+
+  fun clear() {
+    sequences.fill(-1)
+  }
+}
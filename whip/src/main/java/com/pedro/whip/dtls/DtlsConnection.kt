@@ -202,19 +202,23 @@ class DtlsConnection(
     System.arraycopy(keys, offs, serverMasterKey, 0, keyLength); offs += keyLength
     System.arraycopy(keys, offs, clientMasterSalt, 0, saltLength); offs += saltLength
     System.arraycopy(keys, offs, serverMasterSalt, 0, saltLength)
+    // [client SRTP, server SRTP, client SRTCP, server SRTCP]
     return listOf(
-      deriveCryptoProperties(clientMasterKey, clientMasterSalt),
-      deriveCryptoProperties(serverMasterKey, serverMasterSalt)
+      deriveCryptoProperties(clientMasterKey, clientMasterSalt, 0x00),
+      deriveCryptoProperties(serverMasterKey, serverMasterSalt, 0x00),
+      deriveCryptoProperties(clientMasterKey, clientMasterSalt, 0x03),
+      deriveCryptoProperties(serverMasterKey, serverMasterSalt, 0x03)
     )
   }
 
   // RFC 3711 4.3.1: derive SRTP session keys from master key + master salt via AES-CM PRF.
-  // label 0x00 → cipher key, 0x01 → auth key, 0x02 → session salt
+  // SRTP labels: 0x00 → cipher key, 0x01 → auth key, 0x02 → session salt
+  // SRTCP labels: 0x03 → cipher key, 0x04 → auth key, 0x05 → session salt
   // x = master_salt with byte[7] XOR'd with the label (label * 2^48 in 112-bit representation)
-  private fun deriveCryptoProperties(masterKey: ByteArray, masterSalt: ByteArray): CryptoProperties {
-    val cipherKey = deriveKey(masterKey, masterSalt, 0x00.toByte(), 16)
-    val authKey = deriveKey(masterKey, masterSalt, 0x01.toByte(), 20)
-    val salt = deriveKey(masterKey, masterSalt, 0x02.toByte(), 14)
+  private fun deriveCryptoProperties(masterKey: ByteArray, masterSalt: ByteArray, firstLabel: Int): CryptoProperties {
+    val cipherKey = deriveKey(masterKey, masterSalt, firstLabel.toByte(), 16)
+    val authKey = deriveKey(masterKey, masterSalt, (firstLabel + 1).toByte(), 20)
+    val salt = deriveKey(masterKey, masterSalt, (firstLabel + 2).toByte(), 14)
     return CryptoProperties(authKey, cipherKey, salt)
   }
 
@@ -0,0 +1,225 @@
+/*
+ *
+ *  * Copyright (C) 2024 pedroSG94.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.pedro.whip.rtcp
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Read a decrypted RTCP compound packet and report the feedback useful for a sender:
+ * - Report blocks of SR (200) and RR (201), used to calculate RTT. RFC 3550 6.4
+ * - Generic NACK (RTPFB 205, FMT 1). RFC 4585 6.2.1
+ * - Transport-wide feedback (RTPFB 205, FMT 15). draft-holmer-rmcat-transport-wide-cc-extensions-01 3.1
+ * - PLI (PSFB 206, FMT 1). RFC 4585 6.3.1
+ * - FIR (PSFB 206, FMT 4). RFC 5104 4.3.1
+ *
+ * Other packets are ignored. Packets are read in place without allocations.
+ */
+object RtcpFeedbackReader {
+
+  private const val SR = 200
+  private const val RR = 201
+  private const val RTPFB = 205
+  private const val PSFB = 206
+  private const val FMT_NACK = 1
+  private const val FMT_TRANSPORT_CC = 15
+  private const val FMT_PLI = 1
+  private const val FMT_FIR = 4
+  private const val REPORT_BLOCK_SIZE = 24
+  private const val SENDER_INFO_SIZE = 20
+
+  interface Listener {
+    /**
+     * @param ssrc source of our stream that the block is reporting
+     * @param lastSr middle 32 bits of the NTP timestamp of the last SR received
+     * @param delaySinceLastSr delay since last SR received in units of 1/65536 seconds
+     */
+    fun onReportBlock(ssrc: Long, lastSr: Long, delaySinceLastSr: Long)
+    fun onNack(mediaSsrc: Long, sequence: Int)
+    fun onKeyframeRequest(mediaSsrc: Long)
+
+    /**
+     * Called for each packet of a transport-wide feedback in sequence order.
+     *
+     * @param arrivalTime arrival time in micros from a receiver reference or -1 if not received
+     */
+    fun onTransportPacket(sequence: Int, arrivalTime: Long) { }
+
+    /**
+     * Called after all packets of a transport-wide feedback were reported.
+     */
+    fun onTransportFeedbackEnd() { }
+  }
+
+  /**
+   * @return false if the packet is malformed. Feedback read before the error is reported anyway
+   */
+  fun read(buffer: ByteArray, offset: Int, length: Int, listener: Listener): Boolean {
+    var position = offset
+    val end = offset + length
+    while (position + 4 <= end) {
+      val version = buffer[position].toInt() and 0xFF ushr 6
+      if (version != 2) return false
+      val count = buffer[position].toInt() and 0x1F
+      val type = buffer[position + 1].toInt() and 0xFF
+      val size = (readUInt16(buffer, position + 2) + 1) * 4
+      if (position + size > end) return false
+      when (type) {
+        SR -> readReportBlocks(buffer, position + 8 + SENDER_INFO_SIZE, count, position + size, listener)
+        RR -> readReportBlocks(buffer, position + 8, count, position + size, listener)
+        RTPFB -> when {
+          count == FMT_NACK && size >= 12 -> readNack(buffer, position, size, listener)
+          count == FMT_TRANSPORT_CC && size >= 20 -> {
+            if (!readTransportFeedback(buffer, position, size, listener)) return false
+          }
+        }
+        PSFB -> if (size >= 12) {
+          when (count) {
+            FMT_PLI -> listener.onKeyframeRequest(readUInt32(buffer, position + 8))
+            FMT_FIR -> {
+              //the media source in the header is not used, each FCI entry contains the ssrc requested
+              var fci = position + 12
+              while (fci + 8 <= position + size) {
+                listener.onKeyframeRequest(readUInt32(buffer, fci))
+                fci += 8
+              }
+            }
+          }
+        }
+      }
+      position += size
+    }
+    return position == end
+  }
+
+  private fun readReportBlocks(buffer: ByteArray, start: Int, count: Int, end: Int, listener: Listener) {
+    var block = start
+    repeat(count) {
+      if (block + REPORT_BLOCK_SIZE > end) return
+      val ssrc = readUInt32(buffer, block)
+      val lastSr = readUInt32(buffer, block + 16)
+      val delaySinceLastSr = readUInt32(buffer, block + 20)
+      listener.onReportBlock(ssrc, lastSr, delaySinceLastSr)
+      block += REPORT_BLOCK_SIZE
+    }
+  }
+
+  /**
+   * Each FCI entry is a packet id (PID) and a bitmask of the following 16 lost packets (BLP).
+   */
+  private fun readNack(buffer: ByteArray, position: Int, size: Int, listener: Listener) {
+    val mediaSsrc = readUInt32(buffer, position + 8)
+    var fci = position + 12
+    while (fci + 4 <= position + size) {
+      val pid = readUInt16(buffer, fci)
+      val blp = readUInt16(buffer, fci + 2)
+      listener.onNack(mediaSsrc, pid)
+      for (i in 0 until 16) {
+        if (blp and (1 shl i) != 0) listener.onNack(mediaSsrc, (pid + i + 1) and 0xFFFF)
+      }
+      fci += 4
+    }
+  }
+
+  /**
+   * Packet status chunks are read twice, first to find where the receive deltas start and then
+   * to report each packet with its delta, so no intermediate status list is needed.
+   *
+   * @return false if chunks or deltas are out of the packet
+   */
+  private fun readTransportFeedback(buffer: ByteArray, position: Int, size: Int, listener: Listener): Boolean {
+    val end = position + size
+    val baseSequence = readUInt16(buffer, position + 12)
+    val statusCount = readUInt16(buffer, position + 14)
+    //24 bits in multiples of 64ms
+    val referenceTime = (readUInt32(buffer, position + 16) ushr 8) * 64_000
+    val chunksStart = position + 20
+    var deltasSize = 0
+    val deltasStart = forEachStatus(buffer, chunksStart, end, statusCount) { status ->
+      if (status == 1) deltasSize += 1 else if (status == 2) deltasSize += 2
+    }
+    if (deltasStart == -1 || deltasStart + deltasSize > end) return false
+    var delta = deltasStart
+    var arrivalTime = referenceTime
+    var sequence = baseSequence
+    forEachStatus(buffer, chunksStart, end, statusCount) { status ->
+      when (status) {
+        1 -> {
+          arrivalTime += (buffer[delta].toInt() and 0xFF) * 250L
+          delta += 1
+          listener.onTransportPacket(sequence, arrivalTime)
+        }
+        2 -> {
+          arrivalTime += readUInt16(buffer, delta).toShort() * 250L
+          delta += 2
+          listener.onTransportPacket(sequence, arrivalTime)
+        }
+        else -> listener.onTransportPacket(sequence, -1)
+      }
+      sequence = (sequence + 1) and 0xFFFF
+    }
+    listener.onTransportFeedbackEnd()
+    return true
+  }
+
+  /**
+   * Call [action] with the status of [count] packets described by the chunks from [start].
+   * Status: 0 not received, 1 received with small delta, 2 received with large or negative delta.
+   *
+   * @return position after the last chunk or -1 if the chunks are out of the packet
+   */
+  private inline fun forEachStatus(buffer: ByteArray, start: Int, end: Int, count: Int, action: (Int) -> Unit): Int {
+    var chunk = start
+    var remaining = count
+    while (remaining > 0) {
+      if (chunk + 2 > end) return -1
+      val value = readUInt16(buffer, chunk)
+      chunk += 2
+      if (value and 0x8000 == 0) {
+        //run length chunk: status (2 bits) and run length (13 bits)
+        val status = value ushr 13 and 0x03
+        val run = minOf(value and 0x1FFF, remaining)
+        if (run == 0) return -1
+        repeat(run) { action(status) }
+        remaining -= run
+      } else if (value and 0x4000 == 0) {
+        //status vector chunk with 14 symbols of 1 bit
+        val symbols = minOf(14, remaining)
+        for (i in 0 until symbols) action(value ushr (13 - i) and 0x01)
+        remaining -= symbols
+      } else {
+        //status vector chunk with 7 symbols of 2 bits
+        val symbols = minOf(7, remaining)
+        for (i in 0 until symbols) action(value ushr (12 - i * 2) and 0x03)
+        remaining -= symbols
+      }
+    }
+    return chunk
+  }
+
+  private fun readUInt16(buffer: ByteArray, offset: Int): Int {
+    return (buffer[offset].toInt() and 0xFF shl 8) or (buffer[offset + 1].toInt() and 0xFF)
+  }
+
+  private fun readUInt32(buffer: ByteArray, offset: Int): Long {
+    return (buffer[offset].toLong() and 0xFF shl 24) or
+        (buffer[offset + 1].toLong() and 0xFF shl 16) or
+        (buffer[offset + 2].toLong() and 0xFF shl 8) or
+        (buffer[offset + 3].toLong() and 0xFF)
+  }
+}
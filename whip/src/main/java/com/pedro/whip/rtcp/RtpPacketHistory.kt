@@ -0,0 +1,72 @@
+/*
+ *
+ *  * Copyright (C) 2024 pedroSG94.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.pedro.whip.rtcp
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Copy of the last RTP packets sent by a source, stored in a fixed ring indexed by
+ * sequence number and mask, to resend it when the receiver report it as lost with a NACK.
+ *
+ * Packets sent are pooled and reused by the packetizers so the bytes are copied in buffers
+ * owned by the history, allocated only the first time that a slot is used or when a
+ * bigger packet arrives.
+ *
+ * Not thread safe, the caller must synchronize the access.
+ */
+class RtpPacketHistory(capacity: Int) {
+
+  val capacity = if (capacity <= 1) 1 else minOf(Integer.highestOneBit(capacity - 1) shl 1, 1 shl 16)
+  private val mask = this.capacity - 1
+  private val sequences = IntArray(this.capacity) { -1 }
+  private val buffers = arrayOfNulls<ByteArray>(this.capacity)
+  private val lengths = IntArray(this.capacity)
+
+  /**
+   * Store a copy of the RTP packet, the sequence number is read from the header.
+   */
+  fun add(packet: ByteArray, length: Int) {
+    if (length < 4) return
+    val sequence = (packet[2].toInt() and 0xFF shl 8) or (packet[3].toInt() and 0xFF)
+    val slot = sequence and mask
+    var buffer = buffers[slot]
+    if (buffer == null || buffer.size < length) {
+      buffer = ByteArray(length)
+      buffers[slot] = buffer
+    }
+    packet.copyInto(buffer, 0, 0, length)
+    lengths[slot] = length
+    sequences[slot] = sequence
+  }
+
+  /**
+   * @return the slot where the packet with [sequence] is stored or -1 if it is not in the history
+   */
+  fun find(sequence: Int): Int {
+    val slot = sequence and mask
+    return if (sequences[slot] == sequence) slot else -1
+  }
+
+  fun getBuffer(slot: Int): ByteArray = buffers[slot] ?: throw IllegalStateException("empty slot $slot")
+  fun getLength(slot: Int): Int = lengths[slot]
+
+  fun clear() {
+    sequences.fill(-1)
+  }
+}
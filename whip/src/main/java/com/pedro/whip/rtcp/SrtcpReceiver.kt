@@ -0,0 +1,72 @@
+/*
+ *
+ *  * Copyright (C) 2024 pedroSG94.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.pedro.whip.rtcp
+
+import com.pedro.rtsp.utils.CryptoProperties
+import com.pedro.rtsp.utils.CryptoUtils
+import com.pedro.rtsp.utils.RtpConstants
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Authenticate and decrypt SRTCP packets received from the server.
+ * RFC 3711 3.4
+ *
+ * The packet is: RTCP header (8 bytes, not encrypted) | payload | E flag and index (4 bytes) | tag.
+ * The tag authenticates everything before it. AES-CM decryption is the same operation than encryption.
+ *
+ * Not thread safe, use it only from the thread reading the socket.
+ */
+class SrtcpReceiver(cryptoProperties: CryptoProperties) {
+
+  companion object {
+    private const val HEADER_SIZE = 8
+    private const val INDEX_SIZE = 4
+    private const val MIN_SIZE = HEADER_SIZE + INDEX_SIZE + RtpConstants.HMAC_SIZE
+  }
+
+  private val cryptoUtils = CryptoUtils(cryptoProperties)
+
+  /**
+   * Authenticate and decrypt in place [length] bytes of [buffer].
+   *
+   * @return length of the RTCP compound packet decrypted or -1 if the packet is not valid
+   */
+  fun unprotect(buffer: ByteArray, length: Int): Int {
+    if (length < MIN_SIZE) return -1
+    val tagOffset = length - RtpConstants.HMAC_SIZE
+    if (!cryptoUtils.verifyHmac(buffer, 0, tagOffset, null, buffer, tagOffset)) return -1
+    val indexOffset = tagOffset - INDEX_SIZE
+    val value = readInt(buffer, indexOffset)
+    val isEncrypted = value < 0
+    if (isEncrypted) {
+      val index = value and 0x7FFFFFFF
+      val ssrc = readInt(buffer, 4).toLong() and 0xFFFFFFFFL
+      cryptoUtils.encrypt(buffer, HEADER_SIZE, indexOffset - HEADER_SIZE, ssrc, index.toLong())
+    }
+    return indexOffset
+  }
+
+  private fun readInt(buffer: ByteArray, offset: Int): Int {
+    return (buffer[offset].toInt() and 0xFF shl 24) or
+        (buffer[offset + 1].toInt() and 0xFF shl 16) or
+        (buffer[offset + 2].toInt() and 0xFF shl 8) or
+        (buffer[offset + 3].toInt() and 0xFF)
+  }
+}
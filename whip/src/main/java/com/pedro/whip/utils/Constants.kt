@@ -3,4 +3,6 @@ package com.pedro.whip.utils
 object Constants {
   const val MAGIC_COOKIE: Int = 0x2112A442
   const val STUN_HEX = 1398035790L // 'STUN' in ASCII
+  const val TRANSPORT_CC_URI = "http://www.ietf.org/id/draft-holmer-rmcat-transport-wide-cc-extensions-01"
+  const val TRANSPORT_CC_EXTENSION_ID = 3
 }
\ No newline at end of file
@@ -329,8 +329,15 @@ class CommandsManager {
                 }
             }
             if (media.isNotEmpty()) {
+                val payload = RtpConstants.payloadType + rtpTracks.trackVideo
                 videoBody = media +
                     "a=rtcp-mux\r\n" +
+                    //lost packets are resent and keyframes generated on request
+                    "a=rtcp-fb:$payload nack\r\n" +
+                    "a=rtcp-fb:$payload nack pli\r\n" +
+                    "a=rtcp-fb:$payload ccm fir\r\n" +
+                    "a=rtcp-fb:$payload transport-cc\r\n" +
+                    "a=extmap:${Constants.TRANSPORT_CC_EXTENSION_ID} ${Constants.TRANSPORT_CC_URI}\r\n" +
                     "a=ssrc:$videoSsrc cname:$cName\r\n"
             }
         }
@@ -341,8 +348,11 @@ class CommandsManager {
                 AudioCodec.OPUS -> SdpBody.createOpusBody(rtpTracks.trackAudio, sampleRate, isStereo, true)
                 else  -> throw IllegalArgumentException("Unsupported codec: ${audioCodec.name}")
             }
+            val payload = if (audioCodec == AudioCodec.G711) RtpConstants.payloadTypeG711 else RtpConstants.payloadType + rtpTracks.trackAudio
             audioBody = media +
                 "a=rtcp-mux\r\n" +
+                "a=rtcp-fb:$payload transport-cc\r\n" +
+                "a=extmap:${Constants.TRANSPORT_CC_EXTENSION_ID} ${Constants.TRANSPORT_CC_URI}\r\n" +
                 "a=ssrc:$audioSsrc cname:$cName\r\n"
         }
         val bundleMids = listOfNotNull(
@@ -25,5 +25,7 @@ data class SdpInfo(
   val uFrag: String,
   val uPass: String,
   val fingerprint: String,
-  val candidates: List<Candidate>
+  val candidates: List<Candidate>,
+  //id of the transport-wide sequence header extension or null if not supported
+  val transportCcId: Int? = null
 )
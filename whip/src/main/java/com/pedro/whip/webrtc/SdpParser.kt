@@ -18,6 +18,7 @@
 
 package com.pedro.whip.webrtc
 
+import com.pedro.whip.utils.Constants
 import java.lang.IllegalArgumentException
 
 /**
@@ -29,7 +30,20 @@ object SdpParser {
     val uPass = extractContent(body, "a=ice-pwd:")
     val fingerprint = extractContent(body, "a=fingerprint:sha-256")
     val candidates = extractCandidates(body)
-    return SdpInfo(uFrag, uPass, fingerprint, candidates)
+    val transportCcId = extractExtensionId(body, Constants.TRANSPORT_CC_URI)
+    return SdpInfo(uFrag, uPass, fingerprint, candidates, transportCcId)
+  }
+
+  /**
+   * @return id of the header extension with [uri] (a=extmap:id[/direction] uri) or null if not found
+   */
+  private fun extractExtensionId(sdp: String, uri: String): Int? {
+    val prefix = "a=extmap:"
+    return sdp.lines()
+      .map { it.trim() }.filter { it.startsWith(prefix, ignoreCase = true) }
+      .map { it.removePrefix(prefix).split(" ") }
+      .firstOrNull { it.size >= 2 && it[1] == uri }
+      ?.get(0)?.substringBefore("/")?.toIntOrNull()
   }
 
   private fun extractContent(sdp: String, content: String): String {
@@ -0,0 +1,215 @@
+/*
+ *
+ *  * Copyright (C) 2024 pedroSG94.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.pedro.whip.congestion
+
+import com.pedro.whip.rtcp.RtcpFeedbackReader
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import kotlin.random.Random
+
+/**
+ * Created by pedro on 18/10/26.
+ *
+ * Deterministic simulation of a sender paced at the estimated bitrate over an impaired link.
+ * The receiver write transport-wide feedback packets every 100ms that are read by
+ * [RtcpFeedbackReader] and reported to [GccEstimator], like WhipSender does.
+ */
+class GccEstimatorTest {
+
+  private val packetSize = 1200
+
+  /**
+   * Stand-in of an impaired UDP path: a bottleneck with a FIFO queue, propagation delay and random loss.
+   * Times in micros.
+   */
+  private class ImpairedLink(
+    var capacity: Long,
+    val delay: Long,
+    private val maxQueueDelay: Long,
+    private val loss: Double,
+    seed: Int
+  ) {
+    private val random = Random(seed)
+    private var freeAt = 0L
+
+    /**
+     * @return arrival time or -1 if the packet is dropped
+     */
+    fun send(time: Long, size: Int): Long {
+      if (random.nextDouble() < loss) return -1
+      val start = maxOf(time, freeAt)
+      //queue full
+      if (start - time > maxQueueDelay) return -1
+      freeAt = start + size * 8L * 1_000_000 / capacity
+      return freeAt + delay
+    }
+  }
+
+  private class SentPacket(val sequence: Int, val arrivalTime: Long)
+
+  /**
+   * Write a transport-wide feedback using 2 bits status vector chunks.
+   * Arrival times are in micros and -1 if lost.
+   */
+  private fun writeFeedback(packets: List<SentPacket>, feedbackCount: Int): ByteArray {
+    val received = packets.filter { it.arrivalTime >= 0 }
+    val referenceTime = received.first().arrivalTime / 64_000
+    var previous = referenceTime * 64_000
+    val statuses = IntArray(packets.size)
+    val deltas = ByteArrayOutputStream()
+    packets.forEachIndexed { index, packet ->
+      if (packet.arrivalTime < 0) return@forEachIndexed
+      val delta = ((packet.arrivalTime - previous) / 250).toInt()
+      previous += delta * 250L
+      if (delta in 0..255) {
+        statuses[index] = 1
+        deltas.write(delta)
+      } else {
+        statuses[index] = 2
+        deltas.write(delta shr 8)
+        deltas.write(delta)
+      }
+    }
+    val body = ByteArrayOutputStream()
+    body.write(0); body.write(0); body.write(0); body.write(1) //sender ssrc
+    body.write(0); body.write(0); body.write(0); body.write(2) //media ssrc
+    val baseSequence = packets.first().sequence
+    body.write(baseSequence shr 8); body.write(baseSequence)
+    body.write(packets.size shr 8); body.write(packets.size)
+    body.write((referenceTime shr 16).toInt()); body.write((referenceTime shr 8).toInt()); body.write(referenceTime.toInt())
+    body.write(feedbackCount)
+    for (chunk in statuses.indices step 7) {
+      var value = 0xC000
+      for (i in 0 until 7) {
+        val status = if (chunk + i < statuses.size) statuses[chunk + i] else 0
+        value = value or (status shl (12 - i * 2))
+      }
+      body.write(value shr 8); body.write(value)
+    }
+    body.write(deltas.toByteArray())
+    while ((body.size() + 4) % 4 != 0) body.write(0)
+    val words = (body.size() + 4) / 4 - 1
+    val header = byteArrayOf((0x80 or 15).toByte(), 205.toByte(), (words shr 8).toByte(), words.toByte())
+    return header.plus(body.toByteArray())
+  }
+
+  /**
+   * @return target bitrate at the end of each second
+   */
+  private fun simulate(
+    link: ImpairedLink, durationSeconds: Int, startBitrate: Long,
+    onSecond: (Int) -> Unit = {}
+  ): List<Long> {
+    val estimator = GccEstimator(startBitrate, 100_000, 10_000_000)
+    estimator.rtt = link.delay * 2 / 1000
+    var time = 0L
+    val listener = object: RtcpFeedbackReader.Listener {
+      override fun onReportBlock(ssrc: Long, lastSr: Long, delaySinceLastSr: Long) { }
+      override fun onNack(mediaSsrc: Long, sequence: Int) { }
+      override fun onKeyframeRequest(mediaSsrc: Long) { }
+
+      override fun onTransportPacket(sequence: Int, arrivalTime: Long) {
+        estimator.onPacketFeedback(sequence, arrivalTime)
+      }
+
+      override fun onTransportFeedbackEnd() {
+        estimator.onFeedback(time / 1000)
+      }
+    }
+    val targets = mutableListOf<Long>()
+    val notReported = ArrayDeque<SentPacket>()
+    val feedbacks = ArrayDeque<Pair<Long, ByteArray>>()
+    var sequence = 0
+    var nextSend = 0L
+    var nextFeedback = 100_000L
+    var feedbackCount = 0
+    while (time < durationSeconds * 1_000_000L) {
+      while (nextSend <= time) {
+        val arrivalTime = link.send(nextSend, packetSize)
+        estimator.onPacketSent(sequence, nextSend, packetSize)
+        notReported.addLast(SentPacket(sequence, arrivalTime))
+        sequence = (sequence + 1) and 0xFFFF
+        nextSend += packetSize * 8L * 1_000_000 / estimator.targetBitrate
+      }
+      if (time >= nextFeedback) {
+        nextFeedback += 100_000
+        //packets arrived and lost before the last packet arrived
+        val report = mutableListOf<SentPacket>()
+        var lastReceived = -1
+        for (packet in notReported) {
+          if (packet.arrivalTime > time) break
+          report.add(packet)
+          if (packet.arrivalTime >= 0) lastReceived = report.size
+        }
+        if (lastReceived > 0) {
+          repeat(lastReceived) { notReported.removeFirst() }
+          val feedback = writeFeedback(report.subList(0, lastReceived), feedbackCount++ and 0xFF)
+          feedbacks.addLast(time + link.delay to feedback)
+        }
+      }
+      while (feedbacks.isNotEmpty() && feedbacks.first().first <= time) {
+        val feedback = feedbacks.removeFirst().second
+        assertTrue(RtcpFeedbackReader.read(feedback, 0, feedback.size, listener))
+      }
+      time += 1000
+      if (time % 1_000_000 == 0L) {
+        targets.add(estimator.targetBitrate)
+        onSecond((time / 1_000_000).toInt())
+      }
+    }
+    return targets
+  }
+
+  @Test
+  fun `GIVEN a link of 2 Mbps WHEN start at 300 kbps THEN converge near link capacity`() {
+    val link = ImpairedLink(2_000_000, 40_000, 500_000, 0.0, 1)
+    val targets = simulate(link, 40, 300_000)
+    val average = targets.takeLast(15).average()
+    assertTrue("average $average, $targets", average in 1_300_000.0..2_200_000.0)
+  }
+
+  @Test
+  fun `GIVEN a link of 3 Mbps WHEN capacity drop to 1 Mbps THEN reduce bitrate fast and recover later`() {
+    val link = ImpairedLink(3_000_000, 30_000, 500_000, 0.0, 2)
+    val targets = simulate(link, 50, 2_000_000) { second ->
+      if (second == 20) link.capacity = 1_000_000
+    }
+    val beforeDrop = targets.subList(10, 20).average()
+    assertTrue("before drop $beforeDrop, $targets", beforeDrop > 2_000_000)
+    //5 seconds after the drop
+    assertTrue("after drop ${targets[24]}, $targets", targets[24] <= 1_200_000)
+    val afterDrop = targets.takeLast(15).average()
+    assertTrue("recovered $afterDrop, $targets", afterDrop in 600_000.0..1_100_000.0)
+  }
+
+  @Test
+  fun `GIVEN a link with 15 percent of random loss WHEN send THEN reduce bitrate by loss`() {
+    val link = ImpairedLink(10_000_000, 20_000, 500_000, 0.15, 3)
+    val targets = simulate(link, 20, 2_000_000)
+    assertTrue("$targets", targets.last() < 500_000)
+  }
+
+  @Test
+  fun `GIVEN a link with 1 percent of random loss WHEN send THEN bitrate is not limited by loss`() {
+    val link = ImpairedLink(4_000_000, 20_000, 500_000, 0.01, 4)
+    val targets = simulate(link, 30, 1_000_000)
+    assertTrue("$targets", targets.takeLast(10).average() > 2_000_000)
+  }
+}
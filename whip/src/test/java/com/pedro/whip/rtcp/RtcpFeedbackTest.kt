@@ -0,0 +1,212 @@
+/*
+ *
+ *  * Copyright (C) 2024 pedroSG94.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package com.pedro.whip.rtcp
+
+import com.pedro.rtsp.utils.CryptoProperties
+import com.pedro.rtsp.utils.CryptoUtils
+import com.pedro.rtsp.utils.RtpConstants
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.ByteBuffer
+
+/**
+ * Created by pedro on 18/10/26.
+ */
+class RtcpFeedbackTest {
+
+  private val ssrcVideo = 0x11223344L
+  private val ssrcAudio = 0x55667788L
+  private val ssrcSender = 0x0A0B0C0DL
+
+  private class FeedbackCollector: RtcpFeedbackReader.Listener {
+    val reports = mutableListOf<Triple<Long, Long, Long>>()
+    val nacks = mutableListOf<Pair<Long, Int>>()
+    val keyframeRequests = mutableListOf<Long>()
+    val transportPackets = mutableListOf<Pair<Int, Long>>()
+    var transportFeedbacks = 0
+
+    override fun onReportBlock(ssrc: Long, lastSr: Long, delaySinceLastSr: Long) {
+      reports.add(Triple(ssrc, lastSr, delaySinceLastSr))
+    }
+
+    override fun onNack(mediaSsrc: Long, sequence: Int) {
+      nacks.add(mediaSsrc to sequence)
+    }
+
+    override fun onKeyframeRequest(mediaSsrc: Long) {
+      keyframeRequests.add(mediaSsrc)
+    }
+
+    override fun onTransportPacket(sequence: Int, arrivalTime: Long) {
+      transportPackets.add(sequence to arrivalTime)
+    }
+
+    override fun onTransportFeedbackEnd() {
+      transportFeedbacks++
+    }
+  }
+
+  private fun header(buffer: ByteBuffer, count: Int, type: Int, words: Int) {
+    buffer.put((0x80 or count).toByte())
+    buffer.put(type.toByte())
+    buffer.putShort(words.toShort())
+  }
+
+  private fun createReceiverReport(buffer: ByteBuffer) {
+    header(buffer, 1, 201, 7)
+    buffer.putInt(ssrcSender.toInt())
+    buffer.putInt(ssrcVideo.toInt())
+    buffer.putInt(0) //fraction lost and cumulative lost
+    buffer.putInt(1000) //highest sequence
+    buffer.putInt(0) //jitter
+    buffer.putInt(0x12345678) //LSR
+    buffer.putInt(0x00010000) //DLSR, 1 second
+  }
+
+  private fun createNack(buffer: ByteBuffer, ssrc: Long, pid: Int, blp: Int) {
+    header(buffer, 1, 205, 3)
+    buffer.putInt(ssrcSender.toInt())
+    buffer.putInt(ssrc.toInt())
+    buffer.putShort(pid.toShort())
+    buffer.putShort(blp.toShort())
+  }
+
+  private fun createPli(buffer: ByteBuffer, ssrc: Long) {
+    header(buffer, 1, 206, 2)
+    buffer.putInt(ssrcSender.toInt())
+    buffer.putInt(ssrc.toInt())
+  }
+
+  private fun createFir(buffer: ByteBuffer, ssrc: Long) {
+    header(buffer, 4, 206, 4)
+    buffer.putInt(ssrcSender.toInt())
+    buffer.putInt(0)
+    buffer.putInt(ssrc.toInt())
+    buffer.putInt(0x01000000) //sequence number 1
+  }
+
+  private fun createRtpPacket(sequence: Int, size: Int, value: Byte): ByteArray {
+    val packet = ByteArray(size) { value }
+    packet[0] = 0x80.toByte()
+    packet[2] = (sequence ushr 8).toByte()
+    packet[3] = sequence.toByte()
+    return packet
+  }
+
+  @Test
+  fun `GIVEN a compound packet WHEN read THEN report all feedback`() {
+    val buffer = ByteBuffer.allocate(200)
+    createReceiverReport(buffer)
+    createNack(buffer, ssrcVideo, 65535, 0b101)
+    createPli(buffer, ssrcVideo)
+    createFir(buffer, ssrcAudio)
+    val collector = FeedbackCollector()
+    val result = RtcpFeedbackReader.read(buffer.array(), 0, buffer.position(), collector)
+
+    assertTrue(result)
+    assertEquals(listOf(Triple(ssrcVideo, 0x12345678L, 0x00010000L)), collector.reports)
+    //pid and bits 0 and 2 of blp with sequence wrap
+    assertEquals(listOf(ssrcVideo to 65535, ssrcVideo to 0, ssrcVideo to 2), collector.nacks)
+    assertEquals(listOf(ssrcVideo, ssrcAudio), collector.keyframeRequests)
+  }
+
+  @Test
+  fun `GIVEN a transport-wide feedback with all chunk types WHEN read THEN report arrival time of each packet`() {
+    val buffer = ByteBuffer.allocate(36)
+    header(buffer, 15, 205, 8)
+    buffer.putInt(ssrcSender.toInt())
+    buffer.putInt(ssrcVideo.toInt())
+    buffer.putShort(100) //base sequence
+    buffer.putShort(20) //status count
+    buffer.putInt((1 shl 8) or 7) //reference time 64ms and feedback count
+    buffer.putShort(0x2003) //run length, 3 packets with small delta
+    buffer.putShort(0xA001.toShort()) //14 symbols of 1 bit, first and last received
+    buffer.putShort(0xE100.toShort()) //7 symbols of 2 bits, large delta, lost and small delta
+    buffer.put(byteArrayOf(4, 4, 4, 8, 0, -1, -4, -1))
+    val collector = FeedbackCollector()
+    val result = RtcpFeedbackReader.read(buffer.array(), 0, buffer.capacity(), collector)
+
+    assertTrue(result)
+    assertEquals(1, collector.transportFeedbacks)
+    val expected = mutableListOf(100 to 65_000L, 101 to 66_000L, 102 to 67_000L, 103 to 69_000L)
+    for (sequence in 104..115) expected.add(sequence to -1L)
+    //negative delta of 1ms and 255 * 250us
+    expected.addAll(listOf(116 to 69_000L, 117 to 68_000L, 118 to -1L, 119 to 131_750L))
+    assertEquals(expected, collector.transportPackets)
+  }
+
+  @Test
+  fun `GIVEN a truncated packet WHEN read THEN return false and report feedback before the error`() {
+    val buffer = ByteBuffer.allocate(200)
+    createPli(buffer, ssrcVideo)
+    createNack(buffer, ssrcVideo, 10, 0)
+    val collector = FeedbackCollector()
+    val result = RtcpFeedbackReader.read(buffer.array(), 0, buffer.position() - 2, collector)
+
+    assertFalse(result)
+    assertEquals(listOf(ssrcVideo), collector.keyframeRequests)
+    assertTrue(collector.nacks.isEmpty())
+  }
+
+  @Test
+  fun `GIVEN packets added WHEN find THEN get a copy of the packets still in the history`() {
+    val history = RtpPacketHistory(100)
+    assertEquals(128, history.capacity)
+    val reused = createRtpPacket(5, 1200, 1)
+    history.add(reused, 1200)
+    //the packetizer reuse the buffer for the next packet
+    reused.fill(9)
+    for (sequence in 6 until 6 + 128) history.add(createRtpPacket(sequence and 0xFFFF, 500, 2), 500)
+
+    //overwritten by sequence 133
+    assertEquals(-1, history.find(5))
+    assertEquals(-1, history.find(4))
+    val slot = history.find(133)
+    assertEquals(500, history.getLength(slot))
+    assertArrayEquals(createRtpPacket(133, 500, 2), history.getBuffer(slot).copyOf(500))
+    history.clear()
+    assertEquals(-1, history.find(133))
+  }
+
+  @Test
+  fun `GIVEN a SRTCP packet WHEN unprotect THEN get the original RTCP packet`() {
+    val properties = CryptoProperties(ByteArray(20) { 1 }, ByteArray(16) { 2 }, ByteArray(14) { 3 })
+    val buffer = ByteBuffer.allocate(100)
+    createNack(buffer, ssrcVideo, 100, 1)
+    createPli(buffer, ssrcVideo)
+    val rtcp = buffer.array().copyOf(buffer.position())
+    //protect as RFC 3711 3.4 with E flag and index 7
+    val packet = rtcp.copyOf(rtcp.size + 4 + RtpConstants.HMAC_SIZE)
+    ByteBuffer.wrap(packet, rtcp.size, 4).putInt(7 or (1 shl 31))
+    val cryptoUtils = CryptoUtils(properties)
+    cryptoUtils.encrypt(packet, 8, rtcp.size - 8, ssrcSender, 7)
+    cryptoUtils.calculateHmac(packet, 0, rtcp.size + 4, null, packet, rtcp.size + 4)
+
+    val receiver = SrtcpReceiver(properties)
+    val tampered = packet.copyOf()
+    tampered[10] = (tampered[10] + 1).toByte()
+    assertEquals(-1, receiver.unprotect(tampered, tampered.size))
+    val length = receiver.unprotect(packet, packet.size)
+    assertEquals(rtcp.size, length)
+    assertArrayEquals(rtcp, packet.copyOf(length))
+  }
+}